@@ -1,11 +1,13 @@
 package capp7507;
 
+import spacesettlers.clients.ExperienceLog;
 import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Position;
 import spacesettlers.utilities.Vector2D;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
@@ -21,6 +23,22 @@ import java.util.UUID;
  *
  */
 public class AvoidSession {
+    // The columns of the avoid session log (bump the version whenever they change)
+    static final ExperienceLog.Schema SCHEMA = new ExperienceLog.Schema("AvoidSession", 1);
+    private static final int SHIP_MOST = SCHEMA.addColumn("shipMost", ExperienceLog.ColumnType.LONG);
+    private static final int SHIP_LEAST = SCHEMA.addColumn("shipLeast", ExperienceLog.ColumnType.LONG);
+    private static final int OBSTACLE_MOST = SCHEMA.addColumn("obstacleMost", ExperienceLog.ColumnType.LONG);
+    private static final int OBSTACLE_LEAST = SCHEMA.addColumn("obstacleLeast", ExperienceLog.ColumnType.LONG);
+    private static final int TIMESTEP_STARTED = SCHEMA.addColumn("timestepStarted", ExperienceLog.ColumnType.INT);
+    private static final int TIMESTEP_COMPLETED = SCHEMA.addColumn("timestepCompleted", ExperienceLog.ColumnType.INT);
+    private static final int VALID = SCHEMA.addColumn("valid", ExperienceLog.ColumnType.BYTE);
+    private static final int SUCCESSFULLY_AVOIDED = SCHEMA.addColumn("successfullyAvoided", ExperienceLog.ColumnType.BYTE);
+    private static final int INITIAL_DISTANCE = SCHEMA.addColumn("initialDistance", ExperienceLog.ColumnType.DOUBLE);
+    private static final int DISTANCE_CHANGE = SCHEMA.addColumn("distanceChange", ExperienceLog.ColumnType.DOUBLE);
+    private static final int ENERGY_SPENT = SCHEMA.addColumn("energySpent", ExperienceLog.ColumnType.DOUBLE);
+    private static final int DIFFICULTY = SCHEMA.addColumn("difficulty", ExperienceLog.ColumnType.DOUBLE);
+    private static final int SCORE = SCHEMA.addColumn("score", ExperienceLog.ColumnType.DOUBLE);
+
     private final Position originalPosition;
     private boolean isValid;
     private double distanceAtAvoidBeginning;
@@ -107,6 +125,31 @@ public class AvoidSession {
         return new AvoidResult(successfullyAvoided, distanceChange, distanceAtAvoidBeginning, energySpent, timeSpent, difficulty, score);
     }
 
+    /**
+     * Add this session to a log of sessions (one made with {@link #SCHEMA})
+     *
+     * @param log where to add it
+     * @param row a row of the log to fill in
+     * @param shipId the ship that was avoiding
+     * @throws IOException
+     */
+    void appendTo(ExperienceLog log, ExperienceLog.Row row, UUID shipId) throws IOException {
+        row.setLong(SHIP_MOST, shipId.getMostSignificantBits());
+        row.setLong(SHIP_LEAST, shipId.getLeastSignificantBits());
+        row.setLong(OBSTACLE_MOST, obstacleId.getMostSignificantBits());
+        row.setLong(OBSTACLE_LEAST, obstacleId.getLeastSignificantBits());
+        row.setInt(TIMESTEP_STARTED, timestepStarted);
+        row.setInt(TIMESTEP_COMPLETED, timestepCompleted);
+        row.setBoolean(VALID, isValid);
+        row.setBoolean(SUCCESSFULLY_AVOIDED, successfullyAvoided);
+        row.setDouble(INITIAL_DISTANCE, distanceAtAvoidBeginning);
+        row.setDouble(DISTANCE_CHANGE, distanceAtAvoidBeginning - distanceAtAvoidEnd);
+        row.setDouble(ENERGY_SPENT, energyAtAvoidBeginning - energyAtAvoidEnd);
+        row.setDouble(DIFFICULTY, difficulty);
+        row.setDouble(SCORE, score);
+        log.append(row);
+    }
+
     private AbstractObject target(Toroidal2DPhysics space) {
         return space.getObjectById(targetId);
     }
@@ -603,6 +603,8 @@ public class JakeTeamClient extends TeamClient {
         if (TRAINING_GA) {
             knowledge.think();
             knowledge.shutDown();
+        } else {
+            knowledge.close();
         }
         powerupUtil.shutDown();
     }
@@ -4,6 +4,9 @@ import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import sun.jvm.hotspot.debugger.win32.coff.MachineTypes;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -27,6 +30,14 @@ public class KnowledgeChromosome {
         }
     }
 
+    /**
+     * A chromosome with the given coefficients (used when reading one back from the knowledge file)
+     * @param coefficients
+     */
+    KnowledgeChromosome(double[] coefficients) {
+        this.coefficients = coefficients;
+    }
+
     /**
      * Returns either the action currently specified by the policy or randomly selects one if this is a new state
      *
@@ -113,6 +124,32 @@ public class KnowledgeChromosome {
         return coefficients;
     }
 
+    /**
+     * Write the coefficients
+     * @param out where to write
+     * @throws IOException
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(coefficients.length);
+        for (double coefficient : coefficients) {
+            out.writeDouble(coefficient);
+        }
+    }
+
+    /**
+     * Read a chromosome written by {@link #write(DataOutput)}
+     * @param in where to read from
+     * @return the chromosome
+     * @throws IOException
+     */
+    static KnowledgeChromosome read(DataInput in) throws IOException {
+        double[] coefficients = new double[in.readInt()];
+        for (int i = 0; i < coefficients.length; i++) {
+            coefficients[i] = in.readDouble();
+        }
+        return new KnowledgeChromosome(coefficients);
+    }
+
     public KnowledgeChromosome deepCopy() {
         KnowledgeChromosome copy = new KnowledgeChromosome();
         if (coefficients != null) {
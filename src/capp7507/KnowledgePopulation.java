@@ -1,5 +1,8 @@
 package capp7507;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
 import java.util.stream.DoubleStream;
@@ -17,6 +20,12 @@ public class KnowledgePopulation {
     private int currentPopulationCounter;
     private double[] fitnessScores;
 
+    /**
+     * Picked at random for each generation so the fitness saved for one generation is never given to
+     * another (two games can each make a different next generation from the same one)
+     */
+    private long generationId;
+
     /**
      * Make a new empty population
      */
@@ -36,6 +45,13 @@ public class KnowledgePopulation {
 
         // make space for the fitness scores
         fitnessScores = new double[populationSize];
+        generationId = random.nextLong();
+    }
+
+    private KnowledgePopulation(KnowledgeChromosome[] population, double[] fitnessScores) {
+        random = new Random();
+        this.population = population;
+        this.fitnessScores = fitnessScores;
     }
 
     /**
@@ -50,6 +66,13 @@ public class KnowledgePopulation {
         fitnessScores[currentPopulationCounter] = fitness;
     }
 
+    /**
+     * @return the fitness of the member being evaluated
+     */
+    double getCurrentFitness() {
+        return fitnessScores[currentPopulationCounter];
+    }
+
     /**
      * Return true if we have reached the end of this generation and false otherwise
      *
@@ -81,6 +104,7 @@ public class KnowledgePopulation {
         KnowledgeChromosome[] mutated = mutate(crossed);
         population = carryElitesOverTo(mutated, eliteTree);
         currentPopulationCounter = 0;
+        generationId = random.nextLong();
     }
 
     private TreeSet<ChromosomeFitness> buildEliteTree(KnowledgeChromosome[] population) {
@@ -217,9 +241,66 @@ public class KnowledgePopulation {
         copy.random = random;
         copy.fitnessScores = Arrays.copyOf(fitnessScores, fitnessScores.length);
         copy.currentPopulationCounter = currentPopulationCounter;
+        copy.generationId = generationId;
         return copy;
     }
 
+    /**
+     * Write the whole population (the generation's id, the chromosomes, their fitness and where we are in
+     * the generation)
+     * @param out where to write
+     * @throws IOException
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(population.length);
+        out.writeLong(generationId);
+        out.writeInt(currentPopulationCounter);
+        for (int i = 0; i < population.length; i++) {
+            out.writeDouble(fitnessScores[i]);
+            population[i].write(out);
+        }
+    }
+
+    /**
+     * Read a population written by {@link #write(DataOutput)}
+     * @param in where to read from
+     * @return the population
+     * @throws IOException
+     */
+    static KnowledgePopulation read(DataInput in) throws IOException {
+        int size = in.readInt();
+        KnowledgePopulation population = new KnowledgePopulation(new KnowledgeChromosome[size], new double[size]);
+        population.generationId = in.readLong();
+        population.currentPopulationCounter = in.readInt();
+        for (int i = 0; i < size; i++) {
+            population.fitnessScores[i] = in.readDouble();
+            population.population[i] = KnowledgeChromosome.read(in);
+        }
+        return population;
+    }
+
+    /**
+     * @return the id of this generation (a new one is picked by {@link #makeNextGeneration()})
+     */
+    long getGenerationId() {
+        return generationId;
+    }
+
+    /**
+     * Set a member's fitness from a game played earlier (when reading the knowledge file back)
+     * @param index the member
+     * @param fitness its fitness
+     * @param counter where we were in the generation after that game
+     * @throws IOException if there is no such member
+     */
+    void restoreFitness(int index, double fitness, int counter) throws IOException {
+        if (index < 0 || index >= population.length) {
+            throw new IOException("Population has no member " + index);
+        }
+        fitnessScores[index] = fitness;
+        currentPopulationCounter = counter;
+    }
+
     /**
      * @return Which chromosome out of our population is actual best
      */
@@ -1,18 +1,16 @@
 package capp7507;
 
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
+import spacesettlers.clients.ExperienceLog;
+import spacesettlers.clients.KnowledgeCache;
+import spacesettlers.clients.KnowledgeStore;
 
-import java.io.FileInputStream;
+import java.io.DataInput;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Utility to pull from a file, and
@@ -20,6 +18,14 @@ import java.util.zip.GZIPOutputStream;
  *
  * At the end of the game it evaluates the fitness,
  * and creates a new generation as soon as we're finished with our current generation
+ *
+ * Both files are binary {@link KnowledgeStore}s that we only add to: the knowledge file holds the
+ * population from the start of the generation and then the fitness from each game, and the collection
+ * file holds every finished generation.  Both are read through the {@link KnowledgeCache} so a ladder
+ * that only plays our best policy reads them once.
+ *
+ * Every avoid session is also added to an {@link ExperienceLog} as soon as it's over, for looking at
+ * after training.
  */
 class KnowledgeUtil {
 
@@ -37,37 +43,131 @@ class KnowledgeUtil {
 
     private int steps = 0;
     private final String KNOWLEDGE_FILE;
-    private static final String COLLECTION_FILE = "capp7507/knowledge_collection.xml.gz";
+    private static final String COLLECTION_FILE = "capp7507/knowledge_collection.bin";
+    private static final String AVOID_LOG_DIRECTORY = "capp7507/avoid_sessions";
     private Map<UUID, SessionCollection> sessions;
     private static final int POPULATION_SIZE = 50; // Prof: no lower than a hundred
-    private XStream xStream;
+
+    // Bump this whenever what we write for a population or a chromosome changes
+    private static final int KNOWLEDGE_VERSION = 2;
+    private static final int POPULATION_RECORD = 1; // a whole population
+    private static final int FITNESS_RECORD = 2; // the fitness from one game (after its generation's id)
+    private static final int GENERATION_RECORD = 1; // a finished generation (in the collection)
+
+    private KnowledgeStore populationStore;
+    private KnowledgeStore collectionStore;
+    private ExperienceLog avoidLog;
+
+    // Where population and populationCollection came from (null if we started from scratch)
+    private KnowledgeCache.CachedKnowledge<KnowledgePopulation> populationKnowledge;
+    private KnowledgeCache.CachedKnowledge<PopulationCollection> collectionKnowledge;
+
+    /**
+     * Reads our population through the {@link KnowledgeCache} so every game in a ladder shares one copy
+     */
+    private static final KnowledgeCache.Loader<KnowledgePopulation> POPULATION_LOADER = new KnowledgeCache.Loader<KnowledgePopulation>() {
+        @Override
+        public KnowledgePopulation load(File file) throws IOException {
+            KnowledgeStore store = new KnowledgeStore(file.getPath(), "KnowledgePopulation", KNOWLEDGE_VERSION);
+            KnowledgePopulation population = null;
+            try {
+                for (KnowledgeStore.Record record : store.read()) {
+                    if (record.getType() == POPULATION_RECORD) {
+                        population = KnowledgePopulation.read(record.getInput());
+                    } else if (record.getType() == FITNESS_RECORD && population != null) {
+                        // fitness from a game that played another generation (one another game replaced) is left out
+                        DataInput in = record.getInput();
+                        if (in.readLong() == population.getGenerationId()) {
+                            population.restoreFitness(in.readInt(), in.readDouble(), in.readInt());
+                        }
+                    }
+                }
+            } finally {
+                store.close();
+            }
+            if (population == null) {
+                throw new IOException(file + " has no population");
+            }
+            return population;
+        }
+
+        @Override
+        public KnowledgePopulation copy(KnowledgePopulation population) {
+            return population.deepCopy();
+        }
+    };
+
+    /**
+     * Reads every finished generation through the {@link KnowledgeCache}
+     */
+    private static final KnowledgeCache.Loader<PopulationCollection> COLLECTION_LOADER = new KnowledgeCache.Loader<PopulationCollection>() {
+        @Override
+        public PopulationCollection load(File file) throws IOException {
+            KnowledgeStore store = new KnowledgeStore(file.getPath(), "PopulationCollection", KNOWLEDGE_VERSION);
+            PopulationCollection collection = new PopulationCollection();
+            try {
+                for (KnowledgeStore.Record record : store.read()) {
+                    if (record.getType() == GENERATION_RECORD) {
+                        collection.add(KnowledgePopulation.read(record.getInput()));
+                    }
+                }
+            } finally {
+                store.close();
+            }
+            return collection;
+        }
+
+        @Override
+        public PopulationCollection copy(PopulationCollection collection) {
+            return collection.copy();
+        }
+    };
+
+    // What to write at shutDown
+    private boolean newGeneration = false;
+    private KnowledgePopulation finishedGeneration;
+    private int evaluatedMember = -1;
+    private double evaluatedFitness;
 
     KnowledgeUtil(String knowledgeFile) {
-        xStream = new XStream();
-        xStream.alias("KnowledgePopulation", KnowledgePopulation.class);
-        xStream.alias("PopulationCollection", PopulationCollection.class);
         sessions = new HashMap<>();
         this.KNOWLEDGE_FILE = knowledgeFile;
+        populationStore = new KnowledgeStore(KNOWLEDGE_FILE, "KnowledgePopulation", KNOWLEDGE_VERSION);
+        collectionStore = new KnowledgeStore(COLLECTION_FILE, "PopulationCollection", KNOWLEDGE_VERSION);
+        avoidLog = new ExperienceLog(AVOID_LOG_DIRECTORY, AvoidSession.SCHEMA);
         loadKnowledge();
     }
 
     SessionCollection getSessionsFor(UUID shipUuid) {
         if (!sessions.containsKey(shipUuid)) {
             // We gettin' litty up in here boiz, let's start learnin'
-            sessions.put(shipUuid, new SessionCollection());
+            sessions.put(shipUuid, new SessionCollection(shipUuid, avoidLog));
         }
         return sessions.get(shipUuid);
     }
 
     void think() {
+        // the knowledge from the cache is shared with other games, so take our own copy before learning
+        if (populationKnowledge != null) {
+            population = populationKnowledge.mutable();
+        }
+        if (collectionKnowledge != null) {
+            populationCollection = collectionKnowledge.mutable();
+        }
+
+        evaluatedMember = population.getCurrentPopulationCounter();
+        sessions.values().forEach(SessionCollection::finishAll);
         population.evaluateFitnessForCurrentMember(sessions.values());
+        evaluatedFitness = population.getCurrentFitness();
 
         // move to the next member of the population
         currentPolicy = population.getNextMember();
 
         if (population.isGenerationFinished()) {
-            populationCollection.add(population.deepCopy());
+            finishedGeneration = population.deepCopy();
+            populationCollection.add(finishedGeneration);
             population.makeNextGeneration();
+            newGeneration = true;
             currentPolicy = population.getNextMember();
             System.out.printf("GENERATION %d COMPLETE\n", populationCollection.size());
         } else {
@@ -80,74 +180,104 @@ class KnowledgeUtil {
         sessions = new HashMap<>();
 
         // try to load the population from the existing saved file.  If that fails, start from scratch
+        population = null;
         try {
-            population = loadFile(xStream);
-        } catch (XStreamException | FileNotFoundException e) {
-            // if you get an error, handle it other than a null pointer because
-            // the error will happen the first time you run
+            populationKnowledge = KnowledgeCache.get(KNOWLEDGE_FILE, POPULATION_LOADER);
+            population = populationKnowledge.get();
+            System.out.println("Loaded KnowledgePopulation from " + KNOWLEDGE_FILE);
+        } catch (FileNotFoundException e) {
+            // the first time you run there is no file yet
+        } catch (IOException e) {
+            System.err.println("Can't read " + KNOWLEDGE_FILE + ": " + e.getMessage());
+        }
+        if (population == null) {
             System.err.println("No existing population found - starting a new one from scratch");
+            populationKnowledge = null;
             population = new KnowledgePopulation(POPULATION_SIZE);
-        } catch (IOException e) {
-            e.printStackTrace();
+            newGeneration = true;
         }
 
         try {
-            populationCollection = loadCollectionFile(xStream);
-        } catch (XStreamException | FileNotFoundException e) {
-            // if you get an error, handle it other than a null pointer because
-            // the error will happen the first time you run
+            collectionKnowledge = KnowledgeCache.get(COLLECTION_FILE, COLLECTION_LOADER);
+            populationCollection = collectionKnowledge.get();
+            System.out.println("Loaded PopulationCollection from " + COLLECTION_FILE);
+        } catch (FileNotFoundException e) {
             System.err.println("No existing population collection found - starting a new one from scratch");
+            collectionKnowledge = null;
             populationCollection = new PopulationCollection();
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Can't read " + COLLECTION_FILE + " - starting a new one from scratch: " + e.getMessage());
+            collectionKnowledge = null;
+            populationCollection = new PopulationCollection();
+            try {
+                collectionStore.clear();
+            } catch (IOException clearFailed) {
+                clearFailed.printStackTrace();
+            }
         }
 
         currentPolicy = population.getCurrentMember();
     }
 
-    private KnowledgePopulation loadFile(XStream xStream) throws IOException {
-        try (FileInputStream inputStream = new FileInputStream(KNOWLEDGE_FILE);
-             GZIPInputStream gzipInputStream = new GZIPInputStream(inputStream)) {
-            System.out.println("Loaded KnowledgePopulation from " + KNOWLEDGE_FILE);
-            return (KnowledgePopulation) xStream.fromXML(gzipInputStream);
-        }
-    }
-
-    private PopulationCollection loadCollectionFile(XStream xStream) throws IOException {
-        try (FileInputStream inputStream = new FileInputStream(COLLECTION_FILE);
-             GZIPInputStream gzipInputStream = new GZIPInputStream(inputStream)) {
-            System.out.println("Loaded PopulationCollection from " + COLLECTION_FILE);
-            return (PopulationCollection) xStream.fromXML(gzipInputStream);
-        }
-    }
-
+    /**
+     * Write what changed this game: the finished generation (if there is one) is added to the collection,
+     * and either the new population replaces the knowledge file or this game's fitness is added to it.
+     * The files are written in the background so the next game doesn't wait for them.
+     */
     public void shutDown() {
         try {
-            createFile(xStream, population);
-            createCollectionFile(xStream, populationCollection);
-        } catch (XStreamException | FileNotFoundException e) {
+            if (finishedGeneration != null) {
+                KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+                finishedGeneration.write(writer);
+                collectionStore.appendLater(GENERATION_RECORD, writer);
+                finishedGeneration = null;
+                System.out.println("Saving PopulationCollection to " + COLLECTION_FILE);
+            }
+
+            KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+            if (newGeneration) {
+                population.write(writer);
+                populationStore.replaceAllLater(POPULATION_RECORD, writer);
+                newGeneration = false;
+            } else if (evaluatedMember >= 0) {
+                writer.writeLong(population.getGenerationId());
+                writer.writeInt(evaluatedMember);
+                writer.writeDouble(evaluatedFitness);
+                writer.writeInt(population.getCurrentPopulationCounter());
+                populationStore.appendLater(FITNESS_RECORD, writer);
+            }
+            evaluatedMember = -1;
+            System.out.println("Saving KnowledgePopulation to " + KNOWLEDGE_FILE);
+        } catch (IOException e) {
             // if you get an error, handle it somehow as it means your knowledge didn't save
             System.err.println("Can't save knowledge file in shutdown");
             System.out.println(e.getMessage());
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            populationStore.closeLater();
+            collectionStore.closeLater();
+            closeAvoidLog();
         }
     }
 
-    private void createFile(XStream xStream, KnowledgePopulation population) throws IOException {
-        try (FileOutputStream outputStream = new FileOutputStream(KNOWLEDGE_FILE);
-             GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
-            xStream.toXML(population, gzipOutputStream);
-            System.out.println("Saved KnowledgePopulation to " + KNOWLEDGE_FILE);
+    private void closeAvoidLog() {
+        try {
+            avoidLog.close();
+        } catch (IOException e) {
+            System.err.println("Can't close " + AVOID_LOG_DIRECTORY + ": " + e.getMessage());
         }
     }
 
-    private void createCollectionFile(XStream xStream, PopulationCollection collection) throws IOException {
-        try (FileOutputStream outputStream = new FileOutputStream(COLLECTION_FILE);
-             GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
-            xStream.toXML(collection, gzipOutputStream);
-            System.out.println("Saved PopulationCollection to " + COLLECTION_FILE);
+    /**
+     * Close the knowledge files without writing anything (when we aren't training)
+     */
+    void close() {
+        try {
+            populationStore.close();
+            collectionStore.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        closeAvoidLog();
     }
 
     KnowledgeChromosome getCurrentPolicy() {
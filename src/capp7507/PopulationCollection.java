@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A collection of populations (we store this in 'knowledge_collection.xml.gz)
+ * A collection of populations (we store this in 'knowledge_collection.bin')
  * So we can keep track of populations over time (and plot them)
  */
 public class PopulationCollection {
@@ -22,6 +22,15 @@ public class PopulationCollection {
         return populations.size();
     }
 
+    /**
+     * A new collection with the same populations (finished generations never change so they are shared)
+     */
+    PopulationCollection copy() {
+        PopulationCollection copy = new PopulationCollection();
+        copy.populations.addAll(populations);
+        return copy;
+    }
+
     public KnowledgePopulation getPopulation(int i) {
         return populations.get(i);
     }
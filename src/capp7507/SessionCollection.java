@@ -1,8 +1,10 @@
 package capp7507;
 
+import spacesettlers.clients.ExperienceLog;
 import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Logger;
@@ -11,15 +13,25 @@ import java.util.logging.Logger;
 /**
  * A collection of {@link AvoidSession}s
  * Simply makes it easy to deal with a lot of sessions
+ *
+ * Only the latest session for each obstacle can be resumed, so once a newer one starts the old one is
+ * finished: it's added to the log of avoid sessions, its fitness is added to the total, and it's dropped.
  */
 public class SessionCollection {
     private Logger logger = Logger.getLogger(SessionCollection.class.getName());
     private Map<UUID, Stack<AvoidSession>> sessionMap;
     private final int RELEVANT_THRESHOLD = 5;
+    private final UUID shipId;
+    private final ExperienceLog log;
+    private final ExperienceLog.Row row;
+    private double finishedFitness = 0;
 
-    SessionCollection() {
+    SessionCollection(UUID shipId, ExperienceLog log) {
         logger.addHandler(new ConsoleHandler());
         sessionMap = new HashMap<>();
+        this.shipId = shipId;
+        this.log = log;
+        this.row = log.newRow();
     }
 
     private Stack<AvoidSession> getSessionsFor(UUID obstacleUUID) {
@@ -37,9 +49,39 @@ public class SessionCollection {
     public AvoidSession add(AvoidSession session) {
         UUID obstacleUUID = session.getObstacleId();
         Stack<AvoidSession> sessionsForObstacle = getSessionsFor(obstacleUUID);
+        if (!sessionsForObstacle.empty()) {
+            // the last session can't be resumed any more
+            finish(sessionsForObstacle.pop());
+        }
         return sessionsForObstacle.push(session);
     }
 
+    /**
+     * Log a session that is over and add it to the fitness
+     *
+     * @param session the session
+     */
+    private void finish(AvoidSession session) {
+        if (session.isValid() && session.isComplete() && session.sessionWasLongEnough()) {
+            finishedFitness += session.result().evaluate();
+        }
+        try {
+            session.appendTo(log, row, shipId);
+        } catch (IOException e) {
+            System.out.println("Can't log an avoid session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finish every session (at the end of the game)
+     */
+    void finishAll() {
+        sessionMap.values().stream()
+                .filter(collection -> !collection.empty())
+                .map(Stack::pop)
+                .forEach(this::finish);
+    }
+
     /**
      * Returns whether the last avoid session was to avoid the given obstacle.
      * Also considers how long ago the last session was in case it
@@ -139,7 +181,7 @@ public class SessionCollection {
      * @return double representing the average
      */
     double averageFitness() {
-        return sessionMap.values().stream().flatMap(Collection::stream)
+        return finishedFitness + sessionMap.values().stream().flatMap(Collection::stream)
                 .filter(AvoidSession::isValid)
                 .filter(AvoidSession::isComplete)
                 .filter(AvoidSession::sessionWasLongEnough)
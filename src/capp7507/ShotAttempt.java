@@ -1,10 +1,12 @@
 package capp7507;
 
+import spacesettlers.clients.ExperienceLog;
 import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.Ship;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Vector2D;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
@@ -12,6 +14,21 @@ import java.util.UUID;
  * Used in collecting training data for the decision tree learning algorithm.
  */
 public class ShotAttempt {
+    // The columns of the shot log (bump the version whenever they change)
+    static final ExperienceLog.Schema SCHEMA = new ExperienceLog.Schema("ShotAttempt", 1);
+    private static final int SHOOTER_MOST = SCHEMA.addColumn("shooterMost", ExperienceLog.ColumnType.LONG);
+    private static final int SHOOTER_LEAST = SCHEMA.addColumn("shooterLeast", ExperienceLog.ColumnType.LONG);
+    private static final int TARGET_MOST = SCHEMA.addColumn("targetMost", ExperienceLog.ColumnType.LONG);
+    private static final int TARGET_LEAST = SCHEMA.addColumn("targetLeast", ExperienceLog.ColumnType.LONG);
+    private static final int MISSILE_MOST = SCHEMA.addColumn("missileMost", ExperienceLog.ColumnType.LONG);
+    private static final int MISSILE_LEAST = SCHEMA.addColumn("missileLeast", ExperienceLog.ColumnType.LONG);
+    private static final int ANGLE = SCHEMA.addColumn("angle", ExperienceLog.ColumnType.DOUBLE);
+    private static final int DISTANCE = SCHEMA.addColumn("distance", ExperienceLog.ColumnType.DOUBLE);
+    private static final int TARGET_SPEED = SCHEMA.addColumn("targetSpeed", ExperienceLog.ColumnType.DOUBLE);
+    private static final int TURN_FIRED = SCHEMA.addColumn("turnFired", ExperienceLog.ColumnType.INT);
+    private static final int SHOT_HIT_TARGET = SCHEMA.addColumn("shotHitTarget", ExperienceLog.ColumnType.BYTE);
+    private static final int MISSILE_GONE = SCHEMA.addColumn("missileGone", ExperienceLog.ColumnType.BYTE);
+
     private UUID shooterId;
     private UUID missileId;
     private UUID targetId;
@@ -84,4 +101,28 @@ public class ShotAttempt {
     public boolean missileNotSet() {
         return missileId == null;
     }
+
+    /**
+     * Add this attempt to a log of shots (one made with {@link #SCHEMA})
+     *
+     * @param log where to add it
+     * @param row a row of the log to fill in
+     * @throws IOException
+     */
+    void appendTo(ExperienceLog log, ExperienceLog.Row row) throws IOException {
+        row.setLong(SHOOTER_MOST, shooterId.getMostSignificantBits());
+        row.setLong(SHOOTER_LEAST, shooterId.getLeastSignificantBits());
+        row.setLong(TARGET_MOST, targetId.getMostSignificantBits());
+        row.setLong(TARGET_LEAST, targetId.getLeastSignificantBits());
+        // a shot whose missile was never found is logged with a missile ID of all zeros
+        row.setLong(MISSILE_MOST, missileId == null ? 0 : missileId.getMostSignificantBits());
+        row.setLong(MISSILE_LEAST, missileId == null ? 0 : missileId.getLeastSignificantBits());
+        row.setDouble(ANGLE, angle);
+        row.setDouble(DISTANCE, distance);
+        row.setDouble(TARGET_SPEED, targetSpeed);
+        row.setInt(TURN_FIRED, turnFired);
+        row.setBoolean(SHOT_HIT_TARGET, shotHitTarget);
+        row.setBoolean(MISSILE_GONE, missileGone);
+        log.append(row);
+    }
 }
@@ -1,7 +1,6 @@
 package capp7507;
 
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
+import spacesettlers.clients.ExperienceLog;
 import spacesettlers.objects.AbstractActionableObject;
 import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.Ship;
@@ -11,29 +10,29 @@ import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Position;
 import spacesettlers.utilities.Vector2D;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Subclass of PowerupUtil for use in collecting training data for the decision tree learning algorithm
+ *
+ * Each {@link ShotAttempt} is added to an {@link ExperienceLog} as soon as its missile is gone, so only
+ * the shots still in flight are kept in memory.  The shots still in flight at the end of the game are
+ * logged at shutDown (they didn't finish).
  */
 public class TrainingPowerupUtil extends PowerupUtil {
-    private static final String KNOWLEDGE_FILE = "capp7507/shooting_data.xml.gz";
+    private static final String LOG_DIRECTORY = "capp7507/shooting_data";
     public static final int MAX_SHOOT_DISTANCE = 200;
     private ShotCollection shotAttempts = new ShotCollection();
-    private final XStream xStream;
+    private final ExperienceLog shotLog;
+    private final ExperienceLog.Row shotRow;
     private Map<UUID, Boolean> missilesShotThisTurn = new HashMap<>();
 
     public TrainingPowerupUtil(JakeTeamClient client, Random random) {
         super(client, random);
-        xStream = new XStream();
-        xStream.alias("trainingData", ShotCollection.class);
+        shotLog = new ExperienceLog(LOG_DIRECTORY, ShotAttempt.SCHEMA);
+        shotRow = shotLog.newRow();
         loadKnowledge();
     }
 
@@ -87,13 +86,14 @@ public class TrainingPowerupUtil extends PowerupUtil {
         removedMissiles.forEach(uuid -> missilesShotThisTurn.remove(uuid));
         ShotCollection removedShotAttempts = new ShotCollection();
         for (ShotAttempt attempt : shotAttempts) {
-            if (attempt.finished()) continue;
             if (attempt.getTurnFired() == space.getCurrentTimestep()) continue;
             if (attempt.missileNotSet()) {
                 // set the missile for an attempt by looking for recently shot missiles
                 List<AbstractWeapon> thisTurnMissiles = thisTurnMissiles(space);
                 if (thisTurnMissiles.size() == 0) {
+                    // there's no missile to follow so the shot isn't worth keeping
                     removedShotAttempts.add(attempt);
+                    continue;
                 } else {
                     attempt.setMissileId(thisTurnMissiles.get(0).getId());
                 }
@@ -110,10 +110,28 @@ public class TrainingPowerupUtil extends PowerupUtil {
             if (missile != null && target != null && space.findShortestDistance(missile.getPosition(), target.getPosition()) < 20) {
                 attempt.markHit();
             }
+            if (attempt.finished()) {
+                // nothing changes once the missile is gone so log it and forget about it
+                logShot(attempt);
+                removedShotAttempts.add(attempt);
+            }
         }
         shotAttempts.removeAll(removedShotAttempts);
     }
 
+    /**
+     * Add a shot to the log
+     *
+     * @param attempt the shot
+     */
+    private void logShot(ShotAttempt attempt) {
+        try {
+            attempt.appendTo(shotLog, shotRow);
+        } catch (IOException e) {
+            System.out.println("Can't log a shot to " + LOG_DIRECTORY + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Returns missiles fired in this time step
      *
@@ -179,56 +197,37 @@ public class TrainingPowerupUtil extends PowerupUtil {
     }
 
     /**
-     * Save the loaded shot collection file for storing shot attempts or make a new shot collection
+     * Check the log of shots from earlier games (or start a new one).  The old shots aren't needed while
+     * playing so they are only counted.
      */
     private void loadKnowledge() {
-        // try to load the population from the existing saved file.  If that fails, start from scratch
         try {
-            shotAttempts = loadFile(xStream);
-        } catch (XStreamException | FileNotFoundException e) {
-            // if you get an error, handle it other than a null pointer because
-            // the error will happen the first time you run
-            System.out.println("No existing population found - starting a new one from scratch");
-            shotAttempts = new ShotCollection();
+            System.out.println("Logging shots to " + LOG_DIRECTORY + " (" + shotLog.size() + " shots so far)");
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Load the file for storing shot attempts
-     *
-     * @param xStream xStream object
-     * @return ShotCollection from the filesystem
-     * @throws IOException file issues
-     */
-    private ShotCollection loadFile(XStream xStream) throws IOException {
-        try (FileInputStream inputStream = new FileInputStream(KNOWLEDGE_FILE); GZIPInputStream gzipInputStream = new GZIPInputStream(inputStream)) {
-            System.out.println("Loaded trainingData from " + KNOWLEDGE_FILE);
-            return (ShotCollection) xStream.fromXML(gzipInputStream);
+            // the log is from an older version (or isn't a log) so start from scratch
+            System.out.println("Can't read " + LOG_DIRECTORY + " - starting a new one from scratch: " + e.getMessage());
+            try {
+                shotLog.clear();
+            } catch (IOException clearFailed) {
+                clearFailed.printStackTrace();
+            }
         }
     }
 
     /**
-     * Saves the shot collection to disk
+     * Logs the shots that were still in flight when the game ended and closes the log
      */
     @Override
     public void shutDown() {
+        for (ShotAttempt attempt : shotAttempts) {
+            logShot(attempt);
+        }
+        shotAttempts.clear();
         try {
-            createFile(xStream, shotAttempts);
-        } catch (XStreamException | FileNotFoundException e) {
-            // if you get an error, handle it somehow as it means your knowledge didn't save
-            System.out.println("Can't save knowledge file in shutdown");
-            System.out.println(e.getMessage());
+            shotLog.close();
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void createFile(XStream xStream, ShotCollection trainingPowerupUtil) throws IOException {
-        try (FileOutputStream outputStream = new FileOutputStream(KNOWLEDGE_FILE); GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
-            xStream.toXML(trainingPowerupUtil, gzipOutputStream);
-            System.out.println("Saved training data to " + KNOWLEDGE_FILE);
+            System.out.println("Can't close " + LOG_DIRECTORY);
+            System.out.println(e.getMessage());
         }
     }
 }
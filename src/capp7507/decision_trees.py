@@ -1,6 +1,7 @@
-import gzip
 import math
-import xml.etree.ElementTree as ET
+import mmap
+import os
+import struct
 
 import matplotlib.pyplot as plt
 
@@ -11,7 +12,7 @@ def main():
     Then evaluate
     """
     training_examples = get_examples(
-        'shooting_data.xml.gz'
+        'shooting_data'
     )
 
     n_examples = []
@@ -22,7 +23,7 @@ def main():
         print(decision_tree)
 
         test_examples = get_examples(
-            'test_shooting_data.xml.gz'
+            'test_shooting_data'
         )
 
         accuracy, bias = evaluate(decision_tree, test_examples)
@@ -43,10 +44,10 @@ def plot(n_examples, accuracies, biases):
 
 class Example(object):
     def __init__(self, shot):
-        self.angle = float(shot.find('angle').text)
-        self.distance = float(shot.find('distance').text)
-        self.target_speed = float(shot.find('distance').text)
-        self.hit = shot.find('shotHitTarget').text == 'true'
+        self.angle = shot['angle']
+        self.distance = shot['distance']
+        self.target_speed = shot['targetSpeed']
+        self.hit = shot['shotHitTarget']
 
     def __getitem__(self, item):
         if item == 'angle':
@@ -58,19 +59,60 @@ class Example(object):
         return None
 
 
-def get_xml(file_name):
-    with gzip.open(file_name, 'rb') as f:
-        return ET.parse(f)
+# The shots are a spacesettlers.clients.ExperienceLog written by TrainingPowerupUtil: a directory of
+# segment files, each a header and then every column's values one after another
+EXPERIENCE_LOG_MAGIC = 0x5353454C
+SEGMENT_HEADER = struct.Struct('>iiiii')  # magic, format version, capacity, count, data offset
+COLUMNS = ['angle', 'distance', 'targetSpeed', 'shotHitTarget', 'missileGone']
+
+
+def read_utf(data, offset):
+    length, = struct.unpack_from('>H', data, offset)
+    return data[offset + 2:offset + 2 + length].decode('utf-8'), offset + 2 + length
+
+
+def read_segment(data, file_name):
+    """
+    Read the columns we need from one segment (only the records it counts)
+    """
+    magic, _, capacity, count, data_offset = SEGMENT_HEADER.unpack_from(data, 0)
+    if magic != EXPERIENCE_LOG_MAGIC:
+        raise ValueError(file_name + ' is not an experience log segment')
+    _, offset = read_utf(data, SEGMENT_HEADER.size)  # schema name
+    _, columns = struct.unpack_from('>ii', data, offset)  # schema version, columns
+    offset += 8
+    values = {}
+    column_offset = data_offset
+    for _ in range(columns):
+        name, offset = read_utf(data, offset)
+        code = chr(data[offset])
+        offset += 1
+        if name in COLUMNS:
+            values[name] = struct.unpack_from('>' + str(count) + code, data, column_offset)
+        column_offset += capacity * struct.calcsize(code)
+    return count, values
+
+
+def get_shots(directory):
+    """
+    Stream the shots one segment at a time so the whole log is never in memory
+    """
+    for file_name in sorted(os.listdir(directory)):
+        if not file_name.endswith('.seg'):
+            continue
+        path = os.path.join(directory, file_name)
+        with open(path, 'rb') as f, mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ) as data:
+            count, values = read_segment(data, path)
+            for i in range(count):
+                yield {name: values[name][i] for name in COLUMNS}
 
 
 def get_examples(file_name):
-    xml_tree = get_xml(file_name)
-    root = xml_tree.getroot()
     hits = []
     didnt_finish = 0
     examples = []
-    for shot in root.iter('capp7507.ShotAttempt'):
-        if 'true' == shot.find('missileGone').text:
+    for shot in get_shots(file_name):
+        if shot['missileGone']:
             example = Example(shot)
             examples.append(example)
             hits.append(example.hit)
@@ -0,0 +1,25 @@
+package spacesettlers.clients;
+
+import spacesettlers.objects.AbstractActionableObject;
+
+/**
+ * A decision made independently for each ship (or base) of a team.  Used with
+ * TeamClient.decideInParallel so a team with a large fleet can make the decisions
+ * for its ships on several cores at once.
+ *
+ * Decisions for different ships run at the same time, so a decision must not change
+ * anything shared with the other ships (or it must synchronize on it).
+ *
+ * @author amy
+ *
+ * @param <T> what is decided for each ship (an action, a power up, etc)
+ */
+public interface ActionableObjectDecision<T> {
+	/**
+	 * Make the decision for one ship (or base)
+	 *
+	 * @param actionableObject the ship or base to decide for
+	 * @return the decision (null if there is nothing to decide for this object)
+	 */
+	public T decide(AbstractActionableObject actionableObject);
+}
@@ -364,18 +364,18 @@ public class AggressiveHeuristicAsteroidCollectorTeamClient extends TeamClient {
 
 	@Override
 	public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
-		ArrayList<Asteroid> finishedAsteroids = new ArrayList<Asteroid>();
+		ArrayList<UUID> finishedAsteroids = new ArrayList<UUID>();
 
 		for (UUID asteroidId : asteroidToShipMap.keySet()) {
 			Asteroid asteroid = (Asteroid) space.getObjectById(asteroidId);
 			if (asteroid == null || !asteroid.isAlive() || asteroid.isMoveable()) {
-				finishedAsteroids.add(asteroid);
+				finishedAsteroids.add(asteroidId);
 				//System.out.println("Removing asteroid from map");
 			}
 		}
 
-		for (Asteroid asteroid : finishedAsteroids) {
-			asteroidToShipMap.remove(asteroid.getId());
+		for (UUID asteroidId : finishedAsteroids) {
+			asteroidToShipMap.remove(asteroidId);
 		}
 
 
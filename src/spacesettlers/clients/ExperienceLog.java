@@ -0,0 +1,753 @@
+package spacesettlers.clients;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A log of what a learning client saw while it played (every shot it took, every obstacle it
+ * avoided, and so on) for learning from after the games are over.  Records are written as they
+ * happen instead of being kept until the end of the game, and they are read back one at a time so a
+ * log of many games never has to fit in memory.
+ *
+ * Every record has the same columns (a {@link Schema}), each of them a fixed size, so the log is kept
+ * in segment files that each hold a fixed number of records.  A segment keeps each column together
+ * (all of the first column, then all of the second, and so on) so a tool that only wants a few columns
+ * reads only those.  A segment is made at its full size and memory mapped, so adding a record is just
+ * writing its values into the map and then adding one to the count of records in the header.  A
+ * record that was only partly written when the client was killed isn't counted, so it is never read.
+ *
+ * <pre>
+ * int MAGIC, int FORMAT_VERSION, int capacity, int count, int dataOffset,
+ * UTF schema, int schemaVersion, int columns, (UTF name, byte type) for each column
+ * the values of the first column (capacity of them), then the second column, ...
+ * </pre>
+ *
+ * The log is a directory of segments that are only ever added to.  A log carries on in the newest
+ * segment if it has room and nobody else is writing to it, otherwise it starts a new segment of its
+ * own, so games playing at the same time (in a ladder, or in several JVMs) never write to the same
+ * segment.
+ *
+ * @author amy
+ */
+public class ExperienceLog implements Closeable {
+	/**
+	 * The first bytes of every segment ("SSEL")
+	 */
+	public static final int MAGIC = 0x5353454C;
+
+	/**
+	 * The version of the segment layout (not the client's schema)
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Records in a segment unless the client asks for another size
+	 */
+	public static final int DEFAULT_SEGMENT_RECORDS = 4096;
+
+	/**
+	 * Where the count of records is in a segment
+	 */
+	private static final int COUNT_OFFSET = 12;
+
+	/**
+	 * The kinds of column (the code is the type's format character in python's struct module)
+	 */
+	public enum ColumnType {
+		BYTE('b', 1), INT('i', 4), LONG('q', 8), DOUBLE('d', 8);
+
+		private final char code;
+		private final int width;
+
+		ColumnType(char code, int width) {
+			this.code = code;
+			this.width = width;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		static ColumnType fromCode(int code) throws IOException {
+			for (ColumnType type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			throw new IOException("Unknown column type " + (char) code);
+		}
+	}
+
+	/**
+	 * The columns of a log, and a name and version for them so a log is never read as something else.
+	 * The columns are added when the schema is made and can't be changed once a log uses it.
+	 */
+	public static class Schema {
+		private final String name;
+		private final int version;
+		private final List<String> columnNames = new ArrayList<String>();
+		private final List<ColumnType> columnTypes = new ArrayList<ColumnType>();
+		private boolean inUse = false;
+
+		public Schema(String name, int version) {
+			this.name = name;
+			this.version = version;
+		}
+
+		/**
+		 * Add a column to the end of the record
+		 *
+		 * @param columnName
+		 * @param type
+		 * @return the column's index (used to set and get its value)
+		 */
+		public synchronized int addColumn(String columnName, ColumnType type) {
+			if (inUse) {
+				throw new IllegalStateException("Schema " + name + " is already used by a log");
+			}
+			if (columnNames.contains(columnName)) {
+				throw new IllegalArgumentException("Schema " + name + " already has a column " + columnName);
+			}
+			columnNames.add(columnName);
+			columnTypes.add(type);
+			return columnNames.size() - 1;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public int getColumnCount() {
+			return columnNames.size();
+		}
+
+		public String getColumnName(int column) {
+			return columnNames.get(column);
+		}
+
+		public ColumnType getColumnType(int column) {
+			return columnTypes.get(column);
+		}
+
+		/**
+		 * @return the bytes in one record
+		 */
+		public int getRecordWidth() {
+			int width = 0;
+			for (ColumnType type : columnTypes) {
+				width += type.width;
+			}
+			return width;
+		}
+
+		/**
+		 * @param capacity records in the segment
+		 * @return where each column starts in a segment, from the start of the data
+		 */
+		long[] columnOffsets(int capacity) {
+			long[] offsets = new long[columnTypes.size()];
+			long offset = 0;
+			for (int column = 0; column < offsets.length; column++) {
+				offsets[column] = offset;
+				offset += (long) capacity * columnTypes.get(column).width;
+			}
+			return offsets;
+		}
+
+		synchronized void markInUse() {
+			if (columnNames.isEmpty()) {
+				throw new IllegalStateException("Schema " + name + " has no columns");
+			}
+			inUse = true;
+		}
+
+		boolean sameColumns(List<String> names, List<ColumnType> types) {
+			return columnNames.equals(names) && columnTypes.equals(types);
+		}
+	}
+
+	/**
+	 * The values of one record to add to the log (it can be filled in and added again for the next one)
+	 */
+	public static class Row {
+		private final Schema schema;
+
+		/**
+		 * Each value as the bits written (doubles as their raw long bits)
+		 */
+		private final long[] values;
+
+		Row(Schema schema) {
+			this.schema = schema;
+			this.values = new long[schema.getColumnCount()];
+		}
+
+		public Row setByte(int column, byte value) {
+			checkType(column, ColumnType.BYTE);
+			values[column] = value;
+			return this;
+		}
+
+		public Row setBoolean(int column, boolean value) {
+			return setByte(column, (byte) (value ? 1 : 0));
+		}
+
+		public Row setInt(int column, int value) {
+			checkType(column, ColumnType.INT);
+			values[column] = value;
+			return this;
+		}
+
+		public Row setLong(int column, long value) {
+			checkType(column, ColumnType.LONG);
+			values[column] = value;
+			return this;
+		}
+
+		public Row setDouble(int column, double value) {
+			checkType(column, ColumnType.DOUBLE);
+			values[column] = Double.doubleToRawLongBits(value);
+			return this;
+		}
+
+		private void checkType(int column, ColumnType type) {
+			if (schema.getColumnType(column) != type) {
+				throw new IllegalArgumentException(schema.getColumnName(column) + " is a " +
+						schema.getColumnType(column) + " column, not a " + type + " column");
+			}
+		}
+	}
+
+	/**
+	 * A segment that is open for writing.  The lock is held until the segment is closed so nobody
+	 * else writes to it.
+	 */
+	private static class Segment {
+		final FileChannel channel;
+		final FileLock lock;
+		final MappedByteBuffer buffer;
+		final int capacity;
+		final int dataOffset;
+		final long[] columnOffsets;
+		int count;
+
+		Segment(FileChannel channel, FileLock lock, MappedByteBuffer buffer, int capacity, int dataOffset,
+				long[] columnOffsets, int count) {
+			this.channel = channel;
+			this.lock = lock;
+			this.buffer = buffer;
+			this.capacity = capacity;
+			this.dataOffset = dataOffset;
+			this.columnOffsets = columnOffsets;
+			this.count = count;
+		}
+
+		void close() throws IOException {
+			try {
+				buffer.force();
+				lock.release();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * What the header of a segment says
+	 */
+	private static class Header {
+		int capacity;
+		int count;
+		int dataOffset;
+		long[] columnOffsets;
+	}
+
+	/**
+	 * The directory of segments
+	 */
+	private final File directory;
+	private final Schema schema;
+	private final int segmentRecords;
+
+	/**
+	 * The segment being written (null until the first record)
+	 */
+	private Segment segment;
+
+	/**
+	 * A log with the default number of records in each segment
+	 *
+	 * @param directoryName the log's directory (made when the first record is added)
+	 * @param schema
+	 */
+	public ExperienceLog(String directoryName, Schema schema) {
+		this(directoryName, schema, DEFAULT_SEGMENT_RECORDS);
+	}
+
+	/**
+	 * @param directoryName the log's directory (made when the first record is added)
+	 * @param schema
+	 * @param segmentRecords records in each new segment
+	 */
+	public ExperienceLog(String directoryName, Schema schema, int segmentRecords) {
+		if (segmentRecords <= 0) {
+			throw new IllegalArgumentException("A segment must hold at least one record");
+		}
+		schema.markInUse();
+		if ((long) segmentRecords * schema.getRecordWidth() > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("Segments of " + segmentRecords + " " + schema.getName() + " records are too big to map");
+		}
+		this.directory = new File(directoryName);
+		this.schema = schema;
+		this.segmentRecords = segmentRecords;
+	}
+
+	/**
+	 * @return an empty record for this log
+	 */
+	public Row newRow() {
+		return new Row(schema);
+	}
+
+	/**
+	 * Add a record to the end of the log.  It is in the log (and seen by readers) as soon as this returns.
+	 *
+	 * @param row
+	 * @throws KnowledgeStore.SchemaMismatchException if the log holds another schema (clear it to start over)
+	 * @throws IOException
+	 */
+	public synchronized void append(Row row) throws IOException {
+		if (row.schema != schema) {
+			throw new IllegalArgumentException("The row is for " + row.schema.getName() + ", not " + schema.getName());
+		}
+		if (segment == null || segment.count >= segment.capacity) {
+			openSegment();
+		}
+
+		int index = segment.count;
+		ByteBuffer buffer = segment.buffer;
+		for (int column = 0; column < row.values.length; column++) {
+			ColumnType type = schema.getColumnType(column);
+			int position = segment.dataOffset + (int) segment.columnOffsets[column] + index * type.width;
+			long value = row.values[column];
+			switch (type) {
+			case BYTE:
+				buffer.put(position, (byte) value);
+				break;
+			case INT:
+				buffer.putInt(position, (int) value);
+				break;
+			case LONG:
+			case DOUBLE:
+				buffer.putLong(position, value);
+				break;
+			}
+		}
+
+		// the record only counts once all of its values are there
+		segment.count++;
+		buffer.putInt(COUNT_OFFSET, segment.count);
+	}
+
+	/**
+	 * @return the number of records in the log (from every segment)
+	 * @throws KnowledgeStore.SchemaMismatchException if the log holds another schema
+	 * @throws IOException
+	 */
+	public long size() throws IOException {
+		long size = 0;
+		for (File segmentFile : listSegments(directory)) {
+			FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ);
+			try {
+				Header header = readHeader(segmentFile, channel);
+				if (header != null) {
+					size += header.count;
+				}
+			} finally {
+				channel.close();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Read the log from the start (the records added while it is being read may or may not be seen)
+	 *
+	 * @return a reader that must be closed
+	 */
+	public Reader read() {
+		return new Reader(directory, schema);
+	}
+
+	/**
+	 * Close the log and delete every segment in it
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException {
+		close();
+		for (File segmentFile : listSegments(directory)) {
+			if (!segmentFile.delete()) {
+				throw new IOException("Can't delete " + segmentFile);
+			}
+		}
+	}
+
+	/**
+	 * Stop writing the segment (the next record carries on in it if nobody else has taken it)
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (segment != null) {
+			try {
+				segment.close();
+			} finally {
+				segment = null;
+			}
+		}
+	}
+
+	/**
+	 * Carry on in the newest segment if there is room in it and it is free, otherwise make a new one
+	 *
+	 * @throws IOException
+	 */
+	private void openSegment() throws IOException {
+		close();
+		directory.mkdirs();
+
+		List<File> segments = listSegments(directory);
+		if (!segments.isEmpty()) {
+			File newest = segments.get(segments.size() - 1);
+			segment = resumeSegment(newest);
+			if (segment != null) {
+				return;
+			}
+		}
+
+		int number = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+		while (segment == null) {
+			segment = createSegment(new File(directory, String.format("%08d.seg", number)));
+			number++;
+		}
+	}
+
+	/**
+	 * Open a segment to write more records to it
+	 *
+	 * @param segmentFile
+	 * @return the segment, or null if it is full or someone else is writing to it
+	 * @throws IOException
+	 */
+	private Segment resumeSegment(File segmentFile) throws IOException {
+		FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			FileLock lock = tryLock(channel);
+			if (lock != null) {
+				Header header = readHeader(segmentFile, channel);
+				if (header != null && header.count < header.capacity) {
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, header.dataOffset + dataLength(header.capacity));
+					return new Segment(channel, lock, buffer, header.capacity, header.dataOffset, header.columnOffsets, header.count);
+				}
+				lock.release();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		channel.close();
+		return null;
+	}
+
+	/**
+	 * Make a new, empty segment at its full size
+	 *
+	 * @param segmentFile
+	 * @return the segment, or null if someone else made the file first
+	 * @throws IOException
+	 */
+	private Segment createSegment(File segmentFile) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (FileAlreadyExistsException e) {
+			return null;
+		}
+		try {
+			FileLock lock = tryLock(channel);
+			if (lock == null) {
+				channel.close();
+				return null;
+			}
+
+			KnowledgeStore.RecordWriter header = new KnowledgeStore.RecordWriter();
+			header.writeInt(MAGIC);
+			header.writeInt(FORMAT_VERSION);
+			header.writeInt(segmentRecords);
+			header.writeInt(0);
+			header.writeInt(0); // the data offset, filled in below
+			header.writeUTF(schema.getName());
+			header.writeInt(schema.getVersion());
+			header.writeInt(schema.getColumnCount());
+			for (int column = 0; column < schema.getColumnCount(); column++) {
+				header.writeUTF(schema.getColumnName(column));
+				header.writeByte(schema.getColumnType(column).code);
+			}
+			// start the data on an 8 byte boundary
+			while (header.size() % 8 != 0) {
+				header.writeByte(0);
+			}
+			int dataOffset = header.size();
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header.toByteArray());
+			headerBuffer.putInt(16, dataOffset);
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset + dataLength(segmentRecords));
+			buffer.put(headerBuffer);
+			return new Segment(channel, lock, buffer, segmentRecords, dataOffset, schema.columnOffsets(segmentRecords), 0);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private long dataLength(int capacity) {
+		return (long) capacity * schema.getRecordWidth();
+	}
+
+	/**
+	 * @param channel
+	 * @return the lock, or null if another program (or another log in this JVM) holds it
+	 * @throws IOException
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Read and check the header of a segment
+	 *
+	 * @param segmentFile
+	 * @param channel
+	 * @return the header, or null if the segment is still being made
+	 * @throws KnowledgeStore.SchemaMismatchException if the segment holds another schema
+	 * @throws IOException if it isn't a segment
+	 */
+	private Header readHeader(File segmentFile, FileChannel channel) throws IOException {
+		return readHeader(segmentFile, channel, schema);
+	}
+
+	private static Header readHeader(File segmentFile, FileChannel channel, Schema schema) throws IOException {
+		Header header = new Header();
+		try {
+			channel.position(0);
+			DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+			if (in.readInt() != MAGIC) {
+				throw new IOException(segmentFile + " is not an experience log segment");
+			}
+			int formatVersion = in.readInt();
+			if (formatVersion != FORMAT_VERSION) {
+				throw new KnowledgeStore.SchemaMismatchException(segmentFile + " has experience log format " +
+						formatVersion + " (expected " + FORMAT_VERSION + ")");
+			}
+			header.capacity = in.readInt();
+			header.count = in.readInt();
+			header.dataOffset = in.readInt();
+			String fileSchema = in.readUTF();
+			int fileSchemaVersion = in.readInt();
+			int columns = in.readInt();
+			List<String> names = new ArrayList<String>();
+			List<ColumnType> types = new ArrayList<ColumnType>();
+			for (int column = 0; column < columns; column++) {
+				names.add(in.readUTF());
+				types.add(ColumnType.fromCode(in.readByte()));
+			}
+			if (!fileSchema.equals(schema.getName()) || fileSchemaVersion != schema.getVersion()
+					|| !schema.sameColumns(names, types)) {
+				throw new KnowledgeStore.SchemaMismatchException(segmentFile + " holds " + fileSchema + " version " +
+						fileSchemaVersion + " " + names + " (expected " + schema.getName() + " version " +
+						schema.getVersion() + " " + schema.columnNames + ")");
+			}
+		} catch (EOFException e) {
+			// only part of the header is there yet
+			return null;
+		}
+		if (header.dataOffset == 0 || channel.size() < header.dataOffset + (long) header.capacity * schema.getRecordWidth()) {
+			return null;
+		}
+		if (header.count < 0 || header.count > header.capacity) {
+			throw new IOException(segmentFile + " says it holds " + header.count + " of " + header.capacity + " records");
+		}
+		header.columnOffsets = schema.columnOffsets(header.capacity);
+		return header;
+	}
+
+	/**
+	 * @param directory
+	 * @return the segments in the log, oldest first
+	 */
+	private static List<File> listSegments(File directory) {
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().matches("\\d+\\.seg");
+			}
+		});
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File first, File second) {
+				return Integer.compare(segmentNumber(first), segmentNumber(second));
+			}
+		});
+		return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	private static int segmentNumber(File segmentFile) {
+		String name = segmentFile.getName();
+		return Integer.parseInt(name.substring(0, name.length() - ".seg".length()));
+	}
+
+	/**
+	 * Reads a log one record at a time, oldest first.  Only the segment being read is mapped, and the
+	 * values are read straight from the map, so reading a log takes next to no memory however big it is.
+	 *
+	 * <pre>
+	 * ExperienceLog.Reader reader = log.read();
+	 * while (reader.next()) {
+	 *     double angle = reader.getDouble(ANGLE);
+	 * }
+	 * reader.close();
+	 * </pre>
+	 */
+	public static class Reader implements Closeable {
+		private final Schema schema;
+		private final List<File> segments;
+		private int segmentIndex = -1;
+		private MappedByteBuffer buffer;
+		private Header header;
+		private int record = -1;
+
+		Reader(File directory, Schema schema) {
+			this.schema = schema;
+			this.segments = listSegments(directory);
+		}
+
+		/**
+		 * Move to the next record
+		 *
+		 * @return false once there are no more records
+		 * @throws KnowledgeStore.SchemaMismatchException if a segment holds another schema
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException {
+			record++;
+			while (header == null || record >= header.count) {
+				if (!nextSegment()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Map the next segment that has records in it
+		 *
+		 * @return false if there are no more segments
+		 * @throws IOException
+		 */
+		private boolean nextSegment() throws IOException {
+			buffer = null;
+			header = null;
+			record = 0;
+			segmentIndex++;
+			if (segmentIndex >= segments.size()) {
+				return false;
+			}
+
+			File segmentFile = segments.get(segmentIndex);
+			FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ);
+			try {
+				header = readHeader(segmentFile, channel, schema);
+				if (header != null) {
+					// the map stays valid after the channel is closed
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+							header.dataOffset + (long) header.capacity * schema.getRecordWidth());
+				}
+			} finally {
+				channel.close();
+			}
+			return true;
+		}
+
+		public byte getByte(int column) {
+			return buffer.get(position(column, ColumnType.BYTE));
+		}
+
+		public boolean getBoolean(int column) {
+			return getByte(column) != 0;
+		}
+
+		public int getInt(int column) {
+			return buffer.getInt(position(column, ColumnType.INT));
+		}
+
+		public long getLong(int column) {
+			return buffer.getLong(position(column, ColumnType.LONG));
+		}
+
+		public double getDouble(int column) {
+			return buffer.getDouble(position(column, ColumnType.DOUBLE));
+		}
+
+		/**
+		 * @param column
+		 * @param type what the caller expects the column to be
+		 * @return where the current record's value for the column is
+		 */
+		private int position(int column, ColumnType type) {
+			if (buffer == null) {
+				throw new IllegalStateException("There is no current record (call next first)");
+			}
+			if (schema.getColumnType(column) != type) {
+				throw new IllegalArgumentException(schema.getColumnName(column) + " is a " +
+						schema.getColumnType(column) + " column, not a " + type + " column");
+			}
+			return header.dataOffset + (int) header.columnOffsets[column] + record * type.width;
+		}
+
+		/**
+		 * Stop reading (the segment being read is unmapped once it is garbage collected)
+		 */
+		@Override
+		public void close() {
+			buffer = null;
+			header = null;
+			segmentIndex = segments.size();
+		}
+	}
+}
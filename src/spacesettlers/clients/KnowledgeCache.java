@@ -0,0 +1,219 @@
+package spacesettlers.clients;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps the knowledge files that clients have read so every game in the same JVM (all of the games
+ * in a ladder) shares one copy instead of each client reading and decoding the file in initialize.
+ *
+ * Knowledge is kept by file and by the hash of what is in it, so a file that changes (a learning
+ * client saved after its game) is read again and a file that is only touched is not.  The file is
+ * only hashed again when its modification time or length changes.  If several games ask for the
+ * same file at once, one of them reads it and the others wait for it.
+ *
+ * The knowledge handed out is shared by every client that asked for it so it must never be changed.
+ * A client that changes its knowledge (one that learns as it plays) asks for its own copy with
+ * {@link CachedKnowledge#mutable()}, which is made the first time it is needed.
+ *
+ * @author amy
+ */
+public class KnowledgeCache {
+	/**
+	 * Reads a knowledge file and copies what it read
+	 *
+	 * @param <T> the decoded knowledge
+	 */
+	public interface Loader<T> {
+		/**
+		 * Read and decode the file
+		 *
+		 * @param file (it exists)
+		 * @return the knowledge (never changed once it is returned)
+		 * @throws IOException if the file can't be read
+		 */
+		T load(File file) throws IOException;
+
+		/**
+		 * Make a copy that can be changed without changing the original
+		 *
+		 * @param knowledge
+		 * @return
+		 */
+		T copy(T knowledge);
+	}
+
+	/**
+	 * Knowledge from the cache: shared until the client asks to change it
+	 *
+	 * @param <T>
+	 */
+	public static class CachedKnowledge<T> {
+		private final T shared;
+		private final Loader<T> loader;
+		private T copy;
+
+		CachedKnowledge(T shared, Loader<T> loader) {
+			this.shared = shared;
+			this.loader = loader;
+		}
+
+		/**
+		 * @return the knowledge to read (shared with other clients so it must not be changed)
+		 */
+		public T get() {
+			return copy == null ? shared : copy;
+		}
+
+		/**
+		 * @return this client's own copy of the knowledge (made on the first call)
+		 */
+		public T mutable() {
+			if (copy == null) {
+				copy = loader.copy(shared);
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * A file that has been read: how it looked, the hash of its contents, and its knowledge
+	 * (which may still be being read by another thread)
+	 */
+	private static class Entry {
+		final long lastModified;
+		final long length;
+		final String hash;
+		final FutureTask<Object> knowledge;
+
+		Entry(long lastModified, long length, String hash, FutureTask<Object> knowledge) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+			this.knowledge = knowledge;
+		}
+	}
+
+	/**
+	 * The knowledge read so far (by loader and absolute path)
+	 */
+	private static final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	private KnowledgeCache() {
+	}
+
+	/**
+	 * Returns the knowledge in a file (reading it only if it isn't in the cache or has changed)
+	 *
+	 * @param fileName
+	 * @param loader reads the file (files read by different kinds of loader are kept separately)
+	 * @return
+	 * @throws FileNotFoundException if there is no file (start from scratch)
+	 * @throws IOException if the file can't be read
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CachedKnowledge<T> get(String fileName, final Loader<T> loader) throws IOException {
+		final File file = new File(fileName);
+		String key = loader.getClass().getName() + ":" + file.getAbsolutePath();
+
+		// the last game's knowledge may still be being saved
+		KnowledgeStore.waitForWrites(file);
+
+		while (true) {
+			if (!file.isFile()) {
+				throw new FileNotFoundException(fileName + " does not exist");
+			}
+			long lastModified = file.lastModified();
+			long length = file.length();
+
+			Entry entry = cache.get(key);
+			if (entry == null || entry.lastModified != lastModified || entry.length != length) {
+				String hash = hash(file);
+				FutureTask<Object> knowledge;
+				if (entry != null && entry.hash.equals(hash)) {
+					// the file was written again with the same contents so keep what was read
+					knowledge = entry.knowledge;
+				} else {
+					knowledge = new FutureTask<Object>(new Callable<Object>() {
+						public Object call() throws Exception {
+							return loader.load(file);
+						}
+					});
+				}
+
+				Entry newEntry = new Entry(lastModified, length, hash, knowledge);
+				boolean added = entry == null ? cache.putIfAbsent(key, newEntry) == null : cache.replace(key, entry, newEntry);
+				if (!added) {
+					// another thread got there first so use what it found
+					continue;
+				}
+				entry = newEntry;
+				entry.knowledge.run();
+			}
+
+			try {
+				return new CachedKnowledge<T>((T) entry.knowledge.get(), loader);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading " + fileName, e);
+			} catch (ExecutionException e) {
+				// don't keep the failure so the next client tries again
+				cache.remove(key, entry);
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new IOException("Can't read " + fileName + ": " + cause, cause);
+			}
+		}
+	}
+
+	/**
+	 * Forget everything that has been read (the next request for each file reads it again)
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Hash the contents of a file
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > 0) {
+				MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				digest.update(contents);
+			}
+		} finally {
+			channel.close();
+		}
+
+		StringBuilder hash = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hash.append(String.format("%02x", b));
+		}
+		return hash.toString();
+	}
+}
@@ -0,0 +1,719 @@
+package spacesettlers.clients;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary file for what a learning client keeps from game to game (a population, a
+ * data set, and so on).  The file is a list of records that are only ever added to, so a client
+ * writes just what changed in a game (a new generation, the fitness from a game) instead of saving
+ * everything again, and reads the file back through a memory map instead of parsing it.
+ *
+ * The file starts with a header naming the schema (what the records hold) and its version so a
+ * client never reads records it doesn't understand.  Each record is its length, a CRC32 and a type
+ * (chosen by the client) followed by the data, written with a DataOutputStream.  If the client is
+ * killed while a record is being written, the partial record fails its check when the file is read
+ * back and is cut off, so the file is always valid up to the last whole record.
+ *
+ * <pre>
+ * int MAGIC, int FORMAT_VERSION, UTF schema, int schemaVersion
+ * int length, int crc, byte type, data (length bytes, the CRC covers the type and the data)
+ * ...
+ * </pre>
+ *
+ * To keep a file from growing forever, a client can replace all of its records with one (for
+ * example, a snapshot of the whole population at the start of each generation).  The new file is
+ * written next to the old one and renamed over it.
+ *
+ * A client doesn't have to wait for its knowledge to be written at the end of a game: appendLater
+ * and replaceAllLater take a copy of the record and write it on a background thread (one for the
+ * whole JVM, so writes happen in the order they were asked for) and the JVM waits for them before
+ * it exits.  Anyone who reads a file first waits for the writes still waiting for it, so the next
+ * game always sees what the last one saved.  Stores for the same file (two games in a ladder playing
+ * the same client) take turns writing, and each record goes at the end of the file as it is then.
+ * Programs take turns too: reading, appending and replacing hold a lock on a file next to the store
+ * (its name with .lock on the end), so a worker never cuts off a record another worker is still
+ * writing.  The lock is on a file of its own because replacing renames a new file over the store.
+ *
+ * @author amy
+ */
+public class KnowledgeStore implements Closeable {
+	/**
+	 * The first bytes of every knowledge store ("SSKS")
+	 */
+	public static final int MAGIC = 0x53534B53;
+
+	/**
+	 * The version of the file layout (not the client's schema)
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Bytes in a record before its data (length, crc and type)
+	 */
+	private static final int RECORD_HEADER_SIZE = 9;
+
+	/**
+	 * Added to the store's file name for the file that is locked while the store is used
+	 */
+	public static final String LOCK_SUFFIX = ".lock";
+
+	/**
+	 * Writes the records given to appendLater and replaceAllLater (made when it is first needed)
+	 */
+	private static ExecutorService backgroundWriter;
+
+	/**
+	 * The thread of the background writer
+	 */
+	private static volatile Thread backgroundWriterThread;
+
+	/**
+	 * The last background write for each file (by absolute path) that hasn't finished
+	 */
+	private static final ConcurrentHashMap<String, Future<?>> pendingWrites = new ConcurrentHashMap<String, Future<?>>();
+
+	/**
+	 * Held while a file is read or written (by absolute path) so stores for the same file take turns.
+	 * A JVM can only hold a file lock once, so the threads take turns here before taking it.
+	 */
+	private static final ConcurrentHashMap<String, Object> fileLocks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Thrown when a file was written with another schema (or another version of it)
+	 */
+	public static class SchemaMismatchException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public SchemaMismatchException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * One record read from the store.  The data is a read only view of the memory mapped file.
+	 */
+	public static class Record {
+		private final int type;
+		private final ByteBuffer data;
+
+		Record(int type, ByteBuffer data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		/**
+		 * @return the type given when the record was written
+		 */
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * @return the record's data (each call returns a new view starting at the beginning)
+		 */
+		public ByteBuffer getData() {
+			return data.duplicate();
+		}
+
+		/**
+		 * @return the record's data to read with the DataInput methods (the opposite of the
+		 * DataOutputStream it was written with)
+		 */
+		public DataInput getInput() {
+			return new DataInputStream(new ByteBufferInputStream(getData()));
+		}
+	}
+
+	/**
+	 * Builds the data for a record (write to it like any DataOutputStream)
+	 */
+	public static class RecordWriter extends DataOutputStream {
+		public RecordWriter() {
+			super(new ByteArrayOutputStream());
+		}
+
+		byte[] toByteArray() {
+			// a DataOutputStream writes straight through so there is nothing to flush
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+
+	private final File file;
+	private final File lockFile;
+	private final String schema;
+	private final int schemaVersion;
+
+	/**
+	 * The file's absolute path (for the locks and the background writes)
+	 */
+	private final String key;
+
+	/**
+	 * Open for appending once the store has been read (null until then or after close)
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Which file the channel has open (if another store renames a new file over it, it is opened again)
+	 */
+	private Object channelFileKey;
+
+	/**
+	 * A store for the given file.  Nothing is read or written until it is used.
+	 *
+	 * @param fileName
+	 * @param schema the name of what the records hold
+	 * @param schemaVersion change this whenever the records change
+	 */
+	public KnowledgeStore(String fileName, String schema, int schemaVersion) {
+		this.file = new File(fileName);
+		this.lockFile = new File(fileName + LOCK_SUFFIX);
+		this.schema = schema;
+		this.schemaVersion = schemaVersion;
+		this.key = file.getAbsolutePath();
+	}
+
+	/**
+	 * Read all of the records (an empty list for a new store).  Anything after the last whole
+	 * record is cut off.  The store stays open for appending until it is closed.
+	 *
+	 * @return the records in the order they were written
+	 * @throws SchemaMismatchException if the file holds another schema (clear it to start over)
+	 * @throws IOException if the file can't be read
+	 */
+	public List<Record> read() throws IOException {
+		waitForWrites(file);
+		synchronized (lockFor(key)) {
+			FileChannel lock = lockFile();
+			try {
+				return readRecords();
+			} finally {
+				lock.close();
+			}
+		}
+	}
+
+	/**
+	 * Read the records and open the file for appending (with the file's locks held)
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private List<Record> readRecords() throws IOException {
+		close();
+		List<Record> records = new ArrayList<Record>();
+		if (!file.exists() || file.length() == 0) {
+			createFile(null, null);
+			openForAppend(file.length());
+			return records;
+		}
+
+		FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer buffer;
+		try {
+			buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+		} finally {
+			readChannel.close();
+		}
+
+		readHeader(buffer);
+		int validLength = buffer.position();
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int expectedCrc = buffer.getInt();
+			int type = buffer.get();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
+
+			ByteBuffer data = buffer.slice();
+			data.limit(length);
+			crc.reset();
+			crc.update(type);
+			crc.update(data.duplicate());
+			if ((int) crc.getValue() != expectedCrc) {
+				buffer.position(start);
+				break;
+			}
+
+			records.add(new Record(type, data.asReadOnlyBuffer()));
+			buffer.position(start + RECORD_HEADER_SIZE + length);
+			validLength = buffer.position();
+		}
+
+		if (validLength < buffer.limit()) {
+			System.out.println("Knowledge store " + file + " ends with a partly written record, dropping the last " +
+					(buffer.limit() - validLength) + " bytes");
+		}
+		openForAppend(validLength);
+		return records;
+	}
+
+	/**
+	 * Add a record to the end of the file (checking the file first if it hasn't been read)
+	 *
+	 * @param type the kind of record (for the client, 0 to 127)
+	 * @param writer the record's data
+	 * @throws IOException
+	 */
+	public void append(int type, RecordWriter writer) throws IOException {
+		waitForWrites(file);
+		appendRecord(type, writer.toByteArray());
+	}
+
+	/**
+	 * Add a record to the end of the file on the background writer.  The record is copied now so
+	 * the writer can be reused.  A failure is printed since there is no one left to tell.
+	 *
+	 * @param type the kind of record (for the client, 0 to 127)
+	 * @param writer the record's data
+	 * @return finishes when the record is written
+	 */
+	public Future<?> appendLater(final int type, RecordWriter writer) {
+		final byte[] data = writer.toByteArray();
+		return writeLater(new Callable<Object>() {
+			public Object call() throws IOException {
+				appendRecord(type, data);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Replace everything in the store with one record.  The new file is written next to the old
+	 * one and moved over it, so a crash leaves either the old file or the new one.
+	 *
+	 * @param type the kind of record (for the client, 0 to 127)
+	 * @param writer the record's data
+	 * @throws IOException
+	 */
+	public void replaceAll(int type, RecordWriter writer) throws IOException {
+		waitForWrites(file);
+		replaceWith(type, writer.toByteArray());
+	}
+
+	/**
+	 * Replace everything in the store with one record on the background writer (see appendLater)
+	 *
+	 * @param type the kind of record (for the client, 0 to 127)
+	 * @param writer the record's data
+	 * @return finishes when the file is replaced
+	 */
+	public Future<?> replaceAllLater(final int type, RecordWriter writer) {
+		final byte[] data = writer.toByteArray();
+		return writeLater(new Callable<Object>() {
+			public Object call() throws IOException {
+				replaceWith(type, data);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Empty the store (for example, when it holds another schema)
+	 *
+	 * @throws IOException
+	 */
+	public void clear() throws IOException {
+		waitForWrites(file);
+		replaceWith(null, null);
+	}
+
+	/**
+	 * Close the store once the writes already given to the background writer are done
+	 *
+	 * @return finishes when the store is closed
+	 */
+	public Future<?> closeLater() {
+		return writeLater(new Callable<Object>() {
+			public Object call() throws IOException {
+				close();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stop appending (the records already read stay readable)
+	 */
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			channelFileKey = null;
+		}
+	}
+
+	/**
+	 * @return the file the store is kept in
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Wait until the background writes for a file are done (returns straight away on the background
+	 * writer itself).  Failed writes were already reported so they aren't thrown again.
+	 *
+	 * @param file
+	 */
+	public static void waitForWrites(File file) {
+		if (Thread.currentThread() == backgroundWriterThread) {
+			return;
+		}
+		Future<?> pending = pendingWrites.get(file.getAbsolutePath());
+		if (pending != null) {
+			waitFor(pending);
+		}
+	}
+
+	/**
+	 * Wait until every background write asked for so far is done (called before the JVM exits)
+	 */
+	public static void flush() {
+		if (Thread.currentThread() == backgroundWriterThread) {
+			return;
+		}
+		ExecutorService writer;
+		synchronized (KnowledgeStore.class) {
+			writer = backgroundWriter;
+		}
+		if (writer != null) {
+			// the writer runs the writes in order so this finishes after all of the others
+			waitFor(writer.submit(new Runnable() {
+				public void run() {
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Add the record at the end of the file as it is now (taking the file's locks)
+	 *
+	 * @param type
+	 * @param data
+	 * @throws IOException
+	 */
+	private void appendRecord(int type, byte[] data) throws IOException {
+		synchronized (lockFor(key)) {
+			FileChannel lock = lockFile();
+			try {
+				if (channel == null || !file.exists() || !currentFileKey().equals(channelFileKey)) {
+					// not read yet, or another store renamed a new file over the one we had open
+					readRecords();
+				}
+
+				ByteBuffer record = toRecord(type, data);
+				channel.position(channel.size());
+				while (record.hasRemaining()) {
+					channel.write(record);
+				}
+			} finally {
+				lock.close();
+			}
+		}
+	}
+
+	/**
+	 * Replace the file with one holding only this record (none if type is null)
+	 *
+	 * @param type
+	 * @param data
+	 * @throws IOException
+	 */
+	private void replaceWith(Integer type, byte[] data) throws IOException {
+		synchronized (lockFor(key)) {
+			FileChannel lock = lockFile();
+			try {
+				close();
+				createFile(type, data);
+				openForAppend(file.length());
+			} finally {
+				lock.close();
+			}
+		}
+	}
+
+	/**
+	 * Run a write on the background writer
+	 *
+	 * @param write
+	 * @return
+	 */
+	private Future<?> writeLater(final Callable<Object> write) {
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				try {
+					return write.call();
+				} catch (IOException e) {
+					System.out.println("Can't save knowledge file " + file + ": " + e.getMessage());
+					throw e;
+				}
+			}
+		}) {
+			@Override
+			protected void done() {
+				pendingWrites.remove(key, this);
+			}
+		};
+
+		// the writer runs tasks in order so the last one for a file is the only one worth waiting for
+		pendingWrites.put(key, task);
+		getBackgroundWriter().execute(task);
+		return task;
+	}
+
+	/**
+	 * @return the background writer (made the first time it is needed along with the hook that
+	 * waits for it when the JVM exits)
+	 */
+	private static synchronized ExecutorService getBackgroundWriter() {
+		if (backgroundWriter == null) {
+			backgroundWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "knowledge writer");
+					thread.setDaemon(true);
+					backgroundWriterThread = thread;
+					return thread;
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread("knowledge writer flush") {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
+		return backgroundWriter;
+	}
+
+	private static void waitFor(Future<?> future) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				future.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				// already reported by the writer
+				break;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Object lockFor(String key) {
+		Object lock = fileLocks.get(key);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = fileLocks.putIfAbsent(key, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Wait for the lock on the store's lock file so other programs using the store take turns with
+	 * this one (call with the JVM's lock for the file held)
+	 *
+	 * @return the lock file's channel (closing it lets the lock go)
+	 * @throws IOException
+	 */
+	private FileChannel lockFile() throws IOException {
+		File parent = lockFile.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			lockChannel.lock();
+		} catch (IOException e) {
+			lockChannel.close();
+			throw e;
+		}
+		return lockChannel;
+	}
+
+	/**
+	 * @return what identifies the file now at this path (changes when a new file is renamed over it)
+	 * @throws IOException
+	 */
+	private Object currentFileKey() throws IOException {
+		Object fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+		// some file systems have no keys so fall back on the creation time
+		return fileKey != null ? fileKey : Files.readAttributes(file.toPath(), BasicFileAttributes.class).creationTime();
+	}
+
+	/**
+	 * Check the header matches this store's schema
+	 *
+	 * @param buffer positioned at the start of the file (left after the header)
+	 * @throws IOException
+	 */
+	private void readHeader(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file + " is not a knowledge store");
+			}
+			int formatVersion = buffer.getInt();
+			if (formatVersion != FORMAT_VERSION) {
+				throw new SchemaMismatchException(file + " has knowledge store format " + formatVersion +
+						" (expected " + FORMAT_VERSION + ")");
+			}
+			String fileSchema = new DataInputStream(new ByteBufferInputStream(buffer)).readUTF();
+			int fileSchemaVersion = buffer.getInt();
+			if (!fileSchema.equals(schema) || fileSchemaVersion != schemaVersion) {
+				throw new SchemaMismatchException(file + " holds " + fileSchema + " version " + fileSchemaVersion +
+						" (expected " + schema + " version " + schemaVersion + ")");
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException(file + " is not a knowledge store");
+		}
+	}
+
+	/**
+	 * Write a new file with the header and (optionally) one record, then move it over the old one
+	 *
+	 * @param type null for no record
+	 * @param data
+	 * @throws IOException
+	 */
+	private void createFile(Integer type, byte[] data) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		RecordWriter header = new RecordWriter();
+		header.writeInt(MAGIC);
+		header.writeInt(FORMAT_VERSION);
+		header.writeUTF(schema);
+		header.writeInt(schemaVersion);
+
+		// a temporary file of its own so two programs replacing the same store don't share one
+		File tempFile = File.createTempFile("." + file.getName() + "-", ".tmp", parent);
+		FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+		try {
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header.toByteArray());
+			while (headerBuffer.hasRemaining()) {
+				tempChannel.write(headerBuffer);
+			}
+			if (type != null) {
+				ByteBuffer record = toRecord(type, data);
+				while (record.hasRemaining()) {
+					tempChannel.write(record);
+				}
+			}
+			tempChannel.force(false);
+		} finally {
+			tempChannel.close();
+		}
+
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Open the file to append to (cutting off anything after validLength)
+	 *
+	 * @param validLength
+	 * @throws IOException
+	 */
+	private void openForAppend(long validLength) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		channelFileKey = currentFileKey();
+		if (channel.size() > validLength) {
+			channel.truncate(validLength);
+		}
+		channel.position(validLength);
+	}
+
+	/**
+	 * @param type
+	 * @param data
+	 * @return the record as it is written to the file
+	 */
+	private static ByteBuffer toRecord(int type, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(data);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+		record.putInt(data.length);
+		record.putInt((int) crc.getValue());
+		record.put((byte) type);
+		record.put(data);
+		record.flip();
+		return record;
+	}
+
+	/**
+	 * Reads from a buffer (moving its position)
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package spacesettlers.clients;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Wraps a call into a team client so the team can measure how much CPU time and memory
+ * the client used while answering (even if the call timed out and is still running).
+ * 
+ * @author amy
+ */
+class MonitoredCallable<T> implements Callable<T> {
+	/**
+	 * The actual call into the client
+	 */
+	private final Callable<T> clientCall;
+
+	/**
+	 * How long (in MILLISECONDS) the client is allowed for this call
+	 */
+	private final long timeoutMillis;
+
+	/**
+	 * Wall clock time (System.nanoTime) when the call started
+	 */
+	private volatile long startNanos;
+
+	/**
+	 * The thread running the client call (null until it starts)
+	 */
+	private volatile Thread clientThread;
+
+	/**
+	 * CPU time of the client thread when the call started and ended
+	 */
+	private volatile long startCpuNanos, endCpuNanos;
+
+	/**
+	 * Bytes allocated by the client thread when the call started and ended
+	 */
+	private volatile long startAllocatedBytes, endAllocatedBytes;
+
+	/**
+	 * True once the client call has returned (or thrown)
+	 */
+	private volatile boolean finished;
+
+	/**
+	 * CPU time that has already been charged to the team
+	 */
+	private long chargedCpuNanos;
+
+	/**
+	 * Allocated bytes that have already been charged to the team
+	 */
+	private long chargedAllocatedBytes;
+
+	MonitoredCallable(Callable<T> clientCall, long timeoutMillis) {
+		this.clientCall = clientCall;
+		this.timeoutMillis = timeoutMillis;
+		this.finished = false;
+		this.chargedCpuNanos = 0;
+		this.chargedAllocatedBytes = 0;
+	}
+
+	public T call() throws Exception {
+		startCpuNanos = TeamCpuTimeBank.getCurrentThreadCpuTime();
+		startAllocatedBytes = TeamMemoryBudget.getCurrentThreadAllocatedBytes();
+		startNanos = System.nanoTime();
+		clientThread = Thread.currentThread();
+		try {
+			return clientCall.call();
+		} finally {
+			endCpuNanos = TeamCpuTimeBank.getCurrentThreadCpuTime();
+			endAllocatedBytes = TeamMemoryBudget.getCurrentThreadAllocatedBytes();
+			finished = true;
+		}
+	}
+
+	/**
+	 * Has the client call started running?
+	 * @return
+	 */
+	boolean isStarted() {
+		return clientThread != null;
+	}
+
+	/**
+	 * Is the client still running this call?
+	 * @return
+	 */
+	boolean isRunning() {
+		return isStarted() && !finished;
+	}
+
+	/**
+	 * Returns the thread running the call (null if it hasn't started)
+	 * @return
+	 */
+	Thread getClientThread() {
+		return clientThread;
+	}
+
+	/**
+	 * Returns how long (nanoseconds) the call has been running past its timeout (0 if it
+	 * isn't running or isn't late yet)
+	 * 
+	 * @return
+	 */
+	long getOverdueNanos() {
+		if (!isRunning()) {
+			return 0;
+		}
+		long runningNanos = System.nanoTime() - startNanos;
+		long timeoutNanos = Math.min(timeoutMillis, Long.MAX_VALUE / 1000000L) * 1000000L;
+		return Math.max(0, runningNanos - timeoutNanos);
+	}
+
+	/**
+	 * Returns the CPU time (nanoseconds) used by the call so far
+	 * @return
+	 */
+	long getCpuTimeUsed() {
+		Thread thread = clientThread;
+		if (thread == null) {
+			return 0;
+		}
+
+		if (finished) {
+			return endCpuNanos - startCpuNanos;
+		}
+
+		long currentCpuNanos = TeamCpuTimeBank.getThreadCpuTime(thread.getId());
+		if (currentCpuNanos < 0) {
+			// the thread died between the checks so the end time is now set
+			return finished ? endCpuNanos - startCpuNanos : 0;
+		}
+		return currentCpuNanos - startCpuNanos;
+	}
+
+	/**
+	 * Returns the CPU time used since the last time this was called (so a call that
+	 * keeps running after it timed out can be charged for the extra time later)
+	 * 
+	 * @return
+	 */
+	synchronized long getUnchargedCpuTime() {
+		long used = getCpuTimeUsed();
+		long uncharged = used - chargedCpuNanos;
+		if (uncharged <= 0) {
+			return 0;
+		}
+		chargedCpuNanos = used;
+		return uncharged;
+	}
+
+	/**
+	 * Returns the bytes allocated by the call so far
+	 * @return
+	 */
+	long getAllocatedBytes() {
+		Thread thread = clientThread;
+		if (thread == null) {
+			return 0;
+		}
+
+		if (finished) {
+			return endAllocatedBytes - startAllocatedBytes;
+		}
+
+		long currentBytes = TeamMemoryBudget.getThreadAllocatedBytes(thread.getId());
+		if (currentBytes < 0) {
+			// the thread died between the checks so the end count is now set
+			return finished ? endAllocatedBytes - startAllocatedBytes : 0;
+		}
+		return currentBytes - startAllocatedBytes;
+	}
+
+	/**
+	 * Returns the bytes allocated since the last time this was called
+	 * 
+	 * @return
+	 */
+	synchronized long getUnchargedAllocatedBytes() {
+		long allocated = getAllocatedBytes();
+		long uncharged = allocated - chargedAllocatedBytes;
+		if (uncharged <= 0) {
+			return 0;
+		}
+		chargedAllocatedBytes = allocated;
+		return uncharged;
+	}
+}
@@ -27,7 +27,7 @@ import spacesettlers.objects.Base;
 import spacesettlers.objects.Ship;
 import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
 import spacesettlers.objects.resources.ResourcePile;
-import spacesettlers.simulator.SpaceSettlersSimulator;
+import spacesettlers.simulator.SimulatorContext;
 import spacesettlers.simulator.Toroidal2DPhysics;
 
 /**
@@ -137,6 +137,31 @@ public class Team {
 	 */
 	ExecutorService executor;
 	
+	/**
+	 * CPU time budget for the team client (chess clock style)
+	 */
+	TeamCpuTimeBank cpuTimeBank;
+	
+	/**
+	 * The most recent call into the client (used to charge for CPU time used after a timeout)
+	 */
+	MonitoredCallable<?> lastClientCall;
+	
+	/**
+	 * Makes the client threads and quarantines any that run away
+	 */
+	TeamThreadWatchdog watchdog;
+	
+	/**
+	 * Per step memory allocation budget for the team client
+	 */
+	TeamMemoryBudget memoryBudget;
+	
+	/**
+	 * The timeouts for the simulation this team is playing in
+	 */
+	SimulatorContext context;
+	
 	/**
 	 * Initialize the team client to have an empty list of ships.
 	 */
@@ -161,8 +186,214 @@ public class Team {
 		this.totalFlagsCollected = 0;
 		this.totalCoresCollected = 0; 
 		executor = null;
+		cpuTimeBank = new TeamCpuTimeBank(0, 0);
+		lastClientCall = null;
+		watchdog = new TeamThreadWatchdog(teamName, 0, 0);
+		memoryBudget = new TeamMemoryBudget(0, 0);
+		context = new SimulatorContext();
+		// the client's helper threads are only set once the team is in a simulation (copies 
+		// of the team share its client and mustn't replace them)
+	}
+	
+	/**
+	 * Copy a team without its ships (see deepCopy and snapshot).  The copy is in the same
+	 * simulation as the team, so it shares the team's context, watchdog and budgets instead of
+	 * making its own.  Copies are never called, so they have no client thread.
+	 * 
+	 * @param team
+	 */
+	private Team(Team team) {
+		this.teamShips = new LinkedHashSet<Ship>();
+		this.teamBaseIDs = new LinkedHashSet<UUID>(team.teamBaseIDs);
+		this.teamIDs = new LinkedHashSet<UUID>(team.teamIDs);
+		this.teamClient = team.teamClient;
+		this.teamColor = team.teamColor;
+		this.teamName = team.teamName;
+		this.ladderName = team.ladderName;
+		this.maxNumberShips = team.maxNumberShips;
+		this.costToPurchase = team.costToPurchase.deepCopy();
+		this.totalResources = new ResourcePile(team.totalResources);
+		this.availableResources = new ResourcePile(team.availableResources);
+		this.totalHitsInflicted = team.totalHitsInflicted;
+		this.totalKillsInflicted = team.totalKillsInflicted;
+		this.totalKillsReceived = team.totalKillsReceived;
+		this.totalDamageInflicted = team.totalDamageInflicted;
+		this.totalDamageReceived = team.totalDamageReceived;
+		this.totalFlagsCollected = team.totalFlagsCollected;
+		this.totalCoresCollected = team.totalCoresCollected;
+		this.executor = null;
+		this.lastClientCall = null;
+		this.cpuTimeBank = team.cpuTimeBank;
+		this.watchdog = team.watchdog;
+		this.memoryBudget = team.memoryBudget;
+		this.context = team.context;
+	}
+	
+	/**
+	 * Set the simulation this team is playing in (for its timeouts)
+	 * 
+	 * @param context
+	 */
+	public void setSimulatorContext(SimulatorContext context) {
+		this.context = context;
+		setClientHelperThreads();
+	}
+	
+	/**
+	 * Give the team its client (used when a team is restored from a checkpoint, which doesn't save clients)
+	 * 
+	 * @param teamClient
+	 */
+	public void setTeamClient(TeamClient teamClient) {
+		this.teamClient = teamClient;
+		setClientHelperThreads();
 	}
 	
+	/**
+	 * Set the CPU time budget for the team client.  Unused time carries forward
+	 * to later steps and a team that overdraws does nothing until it is positive again.
+	 * 
+	 * @param cpuTimePerStep CPU milliseconds given to the team each step (0 turns off the budget)
+	 * @param cpuTimeBankMaximum maximum CPU milliseconds the team can save up (0 for no maximum)
+	 */
+	public void setCpuTimeBudget(int cpuTimePerStep, int cpuTimeBankMaximum) {
+		cpuTimeBank = new TeamCpuTimeBank(cpuTimePerStep, cpuTimeBankMaximum);
+	}
+
+	/**
+	 * Set the memory allocation budget for the team client.  A team that allocates more than
+	 * the limit in a step does nothing on the next step.
+	 * 
+	 * @param warningPerStep megabytes the team may allocate each step before it is warned (0 for no warning)
+	 * @param limitPerStep megabytes the team may allocate each step before it is throttled (0 for no limit)
+	 */
+	public void setMemoryBudget(int warningPerStep, int limitPerStep) {
+		memoryBudget = new TeamMemoryBudget(warningPerStep, limitPerStep);
+	}
+
+	/**
+	 * Set how runaway client threads are handled
+	 * 
+	 * @param maximumLeakedThreads runaway threads the team may leak before it forfeits (0 uses the default)
+	 * @param gracePeriod MILLISECONDS past its timeout a call may run before it is a runaway (0 uses the default)
+	 */
+	public void setThreadWatchdog(int maximumLeakedThreads, int gracePeriod) {
+		watchdog = new TeamThreadWatchdog(teamName, maximumLeakedThreads, gracePeriod);
+		setClientHelperThreads();
+	}
+
+	/**
+	 * Give the client its share of helper threads, made by the watchdog so a helper that
+	 * ignores its deadline is quarantined like any other client thread
+	 */
+	private void setClientHelperThreads() {
+		// a team restored from a checkpoint gets its client, context and watchdog one at a time
+		if (teamClient == null || context == null || watchdog == null) {
+			return;
+		}
+		teamClient.setHelperThreads(context.getHelperThreadsPerTeam(), watchdog);
+	}
+
+	/**
+	 * Make sure the client is free to take a new call.  If the last call ignored its 
+	 * interrupt and is still running far past its timeout, the thread is quarantined and
+	 * the team gets a fresh thread (unless it has leaked too many and forfeited).
+	 * 
+	 * @return true if the client can be called and false if the call should be skipped
+	 */
+	private boolean isClientReady() {
+		if (watchdog.isForfeited()) {
+			return false;
+		}
+
+		if (executor == null || executor.isTerminated()) {
+			executor = Executors.newSingleThreadExecutor(watchdog);
+			return true;
+		}
+
+		// the previous call is still running.  Skip this call unless it has run away.
+		MonitoredCallable<?> previousCall = lastClientCall;
+		if (previousCall == null || !watchdog.isRunaway(previousCall)) {
+			return false;
+		}
+
+		chargeCpuTime();
+		watchdog.quarantine(previousCall);
+		executor = null;
+		if (watchdog.isForfeited()) {
+			return false;
+		}
+		executor = Executors.newSingleThreadExecutor(watchdog);
+		return true;
+	}
+
+	/**
+	 * Has this team forfeited (by leaking too many client threads)?
+	 * @return
+	 */
+	public boolean isForfeited() {
+		return watchdog.isForfeited();
+	}
+
+	/**
+	 * Return the watchdog for the client threads (for reporting)
+	 * @return
+	 */
+	public TeamThreadWatchdog getThreadWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * Called by the simulator at the start of each time step (before any client calls)
+	 */
+	public void startTimestep() {
+		// charge for anything a timed out call kept using since the last step
+		chargeCpuTime();
+		teamClient.quarantineRunawayHelpers(watchdog, false);
+		cpuTimeBank.deposit();
+		if (memoryBudget.endStep()) {
+			System.err.println(getTeamName() + " allocated more memory than its warning level last step");
+		}
+	}
+
+	/**
+	 * Charge the team for the CPU time (and memory) its client used that hasn't been charged yet
+	 */
+	private void chargeCpuTime() {
+		if (lastClientCall != null) {
+			cpuTimeBank.charge(lastClientCall.getUnchargedCpuTime());
+			memoryBudget.charge(lastClientCall.getUnchargedAllocatedBytes());
+		}
+		
+		// and for anything the client's helper threads did (see TeamClient.decideInParallel)
+		teamClient.chargeHelperCalls(cpuTimeBank, memoryBudget);
+	}
+
+	/**
+	 * Return the CPU time bank for this team (for reporting)
+	 * @return
+	 */
+	public TeamCpuTimeBank getCpuTimeBank() {
+		return cpuTimeBank;
+	}
+
+	/**
+	 * Return the memory budget for this team (for reporting)
+	 * @return
+	 */
+	public TeamMemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Returns true if the team has used up its CPU time or allocated too much memory 
+	 * and should skip its client calls this step
+	 * @return
+	 */
+	private boolean isOverBudget() {
+		return cpuTimeBank.isOverdrawn() || memoryBudget.isThrottled();
+	}
+
 	/**
 	 * Reset the costs to purchase new items
 	 */
@@ -176,26 +407,26 @@ public class Team {
 	 * @return
 	 */
 	public Team deepCopy() {
-		Team newTeam = new Team(teamClient, ladderName, maxNumberShips);
+		Team newTeam = new Team(this);
 		
 		for (Ship ship : teamShips) {
 			newTeam.addShip(ship.deepClone());
 		}
 		
-		newTeam.teamBaseIDs.addAll(this.teamBaseIDs);
-		newTeam.costToPurchase = costToPurchase.deepCopy();
-		newTeam.totalResources = new ResourcePile(totalResources);
-		newTeam.availableResources = new ResourcePile(availableResources);
-		newTeam.totalHitsInflicted = this.totalHitsInflicted;
-		newTeam.totalKillsInflicted = this.totalKillsInflicted;
-		newTeam.totalKillsReceived = this.totalKillsReceived;
-		newTeam.totalDamageInflicted = this.totalDamageInflicted;
-		newTeam.totalDamageReceived = this.totalDamageReceived;
-		newTeam.totalFlagsCollected = this.totalFlagsCollected;
-		newTeam.totalCoresCollected = this.totalCoresCollected; 
 		return newTeam;
 	}
 	
+	/**
+	 * Make a copy of the team without its ships: just what its bases add to (resources, cores
+	 * and flags) and which bases it has.  Used for the bases in a ForwardModel, which has its
+	 * own copies of the ships, so forking a model doesn't copy every ship twice.
+	 * 
+	 * @return
+	 */
+	public Team snapshot() {
+		return new Team(this);
+	}
+	
 	/**
 	 * Return the maximum number of ships for this team
 	 * @return
@@ -347,35 +578,53 @@ public class Team {
 	public Map<UUID, AbstractAction> getTeamMovementStart(Toroidal2DPhysics space) {
         Map<UUID, AbstractAction> teamActions = new HashMap<UUID, AbstractAction>();
 
-		// ask the client for its movement
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
-		
+		// a team that has used up its CPU time (or allocated too much last step) does nothing this step
+		if (cpuTimeBank.isOverdrawn()) {
+			cpuTimeBank.recordOverdrawnStep();
+			return teamActions;
+		}
+		if (memoryBudget.isThrottled()) {
+			memoryBudget.recordThrottledStep();
+			return teamActions;
+		}
+
 		// if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
+		if (!isClientReady()) {
 			return teamActions;
 		}
+
+		// ask the client for its movement
+		final Toroidal2DPhysics clonedSpace = space.deepClone();
+		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
 		
-        Future<Map<UUID, AbstractAction>> future = executor.submit(
+		// a new call, so anything an earlier (quarantined) call publishes is ignored
+        final long movementCall = teamClient.startMovement(context.getTeamActionTimeout());
+        MonitoredCallable<Map<UUID, AbstractAction>> clientCall = new MonitoredCallable<Map<UUID, AbstractAction>>(
         		new Callable<Map<UUID, AbstractAction>>(){
         			public Map<UUID, AbstractAction> call() {
         				Map<UUID, AbstractAction> teamActions = null;
-    					teamActions = teamClient.getMovementStart(clonedSpace, clonedActionableObjects);
+    					teamActions = teamClient.callMovementStart(movementCall, clonedSpace, clonedActionableObjects);
         				return teamActions;
         			}
-        		});
+        		}, context.getTeamActionTimeout());
+        lastClientCall = clientCall;
+        Future<Map<UUID, AbstractAction>> future = executor.submit(clientCall);
         
         try {
             //start
-            teamActions = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+            teamActions = future.get(context.getTeamActionTimeout(), TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
+        	//use the best actions the client published so far (anytime clients) or 
         	//return empty map, this will invoke default behavior of using DoNothingAction
-        	teamActions = new HashMap<UUID, AbstractAction>();
-        	System.err.println(getTeamName() + " timed out in getTeamMovementStart");
+        	teamActions = teamClient.takePublishedActions(movementCall);
+        	if (teamActions == null) {
+        		teamActions = new HashMap<UUID, AbstractAction>();
+        		System.err.println(getTeamName() + " timed out in getTeamMovementStart");
+        	} else {
+        		System.err.println(getTeamName() + " timed out in getTeamMovementStart, using its published actions");
+        	}
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
         	//return empty map, this will invoke default behavior of using DoNothingAction
@@ -396,6 +645,7 @@ public class Team {
 
 
         executor.shutdownNow();
+        chargeCpuTime();
         
         return teamActions;
 		
@@ -411,29 +661,36 @@ public class Team {
 	 * @return
 	 */
 	public void getTeamMovementEnd(Toroidal2DPhysics space) {
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
+		// a team that is over budget skips the client call (but its totals are still updated)
+		if (isOverBudget()) {
+			updateTeamTotals(space);
+			return;
+		}
 
 		// if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
+		if (!isClientReady()) {
 			return;
 		}
 
+		final Toroidal2DPhysics clonedSpace = space.deepClone();
+		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
+
 		//System.out.println("exec " + executor.isTerminated());
-        Future<Boolean> future = executor.submit(
+        MonitoredCallable<Boolean> clientCall = new MonitoredCallable<Boolean>(
         		new Callable<Boolean>(){
         			public Boolean call() throws Exception {
         				teamClient.getMovementEnd(clonedSpace, clonedActionableObjects);
         				return true;
         			}
-        		});
+        		}, context.getTeamEndActionTimeout());
+        lastClientCall = clientCall;
+        teamClient.setDeadline(context.getTeamEndActionTimeout());
+        Future<Boolean> future = executor.submit(clientCall);
         
         Boolean didReturn = false;
         try {
             //start
-        	didReturn = future.get(SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	didReturn = future.get(context.getTeamEndActionTimeout(), TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
@@ -462,7 +719,17 @@ public class Team {
 		}
 
         executor.shutdownNow();
+        chargeCpuTime();
 		
+        updateTeamTotals(space);
+	}
+
+	/**
+	 * Update the team totals from its ships and bases (called at the end of each movement)
+	 * 
+	 * @param space
+	 */
+	private void updateTeamTotals(Toroidal2DPhysics space) {
 		// figure out how many beacons the team has collected
 		// figure out how many hitsInflicted and killsInflicted the team has
 		int beacons = 0;
@@ -507,30 +774,36 @@ public class Team {
 	public Map<UUID,PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space) {
         Map<UUID,PurchaseTypes> purchase = new HashMap<UUID,PurchaseTypes>();
 
+		// a team that is over budget doesn't get to shop
+		if (isOverBudget()) {
+			return purchase;
+		}
+
+        // if the previous thread call hasn't finished, then just return default
+		if (!isClientReady()) {
+			return purchase;
+		}
+
 		final Toroidal2DPhysics clonedSpace = space.deepClone();
 		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
 		final PurchaseCosts clonedPurchaseCost = getPurchaseCostClone();
 		final ResourcePile clonedResources = new ResourcePile(availableResources);
-		
-        // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
-			return purchase;
-		}
 
 		//System.out.println("exec " + executor.isTerminated());
-        Future<Map<UUID,PurchaseTypes>> future = executor.submit(
+        MonitoredCallable<Map<UUID,PurchaseTypes>> clientCall = new MonitoredCallable<Map<UUID,PurchaseTypes>>(
         		new Callable<Map<UUID,PurchaseTypes>>(){
         			public Map<UUID,PurchaseTypes> call() throws Exception {
         				return teamClient.getTeamPurchases(clonedSpace, 
         						clonedActionableObjects, clonedResources , clonedPurchaseCost);
         			}
-        		});
+        		}, context.getTeamActionTimeout());
+        lastClientCall = clientCall;
+        teamClient.setDeadline(context.getTeamActionTimeout());
+        Future<Map<UUID,PurchaseTypes>> future = executor.submit(clientCall);
         
         try {
             //start
-        	purchase = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	purchase = future.get(context.getTeamActionTimeout(), TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
@@ -556,6 +829,7 @@ public class Team {
 		}
 
         executor.shutdownNow();
+        chargeCpuTime();
         
         return purchase;
 	}
@@ -577,27 +851,33 @@ public class Team {
 	public Map<UUID, SpaceSettlersPowerupEnum> getTeamPowerups(Toroidal2DPhysics space) {
         Map<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
 
-		final Toroidal2DPhysics clonedSpace = space.deepClone();
-		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
-		
+		// a team that is over budget doesn't get any power ups
+		if (isOverBudget()) {
+			return powerups;
+		}
+
         // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
+		if (!isClientReady()) {
 			return powerups;
 		}
 
+		final Toroidal2DPhysics clonedSpace = space.deepClone();
+		final Set<AbstractActionableObject> clonedActionableObjects = getTeamActionableObjectsClone(space);
+
 		//System.out.println("exec " + executor.isTerminated());
-        Future<Map<UUID,SpaceSettlersPowerupEnum>> future = executor.submit(
+        MonitoredCallable<Map<UUID,SpaceSettlersPowerupEnum>> clientCall = new MonitoredCallable<Map<UUID,SpaceSettlersPowerupEnum>>(
         		new Callable<Map<UUID,SpaceSettlersPowerupEnum>>(){
         			public Map<UUID,SpaceSettlersPowerupEnum> call() throws Exception {
         				return teamClient.getPowerups(clonedSpace, clonedActionableObjects);
         			}
-        		});
+        		}, context.getTeamActionTimeout());
+        lastClientCall = clientCall;
+        teamClient.setDeadline(context.getTeamActionTimeout());
+        Future<Map<UUID,SpaceSettlersPowerupEnum>> future = executor.submit(clientCall);
         
         try {
             //start
-        	powerups = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	powerups = future.get(context.getTeamActionTimeout(), TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
@@ -621,6 +901,7 @@ public class Team {
 		}
 
         executor.shutdownNow();
+        chargeCpuTime();
         
         return powerups;
 	}
@@ -635,9 +916,7 @@ public class Team {
         Set<SpacewarGraphics> graphics = new LinkedHashSet<SpacewarGraphics>();
 
         // if the previous thread call hasn't finished, then just return default
-		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
-		} else {
+		if (!isClientReady()) {
 			return graphics;
 		}
 
@@ -650,7 +929,7 @@ public class Team {
         
         try {
             //start
-        	graphics = future.get(SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT, TimeUnit.MILLISECONDS);
+        	graphics = future.get(context.getTeamGraphicsTimeout(), TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
@@ -823,7 +1102,35 @@ public class Team {
 	 * Called at the end of a simulation to cleanup the clients
 	 */
 	public void shutdownClients(Toroidal2DPhysics space) {
+		boolean forfeited = watchdog.isForfeited();
+
+		// nothing the client started may outlive the game, but a call that is only late still
+		// gets its grace period to finish before it counts against the team
+		MonitoredCallable<?> previousCall = lastClientCall;
+		if (previousCall != null && previousCall.isRunning()) {
+			boolean finished = watchdog.awaitCall(previousCall);
+			chargeCpuTime();
+			if (!finished) {
+				watchdog.quarantine(previousCall);
+			}
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		teamClient.quarantineRunawayHelpers(watchdog, true);
+		chargeCpuTime();
+
+		// a client that ran away too many times doesn't get a chance to hang the shutdown too
+		if (forfeited) {
+			System.err.println(getTeamName() + " forfeited so its client is not shut down");
+			teamClient.shutdownHelperThreads();
+			return;
+		}
+		
+		// shutting down isn't timed
+		teamClient.setDeadline(Long.MAX_VALUE);
 		teamClient.shutDown(space.deepClone());
+		teamClient.shutdownHelperThreads();
 	}
 
 	/**
@@ -4,11 +4,26 @@ import java.awt.Color;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.PurchaseCosts;
@@ -26,6 +41,12 @@ import spacesettlers.simulator.Toroidal2DPhysics;
  * @author amy
  */
 abstract public class TeamClient {
+	/**
+	 * Time (in MILLISECONDS) decideInParallel leaves before the deadline so the client
+	 * still has time to return its answer
+	 */
+	public static final int PARALLEL_DECISION_MARGIN = 10;
+	
 	/**
 	 * The team color (used by the GUI)
 	 */
@@ -56,6 +77,73 @@ abstract public class TeamClient {
 	 */
 	AffineTransform mouseTransform;
 	
+	/**
+	 * Actions published by a client, tagged with the call to getMovementStart they were published in
+	 */
+	private static class PublishedActions {
+		final long movementCall;
+		final Map<UUID, AbstractAction> actions;
+		
+		PublishedActions(long movementCall, Map<UUID, AbstractAction> actions) {
+			this.movementCall = movementCall;
+			this.actions = actions;
+		}
+	}
+	
+	/**
+	 * The best actions the client has published so far this step (see publishActions)
+	 */
+	private final AtomicReference<PublishedActions> publishedActions = new AtomicReference<PublishedActions>();
+	
+	/**
+	 * Counts the calls to getMovementStart (the current one's number)
+	 */
+	private final AtomicLong movementCall = new AtomicLong();
+	
+	/**
+	 * The call to getMovementStart each thread is working for (set for the client thread and its
+	 * helper tasks) so a quarantined thread from an earlier call can't publish into a later one
+	 */
+	private final ThreadLocal<Long> threadMovementCall = new ThreadLocal<Long>();
+	
+	/**
+	 * When (System.nanoTime) the current call into the client runs out of time
+	 */
+	private volatile long callDeadline = Long.MAX_VALUE;
+	
+	/**
+	 * Threads used by decideInParallel (created the first time it is used)
+	 */
+	private ExecutorService helperPool;
+	
+	/**
+	 * Number of helper threads (set by the team from the simulation)
+	 */
+	private int numberHelperThreads = 1;
+	
+	/**
+	 * Makes the helper threads (the team's watchdog, so runaway helpers are counted like the client's own)
+	 */
+	private ThreadFactory helperThreadFactory;
+	
+	/**
+	 * A task given to the helper threads
+	 */
+	private static class HelperCall {
+		final MonitoredCallable<?> call;
+		final Future<?> future;
+		
+		HelperCall(MonitoredCallable<?> call, Future<?> future) {
+			this.call = call;
+			this.future = future;
+		}
+	}
+	
+	/**
+	 * The helper tasks that are still running (or haven't been charged to the team yet)
+	 */
+	private final List<HelperCall> helperCalls = new ArrayList<HelperCall>();
+	
 	/**
 	 * Sets the random number generator to the global one (for repeatability)
 	 * @param random
@@ -119,7 +207,386 @@ abstract public class TeamClient {
 	}
 	
 	/**
-	 * Called before an action begins.  Return a hash map of ids to SpacewarActions  
+	 * Called by the team right before each call into the client to set its deadline
+	 * 
+	 * @param timeoutMillis how long the client has to answer (in MILLISECONDS)
+	 */
+	void setDeadline(long timeoutMillis) {
+		if (timeoutMillis >= Long.MAX_VALUE / 1000000L) {
+			// debug mode (no timeout)
+			callDeadline = Long.MAX_VALUE;
+		} else {
+			callDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		}
+	}
+	
+	/**
+	 * Called by the team right before getMovementStart to start a new call: anything published 
+	 * during an earlier call is cleared out and the deadline for this step is set
+	 * 
+	 * @param timeoutMillis how long the client has to answer (in MILLISECONDS)
+	 * @return the number of the new call (give it to callMovementStart and takePublishedActions)
+	 */
+	long startMovement(long timeoutMillis) {
+		long call = movementCall.incrementAndGet();
+		publishedActions.set(null);
+		setDeadline(timeoutMillis);
+		return call;
+	}
+	
+	/**
+	 * Called by the team on the client thread to run getMovementStart for a call (so anything
+	 * the client publishes is tagged with it)
+	 * 
+	 * @param call the number from startMovement
+	 * @param space
+	 * @param actionableObjects
+	 * @return
+	 */
+	Map<UUID, AbstractAction> callMovementStart(long call, Toroidal2DPhysics space, 
+			Set<AbstractActionableObject> actionableObjects) {
+		threadMovementCall.set(call);
+		try {
+			return getMovementStart(space, actionableObjects);
+		} finally {
+			threadMovementCall.remove();
+		}
+	}
+	
+	/**
+	 * Called by the team when getMovementStart runs out of time.  Returns the latest actions
+	 * the client published during this call (or null if it published none) and clears the slot.
+	 * 
+	 * @param call the number from startMovement
+	 * @return
+	 */
+	Map<UUID, AbstractAction> takePublishedActions(long call) {
+		PublishedActions published = publishedActions.getAndSet(null);
+		if (published == null || published.movementCall != call) {
+			return null;
+		}
+		return published.actions;
+	}
+	
+	/**
+	 * Anytime decision making: a client that searches for its actions can publish the best 
+	 * actions it has found so far and keep improving them.  If getMovementStart doesn't return
+	 * before the timeout, the team uses the last actions that were published instead of 
+	 * having every ship do nothing.  Each call replaces the previously published actions.
+	 * 
+	 * The map is copied so the client can keep changing its own map after publishing it.
+	 * Anything published during a step is thrown away at the start of the next step.  Actions 
+	 * can be published from getMovementStart or the tasks it runs with decideInParallel or
+	 * runInParallel.  Anything published from another thread (or by a call that ran past its
+	 * step) is ignored.
+	 * 
+	 * @param actions the best actions found so far
+	 */
+	protected void publishActions(Map<UUID, AbstractAction> actions) {
+		Long call = threadMovementCall.get();
+		if (actions == null || call == null) {
+			return;
+		}
+		PublishedActions published = new PublishedActions(call, new HashMap<UUID, AbstractAction>(actions));
+		while (true) {
+			PublishedActions current = publishedActions.get();
+			// a call that is over can't replace what the current one published
+			if (call != movementCall.get()) {
+				return;
+			}
+			if (publishedActions.compareAndSet(current, published)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the time (in MILLISECONDS) left before the current call into the client 
+	 * times out (Long.MAX_VALUE if there is no timeout).  Anytime clients can use this to 
+	 * decide when to stop searching and return.
+	 * 
+	 * @return
+	 */
+	protected long getTimeRemaining() {
+		long deadline = callDeadline;
+		if (deadline == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+	}
+	
+	/**
+	 * Makes a decision for each ship (or base) at the same time on the team's own helper threads
+	 * and puts the results into decisions.  Useful for big teams where each ship's decision 
+	 * (picking a target, planning a path) doesn't depend on the others.  For example:
+	 * 
+	 * <pre>
+	 * Map&lt;UUID, AbstractAction&gt; actions = new HashMap&lt;UUID, AbstractAction&gt;();
+	 * decideInParallel(actionableObjects, new ActionableObjectDecision&lt;AbstractAction&gt;() {
+	 *     public AbstractAction decide(AbstractActionableObject actionable) {
+	 *         return pickAction(space, actionable);
+	 *     }
+	 * }, actions);
+	 * </pre>
+	 * 
+	 * All the decisions share the deadline of the current call into the client (less 
+	 * PARALLEL_DECISION_MARGIN).  Any decision that isn't done by then is cancelled and left out 
+	 * of decisions (so the default for that ship is used), as is any decision that throws 
+	 * an exception or returns null.  The CPU time and memory the helper threads use are 
+	 * charged to the team just like the client's own thread.
+	 * 
+	 * @param actionableObjects the ships and bases to decide for
+	 * @param decision the decision to make for each of them (must be safe to run in parallel)
+	 * @param decisions the map the results are added to (keyed by the id of the ship or base)
+	 */
+	protected <T> void decideInParallel(Collection<? extends AbstractActionableObject> actionableObjects, 
+			final ActionableObjectDecision<T> decision, Map<UUID, ? super T> decisions) {
+		Map<UUID, Future<T>> futures = new LinkedHashMap<UUID, Future<T>>();
+		for (final AbstractActionableObject actionable : actionableObjects) {
+			futures.put(actionable.getId(), submitHelperTask(new Callable<T>() {
+				public T call() throws Exception {
+					return decision.decide(actionable);
+				}
+			}));
+		}
+
+		boolean interrupted = false;
+		for (Map.Entry<UUID, Future<T>> entry : futures.entrySet()) {
+			Future<T> future = entry.getValue();
+			if (interrupted) {
+				future.cancel(true);
+				continue;
+			}
+
+			try {
+				T result = waitForHelperTask(future, entry.getKey());
+				if (result != null) {
+					decisions.put(entry.getKey(), result);
+				}
+			} catch (InterruptedException e) {
+				// the client call itself timed out so stop everything that is left
+				future.cancel(true);
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Runs several tasks at the same time on the team's helper threads and returns the results
+	 * of the ones that finished (in the same order as the tasks).  Useful for searches that split
+	 * their work into independent pieces, such as one search tree per thread.
+	 * 
+	 * The tasks share the deadline of the current call into the client (less PARALLEL_DECISION_MARGIN)
+	 * and are charged to the team, as in decideInParallel.  A task that isn't done by then is 
+	 * cancelled and left out, as is any task that throws an exception or returns null.
+	 * 
+	 * @param tasks the tasks to run (must be safe to run in parallel)
+	 * @return the results of the tasks that finished
+	 */
+	protected <T> List<T> runInParallel(List<? extends Callable<T>> tasks) {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (Callable<T> task : tasks) {
+			futures.add(submitHelperTask(task));
+		}
+
+		List<T> results = new ArrayList<T>();
+		boolean interrupted = false;
+		for (int t = 0; t < futures.size(); t++) {
+			Future<T> future = futures.get(t);
+			if (interrupted) {
+				future.cancel(true);
+				continue;
+			}
+
+			try {
+				T result = waitForHelperTask(future, "task " + t);
+				if (result != null) {
+					results.add(result);
+				}
+			} catch (InterruptedException e) {
+				// the client call itself timed out so stop everything that is left
+				future.cancel(true);
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return results;
+	}
+	
+	/**
+	 * Start a task on the helper threads (charging the CPU time and memory it uses to the team)
+	 * 
+	 * @param task
+	 * @return
+	 */
+	private synchronized <T> Future<T> submitHelperTask(final Callable<T> task) {
+		long timeRemaining = getTimeRemaining();
+		long timeout = (timeRemaining == Long.MAX_VALUE) ? Long.MAX_VALUE : Math.max(0, timeRemaining - PARALLEL_DECISION_MARGIN);
+		// the task works for the same call to getMovementStart (if any) so it can publish actions
+		final Long call = threadMovementCall.get();
+		Callable<T> callTask = task;
+		if (call != null) {
+			callTask = new Callable<T>() {
+				public T call() throws Exception {
+					threadMovementCall.set(call);
+					try {
+						return task.call();
+					} finally {
+						threadMovementCall.remove();
+					}
+				}
+			};
+		}
+		MonitoredCallable<T> helperCall = new MonitoredCallable<T>(callTask, timeout);
+		Future<T> future = getHelperPool().submit(helperCall);
+		helperCalls.add(new HelperCall(helperCall, future));
+		return future;
+	}
+	
+	/**
+	 * Wait (until the deadline) for a task on the helper threads to finish
+	 * 
+	 * @param future
+	 * @param name what the task was for (used in error messages)
+	 * @return the task's result (null if it ran out of time or failed)
+	 * @throws InterruptedException if the client call itself timed out
+	 */
+	private <T> T waitForHelperTask(Future<T> future, Object name) throws InterruptedException {
+		try {
+			long timeRemaining = getTimeRemaining();
+			if (timeRemaining == Long.MAX_VALUE) {
+				return future.get();
+			} else {
+				return future.get(Math.max(0, timeRemaining - PARALLEL_DECISION_MARGIN), TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			// out of time, so this one uses the default
+			future.cancel(true);
+			return null;
+		} catch (ExecutionException e) {
+			System.err.println(getTeamName() + " had an error deciding for " + name + ", stack trace to follow");
+			e.getCause().printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * The number of helper threads used by decideInParallel.  By default this is the team's share
+	 * of the cores (the cores split between every team in every game running at the same time, or
+	 * helperThreadsPerTeam in the config), clients can override it to use fewer.
+	 * 
+	 * @return
+	 */
+	protected int getNumberHelperThreads() {
+		return numberHelperThreads;
+	}
+	
+	/**
+	 * Called by the team to say how many helper threads the client gets and what makes them
+	 * 
+	 * @param numberHelperThreads
+	 * @param helperThreadFactory
+	 */
+	synchronized void setHelperThreads(int numberHelperThreads, ThreadFactory helperThreadFactory) {
+		this.numberHelperThreads = Math.max(1, numberHelperThreads);
+		this.helperThreadFactory = helperThreadFactory;
+		shutdownHelperThreads();
+	}
+	
+	/**
+	 * Returns the helper threads (making them the first time)
+	 * @return
+	 */
+	private synchronized ExecutorService getHelperPool() {
+		if (helperPool == null) {
+			if (helperThreadFactory == null) {
+				helperThreadFactory = new TeamThreadWatchdog(getTeamName(), 0, 0);
+			}
+			helperPool = Executors.newFixedThreadPool(Math.max(1, getNumberHelperThreads()), helperThreadFactory);
+		}
+		return helperPool;
+	}
+	
+	/**
+	 * Called by the team at the end of the game to stop the helper threads
+	 */
+	synchronized void shutdownHelperThreads() {
+		if (helperPool != null) {
+			helperPool.shutdownNow();
+			helperPool = null;
+		}
+	}
+	
+	/**
+	 * Charge the team for the CPU time and memory the helper threads used since the last time
+	 * this was called (including tasks that are still running after their deadline)
+	 * 
+	 * @param cpuTimeBank
+	 * @param memoryBudget
+	 */
+	synchronized void chargeHelperCalls(TeamCpuTimeBank cpuTimeBank, TeamMemoryBudget memoryBudget) {
+		Iterator<HelperCall> iterator = helperCalls.iterator();
+		while (iterator.hasNext()) {
+			HelperCall helperCall = iterator.next();
+			// check before charging so a task that finishes in between is charged next time
+			boolean done = helperCall.future.isDone() && !helperCall.call.isRunning();
+			cpuTimeBank.charge(helperCall.call.getUnchargedCpuTime());
+			memoryBudget.charge(helperCall.call.getUnchargedAllocatedBytes());
+			if (done) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Quarantine the helper threads that ignored their deadline (and their cancellation).  The
+	 * helper threads are started over if any of them was quarantined.  A quarantined task is
+	 * forgotten (it is no longer charged) so it only starts the helper threads over once.
+	 * 
+	 * @param watchdog
+	 * @param waitForLateTasks wait for the tasks that are still running to finish or run away
+	 * @return true if a helper thread was quarantined
+	 */
+	boolean quarantineRunawayHelpers(TeamThreadWatchdog watchdog, boolean waitForLateTasks) {
+		List<HelperCall> running = new ArrayList<HelperCall>();
+		synchronized (this) {
+			for (HelperCall helperCall : helperCalls) {
+				if (helperCall.call.isRunning()) {
+					running.add(helperCall);
+				}
+			}
+		}
+
+		boolean quarantined = false;
+		for (HelperCall helperCall : running) {
+			if (waitForLateTasks) {
+				watchdog.awaitCall(helperCall.call);
+			}
+			if (watchdog.isRunaway(helperCall.call)) {
+				if (watchdog.quarantine(helperCall.call)) {
+					quarantined = true;
+				}
+				synchronized (this) {
+					helperCalls.remove(helperCall);
+				}
+			}
+		}
+		if (quarantined) {
+			shutdownHelperThreads();
+		}
+		return quarantined;
+	}
+	
+	/**
+	 * Called before an action begins.  Return a hash map of ids to SpacewarActions.  Clients that
+	 * search for their actions can also call publishActions as they go (see publishActions).
 	 * 
 	 * @param space physics
 	 * @param actionableObjects the ships and bases for this team
@@ -173,7 +640,9 @@ abstract public class TeamClient {
 	abstract public void initialize(Toroidal2DPhysics space);
 	
 	/**
-	 * Called when the client is shut down (which is at the end of a game)
+	 * Called when the client is shut down (which is at the end of a game).  Clients that save
+	 * knowledge can write it with KnowledgeStore.appendLater or replaceAllLater so the next game
+	 * doesn't wait for the file.
 	 */
 	abstract public void shutDown(Toroidal2DPhysics space);
 
@@ -183,6 +652,26 @@ abstract public class TeamClient {
 	 */
 	abstract public Set<SpacewarGraphics> getGraphics();
 
+	/**
+	 * Optional: override to have the client's own state saved in the simulator's checkpoints (see
+	 * checkpointInterval in the simulator config).  Return anything XStream can save, which is saved 
+	 * along with the game.  Called on the simulator's thread between steps.
+	 * 
+	 * @return the client's state (null by default so a restored client starts again from initialize)
+	 */
+	public Object getCheckpointState() {
+		return null;
+	}
+
+	/**
+	 * Optional: called when a game is resumed from a checkpoint with what getCheckpointState returned
+	 * when the checkpoint was saved (only if that wasn't null).  The client has already been initialized.
+	 * 
+	 * @param state
+	 */
+	public void restoreCheckpointState(Object state) {
+	}
+
 	/**
 	 * Get the knowledge file name
 	 * @return
@@ -0,0 +1,180 @@
+package spacesettlers.clients;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Chess-clock style CPU time bank for a team.  Each time step the team is given a 
+ * fixed amount of CPU time and any time the client does not use carries forward to later 
+ * steps (up to an optional maximum).  A team that has overdrawn its bank does nothing 
+ * until the deposits bring it back above zero.
+ * 
+ * Time is measured as CPU time of the client threads (not wall clock time) so the budget 
+ * is the same no matter how loaded the machine is or how many games share it.
+ * 
+ * @author amy
+ */
+public class TeamCpuTimeBank {
+	/**
+	 * Used to read the per thread CPU time
+	 */
+	private static final ThreadMXBean threadBean = initializeThreadBean();
+
+	/**
+	 * CPU time (nanoseconds) added to the bank each time step (0 means no budget is enforced)
+	 */
+	private final long incrementNanos;
+
+	/**
+	 * Largest balance (nanoseconds) the bank can hold (0 means no maximum)
+	 */
+	private final long maximumBalanceNanos;
+
+	/**
+	 * The current balance in nanoseconds (can go negative when the team overdraws)
+	 */
+	private long balanceNanos;
+
+	/**
+	 * The total CPU time used by the client this game
+	 */
+	private long totalCpuNanos;
+
+	/**
+	 * The number of steps the team was skipped because it was overdrawn
+	 */
+	private int numberOverdrawnSteps;
+
+	/**
+	 * Create a time bank
+	 * 
+	 * @param incrementMillis CPU time in milliseconds added each step (0 turns off the budget)
+	 * @param maximumBalanceMillis maximum CPU time in milliseconds that can be saved (0 for no maximum)
+	 */
+	public TeamCpuTimeBank(int incrementMillis, int maximumBalanceMillis) {
+		this.incrementNanos = incrementMillis * 1000000L;
+		this.maximumBalanceNanos = maximumBalanceMillis * 1000000L;
+		this.balanceNanos = 0;
+		this.totalCpuNanos = 0;
+		this.numberOverdrawnSteps = 0;
+	}
+
+	/**
+	 * Turn on CPU time measurement if the JVM supports it
+	 * @return
+	 */
+	private static ThreadMXBean initializeThreadBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean.isThreadCpuTimeSupported() && !bean.isThreadCpuTimeEnabled()) {
+			bean.setThreadCpuTimeEnabled(true);
+		}
+		return bean;
+	}
+
+	/**
+	 * Returns true if the JVM can measure per thread CPU time
+	 * @return
+	 */
+	public static boolean isCpuTimeSupported() {
+		return threadBean.isThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+	}
+
+	/**
+	 * Returns the CPU time (nanoseconds) used so far by the calling thread or 0 if this is not supported
+	 * @return
+	 */
+	public static long getCurrentThreadCpuTime() {
+		if (!isCpuTimeSupported()) {
+			return 0;
+		}
+		return threadBean.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Returns the CPU time (nanoseconds) used so far by the specified thread or -1 if the thread
+	 * has died (or this is not supported)
+	 * 
+	 * @param threadId
+	 * @return
+	 */
+	public static long getThreadCpuTime(long threadId) {
+		if (!isCpuTimeSupported()) {
+			return -1;
+		}
+		return threadBean.getThreadCpuTime(threadId);
+	}
+
+	/**
+	 * Is the budget being enforced?
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return incrementNanos > 0 && isCpuTimeSupported();
+	}
+
+	/**
+	 * Called at the start of each time step to give the team its time for the step
+	 */
+	public synchronized void deposit() {
+		if (!isEnabled()) {
+			return;
+		}
+
+		balanceNanos += incrementNanos;
+		if (maximumBalanceNanos > 0 && balanceNanos > maximumBalanceNanos) {
+			balanceNanos = maximumBalanceNanos;
+		}
+	}
+
+	/**
+	 * Charge the team for CPU time its client used
+	 * 
+	 * @param cpuNanos
+	 */
+	public synchronized void charge(long cpuNanos) {
+		if (cpuNanos <= 0) {
+			return;
+		}
+		totalCpuNanos += cpuNanos;
+		if (isEnabled()) {
+			balanceNanos -= cpuNanos;
+		}
+	}
+
+	/**
+	 * Returns true if the budget is enforced and the team has used more time than it was given
+	 * @return
+	 */
+	public synchronized boolean isOverdrawn() {
+		return isEnabled() && balanceNanos < 0;
+	}
+
+	/**
+	 * Remember that the team was skipped for a step because it was overdrawn
+	 */
+	public synchronized void recordOverdrawnStep() {
+		numberOverdrawnSteps++;
+	}
+
+	/**
+	 * @return the current balance in milliseconds
+	 */
+	public synchronized double getBalanceMillis() {
+		return balanceNanos / 1000000.0;
+	}
+
+	/**
+	 * @return the total CPU time used by the client in milliseconds
+	 */
+	public synchronized double getTotalCpuTimeMillis() {
+		return totalCpuNanos / 1000000.0;
+	}
+
+	/**
+	 * @return the number of steps the team did nothing because it was overdrawn
+	 */
+	public synchronized int getNumberOverdrawnSteps() {
+		return numberOverdrawnSteps;
+	}
+
+}
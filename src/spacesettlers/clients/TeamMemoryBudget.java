@@ -0,0 +1,227 @@
+package spacesettlers.clients;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Per step memory allocation budget for a team.  The bytes allocated by the client threads
+ * are added up each time step.  A team that allocates more than the warning level in a step
+ * is warned and a team that allocates more than the limit does nothing on the next step
+ * (which keeps one greedy client from pushing every game in the JVM into constant
+ * garbage collection).
+ *
+ * Allocation is measured with the per thread allocation counters, which count every byte
+ * a thread allocates (garbage or not).  The JVM can't say how much of the heap a single
+ * thread is keeping alive, so this budgets allocation rate and not retained memory.
+ *
+ * @author amy
+ */
+public class TeamMemoryBudget {
+	/**
+	 * Used to read the per thread allocation counters (null if the JVM doesn't have them)
+	 */
+	private static final com.sun.management.ThreadMXBean threadBean = initializeThreadBean();
+
+	/**
+	 * Bytes a team may allocate in a step before it is warned (0 means no warning)
+	 */
+	private final long warningBytes;
+
+	/**
+	 * Bytes a team may allocate in a step before it is throttled (0 means no limit)
+	 */
+	private final long limitBytes;
+
+	/**
+	 * Bytes allocated so far this step
+	 */
+	private long stepBytes;
+
+	/**
+	 * The total bytes allocated this game and the most allocated in any single step
+	 */
+	private long totalBytes, peakStepBytes;
+
+	/**
+	 * The number of steps over the warning level and over the limit
+	 */
+	private int numberWarningSteps, numberOverLimitSteps;
+
+	/**
+	 * True if the team does nothing this step because it went over the limit on the last one
+	 */
+	private boolean throttled;
+
+	/**
+	 * The number of steps the team was skipped because of throttling
+	 */
+	private int numberThrottledSteps;
+
+	/**
+	 * Create a memory budget
+	 *
+	 * @param warningMegabytes megabytes a team may allocate each step before it is warned (0 for no warning)
+	 * @param limitMegabytes megabytes a team may allocate each step before it is throttled (0 for no limit)
+	 */
+	public TeamMemoryBudget(int warningMegabytes, int limitMegabytes) {
+		this.warningBytes = warningMegabytes * 1024L * 1024L;
+		this.limitBytes = limitMegabytes * 1024L * 1024L;
+		this.stepBytes = 0;
+		this.totalBytes = 0;
+		this.peakStepBytes = 0;
+		this.numberWarningSteps = 0;
+		this.numberOverLimitSteps = 0;
+		this.numberThrottledSteps = 0;
+		this.throttled = false;
+	}
+
+	/**
+	 * Turn on allocation measurement if the JVM supports it
+	 * @return
+	 */
+	private static com.sun.management.ThreadMXBean initializeThreadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		return sunBean;
+	}
+
+	/**
+	 * Returns true if the JVM can measure per thread allocation
+	 * @return
+	 */
+	public static boolean isAllocationSupported() {
+		return threadBean != null && threadBean.isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the calling thread or 0 if this is not supported
+	 * @return
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		if (!isAllocationSupported()) {
+			return 0;
+		}
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the specified thread or -1 if the thread
+	 * has died (or this is not supported)
+	 *
+	 * @param threadId
+	 * @return
+	 */
+	public static long getThreadAllocatedBytes(long threadId) {
+		if (!isAllocationSupported()) {
+			return -1;
+		}
+		return threadBean.getThreadAllocatedBytes(threadId);
+	}
+
+	/**
+	 * Is the budget being enforced (or at least warned about)?
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return (warningBytes > 0 || limitBytes > 0) && isAllocationSupported();
+	}
+
+	/**
+	 * Charge the team for memory its client allocated this step
+	 *
+	 * @param bytes
+	 */
+	public synchronized void charge(long bytes) {
+		if (bytes <= 0) {
+			return;
+		}
+		stepBytes += bytes;
+		totalBytes += bytes;
+	}
+
+	/**
+	 * Called at the start of each time step to close out the previous step.  Returns
+	 * true if the team went over the warning level (so the caller can warn it).
+	 *
+	 * @return
+	 */
+	public synchronized boolean endStep() {
+		boolean warn = false;
+		peakStepBytes = Math.max(peakStepBytes, stepBytes);
+
+		throttled = false;
+		if (isEnabled()) {
+			if (warningBytes > 0 && stepBytes > warningBytes) {
+				numberWarningSteps++;
+				warn = true;
+			}
+			if (limitBytes > 0 && stepBytes > limitBytes) {
+				numberOverLimitSteps++;
+				throttled = true;
+			}
+		}
+
+		stepBytes = 0;
+		return warn;
+	}
+
+	/**
+	 * Returns true if the team went over its limit last step and should do nothing this step
+	 * @return
+	 */
+	public synchronized boolean isThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * Remember that the team was skipped for a step because it was throttled
+	 */
+	public synchronized void recordThrottledStep() {
+		numberThrottledSteps++;
+	}
+
+	/**
+	 * @return the total megabytes allocated by the client this game
+	 */
+	public synchronized double getTotalMegabytes() {
+		return totalBytes / (1024.0 * 1024.0);
+	}
+
+	/**
+	 * @return the most megabytes allocated by the client in a single step
+	 */
+	public synchronized double getPeakStepMegabytes() {
+		return peakStepBytes / (1024.0 * 1024.0);
+	}
+
+	/**
+	 * @return the number of steps the team allocated more than the warning level
+	 */
+	public synchronized int getNumberWarningSteps() {
+		return numberWarningSteps;
+	}
+
+	/**
+	 * @return the number of steps the team allocated more than the limit
+	 */
+	public synchronized int getNumberOverLimitSteps() {
+		return numberOverLimitSteps;
+	}
+
+	/**
+	 * @return the number of steps the team did nothing because it was throttled
+	 */
+	public synchronized int getNumberThrottledSteps() {
+		return numberThrottledSteps;
+	}
+
+}
@@ -0,0 +1,171 @@
+package spacesettlers.clients;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the threads that run a team's client and watches for runaway threads 
+ * (clients that ignore the interrupt at their timeout and keep spinning, like
+ * the InfiniteLoopTeamClient).  Runaway threads are quarantined: they are dropped to
+ * the lowest priority and remembered so they can be reported.  They can't be safely
+ * killed, so they are left to die with the JVM (they are daemons).  A team that 
+ * leaks more than the allowed number of threads forfeits the rest of the game so 
+ * it can't keep eating cores from every other game on the machine.
+ * 
+ * @author amy
+ */
+public class TeamThreadWatchdog implements ThreadFactory {
+	/**
+	 * Number of runaway threads a team may leak before it forfeits (if the config doesn't say)
+	 */
+	public static final int DEFAULT_MAXIMUM_LEAKED_THREADS = 3;
+
+	/**
+	 * Time in MILLISECONDS past its timeout that a call may keep running before it is a runaway (if the config doesn't say)
+	 */
+	public static final int DEFAULT_GRACE_PERIOD = 1000;
+
+	/**
+	 * Name of the team (used to name the threads)
+	 */
+	private final String teamName;
+
+	/**
+	 * Maximum number of runaway threads before the team forfeits
+	 */
+	private final int maximumLeakedThreads;
+
+	/**
+	 * Extra time (nanoseconds) a call gets after its timeout before it is a runaway
+	 */
+	private final long gracePeriodNanos;
+
+	/**
+	 * Number of threads made for this team
+	 */
+	private int numberThreads;
+
+	/**
+	 * All the runaway threads this team has leaked
+	 */
+	private final List<Thread> leakedThreads;
+
+	/**
+	 * True if the team leaked too many threads and no longer gets to play
+	 */
+	private volatile boolean forfeited;
+
+	/**
+	 * Make a watchdog for a team
+	 * 
+	 * @param teamName
+	 * @param maximumLeakedThreads runaway threads allowed before forfeiting (0 uses the default)
+	 * @param gracePeriod milliseconds past the timeout before a call is a runaway (0 uses the default)
+	 */
+	public TeamThreadWatchdog(String teamName, int maximumLeakedThreads, int gracePeriod) {
+		this.teamName = teamName;
+		this.maximumLeakedThreads = (maximumLeakedThreads > 0) ? maximumLeakedThreads : DEFAULT_MAXIMUM_LEAKED_THREADS;
+		this.gracePeriodNanos = ((gracePeriod > 0) ? gracePeriod : DEFAULT_GRACE_PERIOD) * 1000000L;
+		this.numberThreads = 0;
+		this.leakedThreads = new ArrayList<Thread>();
+		this.forfeited = false;
+	}
+
+	/**
+	 * Client threads are daemons so a stuck client can never keep the JVM alive
+	 */
+	public synchronized Thread newThread(Runnable runnable) {
+		numberThreads++;
+		Thread thread = new Thread(runnable, teamName + "-client-" + numberThreads);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Returns true if the call is still running well past its timeout
+	 * 
+	 * @param clientCall
+	 * @return
+	 */
+	boolean isRunaway(MonitoredCallable<?> clientCall) {
+		return clientCall.isRunning() && clientCall.getOverdueNanos() > gracePeriodNanos;
+	}
+
+	/**
+	 * Wait for a call that is still running to finish, but no longer than until it is a runaway
+	 * 
+	 * @param clientCall
+	 * @return true if the call finished and false if it ran away
+	 */
+	boolean awaitCall(MonitoredCallable<?> clientCall) {
+		while (clientCall.isRunning() && !isRunaway(clientCall)) {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return !clientCall.isRunning();
+	}
+
+	/**
+	 * Quarantine the thread running a runaway call: drop it to the lowest priority, interrupt it
+	 * once more and remember it for the report.  Forfeits the team if it has leaked too many threads.
+	 * 
+	 * @param clientCall
+	 * @return true if the thread was quarantined now (false if it already was)
+	 */
+	synchronized boolean quarantine(MonitoredCallable<?> clientCall) {
+		Thread thread = clientCall.getClientThread();
+		if (thread == null || leakedThreads.contains(thread)) {
+			return false;
+		}
+
+		leakedThreads.add(thread);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		System.err.println(teamName + " has a runaway client thread " + thread.getName() + ": quarantining it");
+		thread.interrupt();
+
+		if (leakedThreads.size() > maximumLeakedThreads && !forfeited) {
+			forfeited = true;
+			System.err.println(teamName + " leaked " + leakedThreads.size() + " client threads and forfeits the game");
+		}
+		return true;
+	}
+
+	/**
+	 * Has the team forfeited the game for leaking too many threads?
+	 * @return
+	 */
+	public boolean isForfeited() {
+		return forfeited;
+	}
+
+	/**
+	 * Returns the number of threads the team has leaked
+	 * @return
+	 */
+	public synchronized int getNumberLeakedThreads() {
+		return leakedThreads.size();
+	}
+
+	/**
+	 * Returns one line per leaked thread saying what it is doing (empty if nothing leaked)
+	 * 
+	 * @return
+	 */
+	public synchronized List<String> getLeakedThreadReport() {
+		List<String> report = new ArrayList<String>();
+		for (Thread thread : leakedThreads) {
+			String str = "Leaked thread " + thread.getName() + " is " + thread.getState();
+			StackTraceElement[] stack = thread.getStackTrace();
+			if (stack.length > 0) {
+				str += " at " + stack[0];
+			}
+			report.add(str);
+		}
+		return report;
+	}
+}
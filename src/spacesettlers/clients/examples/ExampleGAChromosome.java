@@ -1,6 +1,12 @@
 package spacesettlers.clients.examples;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import spacesettlers.actions.AbstractAction;
@@ -16,10 +22,20 @@ import spacesettlers.simulator.Toroidal2DPhysics;
  *
  */
 public class ExampleGAChromosome {
-	private HashMap<ExampleGAState, AbstractAction> policy;
+	/**
+	 * For each state seen so far, true to move to the nearest asteroid and false to do nothing
+	 * (the action itself is made when it is needed since it points at objects in the current game)
+	 */
+	private HashMap<ExampleGAState, Boolean> policy;
+
+	/**
+	 * The states added to the policy since it was last saved
+	 */
+	private List<ExampleGAState> unsavedStates;
 	
 	public ExampleGAChromosome() {
-		policy = new HashMap<ExampleGAState, AbstractAction>();
+		policy = new HashMap<ExampleGAState, Boolean>();
+		unsavedStates = new ArrayList<ExampleGAState>();
 	}
 
 	/**
@@ -33,17 +49,78 @@ public class ExampleGAChromosome {
 			// randomly chose to either do nothing or go to the nearest
 			// asteroid.  Note this needs to be changed in a real agent as it won't learn 
 			// much here!
-			if (rand.nextBoolean()) {
-				policy.put(currentState, new DoNothingAction());
-			} else {
-				//System.out.println("Moving to nearestMineable Asteroid " + myShip.getPosition() + " nearest " + currentState.getNearestMineableAsteroid().getPosition());
-				policy.put(currentState, new MoveToObjectAction(space, myShip.getPosition(), currentState.getNearestMineableAsteroid()));
-			}
+			policy.put(currentState, !rand.nextBoolean());
+			unsavedStates.add(currentState);
 		}
 
-		return policy.get(currentState);
+		if (policy.get(currentState) && currentState.getNearestMineableAsteroid() != null) {
+			//System.out.println("Moving to nearestMineable Asteroid " + myShip.getPosition() + " nearest " + currentState.getNearestMineableAsteroid().getPosition());
+			return new MoveToObjectAction(space, myShip.getPosition(), currentState.getNearestMineableAsteroid());
+		} else {
+			return new DoNothingAction();
+		}
 
 	}
-	
+
+	/**
+	 * @return a copy of this chromosome (changing one doesn't change the other)
+	 */
+	public ExampleGAChromosome deepCopy() {
+		ExampleGAChromosome copy = new ExampleGAChromosome();
+		copy.policy.putAll(policy);
+		copy.unsavedStates.addAll(unsavedStates);
+		return copy;
+	}
+
+	/**
+	 * @return true if states were added to the policy since it was last saved
+	 */
+	public boolean hasUnsavedStates() {
+		return !unsavedStates.isEmpty();
+	}
+
+	/**
+	 * Write the whole policy
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(policy.size());
+		for (Map.Entry<ExampleGAState, Boolean> entry : policy.entrySet()) {
+			out.writeDouble(entry.getKey().distanceToNearestMineableAsteroid);
+			out.writeBoolean(entry.getValue());
+		}
+		unsavedStates.clear();
+	}
+
+	/**
+	 * Write only the states added since the policy was last saved
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeUnsavedStates(DataOutput out) throws IOException {
+		out.writeInt(unsavedStates.size());
+		for (ExampleGAState state : unsavedStates) {
+			out.writeDouble(state.distanceToNearestMineableAsteroid);
+			out.writeBoolean(policy.get(state));
+		}
+		unsavedStates.clear();
+	}
+
+	/**
+	 * Add states written by write or writeUnsavedStates to the policy
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	public void readStates(DataInput in) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			ExampleGAState state = new ExampleGAState(in.readDouble());
+			policy.put(state, in.readBoolean());
+		}
+	}
 	
 }
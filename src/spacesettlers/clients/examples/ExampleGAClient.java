@@ -1,22 +1,20 @@
 package spacesettlers.clients.examples;
 
+import java.io.DataInput;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
-import java.util.zip.GZIPOutputStream;
-
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.PurchaseCosts;
 import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.KnowledgeCache;
+import spacesettlers.clients.KnowledgeStore;
 import spacesettlers.clients.TeamClient;
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.AbstractActionableObject;
@@ -34,6 +32,56 @@ import spacesettlers.simulator.Toroidal2DPhysics;
  */
 
 public class ExampleGAClient extends TeamClient {
+	/**
+	 * The version of the records in the knowledge file (change this when the population changes)
+	 */
+	static final int KNOWLEDGE_VERSION = 2;
+
+	/**
+	 * A record holding the whole population
+	 */
+	static final int POPULATION_RECORD = 1;
+
+	/**
+	 * A record holding what changed in the population during one game (after the id of the
+	 * generation it changed)
+	 */
+	static final int CHANGES_RECORD = 2;
+
+	/**
+	 * Reads the population from the knowledge file (through the KnowledgeCache so clients in the
+	 * same ladder only read the file once)
+	 */
+	static final KnowledgeCache.Loader<ExampleGAPopulation> POPULATION_LOADER = new KnowledgeCache.Loader<ExampleGAPopulation>() {
+		public ExampleGAPopulation load(File file) throws IOException {
+			KnowledgeStore store = new KnowledgeStore(file.getPath(), "ExampleGAPopulation", KNOWLEDGE_VERSION);
+			ExampleGAPopulation population = null;
+			try {
+				for (KnowledgeStore.Record record : store.read()) {
+					if (record.getType() == POPULATION_RECORD) {
+						population = ExampleGAPopulation.read(record.getInput());
+					} else if (record.getType() == CHANGES_RECORD && population != null) {
+						// changes from a game that played another generation (one another game replaced) are left out
+						DataInput in = record.getInput();
+						if (in.readLong() == population.getGenerationId()) {
+							population.readChanges(in);
+						}
+					}
+				}
+			} finally {
+				store.close();
+			}
+			if (population == null) {
+				throw new IOException(file + " has no population");
+			}
+			return population;
+		}
+
+		public ExampleGAPopulation copy(ExampleGAPopulation population) {
+			return population.deepCopy();
+		}
+	};
+
 	/**
 	 * The current policy for the team
 	 */
@@ -58,6 +106,16 @@ public class ExampleGAClient extends TeamClient {
 	 * Current step
 	 */
 	private int steps = 0;
+
+	/**
+	 * Where the population is kept between games
+	 */
+	private KnowledgeStore knowledge;
+
+	/**
+	 * True once a new generation is made (the whole population is saved instead of just the changes)
+	 */
+	private boolean newGeneration = false;
 	
 	@Override
 	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
@@ -109,6 +167,7 @@ public class ExampleGAClient extends TeamClient {
 			if (population.isGenerationFinished()) {
 				// note that this is also an empty method that a student needs to fill in
 				population.makeNextGeneration();
+				newGeneration = true;
 				
 				currentPolicy = population.getNextMember();
 			}
@@ -133,44 +192,61 @@ public class ExampleGAClient extends TeamClient {
 	}
 
 	/**
-	 * Initialize the population by either reading it from the file or making a new one from scratch
+	 * Initialize the population by either reading it from the file or making a new one from scratch.
+	 * The file holds the population from the start of the generation followed by the changes made
+	 * in each game since then.
 	 * 
 	 * @param space
 	 */
 	@Override
 	public void initialize(Toroidal2DPhysics space) {
-		XStream xstream = new XStream();
-		xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
+		knowledge = new KnowledgeStore(getKnowledgeFile(), "ExampleGAPopulation", KNOWLEDGE_VERSION);
+		population = null;
 
-		// try to load the population from the existing saved file.  If that failes, start from scratch
-		try { 
-			population = (ExampleGAPopulation) xstream.fromXML(new File(getKnowledgeFile()));
-		} catch (XStreamException e) {
-			// if you get an error, handle it other than a null pointer because
+		// try to load the population from the existing saved file.  If that fails, start from scratch.
+		// This client learns as it plays so it needs its own copy of the population.
+		try {
+			population = KnowledgeCache.get(getKnowledgeFile(), POPULATION_LOADER).mutable();
+		} catch (FileNotFoundException e) {
 			// the error will happen the first time you run
+		} catch (IOException e) {
+			// the file is from an older version of this client (or isn't a knowledge file) so start again
+			System.out.println("Can't read the existing population (" + e.getMessage() + ")");
+		}
+
+		if (population == null) {
 			System.out.println("No existing population found - starting a new one from scratch");
 			population = new ExampleGAPopulation(populationSize);
+			newGeneration = true;
 		}
 
 		currentPolicy = population.getFirstMember();
 	}
 
+	/**
+	 * Save the population.  Only what changed this game is added to the file unless this game started
+	 * a new generation (then the file is replaced by the new population).  The file is written in the
+	 * background so the next game doesn't wait for it.
+	 */
 	@Override
 	public void shutDown(Toroidal2DPhysics space) {
-		XStream xstream = new XStream();
-		xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
-
 		try { 
-			// if you want to compress the file, change FileOuputStream to a GZIPOutputStream
-			xstream.toXML(population, new FileOutputStream(new File(getKnowledgeFile())));
-		} catch (XStreamException e) {
+			KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+			if (newGeneration) {
+				population.write(writer);
+				knowledge.replaceAllLater(POPULATION_RECORD, writer);
+				newGeneration = false;
+			} else {
+				writer.writeLong(population.getGenerationId());
+				population.writeChanges(writer);
+				knowledge.appendLater(CHANGES_RECORD, writer);
+			}
+		} catch (IOException e) {
 			// if you get an error, handle it somehow as it means your knowledge didn't save
 			System.out.println("Can't save knowledge file in shutdown ");
 			System.out.println(e.getMessage());
-		} catch (FileNotFoundException e) {
-			// file is missing so start from scratch (but tell the user)
-			System.out.println("Can't save knowledge file in shutdown ");
-			System.out.println(e.getMessage());
+		} finally {
+			knowledge.closeLater();
 		}
 	}
 
@@ -1,6 +1,9 @@
 package spacesettlers.clients.examples;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
 
 import spacesettlers.simulator.Toroidal2DPhysics;
 
@@ -17,6 +20,17 @@ public class ExampleGAPopulation {
 	
 	private double[] fitnessScores;
 
+	/**
+	 * True for each member whose fitness changed since the population was last saved
+	 */
+	private boolean[] unsavedFitness;
+
+	/**
+	 * Picked at random for each generation so changes saved for one generation are never applied
+	 * to another (two games can each make a different next generation from the same one)
+	 */
+	private long generationId;
+
 	/**
 	 * Make a new empty population
 	 */
@@ -35,6 +49,8 @@ public class ExampleGAPopulation {
 		
 		// make space for the fitness scores
 		fitnessScores = new double[populationSize];
+		unsavedFitness = new boolean[populationSize];
+		generationId = new Random().nextLong();
 	}
 
 	/**
@@ -44,6 +60,7 @@ public class ExampleGAPopulation {
 	 */
 	public void evaluateFitnessForCurrentMember(Toroidal2DPhysics space) {
 		fitnessScores[currentPopulationCounter] = 0;
+		unsavedFitness[currentPopulationCounter] = true;
 	}
 
 	/**
@@ -78,6 +95,14 @@ public class ExampleGAPopulation {
 	 */
 	public void makeNextGeneration() {
 		currentPopulationCounter = 0;
+		generationId = new Random().nextLong();
+	}
+
+	/**
+	 * @return the id of this generation (a new one is picked by makeNextGeneration)
+	 */
+	public long getGenerationId() {
+		return generationId;
 	}
 
 	/**
@@ -87,6 +112,102 @@ public class ExampleGAPopulation {
 	public ExampleGAChromosome getFirstMember() {
 		return population[0];
 	}
+
+	/**
+	 * @return a copy of the population (changing one doesn't change the other)
+	 */
+	public ExampleGAPopulation deepCopy() {
+		ExampleGAPopulation copy = new ExampleGAPopulation(population.length);
+		copy.currentPopulationCounter = currentPopulationCounter;
+		copy.generationId = generationId;
+		for (int i = 0; i < population.length; i++) {
+			copy.population[i] = population[i].deepCopy();
+			copy.fitnessScores[i] = fitnessScores[i];
+			copy.unsavedFitness[i] = unsavedFitness[i];
+		}
+		return copy;
+	}
+
+	/**
+	 * Write the whole population
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(population.length);
+		out.writeLong(generationId);
+		out.writeInt(currentPopulationCounter);
+		for (int i = 0; i < population.length; i++) {
+			out.writeDouble(fitnessScores[i]);
+			population[i].write(out);
+			unsavedFitness[i] = false;
+		}
+	}
+
+	/**
+	 * Read a population written by write
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static ExampleGAPopulation read(DataInput in) throws IOException {
+		ExampleGAPopulation population = new ExampleGAPopulation(in.readInt());
+		population.generationId = in.readLong();
+		population.currentPopulationCounter = in.readInt();
+		for (int i = 0; i < population.population.length; i++) {
+			population.fitnessScores[i] = in.readDouble();
+			population.population[i].readStates(in);
+		}
+		return population;
+	}
+
+	/**
+	 * Write only what changed since the population was last saved (the counter, new fitness 
+	 * scores and the states each member has seen for the first time)
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeChanges(DataOutput out) throws IOException {
+		int changedMembers = 0;
+		for (int i = 0; i < population.length; i++) {
+			if (unsavedFitness[i] || population[i].hasUnsavedStates()) {
+				changedMembers++;
+			}
+		}
+
+		out.writeInt(currentPopulationCounter);
+		out.writeInt(changedMembers);
+		for (int i = 0; i < population.length; i++) {
+			if (unsavedFitness[i] || population[i].hasUnsavedStates()) {
+				out.writeInt(i);
+				out.writeDouble(fitnessScores[i]);
+				population[i].writeUnsavedStates(out);
+				unsavedFitness[i] = false;
+			}
+		}
+	}
+
+	/**
+	 * Apply changes written by writeChanges
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	public void readChanges(DataInput in) throws IOException {
+		currentPopulationCounter = in.readInt();
+		int changedMembers = in.readInt();
+		for (int i = 0; i < changedMembers; i++) {
+			int member = in.readInt();
+			if (member < 0 || member >= population.length) {
+				throw new IOException("Population has no member " + member);
+			}
+			fitnessScores[member] = in.readDouble();
+			population[member].readStates(in);
+		}
+	}
 }
 	
 
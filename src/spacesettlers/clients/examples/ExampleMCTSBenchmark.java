@@ -0,0 +1,163 @@
+package spacesettlers.clients.examples;
+
+import java.io.IOException;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+
+import spacesettlers.clients.Team;
+import spacesettlers.configs.ConfigurationService;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.simulator.SimulatorException;
+import spacesettlers.simulator.SpaceSettlersSimulator;
+
+/**
+ * Plays ExampleMCTSTeamClient against the other teams in a config (config/mctsBenchmark plays 
+ * it against AggressiveHeuristicAsteroidCollectorTeamClient) for a number of games with different
+ * seeds and prints how many rollouts per second it searched and how often it won.
+ * 
+ * Run it like the simulator, for example:
+ *   --configPath config/mctsBenchmark/ --simulatorConfigFile SpaceSettlersConfig.xml --games 10
+ * 
+ * @author amy
+ */
+public class ExampleMCTSBenchmark {
+	JSAPResult config;
+
+	public ExampleMCTSBenchmark(String[] args) {
+		SimpleJSAP parser = initializeParser();
+		config = parser.parse(args);
+		// exit if it failed to parse
+		if (parser.messagePrinted()) {
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Initialize the parser with all of the command line arguments (the simulator's and the benchmark's)
+	 * @return
+	 */
+	private SimpleJSAP initializeParser() {
+		SimpleJSAP parser = null;
+
+		try {
+			parser = new SimpleJSAP(
+					"ExampleMCTSBenchmark",
+					"Plays the MCTS example client for a number of games",
+					new Parameter[] {
+						new FlaggedOption("simulatorConfigFile",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "simulatorConfigFile",
+								"configuration file for the simulator (xml)"), 
+						new FlaggedOption("configPath",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "configPath",
+								"path to the configuration files"), 
+						new FlaggedOption("graphics",
+								JSAP.BOOLEAN_PARSER, "false", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "graphics",
+								"boolean stating if graphics are to be shown (true) or not (false)"),
+						new FlaggedOption("debug",
+								JSAP.BOOLEAN_PARSER, "false", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "debug",
+								"boolean stating if debugging mode (single threading) is on (true) or not (false)"),
+						new FlaggedOption("games",
+								JSAP.INTEGER_PARSER, "10", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "games",
+								"number of games to play"),
+						new FlaggedOption("seed",
+								JSAP.LONG_PARSER, "1", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "seed",
+								"random seed of the first game (the others count up from it)"),
+						new FlaggedOption("mctsTeam",
+								JSAP.STRING_PARSER, "MCTSTeam", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "mctsTeam",
+								"team name of the MCTS client in the simulator config"),
+					});
+		} catch (JSAPException e) {
+			e.printStackTrace();
+			System.err.println("Error in the parser - exiting");
+			System.exit(-1);
+		}
+		return parser;
+	}
+
+	/**
+	 * Play the games and print the results
+	 * 
+	 * @throws SimulatorException
+	 */
+	public void run() throws SimulatorException {
+		String configFile = config.getString("configPath") + config.getString("simulatorConfigFile");
+
+		String mctsTeam = config.getString("mctsTeam");
+		int games = config.getInt("games");
+		int wins = 0, ties = 0, losses = 0;
+		SpaceSettlersSimulator simulator = null;
+
+		for (int game = 0; game < games; game++) {
+			// the simulator changes its config so each game gets its own copy
+			SpaceSettlersConfig gameConfig;
+			try {
+				gameConfig = ConfigurationService.getSimulatorConfig(configFile);
+			} catch (IOException e) {
+				throw new SimulatorException("Error parsing config file at string " + e.getMessage());
+			}
+			gameConfig.setRandomSeed(config.getLong("seed") + game);
+
+			if (simulator == null || config.getBoolean("graphics")) {
+				simulator = new SpaceSettlersSimulator(gameConfig, config);
+			} else {
+				simulator.reset(gameConfig, config);
+			}
+			simulator.run();
+
+			double mctsScore = Double.NaN;
+			double bestOtherScore = Double.NEGATIVE_INFINITY;
+			for (Team team : simulator.getTeams()) {
+				if (team.getTeamName().equals(mctsTeam)) {
+					mctsScore = team.getScore();
+				} else {
+					bestOtherScore = Math.max(bestOtherScore, team.getScore());
+				}
+			}
+			if (Double.isNaN(mctsScore)) {
+				throw new SimulatorException("Error: there is no team named " + mctsTeam + " in " + configFile);
+			}
+
+			String outcome;
+			if (mctsScore > bestOtherScore) {
+				wins++;
+				outcome = "won";
+			} else if (mctsScore == bestOtherScore) {
+				ties++;
+				outcome = "tied";
+			} else {
+				losses++;
+				outcome = "lost";
+			}
+			System.out.println("Game " + (game + 1) + " / " + games + ": " + mctsTeam + " " + outcome + 
+					" scoring " + mctsScore + " (best other team " + bestOtherScore + ")");
+		}
+
+		long rollouts = ExampleMCTSTeamClient.totalRollouts.get();
+		double searchSeconds = ExampleMCTSTeamClient.totalSearchNanos.get() / 1e9;
+		System.out.println("Rollouts: " + rollouts + " (" + String.format("%.0f", rollouts / Math.max(searchSeconds, 1e-9)) + 
+				" per second per tree)");
+		System.out.println("Won " + wins + ", tied " + ties + ", lost " + losses + " (win rate " + 
+				String.format("%.2f", (wins + 0.5 * ties) / Math.max(1, games)) + ")");
+	}
+
+	/**
+	 * @param args
+	 * @throws SimulatorException 
+	 */
+	public static void main(String[] args) throws SimulatorException {
+		new ExampleMCTSBenchmark(args).run();
+		System.exit(0);
+	}
+}
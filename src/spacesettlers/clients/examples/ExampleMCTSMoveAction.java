@@ -0,0 +1,36 @@
+package spacesettlers.clients.examples;
+
+import spacesettlers.actions.MoveAction;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * A move action that the MCTS rollouts point at a new target each step instead of making
+ * a new action (so a rollout doesn't make any actions of its own).
+ * 
+ * @author amy
+ */
+class ExampleMCTSMoveAction extends MoveAction {
+	ExampleMCTSMoveAction() {
+		super();
+		targetVelocity = new Vector2D();
+		isFinished = true;
+	}
+
+	/**
+	 * Move to this location
+	 * 
+	 * @param location
+	 */
+	void moveTo(Position location) {
+		targetLocation = location;
+		isFinished = false;
+	}
+
+	/**
+	 * Stop steering (the ship drifts)
+	 */
+	void stop() {
+		isFinished = true;
+	}
+}
@@ -0,0 +1,137 @@
+package spacesettlers.clients.examples;
+
+/**
+ * One node of an MCTS tree.  Each ship picks its own option at the node (decoupled UCT), so the
+ * node keeps the visits and total value of every option for every ship and a child for each
+ * combination of options (the joint option, numbered in mixed radix).
+ * 
+ * The tree is open loop: nodes don't store the world, it is played forward from the root each
+ * rollout.
+ * 
+ * @author amy
+ */
+class ExampleMCTSNode {
+	/**
+	 * The number of options for each ship (shared by every node in the tree)
+	 */
+	final int[] numOptions;
+
+	/**
+	 * How many times each ship took each option from here
+	 */
+	final int[][] visits;
+
+	/**
+	 * The total value of the rollouts where each ship took each option from here
+	 */
+	final double[][] totalValues;
+
+	/**
+	 * How many rollouts went through this node
+	 */
+	int totalVisits;
+
+	/**
+	 * The children (by joint option), made as they are first reached
+	 */
+	ExampleMCTSNode[] children;
+
+	ExampleMCTSNode(int[] numOptions) {
+		this.numOptions = numOptions;
+		visits = new int[numOptions.length][];
+		totalValues = new double[numOptions.length][];
+		for (int ship = 0; ship < numOptions.length; ship++) {
+			visits[ship] = new int[numOptions[ship]];
+			totalValues[ship] = new double[numOptions[ship]];
+		}
+	}
+
+	/**
+	 * Pick an option for each ship with UCB1 (untried options first).  Values are normalized 
+	 * to [0,1] with the smallest and largest values seen so far.
+	 * 
+	 * @param minValue
+	 * @param maxValue
+	 * @param exploration the UCB exploration constant
+	 * @param choices filled in with the option for each ship
+	 */
+	void select(double minValue, double maxValue, double exploration, int[] choices) {
+		double range = maxValue - minValue;
+		double logVisits = Math.log(Math.max(1, totalVisits));
+
+		for (int ship = 0; ship < numOptions.length; ship++) {
+			int best = 0;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (int option = 0; option < numOptions[ship]; option++) {
+				int n = visits[ship][option];
+				if (n == 0) {
+					best = option;
+					break;
+				}
+
+				double mean = totalValues[ship][option] / n;
+				double normalized = range > 0 ? (mean - minValue) / range : 0.5;
+				double score = normalized + exploration * Math.sqrt(logVisits / n);
+				if (score > bestScore) {
+					bestScore = score;
+					best = option;
+				}
+			}
+			choices[ship] = best;
+		}
+	}
+
+	/**
+	 * Add a rollout's value to the options the ships took
+	 * 
+	 * @param choices
+	 * @param value
+	 */
+	void update(int[] choices, double value) {
+		totalVisits++;
+		for (int ship = 0; ship < numOptions.length; ship++) {
+			visits[ship][choices[ship]]++;
+			totalValues[ship][choices[ship]] += value;
+		}
+	}
+
+	/**
+	 * @param choices an option for each ship
+	 * @return the number of the joint option
+	 */
+	int jointOption(int[] choices) {
+		int joint = 0;
+		for (int ship = numOptions.length - 1; ship >= 0; ship--) {
+			joint = joint * numOptions[ship] + choices[ship];
+		}
+		return joint;
+	}
+
+	/**
+	 * Returns the child for the joint option (null if it hasn't been made)
+	 * 
+	 * @param jointOption
+	 * @return
+	 */
+	ExampleMCTSNode getChild(int jointOption) {
+		return children == null ? null : children[jointOption];
+	}
+
+	/**
+	 * Make the child for the joint option
+	 * 
+	 * @param jointOption
+	 * @return the new child
+	 */
+	ExampleMCTSNode addChild(int jointOption) {
+		if (children == null) {
+			int numJointOptions = 1;
+			for (int ship = 0; ship < numOptions.length; ship++) {
+				numJointOptions *= numOptions[ship];
+			}
+			children = new ExampleMCTSNode[numJointOptions];
+		}
+		children[jointOption] = new ExampleMCTSNode(numOptions);
+		return children[jointOption];
+	}
+}
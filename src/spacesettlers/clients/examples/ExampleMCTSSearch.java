@@ -0,0 +1,302 @@
+package spacesettlers.clients.examples;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.ForwardModel;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * One MCTS tree for ExampleMCTSTeamClient.  The client runs one of these on each helper thread
+ * (root parallelization) and adds up the visits at the roots to pick its actions.
+ * 
+ * Each level of the tree is a macro step: every ship heads for one of its options (an object
+ * such as an asteroid, a beacon or its base) for MACRO_STEPS steps.  Rollouts are played on a
+ * forward model that is reused from one rollout to the next, with actions that are pointed at
+ * new targets instead of made new, so the search itself makes nothing but the new tree nodes
+ * (copying the world and the physics still make objects of their own).
+ * 
+ * @author amy
+ */
+class ExampleMCTSSearch {
+	/**
+	 * How many game steps each level of the tree (and each rollout move) lasts
+	 */
+	static final int MACRO_STEPS = 20;
+
+	/**
+	 * How many levels the tree can grow below the root
+	 */
+	static final int TREE_DEPTH = 2;
+
+	/**
+	 * How many random macro steps are played after leaving the tree
+	 */
+	static final int ROLLOUT_MACRO_STEPS = 1;
+
+	/**
+	 * The UCB exploration constant (values are normalized to [0,1])
+	 */
+	static final double EXPLORATION = 0.7;
+
+	/**
+	 * Value of each resource carried by a ship (it isn't safe until it is at a base)
+	 */
+	static final double CARRIED_WEIGHT = 0.5;
+
+	/**
+	 * Value of each unit of ship energy
+	 */
+	static final double ENERGY_WEIGHT = 0.01;
+
+	/**
+	 * Value lost for each unit of distance a ship is from where it should head next (the rollouts
+	 * are too short to reach most objects so this tells them which way is progress)
+	 */
+	static final double DISTANCE_WEIGHT = 0.2;
+
+	/**
+	 * A ship carrying at least this many resources should head for a base (otherwise for an asteroid)
+	 */
+	static final int RETURN_RESOURCES = 500;
+
+	/**
+	 * Value lost for each dead ship
+	 */
+	static final double DEATH_PENALTY = 1000;
+
+	/**
+	 * The team searched for
+	 */
+	final String teamName;
+
+	/**
+	 * The team's ships, in the order used by the nodes
+	 */
+	final UUID[] shipIds;
+
+	/**
+	 * The object each option heads for (by ship and then option)
+	 */
+	final UUID[][] targets;
+
+	/**
+	 * The number of options for each ship
+	 */
+	final int[] numOptions;
+
+	/**
+	 * The root of the tree (the current game step)
+	 */
+	ExampleMCTSNode root;
+
+	/**
+	 * The world at the root (shared by every tree and never changed)
+	 */
+	ForwardModel rootModel;
+
+	/**
+	 * The model the rollouts are played on (reused for each rollout)
+	 */
+	ForwardModel workModel;
+
+	/**
+	 * The reused action for each ship and the map that hands them to the model
+	 */
+	final ExampleMCTSMoveAction[] moveActions;
+	final HashMap<UUID, AbstractAction> actions;
+
+	/**
+	 * The nodes and choices of the current rollout
+	 */
+	final ExampleMCTSNode[] pathNodes;
+	final int[][] pathChoices;
+	final int[] rolloutChoices;
+
+	/**
+	 * The smallest and largest rollout values seen (to normalize values)
+	 */
+	double minValue, maxValue;
+
+	/**
+	 * Counts for the benchmark and statistics
+	 */
+	long rollouts, searchNanos;
+
+	final Random random;
+
+	ExampleMCTSSearch(String teamName, UUID[] shipIds, UUID[][] targets, long seed) {
+		this.teamName = teamName;
+		this.shipIds = shipIds;
+		this.targets = targets;
+		this.random = new Random(seed);
+
+		numOptions = new int[shipIds.length];
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			numOptions[ship] = targets[ship].length;
+		}
+		root = new ExampleMCTSNode(numOptions);
+
+		moveActions = new ExampleMCTSMoveAction[shipIds.length];
+		actions = new HashMap<UUID, AbstractAction>();
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			moveActions[ship] = new ExampleMCTSMoveAction();
+			actions.put(shipIds[ship], moveActions[ship]);
+		}
+
+		pathNodes = new ExampleMCTSNode[TREE_DEPTH];
+		pathChoices = new int[TREE_DEPTH][shipIds.length];
+		rolloutChoices = new int[shipIds.length];
+		minValue = Double.POSITIVE_INFINITY;
+		maxValue = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Move the root down to the child the team played (keeping what was learned about it)
+	 * and start the search from the given world
+	 * 
+	 * @param choices the option each ship played
+	 * @param model the world now
+	 */
+	void advanceRoot(int[] choices, ForwardModel model) {
+		ExampleMCTSNode child = root.getChild(root.jointOption(choices));
+		root = child != null ? child : new ExampleMCTSNode(numOptions);
+		rootModel = model;
+	}
+
+	/**
+	 * Run rollouts until the deadline (or until the thread is interrupted)
+	 * 
+	 * @param deadlineNanos in System.nanoTime
+	 */
+	void search(long deadlineNanos) {
+		long start = System.nanoTime();
+		while (System.nanoTime() < deadlineNanos && !Thread.currentThread().isInterrupted()) {
+			rollout();
+		}
+		searchNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * One MCTS iteration: select down the tree, add a node, play randomly and back up the value
+	 */
+	void rollout() {
+		if (workModel == null) {
+			workModel = rootModel.fork();
+		} else {
+			rootModel.forkInto(workModel);
+		}
+
+		ExampleMCTSNode node = root;
+		int depth = 0;
+		while (node != null && depth < TREE_DEPTH) {
+			node.select(minValue, maxValue, EXPLORATION, pathChoices[depth]);
+			pathNodes[depth] = node;
+			play(pathChoices[depth]);
+
+			int jointOption = node.jointOption(pathChoices[depth]);
+			depth++;
+			ExampleMCTSNode child = node.getChild(jointOption);
+			if (child == null && depth < TREE_DEPTH) {
+				node.addChild(jointOption);
+				break;
+			}
+			node = child;
+		}
+
+		for (int step = 0; step < ROLLOUT_MACRO_STEPS; step++) {
+			for (int ship = 0; ship < shipIds.length; ship++) {
+				rolloutChoices[ship] = random.nextInt(numOptions[ship]);
+			}
+			play(rolloutChoices);
+		}
+
+		double value = evaluate(workModel.getSpace());
+		minValue = Math.min(minValue, value);
+		maxValue = Math.max(maxValue, value);
+		for (int d = 0; d < depth; d++) {
+			pathNodes[d].update(pathChoices[d], value);
+		}
+		rollouts++;
+	}
+
+	/**
+	 * Play one macro step on the work model with each ship heading for its chosen option
+	 * 
+	 * @param choices
+	 */
+	void play(int[] choices) {
+		Toroidal2DPhysics space = workModel.getSpace();
+		for (int step = 0; step < MACRO_STEPS; step++) {
+			for (int ship = 0; ship < shipIds.length; ship++) {
+				AbstractObject target = space.getObjectById(targets[ship][choices[ship]]);
+				if (target != null && target.isAlive()) {
+					moveActions[ship].moveTo(target.getPosition());
+				} else {
+					moveActions[ship].stop();
+				}
+			}
+			workModel.advance(actions);
+		}
+	}
+
+	/**
+	 * The value of a world for the team: the resources at its bases, part of what its ships are
+	 * carrying, and its ships' energy, less a penalty for each dead ship and for how far each ship
+	 * is from the nearest asteroid (or base, if it should take its resources home)
+	 * 
+	 * @param space
+	 * @return
+	 */
+	double evaluate(Toroidal2DPhysics space) {
+		double value = 0;
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			AbstractObject object = space.getObjectById(shipIds[ship]);
+			if (object == null || !object.isAlive()) {
+				value -= DEATH_PENALTY;
+			} else {
+				Ship teamShip = (Ship) object;
+				int carried = teamShip.getResources().getTotal();
+				value += CARRIED_WEIGHT * carried + ENERGY_WEIGHT * teamShip.getEnergy();
+				value -= DISTANCE_WEIGHT * distanceToGoal(space, teamShip, carried >= RETURN_RESOURCES);
+			}
+		}
+
+		for (Base base : space.getBases()) {
+			if (base.getTeamName().equals(teamName)) {
+				value += base.getResources().getTotal();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @param space
+	 * @param ship
+	 * @param toBase true to measure to the team's nearest base (otherwise to the nearest mineable asteroid)
+	 * @return the distance (0 if there is nowhere to go)
+	 */
+	double distanceToGoal(Toroidal2DPhysics space, Ship ship, boolean toBase) {
+		double nearest = Double.POSITIVE_INFINITY;
+		if (toBase) {
+			for (Base base : space.getBases()) {
+				if (base.getTeamName().equals(teamName)) {
+					nearest = Math.min(nearest, space.findShortestDistance(ship.getPosition(), base.getPosition()));
+				}
+			}
+		} else {
+			for (Asteroid asteroid : space.getAsteroids()) {
+				if (asteroid.isMineable() && asteroid.isAlive()) {
+					nearest = Math.min(nearest, space.findShortestDistance(ship.getPosition(), asteroid.getPosition()));
+				}
+			}
+		}
+		return nearest == Double.POSITIVE_INFINITY ? 0 : nearest;
+	}
+}
@@ -0,0 +1,357 @@
+package spacesettlers.clients.examples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.DoNothingAction;
+import spacesettlers.actions.MoveToObjectAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.ForwardModel;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Demonstrates Monte Carlo tree search with the forward model.  Every few steps each ship picks 
+ * where to go (one of the nearest mineable asteroids, the nearest beacon or its nearest base) by
+ * searching with decoupled UCT (see ExampleMCTSSearch).
+ * 
+ * The search is root parallel: each helper thread grows its own tree from the same world and
+ * the visits at the roots are added up to pick the actions.  The trees are kept from one decision
+ * to the next (the child that was played becomes the new root) until the ships or their options
+ * change.
+ * 
+ * @author amy
+ */
+public class ExampleMCTSTeamClient extends TeamClient {
+	/**
+	 * The most trees searched at once (one per helper thread)
+	 */
+	public static final int MAXIMUM_TREES = 4;
+
+	/**
+	 * The number of asteroids each ship can pick from
+	 */
+	public static final int NUM_ASTEROID_OPTIONS = 4;
+
+	/**
+	 * The longest (in MILLISECONDS) a decision searches for
+	 */
+	public static final int MAXIMUM_SEARCH_TIME = 100;
+
+	/**
+	 * Rollouts and search time (added up over the trees) for every MCTS client in this JVM
+	 */
+	static final AtomicLong totalRollouts = new AtomicLong();
+	static final AtomicLong totalSearchNanos = new AtomicLong();
+
+	/**
+	 * One search tree per helper thread (null until the first decision)
+	 */
+	private ExampleMCTSSearch[] searches;
+
+	/**
+	 * The ships and their options that the trees were made for
+	 */
+	private UUID[] shipIds;
+	private UUID[][] targets;
+
+	/**
+	 * The option each ship is playing
+	 */
+	private int[] choices;
+
+	/**
+	 * The step of the last decision
+	 */
+	private int lastDecisionStep;
+
+	@Override
+	public void initialize(Toroidal2DPhysics space) {
+		searches = null;
+		lastDecisionStep = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Search again every macro step (or right away if the ships or their options changed) and 
+	 * move each ship to the object it picked
+	 */
+	@Override
+	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		List<Ship> ships = new ArrayList<Ship>();
+		for (AbstractActionableObject actionable : actionableObjects) {
+			if (actionable instanceof Ship) {
+				ships.add((Ship) actionable);
+			}
+		}
+		Collections.sort(ships, new Comparator<Ship>() {
+			public int compare(Ship first, Ship second) {
+				return first.getId().compareTo(second.getId());
+			}
+		});
+
+		boolean keepTrees = searches != null && isSameShips(ships) && areTargetsAlive(space);
+		if (!keepTrees || space.getCurrentTimestep() - lastDecisionStep >= ExampleMCTSSearch.MACRO_STEPS) {
+			decide(space, ships, keepTrees);
+		}
+
+		HashMap<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+		for (AbstractActionableObject actionable : actionableObjects) {
+			actions.put(actionable.getId(), new DoNothingAction());
+		}
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			Ship teamShip = (Ship) space.getObjectById(shipIds[ship]);
+			AbstractObject target = space.getObjectById(targets[ship][choices[ship]]);
+			if (target != null && target.isAlive() && target != teamShip) {
+				actions.put(teamShip.getId(), new MoveToObjectAction(space, teamShip.getPosition(), target));
+			}
+		}
+		publishActions(actions);
+		return actions;
+	}
+
+	/**
+	 * Search on the helper threads (until the time runs out) and pick each ship's most visited option
+	 * 
+	 * @param space
+	 * @param ships
+	 * @param keepTrees true to carry on with the trees from the last decision
+	 */
+	private void decide(Toroidal2DPhysics space, List<Ship> ships, boolean keepTrees) {
+		ForwardModel model = new ForwardModel(space);
+		if (keepTrees) {
+			for (ExampleMCTSSearch search : searches) {
+				search.advanceRoot(choices, model);
+			}
+		} else {
+			recordStatistics();
+			makeOptions(space, ships);
+			searches = new ExampleMCTSSearch[Math.max(1, getNumberHelperThreads())];
+			for (int tree = 0; tree < searches.length; tree++) {
+				searches[tree] = new ExampleMCTSSearch(getTeamName(), shipIds, targets, random.nextLong());
+				searches[tree].rootModel = model;
+			}
+		}
+		lastDecisionStep = space.getCurrentTimestep();
+
+		long searchTime = MAXIMUM_SEARCH_TIME;
+		long timeRemaining = getTimeRemaining();
+		if (timeRemaining != Long.MAX_VALUE) {
+			searchTime = Math.min(searchTime, timeRemaining - 2 * PARALLEL_DECISION_MARGIN);
+		}
+		final long deadline = System.nanoTime() + Math.max(0, searchTime) * 1000000L;
+
+		List<Callable<ExampleMCTSSearch>> tasks = new ArrayList<Callable<ExampleMCTSSearch>>();
+		for (final ExampleMCTSSearch search : searches) {
+			tasks.add(new Callable<ExampleMCTSSearch>() {
+				public ExampleMCTSSearch call() {
+					search.search(deadline);
+					return search;
+				}
+			});
+		}
+		List<ExampleMCTSSearch> finished = runInParallel(tasks);
+
+		// add up the visits at the roots
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			int bestVisits = -1;
+			for (int option = 0; option < targets[ship].length; option++) {
+				int visits = 0;
+				for (ExampleMCTSSearch search : finished) {
+					visits += search.root.visits[ship][option];
+				}
+				if (visits > bestVisits) {
+					bestVisits = visits;
+					choices[ship] = option;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pick the options for each ship: its nearest base, the nearest beacon and the nearest 
+	 * mineable asteroids (or staying put if there is nothing else)
+	 * 
+	 * @param space
+	 * @param ships
+	 */
+	private void makeOptions(final Toroidal2DPhysics space, List<Ship> ships) {
+		shipIds = new UUID[ships.size()];
+		targets = new UUID[ships.size()][];
+		choices = new int[ships.size()];
+
+		for (int ship = 0; ship < ships.size(); ship++) {
+			final Ship teamShip = ships.get(ship);
+			shipIds[ship] = teamShip.getId();
+			List<UUID> options = new ArrayList<UUID>();
+
+			Base base = null;
+			for (Base teamBase : space.getBases()) {
+				if (teamBase.getTeamName().equals(getTeamName()) && (base == null || 
+						space.findShortestDistance(teamShip.getPosition(), teamBase.getPosition()) < 
+						space.findShortestDistance(teamShip.getPosition(), base.getPosition()))) {
+					base = teamBase;
+				}
+			}
+			if (base != null) {
+				options.add(base.getId());
+			}
+
+			Beacon beacon = null;
+			for (Beacon spaceBeacon : space.getBeacons()) {
+				if (beacon == null || space.findShortestDistance(teamShip.getPosition(), spaceBeacon.getPosition()) < 
+						space.findShortestDistance(teamShip.getPosition(), beacon.getPosition())) {
+					beacon = spaceBeacon;
+				}
+			}
+			if (beacon != null) {
+				options.add(beacon.getId());
+			}
+
+			List<Asteroid> asteroids = new ArrayList<Asteroid>();
+			for (Asteroid asteroid : space.getAsteroids()) {
+				if (asteroid.isMineable()) {
+					asteroids.add(asteroid);
+				}
+			}
+			Collections.sort(asteroids, new Comparator<Asteroid>() {
+				public int compare(Asteroid first, Asteroid second) {
+					return Double.compare(space.findShortestDistance(teamShip.getPosition(), first.getPosition()), 
+							space.findShortestDistance(teamShip.getPosition(), second.getPosition()));
+				}
+			});
+			for (int i = 0; i < Math.min(NUM_ASTEROID_OPTIONS, asteroids.size()); i++) {
+				options.add(asteroids.get(i).getId());
+			}
+
+			if (options.isEmpty()) {
+				options.add(teamShip.getId());
+			}
+			targets[ship] = options.toArray(new UUID[options.size()]);
+		}
+	}
+
+	/**
+	 * @param ships
+	 * @return true if these are the ships the trees were made for
+	 */
+	private boolean isSameShips(List<Ship> ships) {
+		if (ships.size() != shipIds.length) {
+			return false;
+		}
+		for (int ship = 0; ship < shipIds.length; ship++) {
+			if (!shipIds[ship].equals(ships.get(ship).getId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param space
+	 * @return true if every option can still be played
+	 */
+	private boolean areTargetsAlive(Toroidal2DPhysics space) {
+		for (UUID[] shipTargets : targets) {
+			for (UUID target : shipTargets) {
+				AbstractObject object = space.getObjectById(target);
+				if (object == null || !object.isAlive()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add the rollouts of the current trees to the totals
+	 */
+	private void recordStatistics() {
+		if (searches == null) {
+			return;
+		}
+		for (ExampleMCTSSearch search : searches) {
+			totalRollouts.addAndGet(search.rollouts);
+			totalSearchNanos.addAndGet(search.searchNanos);
+			search.rollouts = 0;
+			search.searchNanos = 0;
+		}
+	}
+
+	/**
+	 * One tree per core, up to MAXIMUM_TREES
+	 */
+	@Override
+	protected int getNumberHelperThreads() {
+		return Math.min(MAXIMUM_TREES, super.getNumberHelperThreads());
+	}
+
+	@Override
+	public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+	}
+
+	/**
+	 * Print how fast the search ran
+	 */
+	@Override
+	public void shutDown(Toroidal2DPhysics space) {
+		recordStatistics();
+		searches = null;
+
+		double seconds = totalSearchNanos.get() / 1e9;
+		System.out.println(getTeamName() + " MCTS: " + totalRollouts.get() + " rollouts (" + 
+				String.format("%.0f", totalRollouts.get() / Math.max(seconds, 1e-9)) + " per second per tree)");
+	}
+
+	@Override
+	public Set<SpacewarGraphics> getGraphics() {
+		return null;
+	}
+
+	/**
+	 * Buy a ship whenever there is enough to pay for one
+	 */
+	@Override
+	public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+			PurchaseCosts purchaseCosts) {
+		HashMap<UUID, PurchaseTypes> purchases = new HashMap<UUID, PurchaseTypes>();
+		if (purchaseCosts.canAfford(PurchaseTypes.SHIP, resourcesAvailable)) {
+			for (AbstractActionableObject actionable : actionableObjects) {
+				if (actionable instanceof Base) {
+					purchases.put(actionable.getId(), PurchaseTypes.SHIP);
+					break;
+				}
+			}
+		}
+		return purchases;
+	}
+
+	/**
+	 * The search doesn't use power ups
+	 */
+	@Override
+	public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		return new HashMap<UUID, SpaceSettlersPowerupEnum>();
+	}
+}
@@ -0,0 +1,243 @@
+package spacesettlers.configs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.xml.XppDomReader;
+import com.thoughtworks.xstream.io.xml.XppDomWriter;
+import com.thoughtworks.xstream.io.xml.xppdom.XppDom;
+
+/**
+ * Reads the configuration files for the simulator and the ladder.  All of them are read with one
+ * XStream that is set up once (setting up XStream costs more than reading a small file).  Each file
+ * is parsed and checked once and then kept until it changes on disk (its modification time or length
+ * changes), so a ladder or a simulator that is reset for each game doesn't read its files again.
+ *
+ * Team client configs are never changed once they are read so everyone shares the same one.  The
+ * simulator and ladder configs are changed by whoever uses them (a ladder sets the teams and seeds
+ * for each game) so each caller gets its own copy, made from the parsed file instead of the file.
+ *
+ * @author amy
+ */
+public class ConfigurationService {
+	/**
+	 * Reads every config file (XStream is thread safe once it is set up)
+	 */
+	private static final XStream xstream = createXStream();
+
+	/**
+	 * The files read so far (by absolute path)
+	 */
+	private static final ConcurrentHashMap<String, CachedConfig> cache = new ConcurrentHashMap<String, CachedConfig>();
+
+	/**
+	 * A parsed config file and what the file looked like when it was read
+	 */
+	private static class CachedConfig {
+		final long lastModified;
+		final long length;
+
+		/**
+		 * The config read from the file (never handed out if the config can be changed)
+		 */
+		final Object config;
+
+		/**
+		 * The config as a parsed XML tree (copies are made from this)
+		 */
+		final XppDom tree;
+
+		CachedConfig(long lastModified, long length, Object config) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.config = config;
+			this.tree = toTree(config);
+		}
+	}
+
+	private ConfigurationService() {
+	}
+
+	/**
+	 * Set up XStream with the names used in the config files
+	 *
+	 * @return
+	 */
+	private static XStream createXStream() {
+		XStream xstream = new XStream();
+		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+		xstream.alias("LadderConfig", LadderConfig.class);
+		xstream.alias("TeamClientConfig", TeamClientConfig.class);
+		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+		xstream.alias("BaseConfig", BaseConfig.class);
+		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
+		xstream.alias("FlagConfig", FlagConfig.class);
+		return xstream;
+	}
+
+	/**
+	 * Returns the simulator config in a file (a copy the caller is free to change)
+	 *
+	 * @param fileName
+	 * @return
+	 * @throws IOException if the file can't be read or isn't a valid simulator config
+	 */
+	public static SpaceSettlersConfig getSimulatorConfig(String fileName) throws IOException {
+		return (SpaceSettlersConfig) fromTree(load(fileName, SpaceSettlersConfig.class).tree);
+	}
+
+	/**
+	 * Returns the ladder config in a file (a copy the caller is free to change)
+	 *
+	 * @param fileName
+	 * @return
+	 * @throws IOException if the file can't be read or isn't a valid ladder config
+	 */
+	public static LadderConfig getLadderConfig(String fileName) throws IOException {
+		return (LadderConfig) fromTree(load(fileName, LadderConfig.class).tree);
+	}
+
+	/**
+	 * Returns the team client config in a file (shared by every caller since it can't be changed)
+	 *
+	 * @param fileName
+	 * @return
+	 * @throws IOException if the file can't be read or isn't a valid team client config
+	 */
+	public static TeamClientConfig getTeamClientConfig(String fileName) throws IOException {
+		return (TeamClientConfig) load(fileName, TeamClientConfig.class).config;
+	}
+
+	/**
+	 * Makes a deep copy of a config (or an array of them)
+	 *
+	 * @param config
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(T config) {
+		return (T) fromTree(toTree(config));
+	}
+
+	/**
+	 * Returns the file from the cache (reading it again if it changed since it was read)
+	 *
+	 * @param fileName
+	 * @param type the kind of config the file should hold
+	 * @return
+	 * @throws IOException
+	 */
+	private static CachedConfig load(String fileName, Class<?> type) throws IOException {
+		File file = new File(fileName);
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		CachedConfig cached = cache.get(key);
+		if (cached != null && cached.lastModified == lastModified && cached.length == length
+				&& type.isInstance(cached.config)) {
+			return cached;
+		}
+
+		if (!file.isFile()) {
+			throw new FileNotFoundException(fileName + " does not exist");
+		}
+
+		Object config;
+		try {
+			config = xstream.fromXML(file);
+		} catch (XStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		if (!type.isInstance(config)) {
+			throw new IOException(fileName + " is not a " + type.getSimpleName());
+		}
+		validate(fileName, config);
+
+		// two threads reading the same new file at once both parse it, which is harmless
+		cached = new CachedConfig(lastModified, length, config);
+		cache.put(key, cached);
+		return cached;
+	}
+
+	/**
+	 * Check the settings that would otherwise fail part way into a game
+	 *
+	 * @param fileName
+	 * @param config
+	 * @throws IOException if the config isn't valid
+	 */
+	private static void validate(String fileName, Object config) throws IOException {
+		if (config instanceof SpaceSettlersConfig) {
+			SpaceSettlersConfig simConfig = (SpaceSettlersConfig) config;
+			if (simConfig.getHeight() <= 0 || simConfig.getWidth() <= 0) {
+				throw new IOException(fileName + ": height and width must be more than 0");
+			}
+			if (simConfig.getSimulationSteps() <= 0 || simConfig.getSimulationTimeStep() <= 0) {
+				throw new IOException(fileName + ": simulationSteps and simulationTimeStep must be more than 0");
+			}
+			if (simConfig.getTeams() == null) {
+				throw new IOException(fileName + ": there are no teams");
+			}
+			validateTeams(fileName, simConfig.getTeams());
+		} else if (config instanceof LadderConfig) {
+			LadderConfig ladderConfig = (LadderConfig) config;
+			validateTeams(fileName, ladderConfig.getStaticTeams());
+			validateTeams(fileName, ladderConfig.getVariableTeams());
+		} else if (config instanceof TeamClientConfig) {
+			TeamClientConfig clientConfig = (TeamClientConfig) config;
+			if (clientConfig.getClassname() == null || clientConfig.getClassname().trim().isEmpty()) {
+				throw new IOException(fileName + ": classname is missing");
+			}
+			try {
+				// only look the class up (it is initialized when the simulator makes the client)
+				Class.forName(clientConfig.getClassname(), false, ConfigurationService.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new IOException(fileName + ": there is no client class " + clientConfig.getClassname(), e);
+			} catch (LinkageError e) {
+				throw new IOException(fileName + ": the client class " + clientConfig.getClassname() + " can't be loaded", e);
+			}
+			if (!isColorComponent(clientConfig.getTeamColorRed()) || !isColorComponent(clientConfig.getTeamColorGreen())
+					|| !isColorComponent(clientConfig.getTeamColorBlue())) {
+				throw new IOException(fileName + ": team colors must be between 0 and 255");
+			}
+		}
+	}
+
+	/**
+	 * Every team needs a name and a config file
+	 *
+	 * @param fileName
+	 * @param teams (may be null)
+	 * @throws IOException
+	 */
+	private static void validateTeams(String fileName, HighLevelTeamConfig[] teams) throws IOException {
+		if (teams == null) {
+			return;
+		}
+		for (HighLevelTeamConfig team : teams) {
+			if (team == null || team.getTeamName() == null || team.getConfigFile() == null) {
+				throw new IOException(fileName + ": every team needs a teamName and a configFile");
+			}
+		}
+	}
+
+	private static boolean isColorComponent(int value) {
+		return value >= 0 && value <= 255;
+	}
+
+	private static XppDom toTree(Object config) {
+		XppDomWriter writer = new XppDomWriter();
+		xstream.marshal(config, writer);
+		return writer.getConfiguration();
+	}
+
+	private static Object fromTree(XppDom tree) {
+		return xstream.unmarshal(new XppDomReader(tree));
+	}
+}
@@ -40,6 +40,10 @@ public class HighLevelTeamConfig {
 	}
 
 
+	public void setConfigFile(String configFile) {
+		this.configFile = configFile;
+	}
+
 	public int getInitialRegionULX() {
 		return initialRegionULX;
 	}
@@ -16,10 +16,86 @@ public class LadderConfig {
 	 */
 	int numRepeatMatches;
 	
+	/**
+	 * Optional: if this is more than 0 (for example 0.95), the number of repeats changes with each match.
+	 * A match is repeated until the ranking of its teams is settled at this confidence level and the
+	 * games saved are spent on the close matches (the ladder still plays at most numRepeatMatches
+	 * times the number of matches).
+	 */
+	double repeatConfidenceLevel;
+
+	/**
+	 * Optional: with repeatConfidenceLevel, every match is repeated at least this many times (at least RepeatStatistics.MINIMUM_REPEATS)
+	 */
+	int minimumRepeatMatches;
+
+	/**
+	 * Optional: with repeatConfidenceLevel, no match is repeated more than this many times (0 for no limit)
+	 */
+	int maximumRepeatMatches;
+
+	/**
+	 * Optional: if this is more than 0, the ladder plays this many Swiss rounds instead of every 
+	 * combination of variable teams.  Each round puts every variable team in one match with the teams 
+	 * closest to it in rating (that it has met the least) and each match is played numRepeatMatches times.
+	 * The teams are ranked by their Elo rating.
+	 */
+	int numSwissRounds;
+
 	/**
 	 * Write out the results to this file
 	 */
 	String outputFileName;
+	
+	/**
+	 * Optional: the number of games to run at the same time.  If this is 0 or 1, the games
+	 * are run one after another.
+	 */
+	int numParallelGames;
+	
+	/**
+	 * Optional: the number of worker JVMs to run the games in.  If this is 0, the games are 
+	 * run in the ladder's own JVM (using numParallelGames).
+	 */
+	int numWorkerProcesses;
+	
+	/**
+	 * Optional: extra arguments for the worker JVMs (for example "-Xmx2g")
+	 */
+	String workerJvmArguments;
+	
+	/**
+	 * Optional: the most MINUTES a worker JVM may spend on one game before it is killed and the game
+	 * is recorded as an error.  If this is 0, each step gets as long as one team action may take (a
+	 * client that searches for as long as it is allowed) plus ten minutes for starting the game.
+	 */
+	int workerGameTimeLimit;
+	
+	/**
+	 * Optional: every finished game is saved in this file (in the config directory) so a ladder that 
+	 * is stopped part way through can be restarted and only play the games that are missing.
+	 */
+	String journalFileName;
+
+	/**
+	 * Optional: the results of finished games are kept in this directory (in the config directory) 
+	 * and reused when a later ladder would play exactly the same game again (same client code, knowledge, 
+	 * configuration and seed).  Only useful with a fixed randomSeed in the simulator config.
+	 */
+	String resultCacheDirectory;
+
+	/**
+	 * Optional: if this is true, every match in a repeat is played on the same map (the games still 
+	 * get their own random seeds).  The teams are compared on the same maps and each map is only laid 
+	 * out once.
+	 */
+	boolean sameMapsForAllMatches;
+
+	/**
+	 * Optional: every game played is recorded to a replay file in this directory (in the config 
+	 * directory) named after its game index.
+	 */
+	String replayDirectory;
 
 	public void setVariableTeams(HighLevelTeamConfig[] variableTeams) {
 		this.variableTeams = variableTeams;
@@ -55,6 +131,116 @@ public class LadderConfig {
 		return numRepeatMatches;
 	}
 
+	/**
+	 * @return the number of Swiss rounds (0 if every combination of variable teams is played)
+	 */
+	public int getNumSwissRounds() {
+		return numSwissRounds;
+	}
+
+	public void setNumSwissRounds(int numSwissRounds) {
+		this.numSwissRounds = numSwissRounds;
+	}
+
+	/**
+	 * @return the confidence level for adaptive repeats (0 if every match is repeated numRepeatMatches times)
+	 */
+	public double getRepeatConfidenceLevel() {
+		return repeatConfidenceLevel;
+	}
+
+	public void setRepeatConfidenceLevel(double repeatConfidenceLevel) {
+		this.repeatConfidenceLevel = repeatConfidenceLevel;
+	}
+
+	public int getMinimumRepeatMatches() {
+		return minimumRepeatMatches;
+	}
+
+	public void setMinimumRepeatMatches(int minimumRepeatMatches) {
+		this.minimumRepeatMatches = minimumRepeatMatches;
+	}
+
+	public int getMaximumRepeatMatches() {
+		return maximumRepeatMatches;
+	}
+
+	public void setMaximumRepeatMatches(int maximumRepeatMatches) {
+		this.maximumRepeatMatches = maximumRepeatMatches;
+	}
+
+	/**
+	 * @return the number of games to run at the same time (0 or 1 means one after another)
+	 */
+	public int getNumParallelGames() {
+		return numParallelGames;
+	}
+
+	public void setNumParallelGames(int numParallelGames) {
+		this.numParallelGames = numParallelGames;
+	}
+
+	/**
+	 * @return the number of worker JVMs to run the games in (0 means run them in this JVM)
+	 */
+	public int getNumWorkerProcesses() {
+		return numWorkerProcesses;
+	}
+
+	/**
+	 * @return extra arguments for the worker JVMs (null if there are none)
+	 */
+	public String getWorkerJvmArguments() {
+		return workerJvmArguments;
+	}
+
+	/**
+	 * @return the most MINUTES a worker may spend on one game (0 to work it out from the game)
+	 */
+	public int getWorkerGameTimeLimit() {
+		return workerGameTimeLimit;
+	}
+
+	public void setWorkerGameTimeLimit(int workerGameTimeLimit) {
+		this.workerGameTimeLimit = workerGameTimeLimit;
+	}
+
+	/**
+	 * @return the file finished games are saved in (null if the ladder isn't journaled)
+	 */
+	public String getJournalFileName() {
+		return journalFileName;
+	}
+
+	/**
+	 * @return the directory game results are cached in (null if results aren't cached)
+	 */
+	public String getResultCacheDirectory() {
+		return resultCacheDirectory;
+	}
+
+	/**
+	 * @return true if every match in a repeat is played on the same map
+	 */
+	public boolean isSameMapsForAllMatches() {
+		return sameMapsForAllMatches;
+	}
+
+	public void setSameMapsForAllMatches(boolean sameMapsForAllMatches) {
+		this.sameMapsForAllMatches = sameMapsForAllMatches;
+	}
+
+	/**
+	 * @return the directory games are recorded to (null if games aren't recorded)
+	 */
+	public String getReplayDirectory() {
+		return replayDirectory;
+	}
+
+	public void setReplayDirectory(String replayDirectory) {
+		this.replayDirectory = replayDirectory;
+	}
+
 	/**
 	 * Make the player names automatically generated for the ladder unique
 	 */
@@ -73,6 +73,123 @@ public class SpaceSettlersConfig {
 	 */
 	String scoringMethod;
 	
+	/**
+	 * Optional: CPU time (in milliseconds) given to each team every time step.  Unused time 
+	 * carries forward (like a chess clock).  If this is 0, CPU time is not budgeted.
+	 */
+	int teamCpuTimePerStep;
+	
+	/**
+	 * Optional: the most CPU time (in milliseconds) a team can save up.  If this is 0, there is no maximum.
+	 */
+	int teamCpuTimeBankMaximum;
+	
+	/**
+	 * Optional: the number of runaway client threads (threads that ignore their timeout) a team
+	 * may leak before it forfeits the game.  If this is 0, TeamThreadWatchdog.DEFAULT_MAXIMUM_LEAKED_THREADS is used.
+	 */
+	int maximumLeakedClientThreads;
+	
+	/**
+	 * Optional: time in milliseconds past its timeout that a client call may keep running before
+	 * it is treated as a runaway.  If this is 0, TeamThreadWatchdog.DEFAULT_GRACE_PERIOD is used.
+	 */
+	int clientThreadGracePeriod;
+	
+	/**
+	 * Optional: the number of helper threads each team client gets for TeamClient.decideInParallel.
+	 * If this is 0, the cores are shared between the teams (and the ladder shares them between the
+	 * games it runs at the same time).
+	 */
+	int helperThreadsPerTeam;
+	
+	/**
+	 * Optional: megabytes a team client may allocate in a single time step before it is warned.
+	 * If this is 0, there is no warning.
+	 */
+	int teamAllocationWarningPerStep;
+	
+	/**
+	 * Optional: megabytes a team client may allocate in a single time step before it does nothing 
+	 * on the next step.  If this is 0, allocation is not limited.
+	 */
+	int teamAllocationLimitPerStep;
+	
+	/**
+	 * Optional: time in milliseconds a team has to return its actions (and purchases and power ups).
+	 * If this is 0, SpaceSettlersSimulator.DEFAULT_TEAM_ACTION_TIMEOUT is used.
+	 */
+	int teamActionTimeout;
+	
+	/**
+	 * Optional: time in milliseconds an action has to return its movement.  If this is 0, 
+	 * SpaceSettlersSimulator.DEFAULT_MOVEMENT_TIMEOUT is used.
+	 */
+	int movementTimeout;
+	
+	/**
+	 * Optional: time in milliseconds a team has for getMovementEnd.  If this is 0, 
+	 * SpaceSettlersSimulator.DEFAULT_TEAM_END_ACTION_TIMEOUT is used.
+	 */
+	int teamEndActionTimeout;
+	
+	/**
+	 * Optional: time in milliseconds a team has to return its graphics.  If this is 0, 
+	 * SpaceSettlersSimulator.DEFAULT_TEAM_GRAPHICS_TIMEOUT is used.
+	 */
+	int teamGraphicsTimeout;
+	
+	/**
+	 * Optional: end the game early if no team's score changes for this many steps (0 to always
+	 * play every step)
+	 */
+	int earlyEndIdleSteps;
+	
+	/**
+	 * Optional: the most a team can score in one step.  If this is more than 0, the game ends early 
+	 * once the leading team is too far ahead for the second team to catch up in the steps left.  
+	 * Only used with scoring methods where scores never go down (such as Flags and Cores).
+	 */
+	double earlyEndMaximumScorePerStep;
+	
+	/**
+	 * Optional: the seed for the layout of the world (beacons, asteroids, ships, bases, and flags).
+	 * Games with the same mapSeed start on the same map even if their randomSeeds differ.  If this
+	 * is 0, the map is made from the randomSeed.
+	 */
+	long mapSeed;
+	
+	/**
+	 * Optional: record the game to this replay file (see spacesettlers.replay).  The ladder sets this
+	 * for each game when it has a replayDirectory.  If this is null, the game isn't recorded.
+	 */
+	String replayFile;
+	
+	/**
+	 * Optional: the number of steps between full frames in a replay (0 for 
+	 * ReplayFormat.DEFAULT_KEYFRAME_INTERVAL).  More keyframes make seeking faster and the file bigger.
+	 */
+	int replayKeyframeInterval;
+	
+	/**
+	 * Optional: save the whole game to this file every checkpointInterval steps so a game that 
+	 * crashes or is stopped can be resumed (see resumeFromCheckpoint).  The file only ever holds 
+	 * the latest checkpoint and it is deleted once the game finishes.
+	 */
+	String checkpointFile;
+	
+	/**
+	 * Optional: the number of steps between checkpoints (0 for no checkpoints)
+	 */
+	int checkpointInterval;
+	
+	/**
+	 * Optional: if this is true and the checkpointFile exists, the game starts from the checkpoint
+	 * instead of the beginning.  Team clients only keep their own state if they save it
+	 * (see TeamClient.getCheckpointState).
+	 */
+	boolean resumeFromCheckpoint;
+	
 	/**
 	 * @return the height of the simulation environment.  This is measured in pixels.
 	 */
@@ -109,6 +226,14 @@ public class SpaceSettlersConfig {
 		return randomSeed;
 	}
 
+	/**
+	 * Set the random seed (used by the ladder to give each game its own seed)
+	 * @param randomSeed the seed (0 means pick one randomly)
+	 */
+	public void setRandomSeed(long randomSeed) {
+		this.randomSeed = randomSeed;
+	}
+
 	/**
 	 * @return the numBeacons
 	 */
@@ -174,6 +299,185 @@ public class SpaceSettlersConfig {
 		return scoringMethod;
 	}
 
+	/**
+	 * @return the CPU time (milliseconds) given to each team each step (0 if it is not budgeted)
+	 */
+	public int getTeamCpuTimePerStep() {
+		return teamCpuTimePerStep;
+	}
+
+	/**
+	 * @return the most CPU time (milliseconds) a team can save up (0 if there is no maximum)
+	 */
+	public int getTeamCpuTimeBankMaximum() {
+		return teamCpuTimeBankMaximum;
+	}
+
+	/**
+	 * @return the number of runaway threads a team may leak before it forfeits (0 for the default)
+	 */
+	public int getMaximumLeakedClientThreads() {
+		return maximumLeakedClientThreads;
+	}
+
+	/**
+	 * @return the milliseconds past its timeout a client call may run before it is a runaway (0 for the default)
+	 */
+	public int getClientThreadGracePeriod() {
+		return clientThreadGracePeriod;
+	}
+
+	/**
+	 * @return the number of helper threads each team client gets (0 to share the cores)
+	 */
+	public int getHelperThreadsPerTeam() {
+		return helperThreadsPerTeam;
+	}
+
+	public void setHelperThreadsPerTeam(int helperThreadsPerTeam) {
+		this.helperThreadsPerTeam = helperThreadsPerTeam;
+	}
+
+	/**
+	 * @return the megabytes a team may allocate each step before it is warned (0 for no warning)
+	 */
+	public int getTeamAllocationWarningPerStep() {
+		return teamAllocationWarningPerStep;
+	}
+
+	/**
+	 * @return the megabytes a team may allocate each step before it is throttled (0 for no limit)
+	 */
+	public int getTeamAllocationLimitPerStep() {
+		return teamAllocationLimitPerStep;
+	}
+
+	/**
+	 * @return the milliseconds a team has to return its actions (0 for the default)
+	 */
+	public int getTeamActionTimeout() {
+		return teamActionTimeout;
+	}
+
+	/**
+	 * @return the milliseconds an action has to return its movement (0 for the default)
+	 */
+	public int getMovementTimeout() {
+		return movementTimeout;
+	}
+
+	/**
+	 * @return the milliseconds a team has for getMovementEnd (0 for the default)
+	 */
+	public int getTeamEndActionTimeout() {
+		return teamEndActionTimeout;
+	}
+
+	/**
+	 * @return the milliseconds a team has to return its graphics (0 for the default)
+	 */
+	public int getTeamGraphicsTimeout() {
+		return teamGraphicsTimeout;
+	}
+
+	/**
+	 * @return the number of steps with no score changes that ends a game (0 to never end it early)
+	 */
+	public int getEarlyEndIdleSteps() {
+		return earlyEndIdleSteps;
+	}
+
+	/**
+	 * @return the most a team can score in one step (0 to never end a decided game early)
+	 */
+	public double getEarlyEndMaximumScorePerStep() {
+		return earlyEndMaximumScorePerStep;
+	}
+
+	/**
+	 * @return the seed for the layout of the world (0 to make the map from the randomSeed)
+	 */
+	public long getMapSeed() {
+		return mapSeed;
+	}
+
+	/**
+	 * Set the seed for the layout of the world (used by the ladder to play every match on the same maps)
+	 * @param mapSeed the seed (0 means make the map from the randomSeed)
+	 */
+	public void setMapSeed(long mapSeed) {
+		this.mapSeed = mapSeed;
+	}
+
+	/**
+	 * @return the file the game is recorded to (null if it isn't recorded)
+	 */
+	public String getReplayFile() {
+		return replayFile;
+	}
+
+	/**
+	 * @param replayFile the file to record the game to (null to not record it)
+	 */
+	public void setReplayFile(String replayFile) {
+		this.replayFile = replayFile;
+	}
+
+	/**
+	 * @return the number of steps between full frames in a replay (0 for the default)
+	 */
+	public int getReplayKeyframeInterval() {
+		return replayKeyframeInterval;
+	}
+
+	/**
+	 * @return the file checkpoints are saved to (null if the game isn't checkpointed)
+	 */
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * @param checkpointFile the file to save checkpoints to (null to not save them)
+	 */
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * @return the number of steps between checkpoints (0 for no checkpoints)
+	 */
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * @return true if the game starts from its checkpoint file (if there is one)
+	 */
+	public boolean isResumeFromCheckpoint() {
+		return resumeFromCheckpoint;
+	}
+
+	public void setResumeFromCheckpoint(boolean resumeFromCheckpoint) {
+		this.resumeFromCheckpoint = resumeFromCheckpoint;
+	}
+
+	public void setEarlyEndIdleSteps(int earlyEndIdleSteps) {
+		this.earlyEndIdleSteps = earlyEndIdleSteps;
+	}
+
+	public void setEarlyEndMaximumScorePerStep(double earlyEndMaximumScorePerStep) {
+		this.earlyEndMaximumScorePerStep = earlyEndMaximumScorePerStep;
+	}
+
+	public void setScoringMethod(String scoringMethod) {
+		this.scoringMethod = scoringMethod;
+	}
+
 	public void setTeams(HighLevelTeamConfig[] teams) {
 		this.teams = teams;
 	}
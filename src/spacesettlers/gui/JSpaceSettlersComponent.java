@@ -11,6 +11,7 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -20,6 +21,7 @@ import javax.swing.JPanel;
 import spacesettlers.clients.Team;
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.AbstractObject;
+import spacesettlers.replay.ReplayReader;
 import spacesettlers.simulator.SpaceSettlersSimulator;
 import spacesettlers.utilities.Position;
 
@@ -49,6 +51,11 @@ public class JSpaceSettlersComponent extends JComponent {
 	 */
 	SpaceSettlersSimulator simulator;
 	
+	/**
+	 * The replay being played back (null when showing a running simulator)
+	 */
+	ReplayReader replay;
+	
 	public JSpaceSettlersComponent(int height, int width) {
 		super();
 		this.height = height;
@@ -82,6 +89,12 @@ public class JSpaceSettlersComponent extends JComponent {
         g.setColor(Color.BLACK);
         g.fillRect(0, 0, this.width, this.height);
 
+        // a replay only has the objects (the teams' own graphics aren't recorded)
+        if (replay != null) {
+        	drawObjects(replay.getAllObjects(), graphics);
+        	return;
+        }
+
         // handle an annoying race condition in the GUI
         if (simulator == null) {
         	return;
@@ -89,15 +102,7 @@ public class JSpaceSettlersComponent extends JComponent {
 
         // draw graphic for all the objects
         Set<AbstractObject> allObjects = new LinkedHashSet<AbstractObject>(simulator.getAllObjects());
-
-        for (AbstractObject object : allObjects) {
-        	SpacewarGraphics graphic = object.getGraphic();
-        	if (graphic != null) {
-            	if (graphic.isDrawable()) {
-            		drawShadow(graphic, graphics);
-            	}
-        	}
-        }
+        drawObjects(allObjects, graphics);
         
         // and draw any team graphics from this round
         for (Team team : simulator.getTeams()) {
@@ -112,6 +117,23 @@ public class JSpaceSettlersComponent extends JComponent {
         }
 	}
 	
+	/**
+	 * Draw the graphic for each object
+	 * 
+	 * @param allObjects
+	 * @param graphics
+	 */
+	private void drawObjects(Collection<AbstractObject> allObjects, final Graphics2D graphics) {
+        for (AbstractObject object : allObjects) {
+        	SpacewarGraphics graphic = object.getGraphic();
+        	if (graphic != null) {
+            	if (graphic.isDrawable()) {
+            		drawShadow(graphic, graphics);
+            	}
+        	}
+        }
+	}
+	
 	/**
 	 * Handles drawing things in a tororodially wrapped world.  Code
 	 * comes from the spacewar 1 simulator.
@@ -186,6 +208,14 @@ public class JSpaceSettlersComponent extends JComponent {
 		this.simulator = spacewarSimulator;
 	}
 
+    /**
+     * Show a replay instead of a running simulator
+     * @param replay
+     */
+	public void setReplay(ReplayReader replay) {
+		this.replay = replay;
+	}
+
 	/**
 	 * Set the transformation for scale for the main (space settlers) GUI
 	 * 
@@ -0,0 +1,340 @@
+package spacesettlers.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import spacesettlers.clients.Team;
+import spacesettlers.replay.ReplayReader;
+
+/**
+ * GUI for watching a recorded game.  It draws the same way as the main GUI (with each object's
+ * own graphics) but the steps come from a replay, so no client code is run.  A slider moves to any
+ * step of the game and the replay can be played forward at up to MAXIMUM_SPEED steps a frame.
+ *
+ * Everything (playing, seeking and drawing) happens on the swing thread so the replay is never
+ * read by two threads at once.
+ *
+ * @author amy
+ */
+public class ReplayGUI {
+	/**
+	 * Time between frames (the same as the simulator's default graphics sleep so 1 step a frame is real time)
+	 */
+	public static final int FRAME_DELAY = 40;
+
+	/**
+	 * The most steps played each frame
+	 */
+	public static final int MAXIMUM_SPEED = 512;
+
+	JFrame mainFrame;
+
+	JSpaceSettlersComponent mainComponent;
+
+	ReplayReader replay;
+
+	/**
+	 * Plays the replay forward
+	 */
+	Timer timer;
+
+	/**
+	 * Steps played each frame
+	 */
+	int speed = 1;
+
+	boolean isPaused = false;
+
+	JSlider stepSlider;
+
+	JButton playButton;
+
+	JLabel stepLabel, speedLabel;
+
+	List<JLabel> scoreLabels;
+
+	/**
+	 * True while the slider is being moved to match the replay (rather than by the user)
+	 */
+	boolean isUpdatingSlider;
+
+	/**
+	 * Make a new replay GUI (call from the swing thread)
+	 * @param replay
+	 * @param title shown in the window's title (usually the replay's file name)
+	 */
+	public ReplayGUI(ReplayReader replay, String title) {
+		this.replay = replay;
+
+		mainFrame = new JFrame("Space Settlers replay " + title);
+		mainComponent = new JSpaceSettlersComponent(replay.getHeight(), replay.getWidth());
+		mainComponent.setReplay(replay);
+
+		// the step, speed and scores
+		JPanel infoPanel = new JPanel(new GridLayout(0, 1, 5, 5));
+		infoPanel.setBorder(BorderFactory.createRaisedBevelBorder());
+		stepLabel = new JLabel();
+		infoPanel.add(stepLabel);
+		speedLabel = new JLabel();
+		infoPanel.add(speedLabel);
+		scoreLabels = new ArrayList<JLabel>();
+		for (Team team : replay.getTeams()) {
+			JLabel scoreLabel = new JLabel();
+			scoreLabel.setBorder(BorderFactory.createLineBorder(team.getTeamColor(), 3));
+			scoreLabels.add(scoreLabel);
+			infoPanel.add(scoreLabel);
+		}
+		JPanel infoHolder = new JPanel(new BorderLayout());
+		infoHolder.add(infoPanel, BorderLayout.NORTH);
+
+		// the controls
+		playButton = new JButton("Pause");
+		playButton.setFocusable(false);
+		playButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				togglePause();
+			}
+		});
+		stepSlider = new JSlider(replay.getFirstStep(), replay.getLastStep(), replay.getStep());
+		stepSlider.setFocusable(false);
+		stepSlider.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				if (!isUpdatingSlider) {
+					seek(stepSlider.getValue());
+				}
+			}
+		});
+		JPanel controlPanel = new JPanel(new BorderLayout());
+		controlPanel.add(playButton, BorderLayout.WEST);
+		controlPanel.add(stepSlider, BorderLayout.CENTER);
+
+		mainFrame.setLayout(new BorderLayout());
+		mainFrame.add(mainComponent, BorderLayout.CENTER);
+		mainFrame.add(infoHolder, BorderLayout.EAST);
+		mainFrame.add(controlPanel, BorderLayout.SOUTH);
+
+		// create a help menu
+		JMenuBar menuBar = new JMenuBar();
+		JMenu menu = new JMenu("Help");
+		menuBar.add(menu);
+		JMenuItem item = new JMenuItem("Interface help");
+		item.setAccelerator(KeyStroke.getKeyStroke('h'));
+		menu.add(item);
+		item.addActionListener(new HelpMenuListener());
+		mainFrame.setJMenuBar(menuBar);
+
+		setScale();
+		addKeys();
+
+		timer = new Timer(FRAME_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				playFrame();
+			}
+		});
+
+		mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		mainFrame.setResizable(false);
+		mainFrame.pack();
+		mainFrame.setVisible(true);
+
+		redraw();
+		timer.start();
+	}
+
+	/**
+	 * Shrink the game to fit on the screen (if it is too big)
+	 */
+	private void setScale() {
+		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+		double screenWidth = screenSize.getWidth() - 250;
+		double screenHeight = screenSize.getHeight() - 150;
+		double scale = Math.min(1.0, Math.min(screenWidth / replay.getWidth(), screenHeight / replay.getHeight()));
+
+		mainComponent.setScaleTransform(AffineTransform.getScaleInstance(scale, scale));
+		mainComponent.setPreferredSize(new Dimension((int) (scale * replay.getWidth()),
+				(int) (scale * replay.getHeight())));
+	}
+
+	/**
+	 * The keyboard commands (bound to the whole window so they work whatever has the focus)
+	 */
+	@SuppressWarnings("serial")
+	private void addKeys() {
+		JComponent root = mainFrame.getRootPane();
+
+		bindKey(root, "P", "pause", new AbstractAction() {
+			public void actionPerformed(ActionEvent e) {
+				togglePause();
+			}
+		});
+		bindKey(root, "SPACE", "pause", null);
+		bindKey(root, "typed +", "faster", new AbstractAction() {
+			public void actionPerformed(ActionEvent e) {
+				setSpeed(speed * 2);
+			}
+		});
+		bindKey(root, "typed -", "slower", new AbstractAction() {
+			public void actionPerformed(ActionEvent e) {
+				setSpeed(speed / 2);
+			}
+		});
+		bindKey(root, "RIGHT", "stepForward", new StepAction(1));
+		bindKey(root, "LEFT", "stepBack", new StepAction(-1));
+		bindKey(root, "PAGE_DOWN", "jumpForward", new StepAction(replay.getKeyframeInterval()));
+		bindKey(root, "PAGE_UP", "jumpBack", new StepAction(-replay.getKeyframeInterval()));
+		bindKey(root, "HOME", "start", new StepAction(Integer.MIN_VALUE / 2));
+		bindKey(root, "END", "end", new StepAction(Integer.MAX_VALUE / 2));
+	}
+
+	/**
+	 * Bind a key to an action
+	 *
+	 * @param component
+	 * @param key
+	 * @param name
+	 * @param action (null if the name is already bound to an action)
+	 */
+	private void bindKey(JComponent component, String key, String name, AbstractAction action) {
+		component.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key), name);
+		if (action != null) {
+			component.getActionMap().put(name, action);
+		}
+	}
+
+	/**
+	 * Pauses the replay and moves it by a number of steps
+	 */
+	@SuppressWarnings("serial")
+	class StepAction extends AbstractAction {
+		int steps;
+
+		StepAction(int steps) {
+			this.steps = steps;
+		}
+
+		public void actionPerformed(ActionEvent e) {
+			if (!isPaused) {
+				togglePause();
+			}
+			seek(replay.getStep() + steps);
+		}
+	}
+
+	/**
+	 * Play the steps for one frame
+	 */
+	void playFrame() {
+		if (isPaused) {
+			return;
+		}
+		for (int i = 0; i < speed; i++) {
+			if (!replay.next()) {
+				togglePause();
+				break;
+			}
+		}
+		redraw();
+	}
+
+	/**
+	 * Go to a step
+	 * @param step
+	 */
+	void seek(int step) {
+		replay.seek(step);
+		redraw();
+	}
+
+	/**
+	 * Toggle the paused state (playing from the end starts again from the beginning)
+	 */
+	void togglePause() {
+		isPaused = !isPaused;
+		if (!isPaused && replay.getStep() >= replay.getLastStep()) {
+			replay.seek(replay.getFirstStep());
+		}
+		playButton.setText(isPaused ? "Play" : "Pause");
+		redraw();
+	}
+
+	/**
+	 * Change the number of steps played each frame
+	 * @param newSpeed
+	 */
+	void setSpeed(int newSpeed) {
+		speed = Math.max(1, Math.min(newSpeed, MAXIMUM_SPEED));
+		redraw();
+	}
+
+	/**
+	 * Show the current step
+	 */
+	void redraw() {
+		isUpdatingSlider = true;
+		stepSlider.setValue(replay.getStep());
+		isUpdatingSlider = false;
+
+		stepLabel.setText(" Step " + replay.getStep() + " of " + replay.getLastStep() + " ");
+		speedLabel.setText(" Speed " + speed + "x" + (isPaused ? " (paused) " : " "));
+		List<Team> teams = replay.getTeams();
+		for (int t = 0; t < teams.size(); t++) {
+			scoreLabels.get(t).setText(" " + teams.get(t).getLadderName() + ": " + teams.get(t).getScore() + " ");
+		}
+		mainComponent.repaint();
+	}
+
+	/**
+	 * Listener for the help menu
+	 * @author amy
+	 *
+	 */
+	public class HelpMenuListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent event) {
+			JFrame helpFrame = new JFrame("Keyboard commands");
+
+			String helpText = "Summary of the replay keyboard commands.\n\n\n";
+			helpText += "p/P or space  pauses and plays the replay\n";
+			helpText += "+  doubles the number of steps played each frame\n";
+			helpText += "-  halves the number of steps played each frame\n";
+			helpText += "left/right arrows  go back or forward one step\n";
+			helpText += "page up/page down  go back or forward " + replay.getKeyframeInterval() + " steps\n";
+			helpText += "home/end  go to the start or end of the game\n";
+			helpText += "h  brings up this menu\n\n";
+			helpText += "Drag the slider to go to any step.";
+			JTextArea helpTextArea = new JTextArea(helpText);
+			helpTextArea.setEditable(false);
+
+			helpFrame.add(helpTextArea);
+			helpFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			helpFrame.setResizable(false);
+			helpFrame.pack();
+			helpFrame.setVisible(true);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Elo ratings for the teams in a ladder.  A game with more than two teams counts as a game
+ * between every pair of teams in it (the team with the higher score wins the pair) and each
+ * pair moves the ratings by K / (number of teams - 1) so a game is worth the same no matter
+ * how many teams are in it.
+ *
+ * @author amy
+ */
+public class EloRatings {
+	/**
+	 * The rating of a team that hasn't played yet
+	 */
+	public static final double INITIAL_RATING = 1500;
+
+	/**
+	 * How far one game moves the ratings
+	 */
+	public static final double K_FACTOR = 32;
+
+	/**
+	 * The rating of each team (by ladder name)
+	 */
+	HashMap<String, Double> ratings;
+
+	public EloRatings() {
+		ratings = new HashMap<String, Double>();
+	}
+
+	/**
+	 * @param teamName the ladder name of the team
+	 * @return the team's rating (INITIAL_RATING if it hasn't played)
+	 */
+	public double getRating(String teamName) {
+		Double rating = ratings.get(teamName);
+		return (rating == null) ? INITIAL_RATING : rating;
+	}
+
+	/**
+	 * The chance a team with ratingA beats a team with ratingB
+	 *
+	 * @param ratingA
+	 * @param ratingB
+	 * @return
+	 */
+	public static double getExpectedScore(double ratingA, double ratingB) {
+		return 1.0 / (1.0 + Math.pow(10, (ratingB - ratingA) / 400.0));
+	}
+
+	/**
+	 * Update the ratings of the teams in a game (failed games don't count)
+	 *
+	 * @param result
+	 */
+	public void update(GameResult result) {
+		ArrayList<TeamRecord> records = result.getTeamRecords();
+		if (result.isFailed() || records.size() < 2) {
+			return;
+		}
+
+		// every pair is scored with the ratings from before the game
+		double k = K_FACTOR / (records.size() - 1);
+		double[] changes = new double[records.size()];
+		for (int i = 0; i < records.size(); i++) {
+			for (int j = i + 1; j < records.size(); j++) {
+				double actual;
+				if (records.get(i).totalScore > records.get(j).totalScore) {
+					actual = 1;
+				} else if (records.get(i).totalScore < records.get(j).totalScore) {
+					actual = 0;
+				} else {
+					actual = 0.5;
+				}
+				double expected = getExpectedScore(getRating(records.get(i).teamName), getRating(records.get(j).teamName));
+				changes[i] += k * (actual - expected);
+				changes[j] -= k * (actual - expected);
+			}
+		}
+
+		for (int i = 0; i < records.size(); i++) {
+			String teamName = records.get(i).teamName;
+			ratings.put(teamName, getRating(teamName) + changes[i]);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+
+/**
+ * The results of one game of the ladder: the lines it adds to the ladder output and a record for 
+ * each team that played.  Results are kept separately for each game so games can be run 
+ * in any order (or at the same time) and then added to the ladder in game order.
+ * 
+ * @author amy
+ */
+public class GameResult {
+	/**
+	 * The game these are the results for
+	 */
+	int gameIndex;
+	
+	/**
+	 * The lines this game adds to the ladder output
+	 */
+	ArrayList<String> outputStrings;
+	
+	/**
+	 * One record for each team in the game (in the order the teams were created)
+	 */
+	ArrayList<TeamRecord> teamRecords;
+	
+	/**
+	 * True if the game crashed (and so has no team records)
+	 */
+	boolean failed;
+	
+	/**
+	 * The rule that ended the game before all its steps were played (null if it played them all)
+	 */
+	String earlyEndReason;
+	
+	/**
+	 * The time step the game ended on if it ended early
+	 */
+	int earlyEndTimestep;
+	
+	public GameResult(int gameIndex) {
+		this.gameIndex = gameIndex;
+		this.outputStrings = new ArrayList<String>();
+		this.teamRecords = new ArrayList<TeamRecord>();
+		this.failed = false;
+	}
+
+	/**
+	 * Add a line to the ladder output (and print it)
+	 * @param str
+	 */
+	public void addOutput(String str) {
+		System.out.println(str);
+		outputStrings.add(str);
+	}
+
+	/**
+	 * Add the record for a team that played this game
+	 * @param record
+	 */
+	public void addTeamRecord(TeamRecord record) {
+		teamRecords.add(record);
+	}
+
+	public int getGameIndex() {
+		return gameIndex;
+	}
+
+	public ArrayList<String> getOutputStrings() {
+		return outputStrings;
+	}
+
+	public ArrayList<TeamRecord> getTeamRecords() {
+		return teamRecords;
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+
+	public void setFailed(boolean failed) {
+		this.failed = failed;
+	}
+
+	/**
+	 * @return the rule that ended the game early (null if it played all its steps)
+	 */
+	public String getEarlyEndReason() {
+		return earlyEndReason;
+	}
+
+	public int getEarlyEndTimestep() {
+		return earlyEndTimestep;
+	}
+
+	/**
+	 * Record that the game ended before all its steps were played
+	 * 
+	 * @param earlyEndReason
+	 * @param earlyEndTimestep
+	 */
+	public void setEarlyEnd(String earlyEndReason, int earlyEndTimestep) {
+		this.earlyEndReason = earlyEndReason;
+		this.earlyEndTimestep = earlyEndTimestep;
+	}
+}
@@ -3,12 +3,21 @@ package spacesettlers.ladder;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import spacesettlers.clients.Team;
 import spacesettlers.configs.*;
@@ -26,8 +35,6 @@ import com.thoughtworks.xstream.XStream;
 public class Ladder {
 	LadderConfig ladderConfig;
 
-	SpaceSettlersSimulator simulator;
-
 	SpaceSettlersConfig simConfig;
 
 	JSAPResult parserConfig;
@@ -37,6 +44,14 @@ public class Ladder {
 	ArrayList<TeamRecord> sortedLadderResults;
 	
 	ArrayList<String> ladderOutputString;
+	
+	/**
+	 * The simulator each thread plays its games with.  It is reset for every game rather than made 
+	 * again, which saves rebuilding the world and reading the team config files for each game.
+	 * It is removed once the thread has played all its games (see runGames).
+	 */
+	private static final ThreadLocal<SpaceSettlersSimulator> reusableSimulator = new ThreadLocal<SpaceSettlersSimulator>();
+
 
 	/**
 	 * Make a new ladder
@@ -67,35 +82,22 @@ public class Ladder {
 		// load in the simulator config file
 		String configFile = parserConfig.getString("configPath") + parserConfig.getString("simulatorConfigFile");
 
-		XStream xstream = new XStream();
-		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.alias("BaseConfig", BaseConfig.class);
-		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
-		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
-		xstream.alias("FlagConfig", FlagConfig.class);
-
-
 		try { 
-			simConfig = (SpaceSettlersConfig) xstream.fromXML(new File(configFile));
-		} catch (Exception e) {
+			simConfig = ConfigurationService.getSimulatorConfig(configFile);
+		} catch (IOException e) {
 			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
 		}
 
 		// load in the ladder config file
 		configFile = parserConfig.getString("configPath") + parserConfig.getString("ladderConfigFile");
 
-		xstream = new XStream();
-		xstream.alias("LadderConfig", LadderConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-
 		try { 
-			ladderConfig = (LadderConfig) xstream.fromXML(new File(configFile));
+			ladderConfig = ConfigurationService.getLadderConfig(configFile);
 			
 			ladderConfig.makePlayerNamesUnique();
 			
 			
-		} catch (Exception e) {
+		} catch (IOException e) {
 			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
 		}
 
@@ -106,109 +108,688 @@ public class Ladder {
 	 * Runs the ladder for the specified number of games
 	 * @throws SimulatorException 
 	 */
-	@SuppressWarnings("unchecked")
 	public void run() throws SimulatorException {
-		ArrayList<HighLevelTeamConfig[]>clientsPerMatch = getAllClientsForAllMatches();
-		
-		int numGames = clientsPerMatch.size() * ladderConfig.getNumRepeatMatches();
-		System.out.println("Ladder will run " + numGames + " games");
+		ArrayList<HighLevelTeamConfig[]>clientsPerMatch = null;
+		SwissScheduler swissScheduler = null;
+		int numGames;
+		if (ladderConfig.getNumSwissRounds() > 0) {
+			// Swiss rounds are made one at a time (the full list of combinations is never made)
+			swissScheduler = makeSwissScheduler();
+			numGames = ladderConfig.getNumSwissRounds() * swissScheduler.getMatchesPerRound() * 
+					Math.max(1, ladderConfig.getNumRepeatMatches());
+			System.out.println("Ladder will run " + numGames + " games in " + ladderConfig.getNumSwissRounds() + " Swiss rounds");
+		} else {
+			clientsPerMatch = getAllClientsForAllMatches();
+			numGames = clientsPerMatch.size() * ladderConfig.getNumRepeatMatches();
+			if (ladderConfig.getRepeatConfidenceLevel() > 0) {
+				System.out.println("Ladder will run at most " + numGames + " games, repeating each match until its ranking is settled");
+			} else {
+				System.out.println("Ladder will run " + numGames + " games");
+			}
+		}
 		System.out.println("Variable teams are: ");
 		for (HighLevelTeamConfig team : ladderConfig.getVariableTeams()) {
 			System.out.println(team);
 		}
-		int gameIndex = 0;
-
-		for (int repeat = 0; repeat < ladderConfig.getNumRepeatMatches(); repeat++) {
-			for (HighLevelTeamConfig[] teamsForMatch : clientsPerMatch) {
-				gameIndex++;
-				// setup the simulator for this match
-				simConfig.setTeams(teamsForMatch);
-
-				// set the bases to match the teams for this game.  Read in the ones
-				// from the config file first (and rename them)
-				// only make new ones if we don't have enough
-				BaseConfig[] defaultBases = simConfig.getBases();
-				BaseConfig[] baseConfig = new BaseConfig[teamsForMatch.length];
-				for (int i = 0; i < teamsForMatch.length; i++) {
-					if (i < defaultBases.length) {
-						baseConfig[i] = defaultBases[i];
-						baseConfig[i].setTeamName(teamsForMatch[i].getTeamName());
-					} else {
-						baseConfig[i] = new BaseConfig(teamsForMatch[i].getTeamName());
+
+		// pick up where an earlier run left off if there is a journal
+		LadderJournal journal = null;
+		if (ladderConfig.getJournalFileName() != null) {
+			journal = new LadderJournal(parserConfig.getString("configPath") + ladderConfig.getJournalFileName());
+			try {
+				journal.load();
+			} catch (IOException e) {
+				throw new SimulatorException("Error reading the ladder journal " + e.getMessage());
+			}
+		}
+
+		// every game gets its own seed made from the ladder seed so the ladder can be 
+		// repeated exactly (no matter how many games run at once)
+		long ladderSeed = simConfig.getRandomSeed();
+		if (ladderSeed == 0 && journal != null) {
+			ladderSeed = journal.getLadderSeed();
+		}
+		while (ladderSeed == 0) {
+			ladderSeed = new Random().nextLong();
+		}
+		System.out.println("Ladder random seed is " + ladderSeed);
+
+		if (journal != null) {
+			try {
+				journal.start(ladderSeed, getConfigHash());
+			} catch (IOException e) {
+				throw new SimulatorException("Error opening the ladder journal " + e.getMessage());
+			}
+		}
+
+		// reuse the results of games an earlier ladder already played the same way
+		LadderResultCache resultCache = null;
+		if (ladderConfig.getResultCacheDirectory() != null) {
+			resultCache = new LadderResultCache(parserConfig.getString("configPath") + ladderConfig.getResultCacheDirectory(), 
+					parserConfig.getString("configPath"));
+		}
+
+		ArrayList<LadderGame> games = new ArrayList<LadderGame>();
+		HashMap<Integer, GameResult> results = new HashMap<Integer, GameResult>();
+		try {
+			if (swissScheduler != null) {
+				runSwissRounds(swissScheduler, ladderSeed, numGames, games, results, journal, resultCache);
+			} else if (ladderConfig.getRepeatConfidenceLevel() > 0) {
+				runAdaptiveRepeats(clientsPerMatch, ladderSeed, numGames, games, results, journal, resultCache);
+			} else {
+				int gameIndex = 0;
+				for (int repeat = 0; repeat < ladderConfig.getNumRepeatMatches(); repeat++) {
+					for (int matchIndex = 0; matchIndex < clientsPerMatch.size(); matchIndex++) {
+						gameIndex++;
+						long gameSeed = getGameSeed(ladderSeed, matchIndex, repeat);
+						SpaceSettlersConfig gameConfig = getGameConfig(clientsPerMatch.get(matchIndex), gameSeed, 
+								getMapSeed(ladderSeed, repeat));
+						games.add(new LadderGame(gameIndex, matchIndex, repeat, gameConfig));
 					}
 				}
-				simConfig.setBases(baseConfig);
-				
-				// if there are flags, then set the flags to also match the teams for this game
-				FlagConfig[] flagConfigs = simConfig.getFlags();
-				if (flagConfigs != null && flagConfigs.length > 0) {
-					if (flagConfigs.length != teamsForMatch.length) {
-						throw new SimulatorException("Error: The number of flags in the config file doesn't match the number of teams for the match");
-					}
-					for (int i = 0; i < teamsForMatch.length; i++) {
-						flagConfigs[i].setTeamName(teamsForMatch[i].getTeamName());
+				results.putAll(playGames(games, numGames, journal, resultCache));
+			}
+		} finally {
+			if (journal != null) {
+				journal.close();
+			}
+		}
+
+		// add the results to the ladder in game order
+		int numEarlyEndGames = 0;
+		for (LadderGame game : games) {
+			recordGameResult(results.get(game.getGameIndex()));
+			if (results.get(game.getGameIndex()).getEarlyEndReason() != null) {
+				numEarlyEndGames++;
+			}
+		}
+		if (numEarlyEndGames > 0) {
+			System.out.println(numEarlyEndGames + " of " + games.size() + " games ended early");
+		}
+
+		// the games are over so sort the records
+		sortedLadderResults = new ArrayList<TeamRecord>();
+		for (TeamRecord record : ladderResultsMap.values()) {
+			sortedLadderResults.add(record);
+		}
+		if (swissScheduler != null) {
+			// in a Swiss ladder the teams play different opponents so they are ranked by rating
+			for (TeamRecord record : sortedLadderResults) {
+				record.setRating(swissScheduler.getRatings().getRating(record.teamName));
+			}
+			Collections.sort(sortedLadderResults, new Comparator<TeamRecord>() {
+				public int compare(TeamRecord record1, TeamRecord record2) {
+					return Double.compare(record2.getRating(), record1.getRating());
+				}
+			});
+		} else {
+			Collections.sort(sortedLadderResults, new TeamRecordComparator());
+		}
+		System.out.println("Overall team order: ");
+		for (TeamRecord record : sortedLadderResults) {
+			if (swissScheduler != null) {
+				System.out.println(record.getTeamName() + " rating " + Math.round(record.getRating()) + 
+						" average score " + record.getAverageScore());
+			} else {
+				System.out.println(record.getTeamName() + " average score " + record.getAverageScore());
+			}
+		}
+	}
+
+	/**
+	 * Makes the scheduler for a Swiss ladder.  The ladder name of each variable team is read 
+	 * from its team config file since that is the name its results are kept under.
+	 * 
+	 * @return
+	 * @throws SimulatorException
+	 */
+	SwissScheduler makeSwissScheduler() throws SimulatorException {
+		HighLevelTeamConfig[] variableTeams = ladderConfig.getVariableTeams();
+		String[] ladderNames = new String[variableTeams.length];
+
+		for (int i = 0; i < variableTeams.length; i++) {
+			String fileName = parserConfig.getString("configPath") + variableTeams[i].getConfigFile();
+			try { 
+				ladderNames[i] = ConfigurationService.getTeamClientConfig(fileName).getLadderName();
+			} catch (IOException e) {
+				throw new SimulatorException("Error parsing config team config file " + fileName + " at string " + e.getMessage());
+			}
+		}
+
+		return new SwissScheduler(variableTeams, ladderNames, ladderConfig.getStaticTeams(), 
+				ladderConfig.getMaximumNumberVariableTeams());
+	}
+
+	/**
+	 * Plays a Swiss ladder: each round the scheduler puts the teams with similar ratings together, 
+	 * every match is played numRepeatMatches times, and the ratings are updated (in game order, so
+	 * the next round is the same however the games were run).
+	 * 
+	 * @param scheduler
+	 * @param ladderSeed
+	 * @param numGames
+	 * @param games filled in with the games played (in order)
+	 * @param results filled in with the results of the games (by game index)
+	 * @param journal where finished games are saved (null if there is no journal)
+	 * @param resultCache results of earlier ladders (null if results aren't cached)
+	 * @throws SimulatorException
+	 */
+	void runSwissRounds(SwissScheduler scheduler, long ladderSeed, int numGames, ArrayList<LadderGame> games, 
+			HashMap<Integer, GameResult> results, LadderJournal journal, LadderResultCache resultCache) throws SimulatorException {
+		int numRepeats = Math.max(1, ladderConfig.getNumRepeatMatches());
+		for (int round = 0; round < ladderConfig.getNumSwissRounds(); round++) {
+			ArrayList<HighLevelTeamConfig[]> roundMatches = scheduler.getNextRound();
+
+			ArrayList<LadderGame> roundGames = new ArrayList<LadderGame>();
+			for (int repeat = 0; repeat < numRepeats; repeat++) {
+				// the repeats count up across rounds so every game in the ladder gets its own seed
+				int ladderRepeat = round * numRepeats + repeat;
+				for (int matchIndex = 0; matchIndex < roundMatches.size(); matchIndex++) {
+					long gameSeed = getGameSeed(ladderSeed, matchIndex, ladderRepeat);
+					SpaceSettlersConfig gameConfig = getGameConfig(roundMatches.get(matchIndex), gameSeed, 
+							getMapSeed(ladderSeed, ladderRepeat));
+					roundGames.add(new LadderGame(games.size() + roundGames.size() + 1, matchIndex, ladderRepeat, gameConfig));
+				}
+			}
+
+			results.putAll(playGames(roundGames, numGames, journal, resultCache));
+			for (LadderGame game : roundGames) {
+				games.add(game);
+				scheduler.recordGame(results.get(game.getGameIndex()));
+			}
+			System.out.println("Finished Swiss round " + (round + 1) + " of " + ladderConfig.getNumSwissRounds());
+		}
+	}
+
+	/**
+	 * Plays the games that aren't already in the journal or the result cache and returns the results
+	 * of all of them (by game index)
+	 * 
+	 * @param games
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @param journal where finished games are saved (null if there is no journal)
+	 * @param resultCache results of earlier ladders (null if results aren't cached)
+	 * @return
+	 * @throws SimulatorException
+	 */
+	HashMap<Integer, GameResult> playGames(ArrayList<LadderGame> games, int numGames, LadderJournal journal, 
+			LadderResultCache resultCache) throws SimulatorException {
+		// only play the games that aren't already in the journal
+		HashMap<Integer, GameResult> results = new HashMap<Integer, GameResult>();
+		ArrayList<LadderGame> gamesToPlay = new ArrayList<LadderGame>();
+		for (LadderGame game : games) {
+			GameResult finishedGame = (journal == null) ? null : journal.getFinishedGame(game);
+			if (finishedGame != null) {
+				results.put(game.getGameIndex(), finishedGame);
+			} else {
+				gamesToPlay.add(game);
+			}
+		}
+		if (!results.isEmpty()) {
+			System.out.println("Skipping " + results.size() + " games already in the ladder journal");
+		}
+
+		// and the ones an earlier ladder didn't already play the same way
+		HashMap<Integer, String> cacheKeys = new HashMap<Integer, String>();
+		if (resultCache != null) {
+			gamesToPlay = getUncachedGames(gamesToPlay, resultCache, cacheKeys, results, numGames);
+		}
+
+		// record the games (after the cache keys so recording doesn't change them)
+		if (ladderConfig.getReplayDirectory() != null) {
+			for (LadderGame game : gamesToPlay) {
+				game.getSimConfig().setReplayFile(parserConfig.getString("configPath") + 
+						ladderConfig.getReplayDirectory() + File.separator + "game-" + game.getGameIndex() + ".replay");
+			}
+		}
+
+		ArrayList<GameResult> playedResults = runGames(gamesToPlay, numGames, journal);
+		for (int i = 0; i < gamesToPlay.size(); i++) {
+			LadderGame game = gamesToPlay.get(i);
+			results.put(game.getGameIndex(), playedResults.get(i));
+
+			if (resultCache != null) {
+				resultCache.putResult(game, cacheKeys.get(game.getGameIndex()), playedResults.get(i));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Plays the matches a varying number of times.  Each round plays one more repeat of every
+	 * match whose ranking isn't settled yet (see RepeatStatistics), so matches with a clear winner 
+	 * stop early and the games saved go to the close matches instead.  The ladder never plays more
+	 * than maximumGames in all (the number a fixed numRepeatMatches ladder would play).
+	 * 
+	 * @param clientsPerMatch
+	 * @param ladderSeed
+	 * @param maximumGames
+	 * @param games filled in with the games played (in order)
+	 * @param results filled in with the results of the games (by game index)
+	 * @param journal where finished games are saved (null if there is no journal)
+	 * @param resultCache results of earlier ladders (null if results aren't cached)
+	 * @throws SimulatorException
+	 */
+	void runAdaptiveRepeats(ArrayList<HighLevelTeamConfig[]> clientsPerMatch, long ladderSeed, int maximumGames, 
+			ArrayList<LadderGame> games, HashMap<Integer, GameResult> results, LadderJournal journal, 
+			LadderResultCache resultCache) throws SimulatorException {
+		double confidenceLevel = ladderConfig.getRepeatConfidenceLevel();
+		// it takes a few repeats to know how much the scores vary
+		int minimumRepeats = Math.max(RepeatStatistics.MINIMUM_REPEATS, ladderConfig.getMinimumRepeatMatches());
+		int maximumRepeats = (ladderConfig.getMaximumRepeatMatches() > 0) ? ladderConfig.getMaximumRepeatMatches() : Integer.MAX_VALUE;
+
+		// each match is checked once after every repeat from minimumRepeats on, and no match can be
+		// repeated more than the games left once every other match has had its minimum
+		int mostRepeats = Math.min(maximumRepeats, maximumGames - (clientsPerMatch.size() - 1) * minimumRepeats);
+		int numLooks = Math.max(1, mostRepeats - minimumRepeats + 1);
+
+		final HashMap<Integer, ArrayList<GameResult>> matchResults = new HashMap<Integer, ArrayList<GameResult>>();
+		final HashMap<Integer, Double> separations = new HashMap<Integer, Double>();
+		ArrayList<Integer> openMatches = new ArrayList<Integer>();
+		for (int matchIndex = 0; matchIndex < clientsPerMatch.size(); matchIndex++) {
+			matchResults.put(matchIndex, new ArrayList<GameResult>());
+			separations.put(matchIndex, 0.0);
+			openMatches.add(matchIndex);
+		}
+
+		for (int repeat = 0; !openMatches.isEmpty() && repeat < maximumRepeats && games.size() < maximumGames; repeat++) {
+			// if there aren't enough games left for every open match, the closest ones go first
+			if (openMatches.size() > maximumGames - games.size()) {
+				Collections.sort(openMatches, new Comparator<Integer>() {
+					public int compare(Integer match1, Integer match2) {
+						return Double.compare(separations.get(match1), separations.get(match2));
 					}
+				});
+			}
+
+			ArrayList<LadderGame> roundGames = new ArrayList<LadderGame>();
+			for (int matchIndex : openMatches) {
+				if (games.size() + roundGames.size() >= maximumGames) {
+					break;
 				}
+				long gameSeed = getGameSeed(ladderSeed, matchIndex, repeat);
+				SpaceSettlersConfig gameConfig = getGameConfig(clientsPerMatch.get(matchIndex), gameSeed, 
+						getMapSeed(ladderSeed, repeat));
+				roundGames.add(new LadderGame(games.size() + roundGames.size() + 1, matchIndex, repeat, gameConfig));
+			}
+
+			results.putAll(playGames(roundGames, maximumGames, journal, resultCache));
+			for (LadderGame game : roundGames) {
+				games.add(game);
+				matchResults.get(game.getMatchIndex()).add(results.get(game.getGameIndex()));
+			}
+
+			if (repeat + 1 < minimumRepeats) {
+				continue;
+			}
 
-				// tell the user the match is about to begin
-				String str = "***Game " + gameIndex + " / " + numGames + " with teams ";
-				for (HighLevelTeamConfig team : teamsForMatch) {
-					str += (team.getTeamName() + " ");
+			// stop repeating the matches that are settled
+			for (Iterator<Integer> iterator = openMatches.iterator(); iterator.hasNext(); ) {
+				int matchIndex = iterator.next();
+				double separation = RepeatStatistics.getSeparation(matchResults.get(matchIndex), confidenceLevel, numLooks);
+				separations.put(matchIndex, separation);
+				if (separation > 1) {
+					System.out.println("Match " + (matchIndex + 1) + " is settled after " + (repeat + 1) + " repeats");
+					iterator.remove();
 				}
-				str += "***";
-				System.out.println(str);
-				ladderOutputString.add(str);
+			}
+		}
 
-				try {
-					// try to make a simulator and run it
-					simulator = new SpaceSettlersSimulator(simConfig, parserConfig);
+		System.out.println("Adaptive repeats played " + games.size() + " of at most " + maximumGames + " games");
+	}
 
-					str = "***Game " + gameIndex + " / " + numGames + " with teams ";
-					Set<Team> teams = simulator.getTeams();
-					for (Team team : teams) {
-						str += (team.getTeamName() + " = " + team.getLadderName() + " ");
+	/**
+	 * Looks up each game in the result cache.  Games found in the cache have their results added to
+	 * results and the rest are returned (so they can be played).
+	 * 
+	 * @param games
+	 * @param resultCache
+	 * @param cacheKeys filled in with the cache key for each game (by game index)
+	 * @param results filled in with the results found in the cache (by game index)
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @return the games that are not in the cache
+	 */
+	ArrayList<LadderGame> getUncachedGames(ArrayList<LadderGame> games, LadderResultCache resultCache, 
+			HashMap<Integer, String> cacheKeys, HashMap<Integer, GameResult> results, int numGames) {
+		ArrayList<LadderGame> uncachedGames = new ArrayList<LadderGame>();
+		int numCachedGames = 0;
+		for (LadderGame game : games) {
+			String key = resultCache.getGameKey(game);
+			cacheKeys.put(game.getGameIndex(), key);
+
+			GameResult cachedResult = resultCache.getResult(key);
+			if (cachedResult == null) {
+				uncachedGames.add(game);
+				continue;
+			}
+
+			// number the stored result as this game
+			GameResult result = new GameResult(game.getGameIndex());
+			result.outputStrings.add("***Game " + game.getGameIndex() + " / " + numGames + " reused from the ladder result cache***");
+			result.outputStrings.addAll(cachedResult.getOutputStrings());
+			result.teamRecords.addAll(cachedResult.getTeamRecords());
+			result.setEarlyEnd(cachedResult.getEarlyEndReason(), cachedResult.getEarlyEndTimestep());
+			results.put(game.getGameIndex(), result);
+			numCachedGames++;
+		}
+		System.out.println("Reusing " + numCachedGames + " games from the ladder result cache, playing " + uncachedGames.size());
+		return uncachedGames;
+	}
+
+	/**
+	 * Runs the games (at the same time if the ladder config asks for it) and returns 
+	 * their results in game order.  The results are the same whether the games
+	 * are run one at a time or all at once.  Each game is added to the journal (if there is one)
+	 * as soon as it finishes.
+	 * 
+	 * @param games
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @param journal where finished games are saved (null if there is no journal)
+	 * @return
+	 * @throws SimulatorException
+	 */
+	ArrayList<GameResult> runGames(ArrayList<LadderGame> games, final int numGames, final LadderJournal journal) throws SimulatorException {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		if (games.isEmpty()) {
+			return results;
+		}
+
+		int numParallelGames = Math.min(ladderConfig.getNumParallelGames(), games.size());
+		if (parserConfig.getBoolean("graphics") && numParallelGames > 1) {
+			System.out.println("Graphics are on so the ladder games will be run one at a time");
+			numParallelGames = 1;
+		}
+
+		// run the games in separate JVMs if asked to (so a crash or GC pause only hurts one worker)
+		if (ladderConfig.getNumWorkerProcesses() > 0) {
+			if (parserConfig.getBoolean("graphics")) {
+				System.out.println("Graphics are on so the ladder games will be run in this JVM");
+			} else {
+				LadderCoordinator coordinator = new LadderCoordinator(ladderConfig.getNumWorkerProcesses(), 
+						ladderConfig.getWorkerJvmArguments(), ladderConfig.getWorkerGameTimeLimit(), 
+						parserConfig.getString("configPath"), journal);
+				return coordinator.runGames(games, numGames);
+			}
+		}
+
+		if (numParallelGames <= 1) {
+			try {
+				for (LadderGame game : games) {
+					GameResult result = runGame(game, numGames);
+					if (journal != null) {
+						journal.addFinishedGame(game, result);
 					}
-					str += "***";
-					System.out.println(str);
-					ladderOutputString.add(str);
-
-					// run the game
-					simulator.run();
-
-					// get the teams and print out their scores
-					for (Team team : teams) {
-						str = "Team: " + team.getLadderName() + " scored " + team.getScore();
-						ladderOutputString.add(str);
-						System.out.println(str);
-						
-						TeamRecord thisRecord;
-						if (ladderResultsMap.containsKey(team.getLadderName())) {
-							thisRecord = ladderResultsMap.get(team.getLadderName());
-						} else {
-							thisRecord = new TeamRecord(team);
+					results.add(result);
+				}
+			} finally {
+				// the simulator holds on to the whole world of its last game, so this thread 
+				// doesn't keep it once its games are done (pool threads drop theirs when they exit)
+				reusableSimulator.remove();
+			}
+			return results;
+		}
+
+		System.out.println("Running " + numParallelGames + " ladder games at a time");
+		ExecutorService gameExecutor = Executors.newFixedThreadPool(numParallelGames);
+		try {
+			ArrayList<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+			for (final LadderGame game : games) {
+				futures.add(gameExecutor.submit(new Callable<GameResult>() {
+					public GameResult call() throws Exception {
+						GameResult result = runGame(game, numGames);
+						if (journal != null) {
+							journal.addFinishedGame(game, result);
 						}
+						return result;
+					}
+				}));
+			}
 
-						thisRecord.update(team);
-						ladderResultsMap.put(team.getLadderName(), thisRecord);
+			// collect the results in game order so the output matches running them one at a time
+			for (Future<GameResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					throw new SimulatorException("Ladder was interrupted");
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof SimulatorException) {
+						throw (SimulatorException) e.getCause();
 					}
-				} catch (Exception e) {
-					System.err.println("Error in match : skipping and moving to next one");
-					ladderOutputString.add("Error in match : skipping and moving to next one");
-					ladderOutputString.add(e.toString());
-					e.printStackTrace();
+					throw new SimulatorException("Error running ladder game " + e.getCause());
 				}
 			}
+		} finally {
+			gameExecutor.shutdownNow();
 		}
+		return results;
+	}
 
-		// the games are over so sort the records
-		sortedLadderResults = new ArrayList<TeamRecord>();
-		for (TeamRecord record : ladderResultsMap.values()) {
-			sortedLadderResults.add(record);
+	/**
+	 * Makes the simulator configuration for one game: a copy of the ladder's simulator config with
+	 * the teams, bases, and flags set to match the teams for the game
+	 * 
+	 * @param teamsForMatch
+	 * @param gameSeed
+	 * @param mapSeed the seed for the game's map (0 to make the map from the gameSeed)
+	 * @return
+	 * @throws SimulatorException
+	 */
+	SpaceSettlersConfig getGameConfig(HighLevelTeamConfig[] teamsForMatch, long gameSeed, long mapSeed) throws SimulatorException {
+		// the simulator changes the team configs, so each game gets its own copy of everything
+		SpaceSettlersConfig gameConfig = ConfigurationService.copy(simConfig);
+		teamsForMatch = ConfigurationService.copy(teamsForMatch);
+
+		// setup the simulator for this match
+		gameConfig.setTeams(teamsForMatch);
+		gameConfig.setRandomSeed(gameSeed);
+		gameConfig.setMapSeed(mapSeed);
+
+		// a replay file in the simulator config would be written over by every game, so games are
+		// only recorded when the ladder's replayDirectory gives each one its own file (see playGames)
+		gameConfig.setReplayFile(null);
+
+		// checkpoints are for resuming a single game (the ladder resumes from its journal instead)
+		// and every game would save to and resume from the same file
+		gameConfig.setCheckpointFile(null);
+		gameConfig.setCheckpointInterval(0);
+		gameConfig.setResumeFromCheckpoint(false);
+
+		// the teams in all the games running at the same time share the cores for their helper threads
+		if (gameConfig.getHelperThreadsPerTeam() <= 0) {
+			int numGamesAtOnce = (ladderConfig.getNumWorkerProcesses() > 0) ? ladderConfig.getNumWorkerProcesses()
+					: Math.max(1, ladderConfig.getNumParallelGames());
+			int numTeamsAtOnce = Math.max(1, teamsForMatch.length) * numGamesAtOnce;
+			gameConfig.setHelperThreadsPerTeam(Math.max(1, Runtime.getRuntime().availableProcessors() / numTeamsAtOnce));
 		}
-		Collections.sort(sortedLadderResults, new TeamRecordComparator());
-		System.out.println("Overall team order: ");
-		for (TeamRecord record : sortedLadderResults) {
-			System.out.println(record.getTeamName() + " average score " + record.getAverageScore());
+
+		// set the bases to match the teams for this game.  Read in the ones
+		// from the config file first (and rename them)
+		// only make new ones if we don't have enough
+		BaseConfig[] defaultBases = gameConfig.getBases();
+		BaseConfig[] baseConfig = new BaseConfig[teamsForMatch.length];
+		for (int i = 0; i < teamsForMatch.length; i++) {
+			if (i < defaultBases.length) {
+				baseConfig[i] = defaultBases[i];
+				baseConfig[i].setTeamName(teamsForMatch[i].getTeamName());
+			} else {
+				baseConfig[i] = new BaseConfig(teamsForMatch[i].getTeamName());
+			}
+		}
+		gameConfig.setBases(baseConfig);
+		
+		// if there are flags, then set the flags to also match the teams for this game
+		FlagConfig[] flagConfigs = gameConfig.getFlags();
+		if (flagConfigs != null && flagConfigs.length > 0) {
+			if (flagConfigs.length != teamsForMatch.length) {
+				throw new SimulatorException("Error: The number of flags in the config file doesn't match the number of teams for the match");
+			}
+			for (int i = 0; i < teamsForMatch.length; i++) {
+				flagConfigs[i].setTeamName(teamsForMatch[i].getTeamName());
+			}
+		}
+		
+		return gameConfig;
+	}
+
+	/**
+	 * Hash of everything that decides which games the ladder plays and how they are played: the
+	 * simulator config and the ladder config with its teams.  The settings for where the output
+	 * goes and how many games run at once are left out since they don't change any game.
+	 *
+	 * @return
+	 */
+	String getConfigHash() {
+		XStream xstream = new XStream();
+		String[] runSettings = {"outputFileName", "numParallelGames", "numWorkerProcesses", "workerJvmArguments",
+				"workerGameTimeLimit", "journalFileName", "resultCacheDirectory", "replayDirectory"};
+		for (String field : runSettings) {
+			xstream.omitField(LadderConfig.class, field);
+		}
+
+		MessageDigest digest = LadderResultCache.newDigest();
+		LadderResultCache.update(digest, "simulator " + xstream.toXML(simConfig));
+		LadderResultCache.update(digest, "ladder " + xstream.toXML(ladderConfig));
+		return LadderResultCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the random seed for a game.  The seed only depends on the ladder seed, the match, 
+	 * and the repeat so a game is played the same way no matter when (or on which thread) it runs.
+	 * 
+	 * @param ladderSeed
+	 * @param matchIndex
+	 * @param repeat
+	 * @return a seed that is never 0 (since 0 tells the simulator to pick a random seed)
+	 */
+	protected static long getGameSeed(long ladderSeed, int matchIndex, int repeat) {
+		// mix the bits (splitmix64 finalizer) so nearby games get unrelated seeds
+		long seed = ladderSeed + 0x9E3779B97F4A7C15L * (((long) matchIndex << 32) + repeat + 1);
+		seed = (seed ^ (seed >>> 30)) * 0xBF58476D1CE4E5B9L;
+		seed = (seed ^ (seed >>> 27)) * 0x94D049BB133111EBL;
+		seed = seed ^ (seed >>> 31);
+		if (seed == 0) {
+			seed = 1;
+		}
+		return seed;
+	}
+
+	/**
+	 * Returns the map seed for the games in a repeat: if every match is played on the same maps, 
+	 * all the matches in a repeat share one seed for their map (otherwise each game's map is made 
+	 * from its own seed).
+	 * 
+	 * @param ladderSeed
+	 * @param repeat
+	 * @return the map seed (0 if each game makes its own map)
+	 */
+	long getMapSeed(long ladderSeed, int repeat) {
+		if (!ladderConfig.isSameMapsForAllMatches()) {
+			return 0;
+		}
+		// match -1 so the maps don't share a seed with any game
+		return getGameSeed(ladderSeed, -1, repeat);
+	}
+
+	/**
+	 * Plays one game of the ladder and returns its results
+	 * 
+	 * @param game
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @return
+	 */
+	GameResult runGame(LadderGame game, int numGames) {
+		return runGame(game, numGames, parserConfig);
+	}
+
+	/**
+	 * Plays one game of the ladder and returns its results (used by the ladder and by 
+	 * ladder worker processes)
+	 * 
+	 * @param game
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @param parserConfig the command line arguments for the simulator
+	 * @return
+	 */
+	static GameResult runGame(LadderGame game, int numGames, JSAPResult parserConfig) {
+		GameResult result = new GameResult(game.getGameIndex());
+		HighLevelTeamConfig[] teamsForMatch = game.getTeams();
+
+		// tell the user the match is about to begin
+		String str = "***Game " + game.getGameIndex() + " / " + numGames + " with teams ";
+		for (HighLevelTeamConfig team : teamsForMatch) {
+			str += (team.getTeamName() + " ");
+		}
+		str += "***";
+		result.addOutput(str);
+
+		try {
+			// try to make a simulator (or reset the one this thread played its last game with) and run it
+			SpaceSettlersSimulator simulator = reusableSimulator.get();
+			if (simulator == null || parserConfig.getBoolean("graphics")) {
+				simulator = new SpaceSettlersSimulator(game.getSimConfig(), parserConfig);
+				if (!parserConfig.getBoolean("graphics")) {
+					reusableSimulator.set(simulator);
+				}
+			} else {
+				simulator.reset(game.getSimConfig(), parserConfig);
+			}
+
+			str = "***Game " + game.getGameIndex() + " / " + numGames + " with teams ";
+			Set<Team> teams = simulator.getTeams();
+			for (Team team : teams) {
+				str += (team.getTeamName() + " = " + team.getLadderName() + " ");
+			}
+			str += "***";
+			result.addOutput(str);
+
+			// run the game
+			simulator.run();
+
+			if (simulator.getEarlyEndReason() != null) {
+				result.setEarlyEnd(simulator.getEarlyEndReason(), simulator.getTimestep());
+				result.addOutput("Game " + game.getGameIndex() + " ended early on step " + simulator.getTimestep() + 
+						" of " + game.getSimConfig().getSimulationSteps() + " (" + simulator.getEarlyEndReason() + ")");
+			}
+
+			// get the teams and print out their scores
+			for (Team team : teams) {
+				result.addOutput("Team: " + team.getLadderName() + " scored " + team.getScore());
+				
+				TeamRecord thisRecord = new TeamRecord(team);
+				thisRecord.update(team);
+				result.addTeamRecord(thisRecord);
+			}
+		} catch (Exception e) {
+			// don't reuse a simulator that stopped part way through a game
+			reusableSimulator.remove();
+			System.err.println("Error in match : skipping and moving to next one");
+			result.outputStrings.add("Error in match : skipping and moving to next one");
+			result.outputStrings.add(e.toString());
+			result.setFailed(true);
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Adds the results of a game to the ladder
+	 * 
+	 * @param result
+	 */
+	void recordGameResult(GameResult result) {
+		ladderOutputString.addAll(result.getOutputStrings());
+
+		for (TeamRecord gameRecord : result.getTeamRecords()) {
+			TeamRecord thisRecord;
+			if (ladderResultsMap.containsKey(gameRecord.teamName)) {
+				thisRecord = ladderResultsMap.get(gameRecord.teamName);
+			} else {
+				thisRecord = new TeamRecord(gameRecord.teamName);
+			}
+
+			thisRecord.merge(gameRecord);
+			ladderResultsMap.put(gameRecord.teamName, thisRecord);
 		}
 	}
 
@@ -389,6 +970,9 @@ public class Ladder {
 		str += "<th>Average Score</th>";
 		str += "<th>Average Beacons</th>";
 		str += "<th>Average Resources</th>";
+		if (ladderConfig.getNumSwissRounds() > 0) {
+			str += "<th>Rating</th>";
+		}
 		str += "</tr>";
 		
 		int place = 1;
@@ -399,6 +983,9 @@ public class Ladder {
 			str += "<td>" + record.getAverageScore() + "</td>\n";
 			str += "<td>" + record.getAverageBeacons() + "</td>\n";
 			str += "<td>" + record.getAverageResources() + "</td>\n";
+			if (ladderConfig.getNumSwissRounds() > 0) {
+				str += "<td>" + Math.round(record.getRating()) + "</td>\n";
+			}
 			str += "</tr>";
 			place++;
 		}
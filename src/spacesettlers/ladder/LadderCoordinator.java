@@ -0,0 +1,436 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import spacesettlers.simulator.SimulatorContext;
+import spacesettlers.simulator.SimulatorException;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Runs the ladder games in separate worker JVMs (see LadderWorker) so a client that crashes
+ * its JVM (or makes it spend all its time in garbage collection) only hurts the games in
+ * one worker.
+ *
+ * The games wait in one shared queue and each worker takes the next game as soon as it finishes
+ * the last one, so fast workers take on more games than slow ones.  If a worker dies in the
+ * middle of a game, it is restarted and the game goes back into the queue (a game that kills
+ * MAXIMUM_GAME_ATTEMPTS workers is recorded as an error).  A worker that is still playing a game
+ * after its time limit is killed and the game is recorded as an error.  The limit is the ladder's
+ * workerGameTimeLimit or, if it doesn't set one, every step taking as long as a team action may take
+ * (plus GAME_TIME_SLACK).  A game where every call into every client runs to its timeout would take
+ * several times longer, but real games never come near that and a stuck worker would hold up the
+ * ladder for hours.
+ *
+ * Games and results are sent as one line each over the worker's stdin and stdout (see LadderWorker).
+ *
+ * @author amy
+ */
+public class LadderCoordinator {
+	/**
+	 * The number of times a game is tried before giving up on it
+	 */
+	public static final int MAXIMUM_GAME_ATTEMPTS = 3;
+
+	/**
+	 * Time (in MILLISECONDS) a worker gets on top of the time for the steps, for starting the
+	 * clients, loading knowledge, and so on
+	 */
+	public static final long GAME_TIME_SLACK = 10 * 60 * 1000;
+
+	/**
+	 * The number of worker JVMs
+	 */
+	int numWorkers;
+
+	/**
+	 * Extra arguments for the worker JVMs
+	 */
+	List<String> workerJvmArguments;
+
+	/**
+	 * The most time (in MILLISECONDS) a worker may spend on one game (0 to work it out from the game)
+	 */
+	long gameTimeLimit;
+
+	/**
+	 * The path to the config files (passed to the workers)
+	 */
+	String configPath;
+
+	/**
+	 * The games that haven't been played yet
+	 */
+	LinkedBlockingQueue<LadderGame> gameQueue;
+
+	/**
+	 * The results so far (indexed by game index)
+	 */
+	Map<Integer, GameResult> results;
+
+	/**
+	 * The number of times each game has been tried (indexed by game index)
+	 */
+	Map<Integer, Integer> gameAttempts;
+
+	/**
+	 * Where finished games are saved (null if there is no journal)
+	 */
+	LadderJournal journal;
+
+	/**
+	 * Kills the workers that run out of time
+	 */
+	Timer workerTimer;
+
+	/**
+	 * Make a coordinator
+	 *
+	 * @param numWorkers the number of worker JVMs to run
+	 * @param workerJvmArguments extra arguments for the worker JVMs separated by spaces (can be null)
+	 * @param gameTimeLimit the most MINUTES a worker may spend on one game (0 to work it out from the game)
+	 * @param configPath the path to the config files
+	 * @param journal where finished games are saved (null if there is no journal)
+	 */
+	public LadderCoordinator(int numWorkers, String workerJvmArguments, int gameTimeLimit, String configPath, 
+			LadderJournal journal) {
+		this.numWorkers = numWorkers;
+		this.gameTimeLimit = gameTimeLimit * 60L * 1000L;
+		this.configPath = configPath;
+		this.journal = journal;
+		this.workerJvmArguments = new ArrayList<String>();
+		if (workerJvmArguments != null) {
+			for (String argument : workerJvmArguments.trim().split("\\s+")) {
+				if (argument.length() > 0) {
+					this.workerJvmArguments.add(argument);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Plays all the games in the worker JVMs and returns the results in the same order as the games
+	 *
+	 * @param games
+	 * @param numGames the total number of games in the ladder (for printing)
+	 * @return
+	 * @throws SimulatorException
+	 */
+	public ArrayList<GameResult> runGames(ArrayList<LadderGame> games, final int numGames) throws SimulatorException {
+		gameQueue = new LinkedBlockingQueue<LadderGame>(games);
+		results = new ConcurrentHashMap<Integer, GameResult>();
+		gameAttempts = new HashMap<Integer, Integer>();
+		workerTimer = new Timer("ladder-worker-timer", true);
+
+		int workersToStart = Math.min(numWorkers, games.size());
+		System.out.println("Running the ladder games in " + workersToStart + " worker JVMs");
+
+		ArrayList<Thread> workerThreads = new ArrayList<Thread>();
+		for (int i = 0; i < workersToStart; i++) {
+			final int workerNumber = i + 1;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					runWorker(workerNumber, numGames);
+				}
+			}, "ladder-worker-" + workerNumber);
+			thread.start();
+			workerThreads.add(thread);
+		}
+
+		try {
+			for (Thread thread : workerThreads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new SimulatorException("Ladder was interrupted");
+		} finally {
+			workerTimer.cancel();
+		}
+
+		ArrayList<GameResult> orderedResults = new ArrayList<GameResult>();
+		for (LadderGame game : games) {
+			orderedResults.add(results.get(game.getGameIndex()));
+		}
+		return orderedResults;
+	}
+
+	/**
+	 * Keeps one worker JVM busy until the queue is empty (restarting it if it dies)
+	 *
+	 * @param workerNumber
+	 * @param numGames
+	 */
+	void runWorker(int workerNumber, int numGames) {
+		XStream xstream = new XStream();
+		WorkerProcess worker = null;
+
+		LadderGame game;
+		while ((game = gameQueue.poll()) != null) {
+			try {
+				if (worker == null) {
+					worker = new WorkerProcess(startWorkerProcess());
+				}
+				recordResult(game, worker.play(xstream, game, numGames, workerTimer, getGameTimeLimit(game, gameTimeLimit)));
+			} catch (WorkerTimeoutException e) {
+				// the worker is stuck so it is killed and the game isn't tried again
+				System.err.println("Worker " + workerNumber + " ran out of time in game " + game.getGameIndex() + ": " + e.getMessage());
+				worker.destroy();
+				worker = null;
+
+				GameResult result = new GameResult(game.getGameIndex());
+				result.outputStrings.add("Error in match : skipping and moving to next one");
+				result.outputStrings.add("Game " + game.getGameIndex() + " " + e.getMessage());
+				result.setFailed(true);
+				recordResult(game, result);
+			} catch (IOException e) {
+				// the worker crashed (or a client took the whole JVM down with it)
+				System.err.println("Worker " + workerNumber + " died during game " + game.getGameIndex() + ": " + e.getMessage());
+				if (worker != null) {
+					worker.destroy();
+					worker = null;
+				}
+
+				if (recordAttempt(game) < MAXIMUM_GAME_ATTEMPTS) {
+					gameQueue.add(game);
+				} else {
+					GameResult result = new GameResult(game.getGameIndex());
+					result.outputStrings.add("Error in match : skipping and moving to next one");
+					result.outputStrings.add("Game " + game.getGameIndex() + " crashed its worker " + MAXIMUM_GAME_ATTEMPTS + " times");
+					result.setFailed(true);
+					recordResult(game, result);
+				}
+			}
+		}
+
+		if (worker != null) {
+			worker.quit();
+		}
+	}
+
+	/**
+	 * The longest a worker may take to play a game before it is killed: the configured limit, or
+	 * every step taking as long as a team action may take plus GAME_TIME_SLACK (never more than
+	 * every step taking as long as all of the timeouts allow)
+	 *
+	 * @param game
+	 * @param configuredLimit the limit from the ladder config in MILLISECONDS (0 if it doesn't set one)
+	 * @return the time in MILLISECONDS
+	 */
+	static long getGameTimeLimit(LadderGame game, long configuredLimit) {
+		if (configuredLimit > 0) {
+			return configuredLimit;
+		}
+		SimulatorContext context = new SimulatorContext(game.getSimConfig(), false);
+		long numSteps = Math.max(1, game.getSimConfig().getSimulationSteps());
+		long stepTime = Math.min(context.getTeamActionTimeout(), context.getMaximumStepTime());
+		return numSteps * stepTime + GAME_TIME_SLACK;
+	}
+
+	/**
+	 * Save the result of a finished game (and add it to the journal)
+	 *
+	 * @param game
+	 * @param result
+	 */
+	private void recordResult(LadderGame game, GameResult result) {
+		if (journal != null) {
+			journal.addFinishedGame(game, result);
+		}
+		results.put(game.getGameIndex(), result);
+	}
+
+	/**
+	 * Count another try at a game
+	 *
+	 * @param game
+	 * @return the number of times the game has been tried
+	 */
+	private synchronized int recordAttempt(LadderGame game) {
+		Integer attempts = gameAttempts.get(game.getGameIndex());
+		attempts = (attempts == null) ? 1 : attempts + 1;
+		gameAttempts.put(game.getGameIndex(), attempts);
+		return attempts;
+	}
+
+	/**
+	 * Start a worker JVM with the same java and classpath as this one
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	Process startWorkerProcess() throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+		List<String> command = new ArrayList<String>();
+		command.add(java);
+		command.addAll(workerJvmArguments);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(LadderWorker.class.getName());
+		command.add("--configPath");
+		command.add(configPath);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		// everything the games print goes to the worker's stderr (stdout is used to send results)
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Turns an object into a single line of text (to send it to or from a worker)
+	 *
+	 * @param xstream
+	 * @param object
+	 * @return
+	 */
+	static String encode(XStream xstream, Object object) {
+		return Base64.getEncoder().encodeToString(xstream.toXML(object).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Turns a line made by encode back into an object
+	 *
+	 * @param xstream
+	 * @param line
+	 * @return
+	 */
+	static Object decode(XStream xstream, String line) {
+		return xstream.fromXML(new String(Base64.getDecoder().decode(line), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Thrown when a worker doesn't finish a game in time
+	 */
+	static class WorkerTimeoutException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		WorkerTimeoutException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * A running worker JVM
+	 */
+	static class WorkerProcess {
+		Process process;
+
+		BufferedWriter toWorker;
+
+		BufferedReader fromWorker;
+
+		/**
+		 * Set when the worker is killed for taking too long
+		 */
+		volatile boolean timedOut;
+
+		WorkerProcess(Process process) {
+			this.process = process;
+			this.toWorker = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+			this.fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Send a game to the worker and wait for its result
+		 *
+		 * @param xstream
+		 * @param game
+		 * @param numGames
+		 * @param timer kills the worker if it runs out of time
+		 * @param timeLimit the time in MILLISECONDS the worker has for the game (Long.MAX_VALUE for no limit)
+		 * @return
+		 * @throws WorkerTimeoutException if the worker ran out of time (and was killed)
+		 * @throws IOException if the worker died
+		 */
+		GameResult play(XStream xstream, LadderGame game, int numGames, Timer timer, final long timeLimit) throws IOException {
+			TimerTask killer = null;
+			if (timeLimit != Long.MAX_VALUE) {
+				// killing the worker makes the readLine below return
+				killer = new TimerTask() {
+					public void run() {
+						timedOut = true;
+						process.destroyForcibly();
+					}
+				};
+				timer.schedule(killer, timeLimit);
+			}
+
+			try {
+				toWorker.write(LadderWorker.GAME_COMMAND + " " + numGames + " " + encode(xstream, game));
+				toWorker.newLine();
+				toWorker.flush();
+
+				String line;
+				while ((line = fromWorker.readLine()) != null) {
+					if (line.startsWith(LadderWorker.RESULT_COMMAND + " ")) {
+						try {
+							return (GameResult) decode(xstream, line.substring(LadderWorker.RESULT_COMMAND.length() + 1));
+						} catch (RuntimeException e) {
+							throw new IOException("garbled result from worker " + e);
+						}
+					}
+				}
+				throw new IOException("worker exited with code " + waitForExit());
+			} catch (IOException e) {
+				if (timedOut) {
+					throw new WorkerTimeoutException("took longer than " + timeLimit + " ms");
+				}
+				throw e;
+			} finally {
+				if (killer != null) {
+					killer.cancel();
+				}
+			}
+		}
+
+		/**
+		 * Tell the worker to exit once it is done
+		 */
+		void quit() {
+			try {
+				toWorker.write(LadderWorker.QUIT_COMMAND);
+				toWorker.newLine();
+				toWorker.close();
+				process.waitFor();
+			} catch (IOException e) {
+				process.destroy();
+			} catch (InterruptedException e) {
+				process.destroy();
+			}
+		}
+
+		/**
+		 * Kill the worker
+		 */
+		void destroy() {
+			process.destroy();
+		}
+
+		/**
+		 * Wait for a worker that is exiting
+		 * @return its exit code
+		 */
+		private int waitForExit() {
+			try {
+				return process.waitFor();
+			} catch (InterruptedException e) {
+				return -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package spacesettlers.ladder;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+
+/**
+ * One game of the ladder: which match it is, which repeat of that match, and the 
+ * simulator configuration (teams, bases, flags, and random seed) to play it with.
+ * Each game gets its own copy of the configuration so games can run at the same time.
+ * 
+ * @author amy
+ */
+public class LadderGame {
+	/**
+	 * The number of this game in the ladder (starting at 1, used for printing)
+	 */
+	int gameIndex;
+	
+	/**
+	 * Which set of teams is playing (the index into the list of all matches)
+	 */
+	int matchIndex;
+	
+	/**
+	 * Which repeat of the match this is
+	 */
+	int repeat;
+	
+	/**
+	 * The configuration for the simulator (owned by this game only)
+	 */
+	SpaceSettlersConfig simConfig;
+
+	public LadderGame(int gameIndex, int matchIndex, int repeat, SpaceSettlersConfig simConfig) {
+		this.gameIndex = gameIndex;
+		this.matchIndex = matchIndex;
+		this.repeat = repeat;
+		this.simConfig = simConfig;
+	}
+
+	public int getGameIndex() {
+		return gameIndex;
+	}
+
+	public int getMatchIndex() {
+		return matchIndex;
+	}
+
+	public int getRepeat() {
+		return repeat;
+	}
+
+	public SpaceSettlersConfig getSimConfig() {
+		return simConfig;
+	}
+
+	/**
+	 * The random seed the game is played with
+	 * @return
+	 */
+	public long getRandomSeed() {
+		return simConfig.getRandomSeed();
+	}
+
+	/**
+	 * The teams playing in this game
+	 * @return
+	 */
+	public HighLevelTeamConfig[] getTeams() {
+		return simConfig.getTeams();
+	}
+}
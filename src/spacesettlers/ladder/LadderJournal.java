@@ -0,0 +1,269 @@
+package spacesettlers.ladder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Append-only journal of finished ladder games so a ladder that dies part way through can
+ * pick up where it left off.  Each finished game is written as one line as soon as it ends
+ * and a restarted ladder reads the journal back and only plays the games that are missing.
+ *
+ * Every line starts with a CRC32 of the rest of the line.  If the ladder is killed while a line
+ * is being written, the partial line fails its check when the journal is read back and is cut off
+ * (along with anything after it), so the journal is always valid up to the last whole game.
+ * Games that failed (crashed or ran out of time) aren't written so they are played again.
+ *
+ * The first line holds a hash of the ladder's settings and teams (see Ladder.getConfigHash)
+ * and a journal written by a ladder with other settings is never resumed.
+ *
+ * <pre>
+ * crc LADDER ladderSeed configHash
+ * crc GAME matchIndex repeat seed encodedGameResult
+ * </pre>
+ *
+ * @author amy
+ */
+public class LadderJournal {
+	private static final String LADDER_RECORD = "LADDER";
+
+	private static final String GAME_RECORD = "GAME";
+
+	/**
+	 * The journal file
+	 */
+	File file;
+
+	/**
+	 * Used to turn results into text
+	 */
+	XStream xstream;
+
+	/**
+	 * The games already in the journal (keyed by getGameKey)
+	 */
+	Map<String, GameResult> finishedGames;
+
+	/**
+	 * The ladder seed stored in the journal (0 if the journal is new)
+	 */
+	long ladderSeed;
+
+	/**
+	 * The hash of the ladder settings stored in the journal (null if the journal is new)
+	 */
+	String configHash;
+
+	/**
+	 * Open for appending once the journal has been read in
+	 */
+	FileOutputStream out;
+
+	public LadderJournal(String fileName) {
+		this.file = new File(fileName);
+		this.xstream = new XStream();
+		this.finishedGames = new HashMap<String, GameResult>();
+		this.ladderSeed = 0;
+	}
+
+	/**
+	 * The key a game is stored under.  The seed is part of the key so a game is only
+	 * reused if it would be played exactly the same way.
+	 *
+	 * @param matchIndex
+	 * @param repeat
+	 * @param seed
+	 * @return
+	 */
+	static String getGameKey(int matchIndex, int repeat, long seed) {
+		return matchIndex + " " + repeat + " " + seed;
+	}
+
+	/**
+	 * Reads in the games already in the journal (cutting off anything after the last good line)
+	 *
+	 * @throws IOException
+	 */
+	public void load() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+
+		byte[] contents = Files.readAllBytes(file.toPath());
+		int lineStart = 0;
+		int validLength = 0;
+		while (lineStart < contents.length) {
+			int lineEnd = lineStart;
+			while (lineEnd < contents.length && contents[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			if (lineEnd == contents.length) {
+				// no newline so the line was never finished
+				break;
+			}
+
+			String line = new String(contents, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+			if (!readLine(line)) {
+				break;
+			}
+
+			lineStart = lineEnd + 1;
+			validLength = lineStart;
+		}
+
+		if (validLength < contents.length) {
+			System.out.println("Ladder journal " + file + " ends with a partly written game, dropping the last " +
+					(contents.length - validLength) + " bytes");
+			RandomAccessFile truncator = new RandomAccessFile(file, "rw");
+			try {
+				truncator.setLength(validLength);
+			} finally {
+				truncator.close();
+			}
+		}
+
+		System.out.println("Ladder journal " + file + " has " + finishedGames.size() + " finished games");
+	}
+
+	/**
+	 * Check and read one line of the journal
+	 *
+	 * @param line
+	 * @return false if the line is damaged
+	 */
+	private boolean readLine(String line) {
+		int space = line.indexOf(' ');
+		if (space < 0) {
+			return false;
+		}
+
+		String payload = line.substring(space + 1);
+		if (!line.substring(0, space).equals(getChecksum(payload))) {
+			return false;
+		}
+
+		try {
+			String[] parts = payload.split(" ");
+			if (parts[0].equals(LADDER_RECORD)) {
+				ladderSeed = Long.parseLong(parts[1]);
+				configHash = parts[2];
+			} else if (parts[0].equals(GAME_RECORD)) {
+				String key = getGameKey(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+				finishedGames.put(key, (GameResult) LadderCoordinator.decode(xstream, parts[4]));
+			} else {
+				return false;
+			}
+		} catch (RuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Start appending to the journal.  A new journal starts with the ladder seed so a restarted
+	 * ladder with a random seed makes the same games.
+	 *
+	 * @param ladderSeed
+	 * @param configHash hash of the ladder settings and teams (see Ladder.getConfigHash)
+	 * @throws IOException if the journal was written by a ladder with other settings
+	 */
+	public void start(long ladderSeed, String configHash) throws IOException {
+		if (this.ladderSeed != 0 && !configHash.equals(this.configHash)) {
+			throw new IOException(file + " was written by a ladder with different settings or teams " +
+					"(delete it to start the ladder over)");
+		}
+
+		out = new FileOutputStream(file, true);
+		if (this.ladderSeed == 0) {
+			this.ladderSeed = ladderSeed;
+			this.configHash = configHash;
+			append(LADDER_RECORD + " " + ladderSeed + " " + configHash);
+		}
+	}
+
+	/**
+	 * @return the ladder seed stored in the journal (0 if there isn't one)
+	 */
+	public long getLadderSeed() {
+		return ladderSeed;
+	}
+
+	/**
+	 * Returns the result of the game if it is already in the journal (and null otherwise)
+	 *
+	 * @param game
+	 * @return
+	 */
+	public GameResult getFinishedGame(LadderGame game) {
+		return finishedGames.get(getGameKey(game.getMatchIndex(), game.getRepeat(), game.getRandomSeed()));
+	}
+
+	/**
+	 * Add a finished game to the journal (written to disk before this returns).  A game that
+	 * failed is left out so a restarted ladder plays it again.
+	 *
+	 * @param game
+	 * @param result
+	 */
+	public synchronized void addFinishedGame(LadderGame game, GameResult result) {
+		if (result.isFailed()) {
+			return;
+		}
+		String key = getGameKey(game.getMatchIndex(), game.getRepeat(), game.getRandomSeed());
+		try {
+			append(GAME_RECORD + " " + key + " " + LadderCoordinator.encode(xstream, result));
+			finishedGames.put(key, result);
+		} catch (IOException e) {
+			System.err.println("Error writing game " + game.getGameIndex() + " to the ladder journal");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Close the journal
+	 */
+	public synchronized void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+	/**
+	 * Write one line (with its checksum) and make sure it is on disk
+	 *
+	 * @param payload
+	 * @throws IOException
+	 */
+	private synchronized void append(String payload) throws IOException {
+		String line = getChecksum(payload) + " " + payload + "\n";
+		out.write(line.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		out.getChannel().force(false);
+	}
+
+	/**
+	 * The CRC32 of a string (as hex)
+	 *
+	 * @param payload
+	 * @return
+	 */
+	private static String getChecksum(String payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload.getBytes(StandardCharsets.UTF_8));
+		return Long.toHexString(crc.getValue());
+	}
+}
@@ -0,0 +1,384 @@
+package spacesettlers.ladder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import spacesettlers.configs.ConfigurationService;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.configs.TeamClientConfig;
+import spacesettlers.simulator.SpaceSettlersSimulator;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Keeps the results of finished ladder games on disk so a later ladder doesn't play a game
+ * again if it would come out exactly the same.  Each result is stored under a SHA-256 key made from
+ * everything that decides how the game is played:
+ *
+ * <ul>
+ * <li>the simulator's classes</li>
+ * <li>for each team, the classes in its client's package, its team config file, and its knowledge file</li>
+ * <li>the simulator config for the game (which includes the teams and the game's random seed), leaving
+ * out the settings for how the game is run (helper threads, replays and checkpoints) since they depend
+ * on the machine and the ladder's parallelism and not on how the game comes out</li>
+ * </ul>
+ *
+ * So after one team's code changes, only the games that team plays get new keys and are played again.
+ *
+ * A client that changes its knowledge file while the ladder runs (a learning client) makes its games
+ * depend on the order they were played in, so those games are not stored.
+ *
+ * @author amy
+ */
+public class LadderResultCache {
+	/**
+	 * Change this to throw away every stored result (for example if GameResult changes)
+	 */
+	private static final String CACHE_VERSION = "1";
+
+	/**
+	 * The simulator config settings left out of the game keys (see the class comment)
+	 */
+	private static final String[] RUN_SETTINGS = {"helperThreadsPerTeam", "replayFile", "replayKeyframeInterval",
+			"checkpointFile", "checkpointInterval", "resumeFromCheckpoint"};
+
+	/**
+	 * The directory the results are kept in (one file per game)
+	 */
+	File directory;
+
+	/**
+	 * The path to the config files (team config files are relative to this)
+	 */
+	String configPath;
+
+	/**
+	 * Used to turn configs and results into text
+	 */
+	XStream xstream;
+
+	/**
+	 * Hashes of the client code already looked at (code doesn't change while the ladder runs)
+	 */
+	Map<String, String> codeHashes;
+
+	/**
+	 * Hashes of config and knowledge files (keyed by name, length, and modification time so
+	 * a file that changes is hashed again)
+	 */
+	Map<String, String> fileHashes;
+
+	/**
+	 * The code hash each game key was made from (to check nothing changed before a result is stored)
+	 */
+	Map<String, String> codeKeys;
+
+	public LadderResultCache(String directoryName, String configPath) {
+		this.directory = new File(directoryName);
+		this.configPath = configPath;
+		this.xstream = new XStream();
+		for (String field : RUN_SETTINGS) {
+			xstream.omitField(SpaceSettlersConfig.class, field);
+		}
+		this.codeHashes = new HashMap<String, String>();
+		this.fileHashes = new HashMap<String, String>();
+		this.codeKeys = new HashMap<String, String>();
+		directory.mkdirs();
+	}
+
+	/**
+	 * Returns the key the result of a game is stored under (or null if some part of
+	 * the game couldn't be hashed, in which case the game is never cached)
+	 *
+	 * @param game
+	 * @return
+	 */
+	public String getGameKey(LadderGame game) {
+		String codeKey = getCodeKey(game);
+		if (codeKey == null) {
+			return null;
+		}
+
+		MessageDigest digest = newDigest();
+		update(digest, "version " + CACHE_VERSION);
+		update(digest, "code " + codeKey);
+		// the game's config has the teams, bases, and the seed in it (this has to be hashed 
+		// before the game is played since the simulator changes the config as it runs)
+		update(digest, "config " + xstream.toXML(game.getSimConfig()));
+
+		String key = toHex(digest.digest());
+		synchronized (this) {
+			codeKeys.put(key, codeKey);
+		}
+		return key;
+	}
+
+	/**
+	 * Hash of the code, team configs, and knowledge of the simulator and every team in the game
+	 *
+	 * @param game
+	 * @return the hash or null if some part couldn't be hashed
+	 */
+	private String getCodeKey(LadderGame game) {
+		MessageDigest digest = newDigest();
+		String simulatorHash = getCodeHash(SpaceSettlersSimulator.class.getName(), 1);
+		if (simulatorHash == null) {
+			return null;
+		}
+		update(digest, "simulator " + simulatorHash);
+
+		for (HighLevelTeamConfig team : game.getTeams()) {
+			String teamHash = getTeamHash(team);
+			if (teamHash == null) {
+				return null;
+			}
+			update(digest, "team " + team.getTeamName() + " " + teamHash);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the stored result for a game (or null if there isn't one)
+	 *
+	 * @param key
+	 * @return
+	 */
+	public GameResult getResult(String key) {
+		if (key == null) {
+			return null;
+		}
+		File file = new File(directory, key + ".xml");
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			return (GameResult) xstream.fromXML(file);
+		} catch (RuntimeException e) {
+			System.err.println("Ignoring unreadable ladder cache file " + file);
+			return null;
+		}
+	}
+
+	/**
+	 * Store the result of a game.  Games that failed are not stored (so they are tried again) and
+	 * neither are games where a team's knowledge (or code) changed since the key was made.
+	 *
+	 * @param game
+	 * @param key the key from getGameKey (made before the game was played)
+	 * @param result
+	 */
+	public void putResult(LadderGame game, String key, GameResult result) {
+		if (key == null || result.isFailed()) {
+			return;
+		}
+		String codeKey;
+		synchronized (this) {
+			codeKey = codeKeys.get(key);
+		}
+		if (codeKey == null || !codeKey.equals(getCodeKey(game))) {
+			return;
+		}
+
+		// write to a temporary file first so a stopped ladder never leaves half a result behind
+		File file = new File(directory, key + ".xml");
+		File tempFile = new File(directory, key + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				xstream.toXML(result, out);
+			} finally {
+				out.close();
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Error saving game " + result.getGameIndex() + " to the ladder cache");
+			e.printStackTrace();
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Hash of everything about one team: its client code, its team config file, and its knowledge file
+	 *
+	 * @param team
+	 * @return
+	 */
+	private String getTeamHash(HighLevelTeamConfig team) {
+		File teamConfigFile = new File(configPath + team.getConfigFile());
+		String teamConfigHash = getFileHash(teamConfigFile);
+		if (teamConfigHash == null) {
+			return null;
+		}
+
+		TeamClientConfig teamClientConfig;
+		try {
+			teamClientConfig = ConfigurationService.getTeamClientConfig(teamConfigFile.getPath());
+		} catch (IOException e) {
+			return null;
+		}
+
+		String codeHash = getCodeHash(teamClientConfig.getClassname(), 0);
+		if (codeHash == null) {
+			return null;
+		}
+
+		// the knowledge file is read relative to where the ladder is run (like the clients do)
+		String knowledgeHash = "none";
+		if (teamClientConfig.getKnowledgeFile() != null) {
+			File knowledgeFile = new File(teamClientConfig.getKnowledgeFile());
+			if (knowledgeFile.exists()) {
+				knowledgeHash = getFileHash(knowledgeFile);
+				if (knowledgeHash == null) {
+					return null;
+				}
+			}
+		}
+
+		return teamConfigHash + " " + codeHash + " " + knowledgeHash;
+	}
+
+	/**
+	 * Hash of the compiled code around a class: every file in the class's package directory (and
+	 * the directories below it), or the whole jar if the class is in a jar.
+	 *
+	 * @param className
+	 * @param packageLevelsUp how many packages above the class's own package to include
+	 * @return the hash or null if the class can't be found
+	 */
+	private synchronized String getCodeHash(String className, int packageLevelsUp) {
+		String cacheKey = className + " " + packageLevelsUp;
+		if (codeHashes.containsKey(cacheKey)) {
+			return codeHashes.get(cacheKey);
+		}
+
+		String hash = null;
+		URL classUrl = LadderResultCache.class.getClassLoader().getResource(className.replace('.', '/') + ".class");
+		try {
+			if (classUrl == null) {
+				hash = null;
+			} else if (classUrl.getProtocol().equals("file")) {
+				File codeDirectory = new File(classUrl.toURI()).getParentFile();
+				for (int i = 0; i < packageLevelsUp; i++) {
+					codeDirectory = codeDirectory.getParentFile();
+				}
+				MessageDigest digest = newDigest();
+				updateWithDirectory(digest, codeDirectory, "");
+				hash = toHex(digest.digest());
+			} else if (classUrl.getProtocol().equals("jar")) {
+				JarURLConnection connection = (JarURLConnection) classUrl.openConnection();
+				hash = getFileHash(new File(connection.getJarFileURL().toURI()));
+			}
+		} catch (IOException e) {
+			hash = null;
+		} catch (URISyntaxException e) {
+			hash = null;
+		}
+
+		if (hash == null) {
+			System.err.println("Unable to find the code for " + className + ": its games won't be cached");
+		}
+		codeHashes.put(cacheKey, hash);
+		return hash;
+	}
+
+	/**
+	 * Add every file in a directory (and below it) to the hash, in a fixed order
+	 *
+	 * @param digest
+	 * @param directory
+	 * @param relativePath
+	 * @throws IOException
+	 */
+	private void updateWithDirectory(MessageDigest digest, File directory, String relativePath) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			String path = relativePath + "/" + file.getName();
+			if (file.isDirectory()) {
+				updateWithDirectory(digest, file, path);
+			} else {
+				update(digest, path);
+				digest.update(Files.readAllBytes(file.toPath()));
+			}
+		}
+	}
+
+	/**
+	 * Hash of a file's contents
+	 *
+	 * @param file
+	 * @return the hash or null if the file can't be read
+	 */
+	private synchronized String getFileHash(File file) {
+		String cacheKey = file.getAbsolutePath() + " " + file.length() + " " + file.lastModified();
+		if (fileHashes.containsKey(cacheKey)) {
+			return fileHashes.get(cacheKey);
+		}
+
+		String hash;
+		try {
+			MessageDigest digest = newDigest();
+			InputStream in = Files.newInputStream(file.toPath());
+			try {
+				byte[] buffer = new byte[65536];
+				int length;
+				while ((length = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, length);
+				}
+			} finally {
+				in.close();
+			}
+			hash = toHex(digest.digest());
+		} catch (IOException e) {
+			hash = null;
+		}
+		fileHashes.put(cacheKey, hash);
+		return hash;
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Add a string (and a separator so strings can't run together) to the hash
+	 *
+	 * @param digest
+	 * @param str
+	 */
+	static void update(MessageDigest digest, String str) {
+		digest.update(str.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder str = new StringBuilder();
+		for (byte b : bytes) {
+			str.append(String.format("%02x", b));
+		}
+		return str.toString();
+	}
+}
@@ -0,0 +1,114 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * A worker JVM for the ladder (started by LadderCoordinator).  It reads one game at a time from
+ * stdin, plays it, and writes the result back on stdout.  Each message is one line:
+ *
+ * <pre>
+ * GAME numGames encodedLadderGame     (coordinator to worker)
+ * RESULT encodedGameResult            (worker to coordinator)
+ * QUIT                                (coordinator to worker)
+ * </pre>
+ *
+ * Anything the simulator or the clients print goes to stderr so it can't get mixed up with the results.
+ *
+ * @author amy
+ */
+public class LadderWorker {
+	public static final String GAME_COMMAND = "GAME";
+
+	public static final String RESULT_COMMAND = "RESULT";
+
+	public static final String QUIT_COMMAND = "QUIT";
+
+	/**
+	 * Initialize the parser with the command line arguments (the same names the simulator uses)
+	 * @return
+	 */
+	private static SimpleJSAP initializeParser() {
+		SimpleJSAP parser = null;
+		try {
+			parser = new SimpleJSAP(
+					"LadderWorker",
+					"Plays ladder games sent to it on stdin",
+					new Parameter[] {
+						new FlaggedOption("configPath",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "configPath",
+								"path to the configuration files"),
+						new FlaggedOption("graphics",
+								JSAP.BOOLEAN_PARSER, "false", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "graphics",
+								"workers never show graphics"),
+						new FlaggedOption("debug",
+								JSAP.BOOLEAN_PARSER, "false", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "debug",
+								"workers never run in debug mode"),
+					});
+		} catch (JSAPException e) {
+			e.printStackTrace();
+			System.err.println("Error in the parser - exiting");
+			System.exit(-1);
+		}
+		return parser;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		// keep stdout for the results and send all other printing to stderr
+		PrintStream resultStream = new PrintStream(System.out, true);
+		System.setOut(System.err);
+
+		SimpleJSAP parser = initializeParser();
+		JSAPResult parserConfig = parser.parse(args);
+		if (parser.messagePrinted()) {
+			System.exit(-1);
+		}
+
+		XStream xstream = new XStream();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.equals(QUIT_COMMAND)) {
+					break;
+				}
+				if (!line.startsWith(GAME_COMMAND + " ")) {
+					System.err.println("Ladder worker ignoring unknown command " + line);
+					continue;
+				}
+
+				String[] parts = line.split(" ", 3);
+				int numGames = Integer.parseInt(parts[1]);
+				LadderGame game = (LadderGame) LadderCoordinator.decode(xstream, parts[2]);
+
+				GameResult result = Ladder.runGame(game, numGames, parserConfig);
+
+				resultStream.println(RESULT_COMMAND + " " + LadderCoordinator.encode(xstream, result));
+				resultStream.flush();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// make sure no client thread keeps the worker alive
+		System.exit(0);
+	}
+}
@@ -0,0 +1,252 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides when a match in an adaptive ladder has been repeated enough times.  The teams in a
+ * match are ranked by their average score over the repeats so far and, for each pair of teams next
+ * to each other in that ranking, a confidence interval is made for the difference in their scores.
+ * The repeats of a match are played with the same seeds for every team in it, so the differences are
+ * paired by repeat (which takes out how lucky each map was).
+ *
+ * Once no interval includes 0 the ranking of the match is settled and it doesn't need to be repeated again.
+ * Since the ladder looks at the intervals again after every repeat, each look is made at a higher
+ * confidence level (a Bonferroni correction over the number of looks) so that stopping at the first
+ * look that settles the ranking is still right at the confidence level asked for.  A pair of teams
+ * also needs at least MINIMUM_REPEATS repeats before it can be settled, so two teams that tie in
+ * the first few repeats (often both scoring 0) aren't taken as settled.
+ *
+ * @author amy
+ */
+public class RepeatStatistics {
+	/**
+	 * The number of repeats a pair of teams needs before its order can be settled
+	 */
+	public static final int MINIMUM_REPEATS = 5;
+
+	/**
+	 * How far apart the closest two teams in a match are, in units of the half width of the
+	 * confidence interval on their score difference.  Above 1 the ranking of the match is settled;
+	 * the smaller it is, the more the match needs another repeat.
+	 *
+	 * @param results the results of each repeat of the match so far (failed games are left out)
+	 * @param confidenceLevel for example 0.95
+	 * @param numLooks the most times the ladder will check this match (to correct the confidence level for)
+	 * @return the separation of the closest adjacent pair (infinite if there is only one team)
+	 */
+	public static double getSeparation(List<GameResult> results, double confidenceLevel, int numLooks) {
+		// Bonferroni correction: the chance of wrongly settling on any of the looks is at most 1 - confidenceLevel
+		double lookConfidenceLevel = 1 - (1 - confidenceLevel) / Math.max(1, numLooks);
+
+		// the score of each team in each repeat
+		final Map<String, Map<Integer, Double>> scores = new HashMap<String, Map<Integer, Double>>();
+		int repeat = 0;
+		for (GameResult result : results) {
+			if (!result.isFailed()) {
+				for (TeamRecord record : result.getTeamRecords()) {
+					if (!scores.containsKey(record.getTeamName())) {
+						scores.put(record.getTeamName(), new HashMap<Integer, Double>());
+					}
+					scores.get(record.getTeamName()).put(repeat, record.totalScore);
+				}
+			}
+			repeat++;
+		}
+
+		// rank the teams by their average score
+		final Map<String, Double> averages = new HashMap<String, Double>();
+		for (String teamName : scores.keySet()) {
+			double total = 0;
+			for (double score : scores.get(teamName).values()) {
+				total += score;
+			}
+			averages.put(teamName, total / scores.get(teamName).size());
+		}
+		ArrayList<String> ranking = new ArrayList<String>(scores.keySet());
+		Collections.sort(ranking, new Comparator<String>() {
+			public int compare(String team1, String team2) {
+				return Double.compare(averages.get(team2), averages.get(team1));
+			}
+		});
+
+		double separation = Double.POSITIVE_INFINITY;
+		for (int i = 0; i + 1 < ranking.size(); i++) {
+			Map<Integer, Double> higherScores = scores.get(ranking.get(i));
+			Map<Integer, Double> lowerScores = scores.get(ranking.get(i + 1));
+
+			ArrayList<Double> differences = new ArrayList<Double>();
+			for (Integer r : higherScores.keySet()) {
+				if (lowerScores.containsKey(r)) {
+					differences.add(higherScores.get(r) - lowerScores.get(r));
+				}
+			}
+			separation = Math.min(separation, getPairSeparation(differences, lookConfidenceLevel));
+		}
+		return separation;
+	}
+
+	/**
+	 * The separation of one pair of teams: |mean difference| / confidence interval half width
+	 * (0 if there are fewer than MINIMUM_REPEATS differences)
+	 *
+	 * @param differences the paired score differences
+	 * @param confidenceLevel
+	 * @return
+	 */
+	static double getPairSeparation(List<Double> differences, double confidenceLevel) {
+		int n = differences.size();
+		if (n < Math.max(2, MINIMUM_REPEATS)) {
+			return 0;
+		}
+
+		double mean = 0;
+		for (double difference : differences) {
+			mean += difference;
+		}
+		mean /= n;
+
+		double sumSquares = 0;
+		for (double difference : differences) {
+			sumSquares += (difference - mean) * (difference - mean);
+		}
+		double standardError = Math.sqrt(sumSquares / (n - 1) / n);
+
+		if (standardError == 0) {
+			// every one of at least MINIMUM_REPEATS repeats came out the same (often two teams 
+			// that always score 0) so more repeats won't change the ranking
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double halfWidth = getStudentTQuantile(0.5 + confidenceLevel / 2, n - 1) * standardError;
+		return Math.abs(mean) / halfWidth;
+	}
+
+	/**
+	 * The quantile of Student's t distribution (found by bisection on the CDF)
+	 *
+	 * @param p the probability (between 0.5 and 1)
+	 * @param degreesOfFreedom
+	 * @return the t such that P(T &lt;= t) = p
+	 */
+	static double getStudentTQuantile(double p, int degreesOfFreedom) {
+		double low = 0;
+		double high = 1;
+		while (getStudentTCdf(high, degreesOfFreedom) < p) {
+			high *= 2;
+		}
+		for (int i = 0; i < 100; i++) {
+			double middle = (low + high) / 2;
+			if (getStudentTCdf(middle, degreesOfFreedom) < p) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return (low + high) / 2;
+	}
+
+	/**
+	 * The CDF of Student's t distribution for t &gt;= 0
+	 *
+	 * @param t
+	 * @param degreesOfFreedom
+	 * @return
+	 */
+	static double getStudentTCdf(double t, int degreesOfFreedom) {
+		double x = degreesOfFreedom / (degreesOfFreedom + t * t);
+		return 1 - 0.5 * getRegularizedIncompleteBeta(x, degreesOfFreedom / 2.0, 0.5);
+	}
+
+	/**
+	 * The regularized incomplete beta function I_x(a, b) (continued fraction from Numerical Recipes)
+	 *
+	 * @param x
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	static double getRegularizedIncompleteBeta(double x, double a, double b) {
+		if (x <= 0) {
+			return 0;
+		}
+		if (x >= 1) {
+			return 1;
+		}
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+		if (x < (a + 1) / (a + b + 2)) {
+			return front * getBetaContinuedFraction(x, a, b) / a;
+		} else {
+			return 1 - front * getBetaContinuedFraction(1 - x, b, a) / b;
+		}
+	}
+
+	private static double getBetaContinuedFraction(double x, double a, double b) {
+		final double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		if (Math.abs(d) < tiny) {
+			d = tiny;
+		}
+		d = 1 / d;
+		double h = d;
+		for (int m = 1; m <= 300; m++) {
+			int m2 = 2 * m;
+
+			// even step
+			double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+			d = 1 + aa * d;
+			if (Math.abs(d) < tiny) {
+				d = tiny;
+			}
+			c = 1 + aa / c;
+			if (Math.abs(c) < tiny) {
+				c = tiny;
+			}
+			d = 1 / d;
+			h *= d * c;
+
+			// odd step
+			aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+			d = 1 + aa * d;
+			if (Math.abs(d) < tiny) {
+				d = tiny;
+			}
+			c = 1 + aa / c;
+			if (Math.abs(c) < tiny) {
+				c = tiny;
+			}
+			d = 1 / d;
+			double delta = d * c;
+			h *= delta;
+			if (Math.abs(delta - 1) < 1e-12) {
+				break;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * log(Gamma(x)) (Lanczos approximation)
+	 *
+	 * @param x
+	 * @return
+	 */
+	private static double logGamma(double x) {
+		double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+				-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double series = 1.000000000190015;
+		for (double coefficient : coefficients) {
+			y++;
+			series += coefficient / y;
+		}
+		return -tmp + Math.log(2.5066282746310005 * series / x);
+	}
+}
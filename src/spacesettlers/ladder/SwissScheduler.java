@@ -0,0 +1,195 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+
+/**
+ * Makes the matches for a Swiss style ladder.  Instead of playing every combination of variable
+ * teams (which grows very fast with the number of teams), the ladder is played in rounds and each round
+ * puts every variable team in one match with the teams closest to it in rating.  Matches are only made
+ * one round at a time from the current ratings, so after a few rounds the good teams play each other
+ * and the ranking settles in far fewer games.
+ *
+ * Rematches are ruled out until every team could have met every other team as often (see 
+ * getMaximumMeetings), and only allowed then if there is no one else left to play.
+ *
+ * The static teams play in every match (as in the full ladder).
+ *
+ * @author amy
+ */
+public class SwissScheduler {
+	/**
+	 * The variable teams
+	 */
+	HighLevelTeamConfig[] variableTeams;
+
+	/**
+	 * The ladder name of each variable team (the name its results and rating are kept under)
+	 */
+	String[] ladderNames;
+
+	/**
+	 * The static teams (in every match)
+	 */
+	HighLevelTeamConfig[] staticTeams;
+
+	/**
+	 * The number of variable teams in each match
+	 */
+	int teamsPerMatch;
+
+	/**
+	 * The ratings of all the teams
+	 */
+	EloRatings ratings;
+
+	/**
+	 * The number of times each pair of variable teams has been in the same match (by index)
+	 */
+	int[][] meetings;
+
+	/**
+	 * The number of rounds made so far
+	 */
+	int numRounds;
+
+	/**
+	 * Make a scheduler
+	 *
+	 * @param variableTeams
+	 * @param ladderNames the ladder name of each variable team (in the same order)
+	 * @param staticTeams
+	 * @param teamsPerMatch the number of variable teams in each match
+	 */
+	public SwissScheduler(HighLevelTeamConfig[] variableTeams, String[] ladderNames, HighLevelTeamConfig[] staticTeams,
+			int teamsPerMatch) {
+		this.variableTeams = variableTeams;
+		this.ladderNames = ladderNames;
+		this.staticTeams = staticTeams;
+		this.teamsPerMatch = Math.max(1, Math.min(teamsPerMatch, variableTeams.length));
+		this.ratings = new EloRatings();
+		this.meetings = new int[variableTeams.length][variableTeams.length];
+		this.numRounds = 0;
+	}
+
+	/**
+	 * @return the number of matches in each round
+	 */
+	public int getMatchesPerRound() {
+		return (variableTeams.length + teamsPerMatch - 1) / teamsPerMatch;
+	}
+
+	/**
+	 * The number of times two teams can have met before the next round and still be put in the 
+	 * same match: one more than if the rounds so far had spread the meetings evenly over every pair
+	 *
+	 * @return
+	 */
+	int getMaximumMeetings() {
+		if (variableTeams.length < 2) {
+			return 1;
+		}
+		return 1 + numRounds * (teamsPerMatch - 1) / (variableTeams.length - 1);
+	}
+
+	/**
+	 * Makes the matches for the next round from the current ratings.  Every variable team is in
+	 * exactly one match (the last match has fewer variable teams if they don't divide evenly).
+	 *
+	 * @return the teams for each match (variable teams first, then the static teams)
+	 */
+	public ArrayList<HighLevelTeamConfig[]> getNextRound() {
+		// best rated first (ties broken by the order in the ladder config so rounds are repeatable)
+		ArrayList<Integer> unmatched = new ArrayList<Integer>();
+		for (int i = 0; i < variableTeams.length; i++) {
+			unmatched.add(i);
+		}
+		Collections.sort(unmatched, new Comparator<Integer>() {
+			public int compare(Integer team1, Integer team2) {
+				int compare = Double.compare(getRating(team2), getRating(team1));
+				return (compare != 0) ? compare : Integer.compare(team1, team2);
+			}
+		});
+
+		int maximumMeetings = getMaximumMeetings();
+		ArrayList<HighLevelTeamConfig[]> matches = new ArrayList<HighLevelTeamConfig[]>();
+		while (!unmatched.isEmpty()) {
+			// the best team left picks the closest rated teams
+			final int leader = unmatched.remove(0);
+			ArrayList<Integer> candidates = new ArrayList<Integer>(unmatched);
+			Collections.sort(candidates, new Comparator<Integer>() {
+				public int compare(Integer team1, Integer team2) {
+					double distance1 = Math.abs(getRating(leader) - getRating(team1));
+					double distance2 = Math.abs(getRating(leader) - getRating(team2));
+					if (distance1 != distance2) {
+						return Double.compare(distance1, distance2);
+					}
+					return Integer.compare(team1, team2);
+				}
+			});
+
+			// teams it has met too often are only taken if there aren't enough others
+			ArrayList<Integer> matchTeams = new ArrayList<Integer>();
+			matchTeams.add(leader);
+			for (int i = 0; i < candidates.size() && matchTeams.size() < teamsPerMatch; i++) {
+				if (meetings[leader][candidates.get(i)] < maximumMeetings) {
+					matchTeams.add(candidates.get(i));
+				}
+			}
+			for (int i = 0; i < candidates.size() && matchTeams.size() < teamsPerMatch; i++) {
+				if (!matchTeams.contains(candidates.get(i))) {
+					matchTeams.add(candidates.get(i));
+				}
+			}
+			unmatched.removeAll(matchTeams);
+
+			HighLevelTeamConfig[] teams = new HighLevelTeamConfig[matchTeams.size() + staticTeams.length];
+			for (int i = 0; i < matchTeams.size(); i++) {
+				teams[i] = variableTeams[matchTeams.get(i)];
+			}
+			for (int i = 0; i < staticTeams.length; i++) {
+				teams[matchTeams.size() + i] = staticTeams[i];
+			}
+			matches.add(teams);
+
+			for (int team1 : matchTeams) {
+				for (int team2 : matchTeams) {
+					if (team1 != team2) {
+						meetings[team1][team2]++;
+					}
+				}
+			}
+		}
+		numRounds++;
+		return matches;
+	}
+
+	/**
+	 * Update the ratings with the result of a game
+	 *
+	 * @param result
+	 */
+	public void recordGame(GameResult result) {
+		ratings.update(result);
+	}
+
+	/**
+	 * @return the ratings of all the teams (by ladder name)
+	 */
+	public EloRatings getRatings() {
+		return ratings;
+	}
+
+	/**
+	 * The rating of a variable team
+	 *
+	 * @param team index into the variable teams
+	 * @return
+	 */
+	private double getRating(int team) {
+		return ratings.getRating(ladderNames[team]);
+	}
+}
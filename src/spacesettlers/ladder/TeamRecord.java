@@ -24,6 +24,11 @@ public class TeamRecord {
 	
 	String teamName;
 	
+	/**
+	 * The team's rating (only used by Swiss ladders)
+	 */
+	double rating;
+	
 	public TeamRecord(String teamName) {
 		this.teamName = teamName;
 		reset();
@@ -91,6 +96,29 @@ public class TeamRecord {
 		averageBeacons = totalBeacons / numGames;
 	}
 
+	/**
+	 * Add the games from another record (for the same team) into this one.  Used to add
+	 * the results of each game to the ladder totals.
+	 * 
+	 * @param other
+	 */
+	public void merge(TeamRecord other) {
+		numGames += other.numGames;
+		
+		totalScore += other.totalScore;
+		averageScore = totalScore / numGames;
+		
+		totalResources += other.totalResources;
+		averageResources = totalResources / numGames;
+		
+		totalBeacons += other.totalBeacons;
+		averageBeacons = totalBeacons / numGames;
+	}
+
+	public int getNumGames() {
+		return numGames;
+	}
+
 	public double getAverageScore() {
 		return averageScore;
 	}
@@ -111,6 +139,14 @@ public class TeamRecord {
 		return averageResources;
 	}
 
+	public double getRating() {
+		return rating;
+	}
+
+	public void setRating(double rating) {
+		this.rating = rating;
+	}
+
 	
 	
 
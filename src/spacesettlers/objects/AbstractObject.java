@@ -2,6 +2,7 @@ package spacesettlers.objects;
 
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.resources.ResourceFactory;
@@ -89,7 +90,7 @@ abstract public class AbstractObject {
 		this.originalMass = mass;
 		this.radius = radius;
 		position = new Position(0,0);
-		this.id = UUID.randomUUID();
+		this.id = newId();
 		resources = new ResourcePile();
 		this.numFlags = 0;
 		this.respawn = true;
@@ -104,7 +105,7 @@ abstract public class AbstractObject {
 		this.originalMass = mass;
 		this.radius = radius;
 		this.position = position;
-		this.id = UUID.randomUUID();
+		this.id = newId();
 		resources = new ResourcePile();
 		this.numFlags = 0;
 		this.respawn = true;
@@ -313,7 +314,21 @@ abstract public class AbstractObject {
 	 * Resets the UUID of the object (for respawning)
 	 */
 	public void resetId() {
-		id = UUID.randomUUID();
+		id = newId();
+	}
+
+	/**
+	 * Make a new random (version 4) UUID.  UUID.randomUUID uses a SecureRandom shared by every
+	 * thread, which made each deepClone slow (the clones get a new id and then copy the old one). 
+	 * Ids only have to be unique, not unguessable, so a per-thread generator is used instead.
+	 * 
+	 * @return
+	 */
+	static UUID newId() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long mostSignificantBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+		long leastSignificantBits = (random.nextLong() & ~(0xcL << 60)) | (0x8L << 60);
+		return new UUID(mostSignificantBits, leastSignificantBits);
 	}
 
 	/**
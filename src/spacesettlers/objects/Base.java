@@ -62,7 +62,18 @@ public class Base extends AbstractActionableObject {
 	 * Makes a deep copy (for security)
 	 */
 	public Base deepClone() {
-		Base newBase = new Base(getPosition().deepCopy(), teamName, team.deepCopy(), isHomeBase);
+		return deepClone(team.deepCopy());
+	}
+
+	/**
+	 * Makes a deep copy that belongs to the given team (copying the team is slow, so copies 
+	 * that never change their team can share one)
+	 * 
+	 * @param newTeam
+	 * @return
+	 */
+	public Base deepClone(Team newTeam) {
+		Base newBase = new Base(getPosition().deepCopy(), teamName, newTeam, isHomeBase);
 		
 		newBase.energy = energy;
 		newBase.setAlive(isAlive);
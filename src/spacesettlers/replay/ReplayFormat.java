@@ -0,0 +1,192 @@
+package spacesettlers.replay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The layout of a replay file and the helpers used to read and write it.
+ *
+ * <pre>
+ * header:   MAGIC, VERSION, width, height, simulationSteps, keyframeInterval, number of teams,
+ *           and for each team: name, ladder name, color (rgb)
+ * frames:   one per step, either a KEYFRAME (every object in full plus every team's score) or a
+ *           DELTA from the step before (new objects in full, removed objects, the changed fields of
+ *           the objects that changed, and the scores that changed)
+ * end:      END_OF_FRAMES, the last step recorded, and the index (the step and file offset of every keyframe)
+ * trailer:  the file offset of the index (8 bytes) and INDEX_MAGIC, so a reader can find the
+ *           index by looking at the end of the file
+ * </pre>
+ *
+ * Numbers are written as varints (7 bits a byte, low bits first) and anything that can be negative is
+ * zigzag encoded first.  Every object's state is a fixed set of integer fields (positions are kept in
+ * 1/POSITION_SCALE pixels and angles in 1/ANGLE_SCALE radians) so a delta only has to store the fields
+ * that changed and how much they changed by, which is usually one byte each.
+ *
+ * Objects are numbered in the order they first appear in the game.
+ *
+ * @author amy
+ */
+public final class ReplayFormat {
+	/**
+	 * The first bytes of every replay file ("SSRP")
+	 */
+	public static final int MAGIC = 0x53535250;
+
+	/**
+	 * The last bytes of every finished replay file ("SSIX")
+	 */
+	public static final int INDEX_MAGIC = 0x53534958;
+
+	/**
+	 * Version of the format (change it if the layout changes)
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The size of the trailer at the end of the file
+	 */
+	public static final int TRAILER_SIZE = 12;
+
+	/**
+	 * The keyframe interval used if the config doesn't set one
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+	/**
+	 * Frame types
+	 */
+	public static final byte END_OF_FRAMES = 0;
+	public static final byte KEYFRAME = 1;
+	public static final byte DELTA = 2;
+
+	/**
+	 * The kinds of objects
+	 */
+	public static final byte KIND_OTHER = 0;
+	public static final byte KIND_SHIP = 1;
+	public static final byte KIND_BASE = 2;
+	public static final byte KIND_ASTEROID = 3;
+	public static final byte KIND_BEACON = 4;
+	public static final byte KIND_FLAG = 5;
+	public static final byte KIND_CORE = 6;
+	public static final byte KIND_MISSILE = 7;
+	public static final byte KIND_EMP = 8;
+
+	/**
+	 * The fields of an object's state
+	 */
+	public static final int FIELD_X = 0;
+	public static final int FIELD_Y = 1;
+	public static final int FIELD_ORIENTATION = 2;
+	public static final int FIELD_VELOCITY_X = 3;
+	public static final int FIELD_VELOCITY_Y = 4;
+	public static final int FIELD_ENERGY = 5;
+	public static final int FIELD_MAX_ENERGY = 6;
+	public static final int FIELD_STATUS = 7;
+	public static final int FIELD_FREEZE_COUNT = 8;
+	/**
+	 * Beacons picked up by a ship or the healing energy of a base
+	 */
+	public static final int FIELD_COUNT = 9;
+	public static final int FIELD_CORES = 10;
+	public static final int NUM_FIELDS = 11;
+
+	/**
+	 * The bits of FIELD_STATUS
+	 */
+	public static final int STATUS_ALIVE = 1;
+	public static final int STATUS_DRAWABLE = 2;
+	public static final int STATUS_SHIELDED = 4;
+	public static final int STATUS_CARRYING_FLAG = 8;
+	public static final int STATUS_HOME_BASE = 16;
+
+	/**
+	 * Positions and velocities are stored in 1/POSITION_SCALE pixels
+	 */
+	public static final double POSITION_SCALE = 16;
+
+	/**
+	 * Orientations are stored in 1/ANGLE_SCALE radians
+	 */
+	public static final double ANGLE_SCALE = 1000;
+
+	private ReplayFormat() {
+	}
+
+	/**
+	 * Write a number as a varint
+	 *
+	 * @param buffer
+	 * @param value (treated as unsigned)
+	 */
+	public static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Read a varint
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	public static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Write a number that can be negative (zigzag encoded so small negative numbers stay short)
+	 *
+	 * @param buffer
+	 * @param value
+	 */
+	public static void putSignedVarLong(ByteBuffer buffer, long value) {
+		putVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Read a number written by putSignedVarLong
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	public static long getSignedVarLong(ByteBuffer buffer) {
+		long value = getVarLong(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Write a string (length then UTF-8 bytes)
+	 *
+	 * @param buffer
+	 * @param str
+	 */
+	public static void putString(ByteBuffer buffer, String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		putVarLong(buffer, bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Read a string written by putString
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	public static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[(int) getVarLong(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
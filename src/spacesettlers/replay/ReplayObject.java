@@ -0,0 +1,244 @@
+package spacesettlers.replay;
+
+import java.awt.Color;
+
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.AiCore;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Flag;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.weapons.EMP;
+import spacesettlers.objects.weapons.Missile;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * An object in a replay: what was recorded about it and the game object made from that record
+ * so it can be drawn with its usual graphics.  The game object is only brought up to date when
+ * it is asked for (so seeking through many frames doesn't update objects nobody looks at).
+ *
+ * @author amy
+ */
+class ReplayObject {
+	/**
+	 * The object's number in the replay
+	 */
+	final int id;
+
+	/**
+	 * What kind of object it is (see ReplayFormat)
+	 */
+	final byte kind;
+
+	/**
+	 * Its team (1 for the first team in the replay, 0 for no team)
+	 */
+	final int teamNumber;
+
+	final int radius;
+
+	/**
+	 * Only used for asteroids
+	 */
+	boolean isMineable;
+	double fuelProportion, waterProportion, metalsProportion;
+
+	/**
+	 * The recorded fields (see ReplayFormat)
+	 */
+	final long[] fields;
+
+	/**
+	 * True if the fields changed since the game object was last updated
+	 */
+	boolean changed;
+
+	/**
+	 * The game object used to draw this one (made the first time it is needed)
+	 */
+	AbstractObject object;
+
+	ReplayObject(int id, byte kind, int teamNumber, int radius) {
+		this.id = id;
+		this.kind = kind;
+		this.teamNumber = teamNumber;
+		this.radius = radius;
+		this.fields = new long[ReplayFormat.NUM_FIELDS];
+		this.changed = true;
+	}
+
+	/**
+	 * Returns the game object for this one (brought up to date with the recorded fields)
+	 *
+	 * @param teams the teams in the replay
+	 * @param teamShips a ship for each team (and one for no team) to be the firing ship of weapons
+	 * @return the game object (null if this kind of object can't be drawn)
+	 */
+	AbstractObject getObject(Team[] teams, Ship[] teamShips) {
+		if (object == null) {
+			object = makeObject(teams, teamShips);
+			if (object == null) {
+				return null;
+			}
+		}
+
+		if (changed) {
+			Position position = new Position(fields[ReplayFormat.FIELD_X] / ReplayFormat.POSITION_SCALE,
+					fields[ReplayFormat.FIELD_Y] / ReplayFormat.POSITION_SCALE,
+					fields[ReplayFormat.FIELD_ORIENTATION] / ReplayFormat.ANGLE_SCALE);
+			position.setTranslationalVelocity(new Vector2D(fields[ReplayFormat.FIELD_VELOCITY_X] / ReplayFormat.POSITION_SCALE,
+					fields[ReplayFormat.FIELD_VELOCITY_Y] / ReplayFormat.POSITION_SCALE));
+			object.setPosition(position);
+
+			// ships and bases read their state straight from the fields
+			if (kind != ReplayFormat.KIND_SHIP && kind != ReplayFormat.KIND_BASE) {
+				object.setAlive(hasStatus(ReplayFormat.STATUS_ALIVE));
+				object.setDrawable(hasStatus(ReplayFormat.STATUS_DRAWABLE));
+			}
+			changed = false;
+		}
+		return object;
+	}
+
+	/**
+	 * Make the game object for this one
+	 *
+	 * @param teams
+	 * @param teamShips
+	 * @return
+	 */
+	private AbstractObject makeObject(Team[] teams, Ship[] teamShips) {
+		Position position = new Position(fields[ReplayFormat.FIELD_X] / ReplayFormat.POSITION_SCALE,
+				fields[ReplayFormat.FIELD_Y] / ReplayFormat.POSITION_SCALE);
+		Team team = (teamNumber > 0 && teamNumber <= teams.length) ? teams[teamNumber - 1] : null;
+		String teamName = (team == null) ? null : team.getTeamName();
+		Color teamColor = (team == null) ? Color.WHITE : team.getTeamColor();
+		Ship teamShip = (team == null) ? teamShips[0] : teamShips[teamNumber];
+
+		switch (kind) {
+		case ReplayFormat.KIND_SHIP:
+			return new RecordedShip(teamName, teamColor, position);
+		case ReplayFormat.KIND_BASE:
+			return (team == null) ? null : new RecordedBase(position, teamName, team, hasStatus(ReplayFormat.STATUS_HOME_BASE));
+		case ReplayFormat.KIND_ASTEROID:
+			return new Asteroid(position, isMineable, radius, true, fuelProportion, waterProportion, metalsProportion);
+		case ReplayFormat.KIND_BEACON:
+			return new Beacon(position);
+		case ReplayFormat.KIND_FLAG:
+			return (team == null) ? null : new Flag(position, teamName, team, new Position[] {position});
+		case ReplayFormat.KIND_CORE:
+			return new AiCore(position, teamName, teamColor);
+		case ReplayFormat.KIND_MISSILE:
+			return new Missile(position, teamShip);
+		case ReplayFormat.KIND_EMP:
+			return new EMP(position, teamShip);
+		default:
+			return null;
+		}
+	}
+
+	boolean hasStatus(int status) {
+		return (fields[ReplayFormat.FIELD_STATUS] & status) != 0;
+	}
+
+	/**
+	 * A ship that shows what was recorded about it
+	 */
+	class RecordedShip extends Ship {
+		RecordedShip(String teamName, Color teamColor, Position location) {
+			super(teamName, teamColor, location);
+		}
+
+		@Override
+		public boolean isAlive() {
+			return hasStatus(ReplayFormat.STATUS_ALIVE);
+		}
+
+		@Override
+		public boolean isDrawable() {
+			return hasStatus(ReplayFormat.STATUS_DRAWABLE);
+		}
+
+		@Override
+		public boolean isShielded() {
+			return hasStatus(ReplayFormat.STATUS_SHIELDED);
+		}
+
+		@Override
+		public boolean isCarryingFlag() {
+			return hasStatus(ReplayFormat.STATUS_CARRYING_FLAG);
+		}
+
+		@Override
+		public double getEnergy() {
+			return fields[ReplayFormat.FIELD_ENERGY];
+		}
+
+		@Override
+		public int getMaxEnergy() {
+			return (int) fields[ReplayFormat.FIELD_MAX_ENERGY];
+		}
+
+		@Override
+		public int getFreezeCount() {
+			return (int) fields[ReplayFormat.FIELD_FREEZE_COUNT];
+		}
+
+		@Override
+		public int getNumBeacons() {
+			return (int) fields[ReplayFormat.FIELD_COUNT];
+		}
+
+		@Override
+		public int getNumCores() {
+			return (int) fields[ReplayFormat.FIELD_CORES];
+		}
+	}
+
+	/**
+	 * A base that shows what was recorded about it
+	 */
+	class RecordedBase extends Base {
+		RecordedBase(Position location, String teamName, Team team, boolean isHomeBase) {
+			super(location, teamName, team, isHomeBase);
+		}
+
+		@Override
+		public boolean isAlive() {
+			return hasStatus(ReplayFormat.STATUS_ALIVE);
+		}
+
+		@Override
+		public boolean isDrawable() {
+			return hasStatus(ReplayFormat.STATUS_DRAWABLE);
+		}
+
+		@Override
+		public boolean isShielded() {
+			return hasStatus(ReplayFormat.STATUS_SHIELDED);
+		}
+
+		@Override
+		public double getEnergy() {
+			return fields[ReplayFormat.FIELD_ENERGY];
+		}
+
+		@Override
+		public int getMaxEnergy() {
+			return (int) fields[ReplayFormat.FIELD_MAX_ENERGY];
+		}
+
+		@Override
+		public int getHealingEnergy() {
+			return (int) fields[ReplayFormat.FIELD_COUNT];
+		}
+
+		@Override
+		public int getNumCores() {
+			return (int) fields[ReplayFormat.FIELD_CORES];
+		}
+	}
+}
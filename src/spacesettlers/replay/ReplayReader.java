@@ -0,0 +1,420 @@
+package spacesettlers.replay;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Ship;
+import spacesettlers.utilities.Position;
+
+/**
+ * Plays back a replay file (see ReplayFormat).  The file is memory mapped so any frame can be read
+ * without reading the ones before it: seeking to a step decodes the nearest keyframe at or before it
+ * and then the (at most keyframeInterval) deltas after that keyframe, so jumping anywhere in a long
+ * game takes about as long as playing a keyframe interval's worth of steps.
+ *
+ * A replay that wasn't finished (the game stopped part way through) has no index, so it is read
+ * through once when it is opened to find its keyframes and plays back up to the last whole frame.
+ *
+ * Not thread safe: a reader should only be used by one thread (the GUI's).
+ *
+ * @author amy
+ */
+public class ReplayReader {
+	/**
+	 * The whole replay file
+	 */
+	ByteBuffer data;
+
+	int width, height, simulationSteps, keyframeInterval;
+
+	/**
+	 * Stand-ins for the teams in the game (with their names, colors and scores)
+	 */
+	Team[] teams;
+
+	/**
+	 * A ship for each team (and one at 0 for no team) to be the firing ship of its weapons
+	 */
+	Ship[] teamShips;
+
+	/**
+	 * The step and file position of each keyframe
+	 */
+	int[] keyframeSteps, keyframePositions;
+
+	/**
+	 * The last step in the replay
+	 */
+	int lastStep;
+
+	/**
+	 * The step the replay is on (-1 before the first frame is read)
+	 */
+	int step;
+
+	/**
+	 * Where the next frame starts
+	 */
+	int nextFramePosition;
+
+	/**
+	 * The objects in the game on the current step (by their number, in the order the simulator has them)
+	 */
+	LinkedHashMap<Integer, ReplayObject> objects;
+
+	/**
+	 * Open a replay and go to its first step
+	 *
+	 * @param file
+	 * @throws IOException if the file can't be read or isn't a replay
+	 */
+	public ReplayReader(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Replay " + file + " is too large to play back");
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+		objects = new LinkedHashMap<Integer, ReplayObject>();
+
+		try {
+			readHeader(file);
+			if (!readIndex()) {
+				findKeyframes();
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Replay " + file + " is cut short");
+		}
+		if (keyframeSteps.length == 0) {
+			throw new IOException("Replay " + file + " has no frames");
+		}
+
+		step = -1;
+		seek(keyframeSteps[0]);
+	}
+
+	/**
+	 * Read the size of the game and the teams
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	private void readHeader(File file) throws IOException {
+		data.position(0);
+		if (data.getInt() != ReplayFormat.MAGIC) {
+			throw new IOException(file + " is not a replay");
+		}
+		long version = ReplayFormat.getVarLong(data);
+		if (version != ReplayFormat.VERSION) {
+			throw new IOException("Replay " + file + " is version " + version + " and only version " +
+					ReplayFormat.VERSION + " can be played back");
+		}
+		width = (int) ReplayFormat.getVarLong(data);
+		height = (int) ReplayFormat.getVarLong(data);
+		simulationSteps = (int) ReplayFormat.getVarLong(data);
+		keyframeInterval = (int) ReplayFormat.getVarLong(data);
+
+		int numTeams = (int) ReplayFormat.getVarLong(data);
+		teams = new Team[numTeams];
+		teamShips = new Ship[numTeams + 1];
+		teamShips[0] = new Ship(null, Color.WHITE, new Position(0, 0));
+		for (int t = 0; t < numTeams; t++) {
+			String teamName = ReplayFormat.getString(data);
+			String ladderName = ReplayFormat.getString(data);
+			Color teamColor = new Color(data.getInt());
+			teams[t] = new Team(new ReplayTeamClient(teamName, teamColor), ladderName, 0);
+			teamShips[t + 1] = new Ship(teamName, teamColor, new Position(0, 0));
+		}
+		nextFramePosition = data.position();
+	}
+
+	/**
+	 * Read the index of keyframes at the end of a finished replay
+	 *
+	 * @return false if the replay has no index
+	 */
+	private boolean readIndex() {
+		int trailer = data.limit() - ReplayFormat.TRAILER_SIZE;
+		if (trailer < nextFramePosition || data.getInt(trailer + 8) != ReplayFormat.INDEX_MAGIC) {
+			return false;
+		}
+		data.position((int) data.getLong(trailer));
+		if (data.get() != ReplayFormat.END_OF_FRAMES) {
+			return false;
+		}
+		lastStep = (int) ReplayFormat.getSignedVarLong(data);
+		int numKeyframes = (int) ReplayFormat.getVarLong(data);
+		keyframeSteps = new int[numKeyframes];
+		keyframePositions = new int[numKeyframes];
+		int keyframeStep = 0;
+		int keyframePosition = 0;
+		for (int k = 0; k < numKeyframes; k++) {
+			keyframeStep += (int) ReplayFormat.getVarLong(data);
+			keyframePosition += (int) ReplayFormat.getVarLong(data);
+			keyframeSteps[k] = keyframeStep;
+			keyframePositions[k] = keyframePosition;
+		}
+		return true;
+	}
+
+	/**
+	 * Read through an unfinished replay to find its keyframes and last whole frame
+	 */
+	private void findKeyframes() {
+		ArrayList<int[]> keyframes = new ArrayList<int[]>();
+		lastStep = -1;
+		while (true) {
+			int framePosition = nextFramePosition;
+			try {
+				if (!readFrame()) {
+					break;
+				}
+			} catch (RuntimeException e) {
+				// the rest of the file is a frame that wasn't finished
+				break;
+			}
+			if (data.get(framePosition) == ReplayFormat.KEYFRAME) {
+				keyframes.add(new int[] {step, framePosition});
+			}
+			lastStep = step;
+		}
+
+		keyframeSteps = new int[keyframes.size()];
+		keyframePositions = new int[keyframes.size()];
+		for (int k = 0; k < keyframes.size(); k++) {
+			keyframeSteps[k] = keyframes.get(k)[0];
+			keyframePositions[k] = keyframes.get(k)[1];
+		}
+	}
+
+	/**
+	 * Go to a step (the first or last step if it is outside the replay)
+	 *
+	 * @param targetStep
+	 */
+	public void seek(int targetStep) {
+		targetStep = Math.max(keyframeSteps[0], Math.min(targetStep, lastStep));
+
+		// the last keyframe at or before the step
+		int low = 0;
+		int high = keyframeSteps.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) / 2;
+			if (keyframeSteps[middle] <= targetStep) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// only go back to the keyframe if playing forward from here would be slower
+		if (step > targetStep || step < keyframeSteps[low]) {
+			nextFramePosition = keyframePositions[low];
+			readFrame();
+		}
+		while (step < targetStep && readFrame()) {
+		}
+	}
+
+	/**
+	 * Go to the next step
+	 *
+	 * @return false if the replay is on its last step
+	 */
+	public boolean next() {
+		if (step >= lastStep) {
+			return false;
+		}
+		return readFrame();
+	}
+
+	/**
+	 * Read the frame at nextFramePosition
+	 *
+	 * @return false if there are no more frames
+	 */
+	private boolean readFrame() {
+		data.position(nextFramePosition);
+		byte type = data.get();
+		if (type == ReplayFormat.END_OF_FRAMES) {
+			return false;
+		}
+		int frameStep = (int) ReplayFormat.getVarLong(data);
+
+		if (type == ReplayFormat.KEYFRAME) {
+			readKeyframe();
+		} else {
+			readDelta();
+		}
+
+		step = frameStep;
+		nextFramePosition = data.position();
+		return true;
+	}
+
+	/**
+	 * Replace every object with the ones in the keyframe (keeping the game objects of the ones
+	 * that are still there)
+	 */
+	private void readKeyframe() {
+		LinkedHashMap<Integer, ReplayObject> keyframeObjects = new LinkedHashMap<Integer, ReplayObject>();
+		int numObjects = (int) ReplayFormat.getVarLong(data);
+		for (int i = 0; i < numObjects; i++) {
+			ReplayObject object = readObject();
+			ReplayObject oldObject = objects.get(object.id);
+			if (oldObject != null && oldObject.kind == object.kind && oldObject.teamNumber == object.teamNumber) {
+				System.arraycopy(object.fields, 0, oldObject.fields, 0, ReplayFormat.NUM_FIELDS);
+				oldObject.changed = true;
+				object = oldObject;
+			}
+			keyframeObjects.put(object.id, object);
+		}
+		objects = keyframeObjects;
+
+		for (Team team : teams) {
+			team.setScore(data.getDouble());
+		}
+	}
+
+	/**
+	 * Apply the changes in a delta
+	 */
+	private void readDelta() {
+		int numNew = (int) ReplayFormat.getVarLong(data);
+		for (int i = 0; i < numNew; i++) {
+			ReplayObject object = readObject();
+			objects.put(object.id, object);
+		}
+
+		int numGone = (int) ReplayFormat.getVarLong(data);
+		for (int i = 0; i < numGone; i++) {
+			objects.remove((int) ReplayFormat.getVarLong(data));
+		}
+
+		int numChanged = (int) ReplayFormat.getVarLong(data);
+		int id = 0;
+		for (int i = 0; i < numChanged; i++) {
+			id += (int) ReplayFormat.getSignedVarLong(data);
+			long mask = ReplayFormat.getVarLong(data);
+			ReplayObject object = objects.get(id);
+			for (int f = 0; f < ReplayFormat.NUM_FIELDS; f++) {
+				if ((mask & (1L << f)) != 0) {
+					object.fields[f] += ReplayFormat.getSignedVarLong(data);
+				}
+			}
+			object.changed = true;
+		}
+
+		long scoreMask = ReplayFormat.getVarLong(data);
+		for (int t = 0; t < teams.length; t++) {
+			if ((scoreMask & (1L << t)) != 0) {
+				teams[t].setScore(data.getDouble());
+			}
+		}
+	}
+
+	/**
+	 * Read an object written in full
+	 *
+	 * @return
+	 */
+	private ReplayObject readObject() {
+		int id = (int) ReplayFormat.getVarLong(data);
+		byte kind = data.get();
+		int teamNumber = (int) ReplayFormat.getVarLong(data);
+		int radius = (int) ReplayFormat.getVarLong(data);
+		ReplayObject object = new ReplayObject(id, kind, teamNumber, radius);
+		if (kind == ReplayFormat.KIND_ASTEROID) {
+			object.isMineable = (data.get() != 0);
+			object.fuelProportion = data.getFloat();
+			object.waterProportion = data.getFloat();
+			object.metalsProportion = data.getFloat();
+		}
+		for (int f = 0; f < ReplayFormat.NUM_FIELDS; f++) {
+			object.fields[f] = ReplayFormat.getSignedVarLong(data);
+		}
+		return object;
+	}
+
+	/**
+	 * Returns the objects on the current step as game objects (so they can be drawn with their
+	 * usual graphics)
+	 *
+	 * @return
+	 */
+	public List<AbstractObject> getAllObjects() {
+		ArrayList<AbstractObject> allObjects = new ArrayList<AbstractObject>(objects.size());
+		for (ReplayObject replayObject : objects.values()) {
+			AbstractObject object = replayObject.getObject(teams, teamShips);
+			if (object != null) {
+				allObjects.add(object);
+			}
+		}
+		return allObjects;
+	}
+
+	/**
+	 * @return the teams (their scores are the scores on the current step)
+	 */
+	public List<Team> getTeams() {
+		List<Team> teamList = new ArrayList<Team>();
+		for (Team team : teams) {
+			teamList.add(team);
+		}
+		return teamList;
+	}
+
+	/**
+	 * @return the step the replay is on
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * @return the first step in the replay
+	 */
+	public int getFirstStep() {
+		return keyframeSteps[0];
+	}
+
+	/**
+	 * @return the last step in the replay
+	 */
+	public int getLastStep() {
+		return lastStep;
+	}
+
+	/**
+	 * @return the number of steps the game was set to last
+	 */
+	public int getSimulationSteps() {
+		return simulationSteps;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
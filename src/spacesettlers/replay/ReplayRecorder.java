@@ -0,0 +1,590 @@
+package spacesettlers.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.UUID;
+
+import spacesettlers.clients.Team;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.AiCore;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Flag;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.weapons.AbstractWeapon;
+import spacesettlers.objects.weapons.EMP;
+import spacesettlers.objects.weapons.Missile;
+import spacesettlers.utilities.Position;
+
+/**
+ * Records a game to a replay file (see ReplayFormat for the layout) so it can be watched
+ * again without running any client code.  The simulator calls recordStep once before the first
+ * step and once after every step.  Each frame is encoded on the simulator's thread (only the
+ * fields that changed since the last step are written) and the finished bytes are written to the
+ * file by a background thread.
+ *
+ * @author amy
+ */
+public class ReplayRecorder {
+	/**
+	 * The most bytes one object can take in a frame (a full record with the largest varints)
+	 */
+	private static final int MAX_OBJECT_BYTES = 32 + 10 * ReplayFormat.NUM_FIELDS;
+
+	/**
+	 * What was last recorded about an object
+	 */
+	static class ObjectRecord {
+		/**
+		 * The object's number in the replay
+		 */
+		int id;
+
+		/**
+		 * The fields recorded for the object on the last frame it changed
+		 */
+		long[] fields;
+
+		/**
+		 * The last frame the object was in the game
+		 */
+		int lastFrame;
+
+		ObjectRecord(int id) {
+			this.id = id;
+			this.fields = new long[ReplayFormat.NUM_FIELDS];
+		}
+	}
+
+	/**
+	 * Writes the bytes to the file
+	 */
+	ReplayWriter writer;
+
+	/**
+	 * The bytes waiting to be handed to the writer
+	 */
+	ByteBuffer batch;
+
+	/**
+	 * The frame being made
+	 */
+	ByteBuffer frame;
+
+	/**
+	 * The changed objects in the frame being made (copied into the frame at the end)
+	 */
+	ByteBuffer changes;
+
+	/**
+	 * Where in the file the next frame starts
+	 */
+	long filePosition;
+
+	/**
+	 * A keyframe is written every keyframeInterval steps
+	 */
+	int keyframeInterval;
+
+	/**
+	 * The team names in the order they are numbered in the replay
+	 */
+	ArrayList<String> teamNames;
+
+	/**
+	 * What has been recorded about each object in the game (by the object's id)
+	 */
+	HashMap<UUID, ObjectRecord> objectRecords;
+
+	/**
+	 * The score of each team on the last frame
+	 */
+	double[] scores;
+
+	/**
+	 * The step and file position of each keyframe
+	 */
+	ArrayList<long[]> keyframes;
+
+	/**
+	 * The number of frames recorded
+	 */
+	int numFrames;
+
+	/**
+	 * The last step recorded
+	 */
+	int lastStep;
+
+	/**
+	 * The next number to give an object
+	 */
+	int nextObjectId;
+
+	/**
+	 * The fields of the object being recorded (kept to save making an array for every object)
+	 */
+	long[] newFields;
+
+	/**
+	 * Start recording a game
+	 *
+	 * @param file the replay file (overwritten if it exists)
+	 * @param simConfig the game's config
+	 * @param teams the teams in the game
+	 * @throws IOException
+	 */
+	public ReplayRecorder(File file, SpaceSettlersConfig simConfig, Collection<Team> teams) throws IOException {
+		keyframeInterval = (simConfig.getReplayKeyframeInterval() > 0) ? simConfig.getReplayKeyframeInterval() :
+			ReplayFormat.DEFAULT_KEYFRAME_INTERVAL;
+		teamNames = new ArrayList<String>();
+		objectRecords = new HashMap<UUID, ObjectRecord>();
+		scores = new double[teams.size()];
+		keyframes = new ArrayList<long[]>();
+		frame = ByteBuffer.allocate(ReplayWriter.BUFFER_SIZE);
+		changes = ByteBuffer.allocate(ReplayWriter.BUFFER_SIZE);
+		newFields = new long[ReplayFormat.NUM_FIELDS];
+		lastStep = -1;
+
+		// the header
+		int headerSize = 64;
+		for (Team team : teams) {
+			headerSize += 32 + 3 * (team.getTeamName().length() + team.getLadderName().length());
+		}
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(ReplayFormat.MAGIC);
+		ReplayFormat.putVarLong(header, ReplayFormat.VERSION);
+		ReplayFormat.putVarLong(header, simConfig.getWidth());
+		ReplayFormat.putVarLong(header, simConfig.getHeight());
+		ReplayFormat.putVarLong(header, simConfig.getSimulationSteps());
+		ReplayFormat.putVarLong(header, keyframeInterval);
+		ReplayFormat.putVarLong(header, teams.size());
+		for (Team team : teams) {
+			teamNames.add(team.getTeamName());
+			ReplayFormat.putString(header, team.getTeamName());
+			ReplayFormat.putString(header, team.getLadderName());
+			header.putInt(team.getTeamColor().getRGB());
+		}
+
+		writer = new ReplayWriter(file);
+		batch = writer.getEmptyBuffer();
+		header.flip();
+		emit(header);
+	}
+
+	/**
+	 * Record the state of the game after a step
+	 *
+	 * @param step the number of steps played so far
+	 * @param allObjects every object in the game
+	 * @param teams the teams (in the same order as when recording started)
+	 * @throws IOException
+	 */
+	public void recordStep(int step, Collection<AbstractObject> allObjects, Collection<Team> teams) throws IOException {
+		boolean isKeyframe = (numFrames == 0 || step % keyframeInterval == 0);
+		numFrames++;
+		lastStep = step;
+
+		frame.clear();
+		frame.put(isKeyframe ? ReplayFormat.KEYFRAME : ReplayFormat.DELTA);
+		ReplayFormat.putVarLong(frame, step);
+
+		if (isKeyframe) {
+			keyframes.add(new long[] {step, filePosition});
+			recordKeyframe(allObjects, teams);
+		} else {
+			recordDelta(allObjects, teams);
+		}
+
+		frame.flip();
+		emit(frame);
+	}
+
+	/**
+	 * A keyframe has every object in full (so a reader can start at it) and every score
+	 *
+	 * @param allObjects
+	 * @param teams
+	 */
+	private void recordKeyframe(Collection<AbstractObject> allObjects, Collection<Team> teams) {
+		ReplayFormat.putVarLong(frame, allObjects.size());
+		for (AbstractObject object : allObjects) {
+			ObjectRecord record = getRecord(object);
+			getFields(object, record.fields);
+			frame = reserve(frame, MAX_OBJECT_BYTES);
+			putObject(frame, object, record);
+		}
+		removeGoneObjects(null);
+
+		int t = 0;
+		for (Team team : teams) {
+			scores[t] = team.getScore();
+			frame = reserve(frame, 8);
+			frame.putDouble(scores[t]);
+			t++;
+		}
+	}
+
+	/**
+	 * A delta has the objects new since the last frame (in full), the objects that are gone,
+	 * the fields that changed for the rest, and the scores that changed
+	 *
+	 * @param allObjects
+	 * @param teams
+	 */
+	private void recordDelta(Collection<AbstractObject> allObjects, Collection<Team> teams) {
+		changes.clear();
+		int numNew = 0;
+		int numChanged = 0;
+		int lastChangedId = 0;
+		for (AbstractObject object : allObjects) {
+			ObjectRecord record = objectRecords.get(object.getId());
+			if (record == null) {
+				numNew++;
+				continue;
+			}
+			record.lastFrame = numFrames;
+
+			getFields(object, newFields);
+			long mask = 0;
+			for (int f = 0; f < ReplayFormat.NUM_FIELDS; f++) {
+				if (newFields[f] != record.fields[f]) {
+					mask |= 1L << f;
+				}
+			}
+			if (mask == 0) {
+				continue;
+			}
+
+			changes = reserve(changes, MAX_OBJECT_BYTES);
+			ReplayFormat.putSignedVarLong(changes, record.id - lastChangedId);
+			ReplayFormat.putVarLong(changes, mask);
+			for (int f = 0; f < ReplayFormat.NUM_FIELDS; f++) {
+				if ((mask & (1L << f)) != 0) {
+					ReplayFormat.putSignedVarLong(changes, newFields[f] - record.fields[f]);
+					record.fields[f] = newFields[f];
+				}
+			}
+			lastChangedId = record.id;
+			numChanged++;
+		}
+
+		// the new objects
+		ReplayFormat.putVarLong(frame, numNew);
+		if (numNew > 0) {
+			for (AbstractObject object : allObjects) {
+				if (!objectRecords.containsKey(object.getId())) {
+					ObjectRecord record = getRecord(object);
+					getFields(object, record.fields);
+					frame = reserve(frame, MAX_OBJECT_BYTES);
+					putObject(frame, object, record);
+				}
+			}
+		}
+
+		// the objects that are gone
+		ArrayList<Integer> goneIds = new ArrayList<Integer>();
+		removeGoneObjects(goneIds);
+		ReplayFormat.putVarLong(frame, goneIds.size());
+		for (int id : goneIds) {
+			frame = reserve(frame, 10);
+			ReplayFormat.putVarLong(frame, id);
+		}
+
+		// the changes
+		frame = reserve(frame, 10 + changes.position());
+		ReplayFormat.putVarLong(frame, numChanged);
+		changes.flip();
+		frame.put(changes);
+
+		// the scores that changed
+		long scoreMask = 0;
+		int t = 0;
+		for (Team team : teams) {
+			if (team.getScore() != scores[t]) {
+				scoreMask |= 1L << t;
+			}
+			t++;
+		}
+		frame = reserve(frame, 10 + 8 * scores.length);
+		ReplayFormat.putVarLong(frame, scoreMask);
+		t = 0;
+		for (Team team : teams) {
+			if ((scoreMask & (1L << t)) != 0) {
+				scores[t] = team.getScore();
+				frame.putDouble(scores[t]);
+			}
+			t++;
+		}
+	}
+
+	/**
+	 * Finish the replay (writes the index of keyframes) and close the file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			long indexPosition = filePosition;
+			ByteBuffer index = ByteBuffer.allocate(32 + 20 * keyframes.size() + ReplayFormat.TRAILER_SIZE);
+			index.put(ReplayFormat.END_OF_FRAMES);
+			ReplayFormat.putSignedVarLong(index, lastStep);
+			ReplayFormat.putVarLong(index, keyframes.size());
+			long lastKeyframeStep = 0;
+			long lastKeyframePosition = 0;
+			for (long[] keyframe : keyframes) {
+				ReplayFormat.putVarLong(index, keyframe[0] - lastKeyframeStep);
+				ReplayFormat.putVarLong(index, keyframe[1] - lastKeyframePosition);
+				lastKeyframeStep = keyframe[0];
+				lastKeyframePosition = keyframe[1];
+			}
+			index.putLong(indexPosition);
+			index.putInt(ReplayFormat.INDEX_MAGIC);
+			index.flip();
+			emit(index);
+			writer.write(batch);
+			batch = null;
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Stop recording without finishing the file (for a game that stopped part way through).  The
+	 * frames recorded so far are still written so the game can be watched up to where it stopped.
+	 */
+	public void abandon() {
+		try {
+			if (batch != null) {
+				writer.write(batch);
+				batch = null;
+			}
+		} catch (IOException e) {
+			// the replay is being thrown away anyway
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// the replay is being thrown away anyway
+		}
+	}
+
+	/**
+	 * @return the number of frames recorded so far
+	 */
+	public int getNumFrames() {
+		return numFrames;
+	}
+
+	/**
+	 * Copy finished bytes into the batch, handing the batch to the writer when it fills up
+	 *
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void emit(ByteBuffer bytes) throws IOException {
+		filePosition += bytes.remaining();
+		if (bytes.remaining() > batch.remaining()) {
+			writer.write(batch);
+			batch = writer.getEmptyBuffer();
+		}
+		if (bytes.remaining() > batch.remaining()) {
+			// too big for any batch so it gets a buffer of its own
+			ByteBuffer large = ByteBuffer.allocate(bytes.remaining());
+			large.put(bytes);
+			writer.write(large);
+		} else {
+			batch.put(bytes);
+		}
+	}
+
+	/**
+	 * Returns the record for an object (numbering it if it is new)
+	 *
+	 * @param object
+	 * @return
+	 */
+	private ObjectRecord getRecord(AbstractObject object) {
+		ObjectRecord record = objectRecords.get(object.getId());
+		if (record == null) {
+			record = new ObjectRecord(nextObjectId++);
+			objectRecords.put(object.getId(), record);
+		}
+		record.lastFrame = numFrames;
+		return record;
+	}
+
+	/**
+	 * Forget the objects that weren't in this frame
+	 *
+	 * @param goneIds filled with the numbers of the objects (if not null)
+	 */
+	private void removeGoneObjects(ArrayList<Integer> goneIds) {
+		for (Iterator<ObjectRecord> iterator = objectRecords.values().iterator(); iterator.hasNext(); ) {
+			ObjectRecord record = iterator.next();
+			if (record.lastFrame != numFrames) {
+				if (goneIds != null) {
+					goneIds.add(record.id);
+				}
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Write an object in full: its number, what kind of object it is, its team, its radius,
+	 * (its resources for an asteroid) and all its fields
+	 *
+	 * @param buffer
+	 * @param object
+	 * @param record
+	 */
+	private void putObject(ByteBuffer buffer, AbstractObject object, ObjectRecord record) {
+		ReplayFormat.putVarLong(buffer, record.id);
+		byte kind = getKind(object);
+		buffer.put(kind);
+		ReplayFormat.putVarLong(buffer, getTeamNumber(object));
+		ReplayFormat.putVarLong(buffer, object.getRadius());
+		if (kind == ReplayFormat.KIND_ASTEROID) {
+			Asteroid asteroid = (Asteroid) object;
+			buffer.put((byte) (asteroid.isMineable() ? 1 : 0));
+			buffer.putFloat((float) asteroid.getFuelProportion());
+			buffer.putFloat((float) asteroid.getWaterProportion());
+			buffer.putFloat((float) asteroid.getMetalsProportion());
+		}
+		for (int f = 0; f < ReplayFormat.NUM_FIELDS; f++) {
+			ReplayFormat.putSignedVarLong(buffer, record.fields[f]);
+		}
+	}
+
+	/**
+	 * Returns the kind of an object
+	 *
+	 * @param object
+	 * @return
+	 */
+	static byte getKind(AbstractObject object) {
+		if (object instanceof Ship) {
+			return ReplayFormat.KIND_SHIP;
+		} else if (object instanceof Base) {
+			return ReplayFormat.KIND_BASE;
+		} else if (object instanceof Asteroid) {
+			return ReplayFormat.KIND_ASTEROID;
+		} else if (object instanceof Beacon) {
+			return ReplayFormat.KIND_BEACON;
+		} else if (object instanceof Flag) {
+			return ReplayFormat.KIND_FLAG;
+		} else if (object instanceof AiCore) {
+			return ReplayFormat.KIND_CORE;
+		} else if (object instanceof Missile) {
+			return ReplayFormat.KIND_MISSILE;
+		} else if (object instanceof EMP) {
+			return ReplayFormat.KIND_EMP;
+		}
+		return ReplayFormat.KIND_OTHER;
+	}
+
+	/**
+	 * Returns the number of an object's team (1 for the first team in the header, 0 for no team)
+	 *
+	 * @param object
+	 * @return
+	 */
+	private int getTeamNumber(AbstractObject object) {
+		String teamName = null;
+		if (object instanceof AbstractActionableObject) {
+			teamName = ((AbstractActionableObject) object).getTeamName();
+		} else if (object instanceof Flag) {
+			teamName = ((Flag) object).getTeamName();
+		} else if (object instanceof AiCore) {
+			teamName = ((AiCore) object).getTeamName();
+		} else if (object instanceof AbstractWeapon && ((AbstractWeapon) object).getFiringShip() != null) {
+			teamName = ((AbstractWeapon) object).getFiringShip().getTeamName();
+		}
+		return (teamName == null) ? 0 : teamNames.indexOf(teamName) + 1;
+	}
+
+	/**
+	 * Fill in the recorded fields of an object
+	 *
+	 * @param object
+	 * @param fields
+	 */
+	static void getFields(AbstractObject object, long[] fields) {
+		Position position = object.getPosition();
+		fields[ReplayFormat.FIELD_X] = Math.round(position.getX() * ReplayFormat.POSITION_SCALE);
+		fields[ReplayFormat.FIELD_Y] = Math.round(position.getY() * ReplayFormat.POSITION_SCALE);
+		fields[ReplayFormat.FIELD_ORIENTATION] = Math.round(position.getOrientation() * ReplayFormat.ANGLE_SCALE);
+		fields[ReplayFormat.FIELD_VELOCITY_X] = Math.round(position.getTranslationalVelocityX() * ReplayFormat.POSITION_SCALE);
+		fields[ReplayFormat.FIELD_VELOCITY_Y] = Math.round(position.getTranslationalVelocityY() * ReplayFormat.POSITION_SCALE);
+
+		long status = 0;
+		if (object.isAlive()) {
+			status |= ReplayFormat.STATUS_ALIVE;
+		}
+		if (object.isDrawable()) {
+			status |= ReplayFormat.STATUS_DRAWABLE;
+		}
+
+		long energy = 0;
+		long maxEnergy = 0;
+		long freezeCount = 0;
+		long count = 0;
+		if (object instanceof AbstractActionableObject) {
+			AbstractActionableObject actionableObject = (AbstractActionableObject) object;
+			energy = (long) actionableObject.getEnergy();
+			maxEnergy = actionableObject.getMaxEnergy();
+			freezeCount = actionableObject.getFreezeCount();
+			if (actionableObject.isShielded()) {
+				status |= ReplayFormat.STATUS_SHIELDED;
+			}
+		}
+		if (object instanceof Ship) {
+			Ship ship = (Ship) object;
+			count = ship.getNumBeacons();
+			if (ship.isCarryingFlag()) {
+				status |= ReplayFormat.STATUS_CARRYING_FLAG;
+			}
+		} else if (object instanceof Base) {
+			Base base = (Base) object;
+			count = base.getHealingEnergy();
+			if (base.isHomeBase()) {
+				status |= ReplayFormat.STATUS_HOME_BASE;
+			}
+		} else if (object instanceof AiCore) {
+			energy = ((AiCore) object).getCoreEnergy();
+		}
+
+		fields[ReplayFormat.FIELD_ENERGY] = energy;
+		fields[ReplayFormat.FIELD_MAX_ENERGY] = maxEnergy;
+		fields[ReplayFormat.FIELD_STATUS] = status;
+		fields[ReplayFormat.FIELD_FREEZE_COUNT] = freezeCount;
+		fields[ReplayFormat.FIELD_COUNT] = count;
+		fields[ReplayFormat.FIELD_CORES] = object.getNumCores();
+	}
+
+	/**
+	 * Make sure a buffer has room for more bytes (copying it into a bigger one if it doesn't)
+	 *
+	 * @param buffer
+	 * @param bytes
+	 * @return the buffer to keep writing to
+	 */
+	private static ByteBuffer reserve(ByteBuffer buffer, int bytes) {
+		if (buffer.remaining() >= bytes) {
+			return buffer;
+		}
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+		buffer.flip();
+		bigger.put(buffer);
+		return bigger;
+	}
+}
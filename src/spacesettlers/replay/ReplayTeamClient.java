@@ -0,0 +1,65 @@
+package spacesettlers.replay;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Stands in for a team's client when a game is played back from a replay.  It only has the
+ * team's name and color (nothing it does is ever called).
+ *
+ * @author amy
+ */
+class ReplayTeamClient extends TeamClient {
+	ReplayTeamClient(String teamName, Color teamColor) {
+		setTeamName(teamName);
+		setTeamColor(teamColor);
+	}
+
+	@Override
+	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		return null;
+	}
+
+	@Override
+	public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+	}
+
+	@Override
+	public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		return null;
+	}
+
+	@Override
+	public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+			PurchaseCosts purchaseCosts) {
+		return null;
+	}
+
+	@Override
+	public void initialize(Toroidal2DPhysics space) {
+	}
+
+	@Override
+	public void shutDown(Toroidal2DPhysics space) {
+	}
+
+	@Override
+	public Set<SpacewarGraphics> getGraphics() {
+		return null;
+	}
+}
@@ -0,0 +1,167 @@
+package spacesettlers.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the buffers of a replay to its file on a background thread so the simulator never
+ * waits for the disk.  The buffers are handed back once they are written, so recording a game
+ * only ever uses NUM_BUFFERS of them (and if the disk falls that far behind, the simulator waits
+ * for a free one).
+ *
+ * @author amy
+ */
+class ReplayWriter implements Runnable {
+	/**
+	 * The size of each buffer
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The number of buffers that can be waiting to be written
+	 */
+	static final int NUM_BUFFERS = 8;
+
+	/**
+	 * Put in the queue to stop the thread once everything before it is written
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * The replay file
+	 */
+	FileChannel channel;
+
+	/**
+	 * Buffers waiting to be written
+	 */
+	BlockingQueue<ByteBuffer> fullBuffers;
+
+	/**
+	 * Buffers that are free to fill
+	 */
+	BlockingQueue<ByteBuffer> emptyBuffers;
+
+	/**
+	 * The writing thread
+	 */
+	Thread thread;
+
+	/**
+	 * The first error writing the file (reported to the simulator the next time it hands over a buffer)
+	 */
+	volatile IOException error;
+
+	ReplayWriter(File file) throws IOException {
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		fullBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS + 1);
+		emptyBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS);
+		for (int i = 0; i < NUM_BUFFERS; i++) {
+			emptyBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+
+		thread = new Thread(this, "Replay writer " + file.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns an empty buffer to fill (waits if every buffer is still waiting to be written)
+	 *
+	 * @return
+	 * @throws IOException if the file couldn't be written
+	 */
+	ByteBuffer getEmptyBuffer() throws IOException {
+		checkError();
+		try {
+			ByteBuffer buffer = emptyBuffers.take();
+			buffer.clear();
+			return buffer;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting to write the replay");
+		}
+	}
+
+	/**
+	 * Queue a filled buffer to be written (from position 0 to its current position).  Buffers
+	 * that didn't come from getEmptyBuffer are written and then dropped.
+	 *
+	 * @param buffer
+	 * @throws IOException if the file couldn't be written
+	 */
+	void write(ByteBuffer buffer) throws IOException {
+		checkError();
+		buffer.flip();
+		try {
+			fullBuffers.put(buffer);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting to write the replay");
+		}
+	}
+
+	/**
+	 * Wait for everything to be written and close the file
+	 *
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		try {
+			fullBuffers.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting to write the replay");
+		} finally {
+			channel.close();
+		}
+		checkError();
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Write buffers until END comes through
+	 */
+	public void run() {
+		while (true) {
+			ByteBuffer buffer;
+			try {
+				buffer = fullBuffers.take();
+			} catch (InterruptedException e) {
+				error = new InterruptedIOException("Replay writer was interrupted");
+				return;
+			}
+			if (buffer == END) {
+				return;
+			}
+
+			// after an error, keep taking buffers (so the simulator never waits) but drop them
+			if (error == null) {
+				try {
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+
+			if (buffer.capacity() == BUFFER_SIZE && buffer.isDirect()) {
+				emptyBuffers.offer(buffer);
+			}
+		}
+	}
+}
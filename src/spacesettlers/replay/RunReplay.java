@@ -0,0 +1,92 @@
+package spacesettlers.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.SwingUtilities;
+
+import spacesettlers.gui.ReplayGUI;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+
+/**
+ * Watch a recorded game (see the replayFile setting in the simulator config and the 
+ * replayDirectory setting in the ladder config)
+ * 
+ * @author amy
+ */
+public class RunReplay {
+	JSAPResult config;
+
+	/**
+	 * Read the command line
+	 */
+	public RunReplay(String[] args) {
+		SimpleJSAP parser = initializeParser(args);
+		config = parser.parse(args);
+		// exit if it failed to parse
+		if (parser.messagePrinted()) {
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Initialize the parser with all of the command line arguments
+	 * @param args
+	 * @return
+	 */
+	private SimpleJSAP initializeParser(String[] args) {
+		SimpleJSAP parser = null;
+
+		// create the parser and specify all the command line arguments
+		try {
+			parser = new SimpleJSAP(
+					"Replay",
+					"Space Settlers replay viewer",
+					new Parameter[] {
+						new FlaggedOption("replayFile",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "replayFile",
+								"the recorded game to watch"), 
+						new FlaggedOption("startStep",
+								JSAP.INTEGER_PARSER, "0", JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "startStep",
+								"the step to start watching from"), 
+					});
+		} catch (JSAPException e) {
+			e.printStackTrace();
+			System.err.println("Error in the parser - exiting");
+			System.exit(-1);
+		}
+		return parser;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		RunReplay runReplay = new RunReplay(args);
+		final File replayFile = new File(runReplay.config.getString("replayFile"));
+
+		final ReplayReader replay;
+		try {
+			replay = new ReplayReader(replayFile);
+		} catch (IOException e) {
+			System.err.println("Unable to open the replay: " + e.getMessage());
+			System.exit(-1);
+			return;
+		}
+		replay.seek(runReplay.config.getInt("startStep"));
+
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				new ReplayGUI(replay, replayFile.getName());
+			}
+		});
+	}
+}
@@ -0,0 +1,135 @@
+package spacesettlers.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import spacesettlers.clients.Team;
+import spacesettlers.configs.SpaceSettlersConfig;
+
+/**
+ * Optional rules for ending a game before all of its simulationSteps have been played
+ * (both are off unless they are set in the config file):
+ *
+ * <ul>
+ * <li><b>Idle</b>: no team's score has changed for earlyEndIdleSteps steps.</li>
+ * <li><b>Decided</b>: every team is further ahead of the team in the next place than that team could
+ * catch up with in the steps left, if it scored earlyEndMaximumScorePerStep on every remaining step
+ * (so no team can change places, not just the winner).  Only used with scoring methods where a
+ * score can never go down (otherwise a team could still fall back).</li>
+ * </ul>
+ *
+ * A game that ends early keeps the scores it had when it ended, and the simulator records which
+ * rule ended it (see SpaceSettlersSimulator.getEarlyEndReason) so the ladder can tell those games apart.
+ *
+ * @author amy
+ */
+public class EarlyEndRules {
+	/**
+	 * The scoring methods where a team's score never goes down
+	 */
+	private static final Set<String> NON_DECREASING_SCORING_METHODS = new HashSet<String>(Arrays.asList(
+			"resources", "resourcesandcores", "cores", "flags", "totalflags", "kills", "hits", "damage"));
+
+	public static final String IDLE_REASON = "Idle";
+
+	public static final String DECIDED_REASON = "Decided";
+
+	/**
+	 * End the game after this many steps with no score changes (0 to never end an idle game)
+	 */
+	int idleSteps;
+
+	/**
+	 * The most any team can score in one step (0 to never end a decided game)
+	 */
+	double maximumScorePerStep;
+
+	/**
+	 * The scores of the teams on the last step
+	 */
+	Map<Team, Double> lastScores;
+
+	/**
+	 * The number of steps since any team's score changed
+	 */
+	int stepsSinceScoreChange;
+
+	public EarlyEndRules(SpaceSettlersConfig simConfig) {
+		this.idleSteps = simConfig.getEarlyEndIdleSteps();
+		this.maximumScorePerStep = simConfig.getEarlyEndMaximumScorePerStep();
+		this.lastScores = new HashMap<Team, Double>();
+		this.stepsSinceScoreChange = 0;
+
+		if (maximumScorePerStep > 0 && (simConfig.getScoringMethod() == null ||
+				!NON_DECREASING_SCORING_METHODS.contains(simConfig.getScoringMethod().toLowerCase()))) {
+			System.err.println("Scores can go down with scoring method " + simConfig.getScoringMethod() +
+					" so games won't end early when they are decided");
+			this.maximumScorePerStep = 0;
+		}
+	}
+
+	/**
+	 * @return true if any early end rule is on
+	 */
+	public boolean isEnabled() {
+		return idleSteps > 0 || maximumScorePerStep > 0;
+	}
+
+	/**
+	 * Check the rules after a step has been played
+	 *
+	 * @param teams
+	 * @param stepsLeft the number of steps still to play
+	 * @return the rule that ends the game (IDLE_REASON or DECIDED_REASON) or null if the game goes on
+	 */
+	public String check(Set<Team> teams, int stepsLeft) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		boolean scoreChanged = false;
+		List<Double> scores = new ArrayList<Double>();
+		for (Team team : teams) {
+			double score = team.getScore();
+			Double lastScore = lastScores.put(team, score);
+			if (lastScore == null || lastScore != score) {
+				scoreChanged = true;
+			}
+			scores.add(score);
+		}
+		stepsSinceScoreChange = scoreChanged ? 0 : stepsSinceScoreChange + 1;
+
+		if (idleSteps > 0 && stepsSinceScoreChange >= idleSteps) {
+			return IDLE_REASON;
+		}
+
+		if (maximumScorePerStep > 0 && teams.size() > 1 && isOrderDecided(scores, stepsLeft)) {
+			return DECIDED_REASON;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns true if no team can catch up with the team in the place ahead of it
+	 *
+	 * @param scores
+	 * @param stepsLeft
+	 * @return
+	 */
+	private boolean isOrderDecided(List<Double> scores, int stepsLeft) {
+		Collections.sort(scores);
+		for (int i = 0; i + 1 < scores.size(); i++) {
+			if (scores.get(i + 1) - scores.get(i) <= stepsLeft * maximumScorePerStep) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
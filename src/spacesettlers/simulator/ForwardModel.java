@@ -0,0 +1,189 @@
+package spacesettlers.simulator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.weapons.AbstractWeapon;
+
+/**
+ * A private copy of the world that a client can play forward to see what its actions would do
+ * (for lookahead and rollouts).  Each step uses the same physics as the real game (movement,
+ * collisions, mining, weapons, and power ups) but nothing else runs: no clients are called, there
+ * are no graphics, purchases, respawns or new asteroids, and the scores are never updated.  The
+ * bases in a model belong to the model's own copies of their teams, so resources, cores, and flags
+ * brought back to a base in the model never reach the real teams.
+ *
+ * Forking is cheap so a client can try many rollouts each step.  Only the objects and a snapshot
+ * of each team's counters (once, however many bases it has, and without its ships) are copied and
+ * forkInto reuses an old model's sets instead of making new ones.  A model is only used by one thread at a time but forks can run on separate threads.
+ *
+ * @author amy
+ */
+public class ForwardModel {
+	/**
+	 * The model's own copy of the world
+	 */
+	Toroidal2DPhysics space;
+
+	/**
+	 * Make a model that starts from a copy of the given world (which is never changed by the model)
+	 *
+	 * @param space usually the space given to the client
+	 */
+	public ForwardModel(Toroidal2DPhysics space) {
+		this.space = new Toroidal2DPhysics(space.getHeight(), space.getWidth(), space.getTimestepDuration());
+		copyWorld(space, this.space);
+	}
+
+	/**
+	 * Make a model that starts where this one is now
+	 *
+	 * @return the new model
+	 */
+	public ForwardModel fork() {
+		return new ForwardModel(space);
+	}
+
+	/**
+	 * Set another model to where this one is now (reusing its sets so a pool of models can be
+	 * forked over and over without making new ones)
+	 *
+	 * @param target the model to overwrite
+	 */
+	public void forkInto(ForwardModel target) {
+		if (target == this) {
+			return;
+		}
+		copyWorld(space, target.space);
+	}
+
+	/**
+	 * Play one step.  Ships do the action given for them (a ship without one does nothing
+	 * and drifts).
+	 *
+	 * @param actions the action for each ship (by ship id)
+	 */
+	public void advance(Map<UUID, AbstractAction> actions) {
+		advance(actions, Collections.<UUID, SpaceSettlersPowerupEnum>emptyMap());
+	}
+
+	/**
+	 * Play several steps with the same actions (like a client that returns the same action
+	 * until it is finished)
+	 *
+	 * @param actions the action for each ship (by ship id)
+	 * @param steps
+	 */
+	public void advance(Map<UUID, AbstractAction> actions, int steps) {
+		for (int i = 0; i < steps; i++) {
+			advance(actions);
+		}
+	}
+
+	/**
+	 * Play one step with actions and power ups.  Power ups the object can't use are ignored (as in the game).
+	 *
+	 * @param actions the action for each ship (by ship id)
+	 * @param powerups the power up each ship or base uses (by id)
+	 */
+	public void advance(Map<UUID, AbstractAction> actions, Map<UUID, SpaceSettlersPowerupEnum> powerups) {
+		for (Ship ship : space.ships) {
+			ship.setCurrentAction(actions == null ? null : actions.get(ship.getId()));
+		}
+
+		Map<UUID, SpaceSettlersPowerupEnum> validPowerups = Collections.<UUID, SpaceSettlersPowerupEnum>emptyMap();
+		if (powerups != null && !powerups.isEmpty()) {
+			validPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+			for (UUID id : powerups.keySet()) {
+				AbstractObject object = space.getObjectById(id);
+				if (object instanceof AbstractActionableObject
+						&& ((AbstractActionableObject) object).isValidPowerup(powerups.get(id))) {
+					validPowerups.put(id, powerups.get(id));
+				}
+			}
+		}
+
+		space.advanceTime(space.getCurrentTimestep() + 1, validPowerups);
+		space.cleanupDeadWeapons();
+		space.cleanupDeadCores();
+	}
+
+	/**
+	 * Returns the model's world (look at it to score a rollout).  Changing it changes the model.
+	 *
+	 * @return
+	 */
+	public Toroidal2DPhysics getSpace() {
+		return space;
+	}
+
+	/**
+	 * @return the time step the model has played up to
+	 */
+	public int getTimestep() {
+		return space.getCurrentTimestep();
+	}
+
+	/**
+	 * Make target a forward model copy of source (emptying whatever target held before)
+	 *
+	 * @param source
+	 * @param target
+	 */
+	static void copyWorld(Toroidal2DPhysics source, Toroidal2DPhysics target) {
+		target.height = source.height;
+		target.width = source.width;
+		target.halfHeight = source.halfHeight;
+		target.halfWidth = source.halfWidth;
+		target.timeStep = source.timeStep;
+		target.currentTimeStep = source.currentTimeStep;
+		target.maxTime = source.maxTime;
+		target.teamInfo = source.teamInfo;
+		target.isForwardModel = true;
+
+		target.allObjects.clear();
+		target.beacons.clear();
+		target.asteroids.clear();
+		target.bases.clear();
+		target.ships.clear();
+		target.cores.clear();
+		target.flags.clear();
+		target.weapons.clear();
+		target.objectsById.clear();
+
+		// each fork gets its own snapshot of every team (shared by that team's bases in the fork)
+		Map<Team, Team> teamCopies = new HashMap<Team, Team>();
+		for (AbstractObject object : source.allObjects) {
+			if (object instanceof Base) {
+				Base base = (Base) object;
+				Team teamCopy = teamCopies.get(base.getTeam());
+				if (teamCopy == null) {
+					teamCopy = base.getTeam().snapshot();
+					teamCopies.put(base.getTeam(), teamCopy);
+				}
+				target.addObject(base.deepClone(teamCopy));
+			} else {
+				target.addObject(object.deepClone());
+			}
+		}
+
+		// weapons are copied with a copy of their ship so point them back at the ship in the model
+		for (AbstractWeapon weapon : target.weapons) {
+			if (weapon.getFiringShip() != null) {
+				AbstractObject firingShip = target.getObjectById(weapon.getFiringShip().getId());
+				if (firingShip instanceof Ship) {
+					weapon.setFiringShip((Ship) firingShip);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package spacesettlers.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+import spacesettlers.clients.Team;
+
+/**
+ * Everything needed to carry on a game from part way through: the world (every object in it),
+ * the teams (their scores, resources, purchase costs and other counters), the random number
+ * generator, the early end rules, and whatever state each client chose to save.
+ *
+ * Checkpoints are saved with XStream's binary format (so any object in the game is saved without
+ * needing its own code to do it and objects shared between the world and the teams stay shared).
+ * The team clients and the threads and budgets that run them aren't saved: they are made new for
+ * the restored game.
+ *
+ * @author amy
+ */
+class SimulatorCheckpoint {
+	/**
+	 * The size of the buffer used to read and write checkpoints
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The stack size of the thread that saves and loads checkpoints.  XStream recurses once for each
+	 * object it follows and the chains can be long (a ship's action points at a copy of its goal,
+	 * which has its own action, and so on back through the game).
+	 */
+	private static final long STACK_SIZE = 256L * 1024 * 1024;
+
+	/**
+	 * Saves and loads checkpoints (XStream is thread safe once it is set up)
+	 */
+	private static final XStream xstream = createXStream();
+
+	/**
+	 * The next step to play
+	 */
+	int timestep;
+
+	Random random;
+
+	Toroidal2DPhysics simulatedSpace;
+
+	ArrayList<Team> teams;
+
+	EarlyEndRules earlyEndRules;
+
+	/**
+	 * The state each client saved (by team name)
+	 */
+	Map<String, Object> clientStates;
+
+	SimulatorCheckpoint(int timestep, Random random, Toroidal2DPhysics simulatedSpace, Collection<Team> teams,
+			EarlyEndRules earlyEndRules) {
+		this.timestep = timestep;
+		this.random = random;
+		this.simulatedSpace = simulatedSpace;
+		this.teams = new ArrayList<Team>(teams);
+		this.earlyEndRules = earlyEndRules;
+		this.clientStates = new LinkedHashMap<String, Object>();
+	}
+
+	/**
+	 * Set up XStream to leave out the parts of a team that are made new when it is restored
+	 *
+	 * @return
+	 */
+	private static XStream createXStream() {
+		XStream xstream = new XStream();
+		xstream.setMode(XStream.ID_REFERENCES);
+		xstream.alias("SimulatorCheckpoint", SimulatorCheckpoint.class);
+		xstream.omitField(Team.class, "teamClient");
+		xstream.omitField(Team.class, "executor");
+		xstream.omitField(Team.class, "cpuTimeBank");
+		xstream.omitField(Team.class, "lastClientCall");
+		xstream.omitField(Team.class, "watchdog");
+		xstream.omitField(Team.class, "memoryBudget");
+		xstream.omitField(Team.class, "context");
+		return xstream;
+	}
+
+	/**
+	 * Save the checkpoint.  It is written to a temporary file first and then moved over the old
+	 * checkpoint, so a crash while saving leaves the last checkpoint as it was.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	void save(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		final OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+		try {
+			runWithLargeStack(new Callable<Object>() {
+				public Object call() throws Exception {
+					BinaryStreamWriter writer = new BinaryStreamWriter(output);
+					xstream.marshal(SimulatorCheckpoint.this, writer);
+					writer.flush();
+					return null;
+				}
+			});
+		} finally {
+			output.close();
+		}
+
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Load a checkpoint
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException if the checkpoint can't be read
+	 */
+	static SimulatorCheckpoint load(File file) throws IOException {
+		final InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			Object checkpoint = runWithLargeStack(new Callable<Object>() {
+				public Object call() throws Exception {
+					return xstream.unmarshal(new BinaryStreamReader(input));
+				}
+			});
+			if (!(checkpoint instanceof SimulatorCheckpoint)) {
+				throw new IOException(file + " is not a checkpoint");
+			}
+			return (SimulatorCheckpoint) checkpoint;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Run a call on a new thread with a stack big enough for XStream and wait for it to finish
+	 *
+	 * @param call
+	 * @return what the call returned
+	 * @throws IOException if the call failed
+	 */
+	private static Object runWithLargeStack(Callable<Object> call) throws IOException {
+		FutureTask<Object> task = new FutureTask<Object>(call);
+		Thread thread = new Thread(null, task, "checkpoint", STACK_SIZE);
+		thread.setDaemon(true);
+		thread.start();
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving or loading a checkpoint", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.toString(), cause);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package spacesettlers.simulator;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import spacesettlers.configs.SpaceSettlersConfig;
+
+/**
+ * Everything about how one simulation runs that used to be global: the time each team
+ * client is given to answer, whether it is in debug mode, the random number generator, and
+ * the threads used to ask the teams for their actions.  Each simulator has its own context
+ * so several games can run side by side in one JVM with different settings (and a game in
+ * debug mode doesn't change the timeouts of every other game).
+ *
+ * @author amy
+ */
+public class SimulatorContext {
+	/**
+	 * Max time allowed in MILLISECONDS for a team to return actions
+	 */
+	int teamActionTimeout;
+
+	/**
+	 * Max time allowed in MILLISECONDS for a getMovement to return
+	 */
+	int movementTimeout;
+
+	/**
+	 * Max time allowed in MILLISECONDS for a endAction to return
+	 */
+	int teamEndActionTimeout;
+
+	/**
+	 * Max time allowed in MILLISECONDS for a graphic generation to return
+	 */
+	int teamGraphicsTimeout;
+
+	/**
+	 * If debug mode is true, then only run single threaded (and with no timeouts)
+	 */
+	boolean debug;
+
+	/**
+	 * Random number generator for the game
+	 */
+	Random random;
+
+	/**
+	 * Number of helper threads each team client gets for TeamClient.decideInParallel
+	 */
+	int helperThreadsPerTeam;
+
+	/**
+	 * Threads used to ask all the teams for their actions at the same time (made when first needed)
+	 */
+	ExecutorService teamExecutor;
+
+	/**
+	 * Make a context with the default timeouts and an unseeded random number generator
+	 * (used when a team is made outside of a simulator)
+	 */
+	public SimulatorContext() {
+		this.teamActionTimeout = SpaceSettlersSimulator.DEFAULT_TEAM_ACTION_TIMEOUT;
+		this.movementTimeout = SpaceSettlersSimulator.DEFAULT_MOVEMENT_TIMEOUT;
+		this.teamEndActionTimeout = SpaceSettlersSimulator.DEFAULT_TEAM_END_ACTION_TIMEOUT;
+		this.teamGraphicsTimeout = SpaceSettlersSimulator.DEFAULT_TEAM_GRAPHICS_TIMEOUT;
+		this.debug = false;
+		this.random = new Random();
+		this.helperThreadsPerTeam = 1;
+		this.teamExecutor = null;
+	}
+
+	/**
+	 * Make the context for a simulation.  The timeouts come from the config file (or the defaults
+	 * if it doesn't set them) and debug mode turns all of the timeouts off.
+	 *
+	 * @param simConfig
+	 * @param debug
+	 */
+	public SimulatorContext(SpaceSettlersConfig simConfig, boolean debug) {
+		this();
+		this.debug = debug;
+
+		if (simConfig.getRandomSeed() != 0) {
+			random = new Random(simConfig.getRandomSeed());
+		}
+
+		if (simConfig.getTeamActionTimeout() > 0) {
+			teamActionTimeout = simConfig.getTeamActionTimeout();
+		}
+		if (simConfig.getMovementTimeout() > 0) {
+			movementTimeout = simConfig.getMovementTimeout();
+		}
+		if (simConfig.getTeamEndActionTimeout() > 0) {
+			teamEndActionTimeout = simConfig.getTeamEndActionTimeout();
+		}
+		if (simConfig.getTeamGraphicsTimeout() > 0) {
+			teamGraphicsTimeout = simConfig.getTeamGraphicsTimeout();
+		}
+
+		// unless the config says otherwise, the teams share the cores
+		if (simConfig.getHelperThreadsPerTeam() > 0) {
+			helperThreadsPerTeam = simConfig.getHelperThreadsPerTeam();
+		} else {
+			int numTeams = (simConfig.getTeams() == null) ? 1 : Math.max(1, simConfig.getTeams().length);
+			helperThreadsPerTeam = Math.max(1, Runtime.getRuntime().availableProcessors() / numTeams);
+		}
+
+		if (debug) {
+			helperThreadsPerTeam = 1;
+			teamActionTimeout = Integer.MAX_VALUE;
+			movementTimeout = Integer.MAX_VALUE;
+			teamEndActionTimeout = Integer.MAX_VALUE;
+			teamGraphicsTimeout = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @return the max time in MILLISECONDS for a team to return actions
+	 */
+	public int getTeamActionTimeout() {
+		return teamActionTimeout;
+	}
+
+	/**
+	 * @return the max time in MILLISECONDS for a getMovement to return
+	 */
+	public int getMovementTimeout() {
+		return movementTimeout;
+	}
+
+	/**
+	 * @return the max time in MILLISECONDS for a endAction to return
+	 */
+	public int getTeamEndActionTimeout() {
+		return teamEndActionTimeout;
+	}
+
+	/**
+	 * @return the max time in MILLISECONDS for a graphic generation to return
+	 */
+	public int getTeamGraphicsTimeout() {
+		return teamGraphicsTimeout;
+	}
+
+	/**
+	 * The longest a time step can wait on the teams: the start and end of the movement, 
+	 * the purchases, the power ups, and the graphics all taking as long as they are allowed
+	 * 
+	 * @return the time in MILLISECONDS (Long.MAX_VALUE in debug mode)
+	 */
+	public long getMaximumStepTime() {
+		if (debug) {
+			return Long.MAX_VALUE;
+		}
+		return 3L * teamActionTimeout + teamEndActionTimeout + teamGraphicsTimeout;
+	}
+
+	/**
+	 * @return the number of helper threads each team client gets
+	 */
+	public int getHelperThreadsPerTeam() {
+		return helperThreadsPerTeam;
+	}
+
+	/**
+	 * @return true if the simulation is in debug mode
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * @return the random number generator for the game
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	/**
+	 * Replace the random number generator (used when a game is restored from a checkpoint)
+	 * @param random
+	 */
+	void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Returns the threads used to ask the teams for their actions (one thread in debug mode)
+	 * @return
+	 */
+	public synchronized ExecutorService getTeamExecutor() {
+		if (teamExecutor == null || teamExecutor.isShutdown()) {
+			if (debug) {
+				teamExecutor = Executors.newSingleThreadExecutor();
+			} else {
+				teamExecutor = Executors.newCachedThreadPool();
+			}
+		}
+		return teamExecutor;
+	}
+
+	/**
+	 * Stop the threads when the simulation is over
+	 */
+	public synchronized void shutdown() {
+		if (teamExecutor != null) {
+			teamExecutor.shutdownNow();
+			teamExecutor = null;
+		}
+	}
+}
@@ -2,7 +2,9 @@ package spacesettlers.simulator;
 
 import java.awt.Color;
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Random;
@@ -11,12 +13,10 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import com.martiansoftware.jsap.JSAPResult;
-import com.thoughtworks.xstream.XStream;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.DoNothingAction;
@@ -24,6 +24,9 @@ import spacesettlers.actions.PurchaseTypes;
 import spacesettlers.clients.ImmutableTeamInfo;
 import spacesettlers.clients.Team;
 import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamCpuTimeBank;
+import spacesettlers.clients.TeamMemoryBudget;
+import spacesettlers.clients.TeamThreadWatchdog;
 import spacesettlers.configs.*;
 import spacesettlers.gui.SpaceSettlersGUI;
 import spacesettlers.objects.AbstractActionableObject;
@@ -34,30 +37,32 @@ import spacesettlers.objects.Beacon;
 import spacesettlers.objects.Flag;
 import spacesettlers.objects.Ship;
 import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.replay.ReplayRecorder;
 import spacesettlers.utilities.Position;
 import spacesettlers.utilities.Vector2D;
 
 public final class SpaceSettlersSimulator {
 
 	/**
-	 * Max time allowed in MILLISECONDS for a team to return actions
+	 * Default max time allowed in MILLISECONDS for a team to return actions 
+	 * (the timeouts for a game are in its SimulatorContext)
 	 */
-	public static int TEAM_ACTION_TIMEOUT = 300;
+	public static final int DEFAULT_TEAM_ACTION_TIMEOUT = 300;
 
 	/**
-	 * Max time allowed in MILLISECONDS for a getMovement to return
+	 * Default max time allowed in MILLISECONDS for a getMovement to return
 	 */
-	public static int MOVEMENT_TIMEOUT = 300;
+	public static final int DEFAULT_MOVEMENT_TIMEOUT = 300;
 
 	/**
-	 * Max time allowed in MILLISECONDS for a endAction to return
+	 * Default max time allowed in MILLISECONDS for a endAction to return
 	 */
-	public static int TEAM_END_ACTION_TIMEOUT = 300;
+	public static final int DEFAULT_TEAM_END_ACTION_TIMEOUT = 300;
 
 	/**
-	 * Max time allowed in MILLISECONDS for a graphic generation to return
+	 * Default max time allowed in MILLISECONDS for a graphic generation to return
 	 */
-	public static int TEAM_GRAPHICS_TIMEOUT = 200;
+	public static final int DEFAULT_TEAM_GRAPHICS_TIMEOUT = 200;
 
 	/**
 	 * Probability that new asteroids spawn on any given turn
@@ -80,7 +85,12 @@ public final class SpaceSettlersSimulator {
 	SpaceSettlersGUI gui = null;
 
 	/**
-	 * Global random number generator for the game
+	 * The timeouts, random number generator, and threads for this simulation
+	 */
+	SimulatorContext context;
+
+	/**
+	 * Random number generator for the game (the one in the context)
 	 */
 	Random random;
 
@@ -100,9 +110,24 @@ public final class SpaceSettlersSimulator {
 	int timestep;
 
 	/**
-	 * If debug mode is true, then only run single threaded
+	 * The rule that ended the game before all its steps were played (null if it played them all)
+	 */
+	String earlyEndReason;
+
+	/**
+	 * Records the game being played (null if it isn't being recorded)
+	 */
+	ReplayRecorder replayRecorder;
+
+	/**
+	 * The rules for ending the game early (kept with the game so they are saved in its checkpoints)
 	 */
-	boolean debug = false;
+	EarlyEndRules earlyEndRules;
+
+	/**
+	 * The step the game starts on (0 unless it was resumed from a checkpoint)
+	 */
+	int firstTimestep;
 
 	/**
 	 * True if the simulation is paused and false otherwise
@@ -126,24 +151,13 @@ public final class SpaceSettlersSimulator {
 		teams = new LinkedHashSet<Team>();
 		clientMap = new HashMap<String, TeamClient>();
 
-		if (simConfig.getRandomSeed() == 0) {
-			random = new Random();
-		} else {
-			random = new Random(simConfig.getRandomSeed());
-		}
+		// see if debug mode is on and set up the timeouts and random number generator
+		context = new SimulatorContext(simConfig, parserConfig.getBoolean("debug"));
+		random = context.getRandom();
 
 		// and use it to make agents and the world
 		initializeSimulation(parserConfig);
 
-		// see if debug mode is on
-		if (parserConfig.getBoolean("debug")) {
-			debug = true;
-
-			TEAM_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
-		}
 
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
@@ -163,11 +177,9 @@ public final class SpaceSettlersSimulator {
 		teams = new LinkedHashSet<Team>();
 		clientMap = new HashMap<String, TeamClient>();
 
-		if (simConfig.getRandomSeed() == 0) {
-			random = new Random();
-		} else {
-			random = new Random(simConfig.getRandomSeed());
-		}
+		// see if debug mode is on and set up the timeouts and random number generator
+		context = new SimulatorContext(simConfig, parserConfig.getBoolean("debug"));
+		random = context.getRandom();
 
 		// and use it to make agents and the world
 		initializeSimulation(parserConfig);
@@ -177,20 +189,43 @@ public final class SpaceSettlersSimulator {
 			gui = new SpaceSettlersGUI(simConfig, this);
 		}
 
-		// see if debug mode is on
-		if (parserConfig.getBoolean("debug")) {
-			debug = true;
-
-			TEAM_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
-		}
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
 		createGUI(parserConfig);
 	}
 
+	/**
+	 * Set the simulator up to play a new game with a different config (used by the ladder so each
+	 * thread can play all of its games with one simulator).  The world is emptied and filled again 
+	 * from the new config's seed exactly as a new simulator would be, but the simulator, the world's 
+	 * object sets, and the parsed team config files are reused.  The team clients are always made new.
+	 * 
+	 * Only call this once the last game has finished running.  Simulators with graphics can't be reset.
+	 * 
+	 * @param simConfig
+	 * @param parserConfig
+	 * @throws SimulatorException
+	 */
+	public void reset(SpaceSettlersConfig simConfig, JSAPResult parserConfig) throws SimulatorException {
+		if (gui != null) {
+			throw new SimulatorException("A simulator with graphics can't be reset");
+		}
+
+		this.simConfig = simConfig;
+		teams.clear();
+		clientMap.clear();
+		timestep = 0;
+		earlyEndReason = null;
+		isPaused = false;
+
+		// the context has the new game's seed and timeouts
+		context.shutdown();
+		context = new SimulatorContext(simConfig, parserConfig.getBoolean("debug"));
+		random = context.getRandom();
+
+		initializeSimulation(parserConfig);
+	}
+
 	/**
 	 * Create the GUI after the simulator has been initialize
 	 * 
@@ -204,6 +239,14 @@ public final class SpaceSettlersSimulator {
 	}
 
 
+	/**
+	 * Returns the timeouts, random number generator, and threads for this simulation
+	 * @return
+	 */
+	public SimulatorContext getContext() {
+		return context;
+	}
+
 	/**
 	 * Sleep so the gui can update (From Andy Fagg's tree code)
 	 * @param i
@@ -222,11 +265,48 @@ public final class SpaceSettlersSimulator {
 	 * @throws SimulatorException 
 	 */
 	void initializeSimulation(JSAPResult parserConfig) throws SimulatorException {
-		simulatedSpace = new Toroidal2DPhysics(simConfig);
+		if (simulatedSpace == null) {
+			simulatedSpace = new Toroidal2DPhysics(simConfig);
+		} else {
+			simulatedSpace.reset(simConfig);
+		}
+
+		// check the teams and bases match before anything is made
+		HighLevelTeamConfig[] teamConfigs = simConfig.getTeams();
+		Set<String> teamNames = new HashSet<String>();
+		for (HighLevelTeamConfig teamConfig : teamConfigs) {
+			// ensure this team isn't a duplicate
+			if (!teamNames.add(teamConfig.getTeamName())) {
+				throw new SimulatorException("Error: duplicate team name " + teamConfig.getTeamName());
+			}
+		}
+
+		// make sure the base count matches the team count
+		if (teamConfigs.length != simConfig.getBases().length) {
+			throw new SimulatorException("Error: You specified " + teamConfigs.length + 
+					" teams and " + simConfig.getBases().length + " bases.  They must match.");
+		}
+
+		// ensure there is a team for each base
+		for (BaseConfig baseConfig : simConfig.getBases()) {
+			if (!teamNames.contains(baseConfig.getTeamName())) {
+				throw new SimulatorException("Error: base is listed as team " + baseConfig.getTeamName() + " but there is no corresponding team");
+			} 
+		}
+
+		TeamClientConfig[] clientConfigs = new TeamClientConfig[teamConfigs.length];
+		int[] shipsPerTeam = new int[teamConfigs.length];
+		for (int t = 0; t < teamConfigs.length; t++) {
+			clientConfigs[t] = getTeamClientConfig(teamConfigs[t], parserConfig.getString("configPath"));
+			shipsPerTeam[t] = clientConfigs[t].getNumberInitialShipsInTeam();
+		}
+
+		// the layout of the world only depends on the map seed, so it is usually already cached
+		WorldTemplate template = WorldTemplate.getTemplate(simConfig, shipsPerTeam, random);
 
 		// place the beacons
-		for (int b = 0; b < simConfig.getNumBeacons(); b++) {
-			Beacon beacon = new Beacon(simulatedSpace.getRandomFreeLocation(random, Beacon.BEACON_RADIUS * 2));
+		for (int b = 0; b < template.getNumBeacons(); b++) {
+			Beacon beacon = new Beacon(template.getBeaconLocation(b));
 			//System.out.println("New beacon at " + beacon.getPosition());
 			simulatedSpace.addObject(beacon);
 		}
@@ -241,64 +321,41 @@ public final class SpaceSettlersSimulator {
 		}
 
 		// place the asteroids
-		RandomAsteroidConfig randomAsteroidConfig = simConfig.getRandomAsteroids();
-		for (int a = 0; a < randomAsteroidConfig.getNumberInitialAsteroids(); a++) {
-			Asteroid asteroid = createNewRandomAsteroid(randomAsteroidConfig);
+		for (int a = 0; a < template.getNumAsteroids(); a++) {
+			Asteroid asteroid = template.createAsteroid(a);
 			simulatedSpace.addObject(asteroid);
 		}
 
 
 		// create the clients
-		for (HighLevelTeamConfig teamConfig : simConfig.getTeams()) {
-			// ensure this team isn't a duplicate
-			if (clientMap.containsKey(teamConfig.getTeamName())) {
-				throw new SimulatorException("Error: duplicate team name " + teamConfig.getTeamName());
-			}
-
-			TeamClientConfig teamClientConfig = getTeamClientConfig(teamConfig, parserConfig.getString("configPath"));
-
-			// grab the home base config for this team (to get starting locations as needed)
-			BaseConfig thisBaseConfig = null;
-			for (BaseConfig baseConfig : simConfig.getBases()) {
-				String teamName = baseConfig.getTeamName();
-				if (teamName.equalsIgnoreCase(teamConfig.getTeamName())) {
-					thisBaseConfig = baseConfig;
-					break;
-				}
-			}
-
-			// now either use the base config for the default region radius or the teamConfig file
-			if (thisBaseConfig != null && thisBaseConfig.isFixedLocation()) {
-				teamConfig.setInitialRegionULX(thisBaseConfig.getBoundingBoxULX());
-				teamConfig.setInitialRegionULY(thisBaseConfig.getBoundingBoxULY());
-				teamConfig.setInitialRegionLRX(thisBaseConfig.getBoundingBoxLRX());
-				teamConfig.setInitialRegionLRY(thisBaseConfig.getBoundingBoxLRY());
+		for (int t = 0; t < teamConfigs.length; t++) {
+			HighLevelTeamConfig teamConfig = teamConfigs[t];
+
+			// set the team's initial region (from its fixed base, its config, or made for it)
+			int[] region = template.getRegion(t);
+			teamConfig.setInitialRegionULX(region[0]);
+			teamConfig.setInitialRegionULY(region[1]);
+			teamConfig.setInitialRegionLRX(region[2]);
+			teamConfig.setInitialRegionLRY(region[3]);
+
+			if (template.isGeneratedRegion(t)) {
+				System.out.println("Initial location not provided for team " + teamConfig.getTeamName() 
+					+ "...generating: UL (x,y) = " + teamConfig.getInitialRegionULX() + ", " +
+						teamConfig.getInitialRegionULY() + " LR (x,y) = " + 
+					teamConfig.getInitialRegionLRX() + ", " +
+						teamConfig.getInitialRegionLRY());
+			} else if (isFixedBaseTeam(teamConfig)) {
 				System.out.println("Initial provided for team " + teamConfig.getTeamName() 
 				+ "UL (x,y) = " + teamConfig.getInitialRegionULX() + ", " +
 					teamConfig.getInitialRegionULY() + " LR (x,y) = " + 
 				teamConfig.getInitialRegionLRX() + ", " +  
 					teamConfig.getInitialRegionLRY());
-			
-			} else {
-				// if the team doesn't provide default radiii and bases, create one
-				if (teamConfig.getInitialRegionULX() == 0 && teamConfig.getInitialRegionLRX() == 0) {
-					teamConfig.setInitialRegionULX(random.nextInt(simConfig.getWidth()));
-					teamConfig.setInitialRegionLRX(teamConfig.getInitialRegionULX() + simConfig.getWidth() / 4);
-					teamConfig.setInitialRegionULY(random.nextInt(simConfig.getHeight()));
-					teamConfig.setInitialRegionLRY(teamConfig.getInitialRegionULX() + simConfig.getHeight() / 4);
-
-					System.out.println("Initial location not provided for team " + teamConfig.getTeamName() 
-						+ "...generating: UL (x,y) = " + teamConfig.getInitialRegionULX() + ", " +
-							teamConfig.getInitialRegionULY() + " LR (x,y) = " + 
-						teamConfig.getInitialRegionLRX() + ", " +
-							teamConfig.getInitialRegionLRY());
-				}
 			}
 
-			TeamClient teamClient = createTeamClient(teamConfig, teamClientConfig);
+			TeamClient teamClient = createTeamClient(teamConfig, clientConfigs[t]);
 			
 			// make the team inside the simulator for this team
-			Team team = createTeam(teamConfig, teamClient, teamClientConfig);
+			Team team = createTeam(teamConfig, teamClient, clientConfigs[t], template, t);
 
 			for (Ship ship : team.getShips()) {
 				simulatedSpace.addObject(ship);
@@ -307,46 +364,12 @@ public final class SpaceSettlersSimulator {
 			clientMap.put(teamConfig.getTeamName(), teamClient);
 		}
 
-		// make sure the base count matches the team count
-		if (simConfig.getTeams().length != simConfig.getBases().length) {
-			throw new SimulatorException("Error: You specified " + simConfig.getTeams().length + 
-					" teams and " + simConfig.getBases().length + " bases.  They must match.");
-		}
-
-		// create the bases and ensure there is a base for each team
-		for (BaseConfig baseConfig : simConfig.getBases()) {
-			String teamName = baseConfig.getTeamName();
-			if (!clientMap.containsKey(teamName)) {
-				throw new SimulatorException("Error: base is listed as team " + teamName + " but there is no corresponding team");
-			} 
-
-			TeamClient teamClient = clientMap.get(teamName);
-
-			// find the team config for this team
-			HighLevelTeamConfig thisTeamConfig = null;
-			for (HighLevelTeamConfig teamConfig : simConfig.getTeams()) {
-				if (teamConfig.getTeamName().equalsIgnoreCase(teamName)) {
-					thisTeamConfig = teamConfig;
-					break;
-				}
+		// create the bases
+		BaseConfig[] baseConfigs = simConfig.getBases();
+		for (int b = 0; b < baseConfigs.length; b++) {
+			String teamName = baseConfigs[b].getTeamName();
 
-			}
-
-			// make the location based on fixed or random
-			Position baseLocation;
-
-			if (baseConfig.isFixedLocation()) {
-				baseLocation = new Position(baseConfig.getX(), baseConfig.getY());
-			} else {
-				// make the base in the region specified for this team
-				// ensure bases are not created right next to asteroids (free by 4 * base_radius for now)
-				baseLocation = simulatedSpace.getRandomFreeLocationInRegion(random, 4 * Base.BASE_RADIUS, 
-						thisTeamConfig.getInitialRegionULX(), thisTeamConfig.getInitialRegionULY(), 
-						thisTeamConfig.getInitialRegionLRX(), thisTeamConfig.getInitialRegionLRY());
-			}
-
-
-			// get this team as well as the client
+			// get this team
 			Team thisTeam = null;
 			for (Team team : teams) {
 				if (team.getTeamName().equalsIgnoreCase(teamName)) {
@@ -355,7 +378,7 @@ public final class SpaceSettlersSimulator {
 				}
 			}
 
-			Base base = new Base(baseLocation, baseConfig.getTeamName(), thisTeam, true);
+			Base base = new Base(template.getBaseLocation(b), teamName, thisTeam, true);
 			simulatedSpace.addObject(base);
 			thisTeam.addBase(base);
 		}
@@ -363,11 +386,13 @@ public final class SpaceSettlersSimulator {
 		
 		/**
 		 * If there are flags specified (presumably for capture the flag games), create them
-		 * and match their color to their team.  Randomly choose their starting location
-		 * from the specified set of starting locations.
+		 * and match their color to their team.  Their starting location is chosen (in the 
+		 * template) from the specified set of starting locations.
 		 */
 		if (simConfig.getFlags() != null) {
-			for (FlagConfig flagConfig : simConfig.getFlags()) {
+			FlagConfig[] flagConfigs = simConfig.getFlags();
+			for (int f = 0; f < flagConfigs.length; f++) {
+				FlagConfig flagConfig = flagConfigs[f];
 				// get the right team to match the flag
 				Team thisTeam = null;
 				for (Team team : teams) {
@@ -384,7 +409,7 @@ public final class SpaceSettlersSimulator {
 					startingPositions[i] = new Position(startX[i], startY[i]);
 				}
 				//System.out.println("Starting Locations are " + startingPositions);
-				Position flagPosition = startingPositions[random.nextInt(startingPositions.length)];
+				Position flagPosition = startingPositions[template.getFlagStart(f)];
 				//System.out.println("Chosen location is " + flagPosition);
 				Flag flag = new Flag(flagPosition, flagConfig.getTeamName(), thisTeam, startingPositions);
 				
@@ -392,7 +417,116 @@ public final class SpaceSettlersSimulator {
 			}
 		}
 		
+		earlyEndRules = new EarlyEndRules(simConfig);
+		firstTimestep = 0;
+
+		// carry on from the last checkpoint (if there is one)
+		if (simConfig.isResumeFromCheckpoint()) {
+			restoreCheckpoint();
+		}
+	}
+
+	/**
+	 * Replace the new game with the one saved in the checkpoint file (if it exists).  The
+	 * team clients made for the new game are kept and given back any state they saved.
+	 * 
+	 * @throws SimulatorException if the checkpoint can't be read or is from a different game
+	 */
+	void restoreCheckpoint() throws SimulatorException {
+		if (simConfig.getCheckpointFile() == null) {
+			return;
+		}
+		File checkpointFile = new File(simConfig.getCheckpointFile());
+		if (!checkpointFile.exists()) {
+			System.out.println("No checkpoint found at " + checkpointFile + ": starting the game from the beginning");
+			return;
+		}
+
+		SimulatorCheckpoint checkpoint;
+		try {
+			checkpoint = SimulatorCheckpoint.load(checkpointFile);
+		} catch (IOException e) {
+			throw new SimulatorException("Error: unable to read the checkpoint " + checkpointFile + ": " + e.getMessage());
+		}
+
+		// the checkpoint must have the same teams as this game
+		Set<String> checkpointTeamNames = new HashSet<String>();
+		for (Team team : checkpoint.teams) {
+			checkpointTeamNames.add(team.getTeamName());
+		}
+		if (!checkpointTeamNames.equals(clientMap.keySet())) {
+			throw new SimulatorException("Error: the checkpoint " + checkpointFile + " has teams " + 
+					checkpointTeamNames + " but this game has teams " + clientMap.keySet());
+		}
+
+		simulatedSpace = checkpoint.simulatedSpace;
+		random = checkpoint.random;
+		context.setRandom(random);
+		earlyEndRules = checkpoint.earlyEndRules;
+		teams.clear();
+		for (Team team : checkpoint.teams) {
+			TeamClient teamClient = clientMap.get(team.getTeamName());
+			team.setTeamClient(teamClient);
+			setTeamBudgets(team);
+			teamClient.setRandom(random);
+
+			Object clientState = checkpoint.clientStates.get(team.getTeamName());
+			if (clientState != null) {
+				teamClient.restoreCheckpointState(clientState);
+			}
+			teams.add(team);
+		}
+
+		firstTimestep = checkpoint.timestep;
+		System.out.println("Resuming the game from the checkpoint at time step " + firstTimestep);
+	}
+
+	/**
+	 * Save the whole game to the checkpoint file.  A checkpoint that can't be saved is 
+	 * reported but the game goes on.
+	 * 
+	 * @param nextTimestep the step the game will carry on from
+	 */
+	void saveCheckpoint(int nextTimestep) {
+		SimulatorCheckpoint checkpoint = new SimulatorCheckpoint(nextTimestep, random, simulatedSpace, teams, earlyEndRules);
+		for (Team team : teams) {
+			try {
+				Object clientState = clientMap.get(team.getTeamName()).getCheckpointState();
+				if (clientState != null) {
+					checkpoint.clientStates.put(team.getTeamName(), clientState);
+				}
+			} catch (RuntimeException e) {
+				System.err.println("Team " + team.getTeamName() + " was unable to save its state: " + e);
+			}
+		}
+
+		try {
+			checkpoint.save(new File(simConfig.getCheckpointFile()));
+		} catch (IOException e) {
+			System.err.println("Unable to save the checkpoint " + simConfig.getCheckpointFile() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param step the number of steps played
+	 * @return true if a checkpoint should be saved after this many steps
+	 */
+	boolean isCheckpointStep(int step) {
+		return simConfig.getCheckpointFile() != null && simConfig.getCheckpointInterval() > 0 && 
+				step % simConfig.getCheckpointInterval() == 0 && step < simConfig.getSimulationSteps();
+	}
 
+	/**
+	 * @param teamConfig
+	 * @return true if the team's base is at a fixed location (so its initial region is the base's bounding box)
+	 */
+	private boolean isFixedBaseTeam(HighLevelTeamConfig teamConfig) {
+		for (BaseConfig baseConfig : simConfig.getBases()) {
+			if (baseConfig.getTeamName().equalsIgnoreCase(teamConfig.getTeamName())) {
+				return baseConfig.isFixedLocation();
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -468,25 +602,38 @@ public final class SpaceSettlersSimulator {
 		return asteroid;
 	}
 
+	/**
+	 * Give a team this game's timeouts and its CPU time, thread, and memory budgets
+	 * 
+	 * @param team
+	 */
+	void setTeamBudgets(Team team) {
+		team.setSimulatorContext(context);
+		team.setCpuTimeBudget(simConfig.getTeamCpuTimePerStep(), simConfig.getTeamCpuTimeBankMaximum());
+		team.setThreadWatchdog(simConfig.getMaximumLeakedClientThreads(), simConfig.getClientThreadGracePeriod());
+		team.setMemoryBudget(simConfig.getTeamAllocationWarningPerStep(), simConfig.getTeamAllocationLimitPerStep());
+	}
+
 	/**
 	 * Make the actual team (holds a pointer to the client) 
 	 * 
 	 * @param teamConfig
 	 * @param teamClient
+	 * @param teamClientConfig
+	 * @param template the layout of the world (where the ships start)
+	 * @param teamIndex the index of the team in the config
 	 * @return
 	 */
-	public Team createTeam(HighLevelTeamConfig teamConfig, TeamClient teamClient, TeamClientConfig teamClientConfig) {
+	public Team createTeam(HighLevelTeamConfig teamConfig, TeamClient teamClient, TeamClientConfig teamClientConfig,
+			WorldTemplate template, int teamIndex) {
 		// it succeeded!  Now make the team ships
-		int numShips = Math.min(simConfig.getMaximumInitialShipsPerTeam(), teamClientConfig.getNumberInitialShipsInTeam());
-
 		Team team = new Team(teamClient, teamClientConfig.getLadderName(), simConfig.getMaximumShipsPerTeam());
+		setTeamBudgets(team);
 
-		for (int s = 0; s < numShips; s++) {
-			// put the ships in the initial region for the team
-			// moved this to ship radius * 4 to keep ships away from each other initially
-			Position freeLocation = simulatedSpace.getRandomFreeLocationInRegion(random, Ship.SHIP_RADIUS * 4, 
-					teamConfig.getInitialRegionULX(), teamConfig.getInitialRegionULY(), 
-					teamConfig.getInitialRegionLRX(), teamConfig.getInitialRegionLRY());
+		for (int s = 0; s < template.getNumShips(teamIndex); s++) {
+			// the ships start in the initial region for the team (the template keeps them 
+			// 4 ship radii apart)
+			Position freeLocation = template.getShipLocation(teamIndex, s);
 			System.out.println("Starting ship for team " + team.getTeamName() + " in location " + freeLocation);
 			Ship ship = new Ship(teamConfig.getTeamName(), team.getTeamColor(), freeLocation);
 			team.addShip(ship);
@@ -510,17 +657,12 @@ public final class SpaceSettlersSimulator {
 	public TeamClientConfig getTeamClientConfig(HighLevelTeamConfig teamConfig, String configPath) throws SimulatorException {
 		String fileName = configPath + teamConfig.getConfigFile();
 
-		XStream xstream = new XStream();
-		xstream.alias("TeamClientConfig", TeamClientConfig.class);
-		TeamClientConfig lowLevelTeamConfig;
-
+		// the file is only read again if it changed (team client configs are shared by every game)
 		try { 
-			lowLevelTeamConfig = (TeamClientConfig) xstream.fromXML(new File(fileName));
-		} catch (Exception e) {
+			return ConfigurationService.getTeamClientConfig(fileName);
+		} catch (IOException e) {
 			throw new SimulatorException("Error parsing config team config file " + fileName + " at string " + e.getMessage());
 		}
-
-		return lowLevelTeamConfig;
 	}
 
 
@@ -576,17 +718,9 @@ public final class SpaceSettlersSimulator {
 	public SpaceSettlersConfig loadConfigFiles(JSAPResult parserConfig) throws SimulatorException {
 		String configFile = parserConfig.getString("configPath") + parserConfig.getString("simulatorConfigFile");
 
-		XStream xstream = new XStream();
-		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.alias("BaseConfig", BaseConfig.class);
-		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
-		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
-		xstream.alias("FlagConfig", FlagConfig.class);
-
 		try { 
-			simConfig = (SpaceSettlersConfig) xstream.fromXML(new File(configFile));
-		} catch (Exception e) {
+			simConfig = ConfigurationService.getSimulatorConfig(configFile);
+		} catch (IOException e) {
 			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
 		}
 		return simConfig;
@@ -599,12 +733,12 @@ public final class SpaceSettlersSimulator {
 		// update the team info (to send into the space for use by other teams)
 		updateTeamInfo();
 
-		ExecutorService teamExecutor;
-		if (debug) {
-			teamExecutor = Executors.newSingleThreadExecutor();
-		} else {
-			teamExecutor = Executors.newCachedThreadPool();
+		// give each team its CPU time for this step (and check how much memory it allocated last step)
+		for (Team team : teams) {
+			team.startTimestep();
 		}
+
+		ExecutorService teamExecutor = context.getTeamExecutor();
 		Map<Team, Future<Map<UUID,AbstractAction>>> clientActionFutures = 
 				new HashMap<Team, Future<Map<UUID,AbstractAction>>>();
 
@@ -639,7 +773,6 @@ public final class SpaceSettlersSimulator {
 
 		}
 
-		teamExecutor.shutdown();
 
 		// get the power ups being used on this turn
 		Map<UUID, SpaceSettlersPowerupEnum> allPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
@@ -935,30 +1068,54 @@ public final class SpaceSettlersSimulator {
 			gui.redraw();
 		}
 
-		// run the game loop until the maximum time has elapsed
-		// if the pause is activated, just wait
-		for (timestep = 0; timestep < simConfig.getSimulationSteps(); timestep++) {
-			while (isPaused()) {
-				mySleep(50);
-			}
+		earlyEndReason = null;
+
+		startReplay();
+		try {
+			// run the game loop until the maximum time has elapsed
+			// if the pause is activated, just wait
+			for (timestep = firstTimestep; timestep < simConfig.getSimulationSteps(); timestep++) {
+				while (isPaused()) {
+					mySleep(50);
+				}
 
-			advanceTime();
+				advanceTime();
+				recordReplayStep(timestep + 1);
 
-			if (gui != null) {
-				gui.redraw();
-				mySleep(graphicsSleep);
-			}
+				if (gui != null) {
+					gui.redraw();
+					mySleep(graphicsSleep);
+				}
+
+				// stop if the rest of the game can't change anything
+				earlyEndReason = earlyEndRules.check(teams, simConfig.getSimulationSteps() - timestep - 1);
+				if (earlyEndReason != null) {
+					System.out.println("Ending the game early on time step " + timestep + " (" + earlyEndReason + ")");
+					break;
+				}
 
-			if (timestep % 5000 == 0) {
-				System.out.println("On time step " + timestep);
+				if (isCheckpointStep(timestep + 1)) {
+					saveCheckpoint(timestep + 1);
+				}
+
+				if (timestep % 5000 == 0) {
+					System.out.println("On time step " + timestep);
 				
-				// print out the score every 5000 steps for debugging
-                for (Team team : teams) {
-                    String str = "Team: " + team.getLadderName() + " scored " + team.getScore();
-                    System.out.println(str);
-                }
+					// print out the score every 5000 steps for debugging
+	                for (Team team : teams) {
+	                    String str = "Team: " + team.getLadderName() + " scored " + team.getScore();
+	                    System.out.println(str);
+	                }
 
+				}
 			}
+		} finally {
+			finishReplay();
+		}
+
+		// the game is over so there is nothing left to resume
+		if (simConfig.getCheckpointFile() != null) {
+			new File(simConfig.getCheckpointFile()).delete();
 		}
 
 		// update the team info (to send into the space for use by other teams)
@@ -966,6 +1123,129 @@ public final class SpaceSettlersSimulator {
 
 		// shutdown all the teams
 		shutdownTeams();
+		context.shutdown();
+
+		// and report how much CPU time and memory each team used and any threads they leaked
+		reportTeamCpuTime();
+		reportTeamMemory();
+		reportLeakedThreads();
+	}
+
+	/**
+	 * Start recording the game if the config has a replay file
+	 */
+	void startReplay() {
+		replayRecorder = null;
+		if (simConfig.getReplayFile() == null) {
+			return;
+		}
+		try {
+			replayRecorder = new ReplayRecorder(new File(simConfig.getReplayFile()), simConfig, teams);
+			replayRecorder.recordStep(firstTimestep, simulatedSpace.getAllObjects(), teams);
+		} catch (IOException e) {
+			System.err.println("Unable to record the game to " + simConfig.getReplayFile() + ": " + e.getMessage());
+			if (replayRecorder != null) {
+				replayRecorder.abandon();
+			}
+			replayRecorder = null;
+		}
+	}
+
+	/**
+	 * Record the state after a step (if the game is being recorded).  A replay that can't be 
+	 * written is stopped but the game goes on.
+	 * 
+	 * @param step the number of steps played
+	 */
+	void recordReplayStep(int step) {
+		if (replayRecorder == null) {
+			return;
+		}
+		try {
+			replayRecorder.recordStep(step, simulatedSpace.getAllObjects(), teams);
+		} catch (IOException e) {
+			System.err.println("Unable to record the game to " + simConfig.getReplayFile() + ": " + e.getMessage());
+			replayRecorder.abandon();
+			replayRecorder = null;
+		}
+	}
+
+	/**
+	 * Finish the replay file (if the game is being recorded)
+	 */
+	void finishReplay() {
+		if (replayRecorder == null) {
+			return;
+		}
+		try {
+			replayRecorder.close();
+		} catch (IOException e) {
+			System.err.println("Unable to finish the replay " + simConfig.getReplayFile() + ": " + e.getMessage());
+		}
+		replayRecorder = null;
+	}
+
+	/**
+	 * Print out the memory allocated by each team (and how often they went over their budget)
+	 */
+	public void reportTeamMemory() {
+		if (!TeamMemoryBudget.isAllocationSupported()) {
+			return;
+		}
+
+		for (Team team : teams) {
+			TeamMemoryBudget memoryBudget = team.getMemoryBudget();
+			String str = "Team: " + team.getLadderName() + " allocated " + 
+					String.format("%.1f", memoryBudget.getTotalMegabytes()) + " MB (peak " + 
+					String.format("%.1f", memoryBudget.getPeakStepMegabytes()) + " MB in one step)";
+			if (memoryBudget.isEnabled()) {
+				str += " (" + memoryBudget.getNumberWarningSteps() + " steps over the warning level, " + 
+						memoryBudget.getNumberOverLimitSteps() + " over the limit, did nothing for " + 
+						memoryBudget.getNumberThrottledSteps() + " throttled steps)";
+			}
+			System.out.println(str);
+		}
+	}
+
+	/**
+	 * Print out any client threads that ran away (and which teams forfeited because of them)
+	 */
+	public void reportLeakedThreads() {
+		for (Team team : teams) {
+			TeamThreadWatchdog watchdog = team.getThreadWatchdog();
+			if (watchdog.getNumberLeakedThreads() == 0) {
+				continue;
+			}
+
+			String str = "Team: " + team.getLadderName() + " leaked " + watchdog.getNumberLeakedThreads() + " client threads";
+			if (team.isForfeited()) {
+				str += " and forfeited";
+			}
+			System.out.println(str);
+			for (String threadStr : watchdog.getLeakedThreadReport()) {
+				System.out.println("    " + threadStr);
+			}
+		}
+	}
+
+	/**
+	 * Print out the CPU time used by each team (and how often they overdrew their time bank)
+	 */
+	public void reportTeamCpuTime() {
+		if (!TeamCpuTimeBank.isCpuTimeSupported()) {
+			return;
+		}
+
+		for (Team team : teams) {
+			TeamCpuTimeBank timeBank = team.getCpuTimeBank();
+			String str = "Team: " + team.getLadderName() + " used " + 
+					String.format("%.1f", timeBank.getTotalCpuTimeMillis()) + " ms of CPU time";
+			if (timeBank.isEnabled()) {
+				str += " (time bank balance " + String.format("%.1f", timeBank.getBalanceMillis()) + 
+						" ms, did nothing for " + timeBank.getNumberOverdrawnSteps() + " overdrawn steps)";
+			}
+			System.out.println(str);
+		}
 	}
 
 	/**
@@ -985,6 +1265,15 @@ public final class SpaceSettlersSimulator {
 		return timestep;
 	}
 
+	/**
+	 * Returns the rule that ended the game early (EarlyEndRules.IDLE_REASON or DECIDED_REASON) or
+	 * null if the game played all of its steps.  The step it ended on is getTimestep().
+	 * @return
+	 */
+	public String getEarlyEndReason() {
+		return earlyEndReason;
+	}
+
 	/**
 	 * Returns the list of teams
 	 * @return
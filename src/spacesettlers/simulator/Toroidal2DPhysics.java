@@ -122,6 +122,12 @@ public class Toroidal2DPhysics {
 	 */
 	Set<ImmutableTeamInfo> teamInfo;
 
+	/**
+	 * True if this is the world inside a ForwardModel.  It is already a private copy so actions are
+	 * given it directly (instead of a clone each step) and the teams are never changed.
+	 */
+	boolean isForwardModel;
+
 	/**
 	 * Constructor for the regular game
 	 * @param simConfig
@@ -146,6 +152,34 @@ public class Toroidal2DPhysics {
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
 	} 
 
+	/**
+	 * Empty the space and set it up for a new game with the given config.  The sets of objects are
+	 * cleared rather than made again so a simulator that plays many games (like in the ladder) keeps 
+	 * reusing them.
+	 * 
+	 * @param simConfig
+	 */
+	public void reset(SpaceSettlersConfig simConfig) {
+		height = simConfig.getHeight();
+		width = simConfig.getWidth();
+		halfHeight = height / 2.0f;
+		halfWidth = width / 2.0f;
+		timeStep = simConfig.getSimulationTimeStep();
+		maxTime = simConfig.getSimulationSteps();
+		currentTimeStep = 0;
+		allObjects.clear();
+		beacons.clear();
+		asteroids.clear();
+		bases.clear();
+		ships.clear();
+		cores.clear();
+		flags.clear();
+		weapons.clear();
+		objectsById.clear();
+		// the team info set is handed out whole by setTeamInfo so it is replaced rather than cleared
+		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+	}
+
 	/**
 	 * Constructor for unit tests
 	 * @param height
@@ -594,8 +628,13 @@ public class Toroidal2DPhysics {
 				}
 
 				// need to clone the ship and space because otherwise the ship can affect
-				// itself inside AbstractAction
-				Movement actionMovement = action.getMovement(this.deepClone(), ship.deepClone());
+				// itself inside AbstractAction (a forward model is only ever seen by its own client)
+				Movement actionMovement;
+				if (isForwardModel) {
+					actionMovement = action.getMovement(this, ship);
+				} else {
+					actionMovement = action.getMovement(this.deepClone(), ship.deepClone());
+				}
 
 				Position newPosition = applyMovement(currentPosition, actionMovement, timeStep);
 				if (newPosition.isValid()) {
@@ -649,7 +688,9 @@ public class Toroidal2DPhysics {
 			if (!base.isAlive()) {
 				base.setAlive(false);
 				removeObject(base);
-				base.getTeam().removeBase(base);
+				if (!isForwardModel) {
+					base.getTeam().removeBase(base);
+				}
 			}
 		}
 		
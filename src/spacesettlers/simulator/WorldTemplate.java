@@ -0,0 +1,466 @@
+package spacesettlers.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import spacesettlers.configs.BaseConfig;
+import spacesettlers.configs.FixedAsteroidConfig;
+import spacesettlers.configs.FlagConfig;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.RandomAsteroidConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * The starting layout of a world: where the beacons, random asteroids, ships, and bases go, the
+ * initial region of each team, and which starting location each flag uses.  Finding free locations
+ * for everything takes most of the time it takes to set up a game (especially on big maps with a lot
+ * of asteroids), so the layout for a map seed is only made once and kept in a small cache.  Every
+ * game on that map is set up from the template by making new objects at the stored locations.
+ *
+ * The layout is made with its own random number generator (seeded from the map seed) so it never
+ * depends on what the team clients do with the game's random number generator.
+ *
+ * Teams and bases are stored by their order in the config (not by name) so games between different
+ * teams with the same map seed share a template.
+ *
+ * @author amy
+ */
+public class WorldTemplate {
+	/**
+	 * The most templates kept at once (the least recently used is dropped first)
+	 */
+	public static final int MAXIMUM_CACHED_TEMPLATES = 64;
+
+	/**
+	 * The number of values stored for each random asteroid: x, y, velocity x, velocity y, fuel, water, metals
+	 */
+	private static final int ASTEROID_STRIDE = 7;
+
+	/**
+	 * The templates made so far (by key) in least recently used order
+	 */
+	private static final Map<String, WorldTemplate> cache = new LinkedHashMap<String, WorldTemplate>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WorldTemplate> eldest) {
+			return size() > MAXIMUM_CACHED_TEMPLATES;
+		}
+	};
+
+	/**
+	 * x and y of each beacon
+	 */
+	double[] beacons;
+
+	/**
+	 * x, y, velocity, and resource mix of each random asteroid (ASTEROID_STRIDE values each)
+	 */
+	double[] asteroids;
+
+	/**
+	 * Radius of each random asteroid
+	 */
+	int[] asteroidRadii;
+
+	/**
+	 * Whether each random asteroid is mineable
+	 */
+	boolean[] asteroidMineable;
+
+	/**
+	 * Whether each random asteroid moves
+	 */
+	boolean[] asteroidMoveable;
+
+	/**
+	 * The initial region of each team: upper left x and y and lower right x and y
+	 */
+	int[] regions;
+
+	/**
+	 * Whether each team's initial region was generated (rather than given in the config)
+	 */
+	boolean[] generatedRegions;
+
+	/**
+	 * x and y of each ship of each team
+	 */
+	double[][] ships;
+
+	/**
+	 * x and y of each base
+	 */
+	double[] bases;
+
+	/**
+	 * The index of the starting location chosen for each flag
+	 */
+	int[] flagStarts;
+
+	private WorldTemplate() {
+	}
+
+	/**
+	 * Returns the template for a game, making it if it isn't in the cache.  Unless the config
+	 * has a map seed, one long is drawn from the game's random number generator (whether or not
+	 * the template is cached) to seed the map.
+	 *
+	 * @param simConfig the game's config (the teams have to be checked against the bases already)
+	 * @param shipsPerTeam the number of ships each team starts with
+	 * @param random the game's random number generator
+	 * @return
+	 */
+	public static WorldTemplate getTemplate(SpaceSettlersConfig simConfig, int[] shipsPerTeam, Random random) {
+		long mapSeed = simConfig.getMapSeed();
+		boolean repeatable = mapSeed != 0 || simConfig.getRandomSeed() != 0;
+		if (mapSeed == 0) {
+			mapSeed = random.nextLong();
+		}
+
+		// games with unseeded random numbers never get the same map twice
+		if (!repeatable) {
+			return makeTemplate(simConfig, shipsPerTeam, new Random(mapSeed));
+		}
+
+		String key = getKey(simConfig, shipsPerTeam, mapSeed);
+		synchronized (cache) {
+			WorldTemplate template = cache.get(key);
+			if (template != null) {
+				return template;
+			}
+		}
+
+		// two threads can both make the same template, but they make identical ones
+		WorldTemplate template = makeTemplate(simConfig, shipsPerTeam, new Random(mapSeed));
+		synchronized (cache) {
+			cache.put(key, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Drop every cached template
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * The key for a template: the map seed and every part of the config that changes the layout
+	 *
+	 * @param simConfig
+	 * @param shipsPerTeam
+	 * @param mapSeed
+	 * @return
+	 */
+	static String getKey(SpaceSettlersConfig simConfig, int[] shipsPerTeam, long mapSeed) {
+		StringBuilder key = new StringBuilder();
+		key.append(mapSeed).append(' ').append(simConfig.getWidth()).append(' ').append(simConfig.getHeight());
+		key.append(" beacons ").append(simConfig.getNumBeacons());
+
+		if (simConfig.getFixedAsteroids() != null) {
+			for (FixedAsteroidConfig fixedAsteroid : simConfig.getFixedAsteroids()) {
+				key.append(" fixed ").append(fixedAsteroid.getX()).append(' ').append(fixedAsteroid.getY());
+				key.append(' ').append(fixedAsteroid.getRadius());
+			}
+		}
+
+		RandomAsteroidConfig asteroidConfig = simConfig.getRandomAsteroids();
+		key.append(" asteroids ").append(asteroidConfig.getNumberInitialAsteroids());
+		key.append(' ').append(asteroidConfig.getProbabilityMineable());
+		key.append(' ').append(asteroidConfig.getProbabilityMoveable());
+		key.append(' ').append(asteroidConfig.getMaxInitialVelocity());
+		key.append(' ').append(asteroidConfig.getProbabilityFuelType());
+		key.append(' ').append(asteroidConfig.getProbabilityWaterType());
+		key.append(' ').append(asteroidConfig.getProbabilityMetalsType());
+
+		HighLevelTeamConfig[] teams = simConfig.getTeams();
+		for (int t = 0; t < teams.length; t++) {
+			key.append(" team ").append(teams[t].getInitialRegionULX()).append(' ').append(teams[t].getInitialRegionULY());
+			key.append(' ').append(teams[t].getInitialRegionLRX()).append(' ').append(teams[t].getInitialRegionLRY());
+			key.append(' ').append(shipsPerTeam[t]).append(' ').append(getBaseIndex(simConfig, t));
+		}
+
+		for (BaseConfig baseConfig : simConfig.getBases()) {
+			key.append(" base ").append(getTeamIndex(simConfig, baseConfig.getTeamName()));
+			key.append(' ').append(baseConfig.isFixedLocation());
+			key.append(' ').append(baseConfig.getX()).append(' ').append(baseConfig.getY());
+			key.append(' ').append(baseConfig.getBoundingBoxULX()).append(' ').append(baseConfig.getBoundingBoxULY());
+			key.append(' ').append(baseConfig.getBoundingBoxLRX()).append(' ').append(baseConfig.getBoundingBoxLRY());
+		}
+
+		if (simConfig.getFlags() != null) {
+			for (FlagConfig flagConfig : simConfig.getFlags()) {
+				key.append(" flag ").append(flagConfig.getStartX().length);
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Lay out a new world.  The objects are placed in a scratch space in the same order (and with
+	 * the same rules for free space) as the simulator uses.  Only the position and radius of an
+	 * object matter when finding free locations so ships and bases are stood in for by asteroids.
+	 *
+	 * @param simConfig
+	 * @param shipsPerTeam
+	 * @param layoutRandom
+	 * @return
+	 */
+	static WorldTemplate makeTemplate(SpaceSettlersConfig simConfig, int[] shipsPerTeam, Random layoutRandom) {
+		WorldTemplate template = new WorldTemplate();
+		Toroidal2DPhysics space = new Toroidal2DPhysics(simConfig);
+
+		// the beacons
+		template.beacons = new double[2 * simConfig.getNumBeacons()];
+		for (int b = 0; b < simConfig.getNumBeacons(); b++) {
+			Position location = space.getRandomFreeLocation(layoutRandom, Beacon.BEACON_RADIUS * 2);
+			space.addObject(new Beacon(location));
+			template.beacons[2 * b] = location.getX();
+			template.beacons[2 * b + 1] = location.getY();
+		}
+
+		// the fixed asteroids (always in the same place, but in the way of everything else)
+		if (simConfig.getFixedAsteroids() != null) {
+			for (FixedAsteroidConfig fixedAsteroid : simConfig.getFixedAsteroids()) {
+				space.addObject(new Asteroid(new Position(fixedAsteroid.getX(), fixedAsteroid.getY()),
+						false, fixedAsteroid.getRadius(), false, 0, 0, 0));
+			}
+		}
+
+		// the random asteroids
+		RandomAsteroidConfig asteroidConfig = simConfig.getRandomAsteroids();
+		int numAsteroids = asteroidConfig.getNumberInitialAsteroids();
+		template.asteroids = new double[ASTEROID_STRIDE * numAsteroids];
+		template.asteroidRadii = new int[numAsteroids];
+		template.asteroidMineable = new boolean[numAsteroids];
+		template.asteroidMoveable = new boolean[numAsteroids];
+		for (int a = 0; a < numAsteroids; a++) {
+			boolean mineable = layoutRandom.nextDouble() < asteroidConfig.getProbabilityMineable();
+			int radius = layoutRandom.nextInt(Asteroid.MAX_ASTEROID_RADIUS - Asteroid.MIN_ASTEROID_RADIUS) +
+					Asteroid.MIN_ASTEROID_RADIUS;
+			boolean moveable = layoutRandom.nextDouble() < asteroidConfig.getProbabilityMoveable();
+
+			// renormalize the mixture so it all adds to 1
+			double fuel = layoutRandom.nextDouble() * asteroidConfig.getProbabilityFuelType();
+			double water = layoutRandom.nextDouble() * asteroidConfig.getProbabilityWaterType();
+			double metals = layoutRandom.nextDouble() * asteroidConfig.getProbabilityMetalsType();
+			double normalize = fuel + water + metals;
+
+			Position location = space.getRandomFreeLocation(layoutRandom, radius * 2);
+			Vector2D velocity = new Vector2D();
+			if (moveable) {
+				velocity = Vector2D.getRandom(layoutRandom, asteroidConfig.getMaxInitialVelocity());
+			}
+			space.addObject(new Asteroid(location, false, radius, false, 0, 0, 0));
+
+			int index = ASTEROID_STRIDE * a;
+			template.asteroids[index] = location.getX();
+			template.asteroids[index + 1] = location.getY();
+			template.asteroids[index + 2] = velocity.getXValue();
+			template.asteroids[index + 3] = velocity.getYValue();
+			template.asteroids[index + 4] = fuel / normalize;
+			template.asteroids[index + 5] = water / normalize;
+			template.asteroids[index + 6] = metals / normalize;
+			template.asteroidRadii[a] = radius;
+			template.asteroidMineable[a] = mineable;
+			template.asteroidMoveable[a] = moveable;
+		}
+
+		// the initial region and ships of each team
+		HighLevelTeamConfig[] teams = simConfig.getTeams();
+		template.regions = new int[4 * teams.length];
+		template.generatedRegions = new boolean[teams.length];
+		template.ships = new double[teams.length][];
+		for (int t = 0; t < teams.length; t++) {
+			int baseIndex = getBaseIndex(simConfig, t);
+			BaseConfig baseConfig = (baseIndex < 0) ? null : simConfig.getBases()[baseIndex];
+			int[] region = {teams[t].getInitialRegionULX(), teams[t].getInitialRegionULY(),
+					teams[t].getInitialRegionLRX(), teams[t].getInitialRegionLRY()};
+
+			if (baseConfig != null && baseConfig.isFixedLocation()) {
+				region = new int[] {baseConfig.getBoundingBoxULX(), baseConfig.getBoundingBoxULY(),
+						baseConfig.getBoundingBoxLRX(), baseConfig.getBoundingBoxLRY()};
+			} else if (region[0] == 0 && region[2] == 0) {
+				// the team doesn't provide a region so make one (the lower right y has always
+				// been made from the upper left x)
+				region[0] = layoutRandom.nextInt(simConfig.getWidth());
+				region[2] = region[0] + simConfig.getWidth() / 4;
+				region[1] = layoutRandom.nextInt(simConfig.getHeight());
+				region[3] = region[0] + simConfig.getHeight() / 4;
+				template.generatedRegions[t] = true;
+			}
+			System.arraycopy(region, 0, template.regions, 4 * t, 4);
+
+			int numShips = Math.min(simConfig.getMaximumInitialShipsPerTeam(), shipsPerTeam[t]);
+			template.ships[t] = new double[2 * Math.max(numShips, 0)];
+			for (int s = 0; s < numShips; s++) {
+				// ships start at least 4 ship radii from each other
+				Position location = space.getRandomFreeLocationInRegion(layoutRandom, Ship.SHIP_RADIUS * 4,
+						region[0], region[1], region[2], region[3]);
+				space.addObject(new Asteroid(location, false, Ship.SHIP_RADIUS, false, 0, 0, 0));
+				template.ships[t][2 * s] = location.getX();
+				template.ships[t][2 * s + 1] = location.getY();
+			}
+		}
+
+		// the bases
+		BaseConfig[] baseConfigs = simConfig.getBases();
+		template.bases = new double[2 * baseConfigs.length];
+		for (int b = 0; b < baseConfigs.length; b++) {
+			Position location;
+			if (baseConfigs[b].isFixedLocation()) {
+				location = new Position(baseConfigs[b].getX(), baseConfigs[b].getY());
+			} else {
+				// bases are kept 4 base radii from everything else
+				int t = getTeamIndex(simConfig, baseConfigs[b].getTeamName());
+				location = space.getRandomFreeLocationInRegion(layoutRandom, 4 * Base.BASE_RADIUS,
+						template.regions[4 * t], template.regions[4 * t + 1],
+						template.regions[4 * t + 2], template.regions[4 * t + 3]);
+			}
+			space.addObject(new Asteroid(location, false, Base.BASE_RADIUS, false, 0, 0, 0));
+			template.bases[2 * b] = location.getX();
+			template.bases[2 * b + 1] = location.getY();
+		}
+
+		// the starting location of each flag
+		FlagConfig[] flagConfigs = simConfig.getFlags();
+		template.flagStarts = new int[(flagConfigs == null) ? 0 : flagConfigs.length];
+		for (int f = 0; f < template.flagStarts.length; f++) {
+			template.flagStarts[f] = layoutRandom.nextInt(flagConfigs[f].getStartX().length);
+		}
+
+		return template;
+	}
+
+	/**
+	 * @param simConfig
+	 * @param teamIndex
+	 * @return the index of the base config for a team (or -1 if it doesn't have one)
+	 */
+	private static int getBaseIndex(SpaceSettlersConfig simConfig, int teamIndex) {
+		String teamName = simConfig.getTeams()[teamIndex].getTeamName();
+		BaseConfig[] baseConfigs = simConfig.getBases();
+		for (int b = 0; b < baseConfigs.length; b++) {
+			if (baseConfigs[b].getTeamName().equalsIgnoreCase(teamName)) {
+				return b;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param simConfig
+	 * @param teamName
+	 * @return the index of the team with the given name (or -1 if there isn't one)
+	 */
+	private static int getTeamIndex(SpaceSettlersConfig simConfig, String teamName) {
+		HighLevelTeamConfig[] teams = simConfig.getTeams();
+		for (int t = 0; t < teams.length; t++) {
+			if (teams[t].getTeamName().equalsIgnoreCase(teamName)) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of beacons
+	 */
+	public int getNumBeacons() {
+		return beacons.length / 2;
+	}
+
+	/**
+	 * @param b
+	 * @return a new position for beacon b
+	 */
+	public Position getBeaconLocation(int b) {
+		return new Position(beacons[2 * b], beacons[2 * b + 1]);
+	}
+
+	/**
+	 * @return the number of random asteroids
+	 */
+	public int getNumAsteroids() {
+		return asteroidRadii.length;
+	}
+
+	/**
+	 * Make random asteroid a
+	 *
+	 * @param a
+	 * @return a new asteroid
+	 */
+	public Asteroid createAsteroid(int a) {
+		int index = ASTEROID_STRIDE * a;
+		Asteroid asteroid = new Asteroid(new Position(asteroids[index], asteroids[index + 1]),
+				asteroidMineable[a], asteroidRadii[a], asteroidMoveable[a],
+				asteroids[index + 4], asteroids[index + 5], asteroids[index + 6]);
+		if (asteroidMoveable[a]) {
+			asteroid.getPosition().setTranslationalVelocity(new Vector2D(asteroids[index + 2], asteroids[index + 3]));
+		}
+		return asteroid;
+	}
+
+	/**
+	 * @param t
+	 * @return the initial region of team t: upper left x and y and lower right x and y
+	 */
+	public int[] getRegion(int t) {
+		int[] region = new int[4];
+		System.arraycopy(regions, 4 * t, region, 0, 4);
+		return region;
+	}
+
+	/**
+	 * @param t
+	 * @return true if the initial region of team t was generated rather than given in the config
+	 */
+	public boolean isGeneratedRegion(int t) {
+		return generatedRegions[t];
+	}
+
+	/**
+	 * @param t
+	 * @return the number of ships team t starts with
+	 */
+	public int getNumShips(int t) {
+		return ships[t].length / 2;
+	}
+
+	/**
+	 * @param t
+	 * @param s
+	 * @return a new position for ship s of team t
+	 */
+	public Position getShipLocation(int t, int s) {
+		return new Position(ships[t][2 * s], ships[t][2 * s + 1]);
+	}
+
+	/**
+	 * @param b
+	 * @return a new position for base b
+	 */
+	public Position getBaseLocation(int b) {
+		return new Position(bases[2 * b], bases[2 * b + 1]);
+	}
+
+	/**
+	 * @param f
+	 * @return the index of the starting location flag f begins at
+	 */
+	public int getFlagStart(int f) {
+		return flagStarts[f];
+	}
+}
@@ -2,15 +2,43 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import spacesettlers.actions.ActionTests;
+import spacesettlers.clients.TestExperienceLog;
+import spacesettlers.clients.TestKnowledgeCache;
+import spacesettlers.clients.TestKnowledgeStore;
+import spacesettlers.clients.TestTeam;
+import spacesettlers.clients.TestTeamClientParallel;
+import spacesettlers.clients.TestTeamThreadWatchdog;
+import spacesettlers.clients.examples.TestExampleGAClient;
+import spacesettlers.clients.examples.TestExampleMCTSSearch;
+import spacesettlers.configs.TestConfigurationService;
+import spacesettlers.replay.ReplayTests;
 import spacesettlers.simulator.SimulatorTests;
 import spacesettlers.utilities.UtilitiesTest;
 import spacesettlers.ladder.TestLadder;
+import spacesettlers.ladder.TestLadderJournal;
+import spacesettlers.ladder.TestLadderResultCache;
+import spacesettlers.ladder.TestRepeatStatistics;
+import spacesettlers.ladder.TestSwissScheduler;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
   ActionTests.class,
+  ReplayTests.class,
   SimulatorTests.class,
+  TestConfigurationService.class,
+  TestExampleGAClient.class,
+  TestExampleMCTSSearch.class,
+  TestExperienceLog.class,
+  TestKnowledgeCache.class,
+  TestKnowledgeStore.class,
   TestLadder.class,
+  TestLadderJournal.class,
+  TestLadderResultCache.class,
+  TestRepeatStatistics.class,
+  TestSwissScheduler.class,
+  TestTeam.class,
+  TestTeamClientParallel.class,
+  TestTeamThreadWatchdog.class,
   UtilitiesTest.class,
 })
 
@@ -0,0 +1,190 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExperienceLog {
+	File logDirectory;
+	ExperienceLog.Schema schema;
+	int turn;
+	int distance;
+	int id;
+	int hit;
+
+	@Before
+	public void setUp() throws Exception {
+		logDirectory = Files.createTempDirectory("experience").toFile();
+		schema = new ExperienceLog.Schema("Test", 1);
+		turn = schema.addColumn("turn", ExperienceLog.ColumnType.INT);
+		distance = schema.addColumn("distance", ExperienceLog.ColumnType.DOUBLE);
+		id = schema.addColumn("id", ExperienceLog.ColumnType.LONG);
+		hit = schema.addColumn("hit", ExperienceLog.ColumnType.BYTE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = logDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		logDirectory.delete();
+	}
+
+	private void append(ExperienceLog log, int value) throws Exception {
+		ExperienceLog.Row row = log.newRow();
+		row.setInt(turn, value).setDouble(distance, value / 2.0).setLong(id, -value).setBoolean(hit, value % 2 == 0);
+		log.append(row);
+	}
+
+	private int segmentFiles() {
+		return logDirectory.listFiles().length;
+	}
+
+	@Test
+	public void testRecordsAreReadBackAcrossSegments() throws Exception {
+		ExperienceLog log = new ExperienceLog(logDirectory.getPath(), schema, 3);
+		for (int i = 0; i < 7; i++) {
+			append(log, i);
+		}
+		assertEquals(7, log.size());
+		log.close();
+		assertEquals(3, segmentFiles());
+
+		ExperienceLog.Reader reader = log.read();
+		for (int i = 0; i < 7; i++) {
+			assertTrue(reader.next());
+			assertEquals(i, reader.getInt(turn));
+			assertEquals(i / 2.0, reader.getDouble(distance), 0);
+			assertEquals(-i, reader.getLong(id));
+			assertEquals(i % 2 == 0, reader.getBoolean(hit));
+		}
+		assertFalse(reader.next());
+		assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void testRecordsAreSeenBeforeTheLogIsClosed() throws Exception {
+		ExperienceLog log = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		append(log, 1);
+		append(log, 2);
+
+		ExperienceLog.Reader reader = new ExperienceLog(logDirectory.getPath(), schema).read();
+		assertTrue(reader.next());
+		assertTrue(reader.next());
+		assertEquals(2, reader.getInt(turn));
+		assertFalse(reader.next());
+		log.close();
+	}
+
+	@Test
+	public void testClosedSegmentIsCarriedOn() throws Exception {
+		ExperienceLog log = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		append(log, 1);
+		log.close();
+
+		log = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		append(log, 2);
+		log.close();
+
+		assertEquals(1, segmentFiles());
+		assertEquals(2, log.size());
+	}
+
+	@Test
+	public void testLogsWritingAtOnceHaveTheirOwnSegments() throws Exception {
+		ExperienceLog first = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		ExperienceLog second = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		append(first, 1);
+		append(second, 2);
+		append(first, 3);
+		append(second, 4);
+		first.close();
+		second.close();
+
+		assertEquals(2, segmentFiles());
+		ExperienceLog.Reader reader = first.read();
+		int sum = 0;
+		int records = 0;
+		while (reader.next()) {
+			sum += reader.getInt(turn);
+			records++;
+		}
+		assertEquals(4, records);
+		assertEquals(10, sum);
+	}
+
+	@Test
+	public void testUncountedRecordIsNotRead() throws Exception {
+		ExperienceLog log = new ExperienceLog(logDirectory.getPath(), schema, 10);
+		append(log, 1);
+		append(log, 2);
+		log.close();
+
+		// take the count back as if the client was killed before the second record was counted
+		RandomAccessFile segment = new RandomAccessFile(logDirectory.listFiles()[0], "rw");
+		segment.seek(12);
+		segment.writeInt(1);
+		segment.close();
+		assertEquals(1, log.size());
+
+		// the next record goes in its place
+		append(log, 3);
+		log.close();
+		ExperienceLog.Reader reader = log.read();
+		assertTrue(reader.next());
+		assertEquals(1, reader.getInt(turn));
+		assertTrue(reader.next());
+		assertEquals(3, reader.getInt(turn));
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testOtherSchemaIsRejected() throws Exception {
+		ExperienceLog log = new ExperienceLog(logDirectory.getPath(), schema);
+		append(log, 1);
+		log.close();
+
+		ExperienceLog.Schema other = new ExperienceLog.Schema("Test", 1);
+		other.addColumn("turn", ExperienceLog.ColumnType.INT);
+		ExperienceLog otherLog = new ExperienceLog(logDirectory.getPath(), other);
+		try {
+			otherLog.size();
+			fail("a log with other columns was read");
+		} catch (KnowledgeStore.SchemaMismatchException e) {
+			// expected
+		}
+		try {
+			otherLog.read().next();
+			fail("a log with other columns was read");
+		} catch (KnowledgeStore.SchemaMismatchException e) {
+			// expected
+		}
+
+		// clearing starts the log over with the new schema
+		otherLog.clear();
+		otherLog.append(otherLog.newRow().setInt(0, 5));
+		otherLog.close();
+		assertEquals(1, otherLog.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testValueMustMatchColumnType() throws Exception {
+		new ExperienceLog(logDirectory.getPath(), schema).newRow().setDouble(turn, 1.0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSchemaCantChangeOnceUsed() throws Exception {
+		new ExperienceLog(logDirectory.getPath(), schema);
+		schema.addColumn("late", ExperienceLog.ColumnType.INT);
+	}
+}
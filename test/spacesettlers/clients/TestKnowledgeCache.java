@@ -0,0 +1,131 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestKnowledgeCache {
+	File knowledgeFile;
+	CountingLoader loader;
+
+	/**
+	 * Reads the lines of a file and counts how many times it was asked to
+	 */
+	static class CountingLoader implements KnowledgeCache.Loader<List<String>> {
+		int loads = 0;
+
+		public List<String> load(File file) throws IOException {
+			loads++;
+			List<String> lines = Files.readAllLines(file.toPath());
+			if (lines.contains("bad")) {
+				throw new IOException("bad knowledge");
+			}
+			return lines;
+		}
+
+		public List<String> copy(List<String> knowledge) {
+			return new ArrayList<String>(knowledge);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		KnowledgeCache.clear();
+		knowledgeFile = File.createTempFile("knowledge", ".txt");
+		write("first");
+		loader = new CountingLoader();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		knowledgeFile.delete();
+		KnowledgeCache.clear();
+	}
+
+	private void write(String contents) throws IOException {
+		FileWriter writer = new FileWriter(knowledgeFile);
+		writer.write(contents);
+		writer.close();
+	}
+
+	@Test
+	public void testFileIsLoadedOnce() throws Exception {
+		List<String> first = KnowledgeCache.get(knowledgeFile.getPath(), loader).get();
+		List<String> second = KnowledgeCache.get(knowledgeFile.getPath(), loader).get();
+
+		assertEquals(1, loader.loads);
+		assertSame(first, second);
+		assertEquals("first", first.get(0));
+	}
+
+	@Test
+	public void testChangedFileIsLoadedAgain() throws Exception {
+		KnowledgeCache.get(knowledgeFile.getPath(), loader);
+		write("second");
+		knowledgeFile.setLastModified(knowledgeFile.lastModified() + 2000);
+
+		List<String> knowledge = KnowledgeCache.get(knowledgeFile.getPath(), loader).get();
+		assertEquals(2, loader.loads);
+		assertEquals("second", knowledge.get(0));
+	}
+
+	@Test
+	public void testTouchedFileIsNotLoadedAgain() throws Exception {
+		List<String> first = KnowledgeCache.get(knowledgeFile.getPath(), loader).get();
+		write("first");
+		knowledgeFile.setLastModified(knowledgeFile.lastModified() + 2000);
+
+		assertSame(first, KnowledgeCache.get(knowledgeFile.getPath(), loader).get());
+		assertEquals(1, loader.loads);
+	}
+
+	@Test
+	public void testMutableCopiesAreSeparate() throws Exception {
+		KnowledgeCache.CachedKnowledge<List<String>> mine = KnowledgeCache.get(knowledgeFile.getPath(), loader);
+		KnowledgeCache.CachedKnowledge<List<String>> theirs = KnowledgeCache.get(knowledgeFile.getPath(), loader);
+		List<String> shared = theirs.get();
+
+		List<String> copy = mine.mutable();
+		copy.add("learned");
+		assertNotSame(shared, copy);
+		assertSame(copy, mine.mutable());
+		assertSame(copy, mine.get());
+		assertEquals(1, shared.size());
+		assertEquals(1, KnowledgeCache.get(knowledgeFile.getPath(), loader).get().size());
+	}
+
+	@Test
+	public void testFailuresAreNotKept() throws Exception {
+		write("bad");
+		try {
+			KnowledgeCache.get(knowledgeFile.getPath(), loader);
+			fail("bad knowledge was loaded");
+		} catch (IOException e) {
+			assertEquals("bad knowledge", e.getMessage());
+		}
+
+		try {
+			KnowledgeCache.get(knowledgeFile.getPath(), loader);
+			fail("bad knowledge was loaded");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(2, loader.loads);
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissingFile() throws Exception {
+		knowledgeFile.delete();
+		KnowledgeCache.get(knowledgeFile.getPath(), loader);
+	}
+}
@@ -0,0 +1,277 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestKnowledgeStore {
+	File storeFile;
+
+	@Before
+	public void setUp() throws Exception {
+		storeFile = File.createTempFile("knowledge", ".bin");
+		storeFile.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		storeFile.delete();
+		new File(storeFile.getPath() + KnowledgeStore.LOCK_SUFFIX).delete();
+	}
+
+	/**
+	 * Another program using the store: holds the lock on the file given until its input ends
+	 */
+	public static class LockHolder {
+		public static void main(String[] args) throws Exception {
+			FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.lock();
+			System.out.println("locked");
+			System.out.flush();
+			while (System.in.read() >= 0) {
+				// wait to be told to go
+			}
+			channel.close();
+		}
+	}
+
+	private KnowledgeStore.RecordWriter makeRecord(int value, String text) throws Exception {
+		KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+		writer.writeInt(value);
+		writer.writeUTF(text);
+		return writer;
+	}
+
+	@Test
+	public void testAppendedRecordsAreReadBack() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		assertTrue(store.read().isEmpty());
+		store.append(1, makeRecord(10, "first"));
+		store.close();
+
+		// a later game only adds its own record
+		store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		assertEquals(1, store.read().size());
+		long lengthBefore = storeFile.length();
+		store.append(2, makeRecord(20, "second"));
+		store.close();
+		assertTrue(storeFile.length() > lengthBefore);
+
+		List<KnowledgeStore.Record> records = new KnowledgeStore(storeFile.getPath(), "Test", 1).read();
+		assertEquals(2, records.size());
+		assertEquals(1, records.get(0).getType());
+		assertEquals(2, records.get(1).getType());
+
+		DataInput in = records.get(1).getInput();
+		assertEquals(20, in.readInt());
+		assertEquals("second", in.readUTF());
+		assertEquals(10, records.get(0).getData().getInt());
+	}
+
+	@Test
+	public void testPartlyWrittenRecordIsDropped() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.read();
+		store.append(1, makeRecord(10, "first"));
+		store.append(1, makeRecord(20, "second"));
+		store.close();
+
+		// cut the last record short as if the client was killed while writing it
+		RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+		file.setLength(file.length() - 3);
+		file.close();
+
+		store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		List<KnowledgeStore.Record> records = store.read();
+		assertEquals(1, records.size());
+		assertEquals(10, records.get(0).getInput().readInt());
+
+		// the next record follows the last whole one
+		store.append(1, makeRecord(30, "third"));
+		store.close();
+		records = new KnowledgeStore(storeFile.getPath(), "Test", 1).read();
+		assertEquals(2, records.size());
+		assertEquals(30, records.get(1).getInput().readInt());
+	}
+
+	@Test
+	public void testCorruptRecordIsDropped() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.read();
+		store.append(1, makeRecord(10, "first"));
+		store.append(1, makeRecord(20, "second"));
+		store.close();
+
+		RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+		file.seek(file.length() - 1);
+		file.write('x');
+		file.close();
+
+		assertEquals(1, new KnowledgeStore(storeFile.getPath(), "Test", 1).read().size());
+	}
+
+	@Test
+	public void testReplaceAllLeavesOneRecord() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.read();
+		store.append(1, makeRecord(10, "first"));
+		store.append(2, makeRecord(20, "second"));
+		store.replaceAll(3, makeRecord(30, "snapshot"));
+		store.append(2, makeRecord(40, "after"));
+		store.close();
+
+		List<KnowledgeStore.Record> records = new KnowledgeStore(storeFile.getPath(), "Test", 1).read();
+		assertEquals(2, records.size());
+		assertEquals(3, records.get(0).getType());
+		assertEquals(30, records.get(0).getInput().readInt());
+		assertEquals(40, records.get(1).getInput().readInt());
+		assertFalse(new File(storeFile.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testOtherSchemaIsRejected() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.read();
+		store.append(1, makeRecord(10, "first"));
+		store.close();
+
+		try {
+			new KnowledgeStore(storeFile.getPath(), "Test", 2).read();
+			fail("a newer schema version read an old file");
+		} catch (KnowledgeStore.SchemaMismatchException e) {
+			// expected
+		}
+
+		try {
+			new KnowledgeStore(storeFile.getPath(), "Other", 1).read();
+			fail("another schema read the file");
+		} catch (KnowledgeStore.SchemaMismatchException e) {
+			// expected
+		}
+
+		// clearing starts the file over with the new schema
+		store = new KnowledgeStore(storeFile.getPath(), "Test", 2);
+		store.clear();
+		store.close();
+		assertTrue(new KnowledgeStore(storeFile.getPath(), "Test", 2).read().isEmpty());
+	}
+
+	@Test
+	public void testLaterWritesAreReadBackInOrder() throws Exception {
+		KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.replaceAllLater(1, makeRecord(10, "snapshot"));
+		KnowledgeStore.RecordWriter writer = makeRecord(20, "change");
+		store.appendLater(2, writer);
+		// the record was copied so changing the writer afterwards doesn't change it
+		writer.writeInt(99);
+		store.closeLater();
+
+		// reading waits for the writes to the file
+		List<KnowledgeStore.Record> records = new KnowledgeStore(storeFile.getPath(), "Test", 1).read();
+		assertEquals(2, records.size());
+		assertEquals(10, records.get(0).getInput().readInt());
+		assertEquals(2, records.get(1).getType());
+		DataInput in = records.get(1).getInput();
+		assertEquals(20, in.readInt());
+		assertEquals("change", in.readUTF());
+		assertEquals(4 + 2 + "change".length(), records.get(1).getData().remaining());
+	}
+
+	@Test
+	public void testStoresForTheSameFileTakeTurns() throws Exception {
+		final int threads = 4;
+		final int recordsEach = 50;
+		new KnowledgeStore(storeFile.getPath(), "Test", 1).replaceAll(1, makeRecord(-1, "start"));
+
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			writers.add(new Thread() {
+				public void run() {
+					try {
+						// each thread is a game with its own store for the file
+						KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+						for (int i = 0; i < recordsEach; i++) {
+							if (i % 2 == 0) {
+								store.append(2, makeRecord(thread * recordsEach + i, "now"));
+							} else {
+								store.appendLater(2, makeRecord(thread * recordsEach + i, "later"));
+							}
+						}
+						store.closeLater();
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		KnowledgeStore.flush();
+
+		List<KnowledgeStore.Record> records = new KnowledgeStore(storeFile.getPath(), "Test", 1).read();
+		assertEquals(threads * recordsEach + 1, records.size());
+		Set<Integer> values = new HashSet<Integer>();
+		for (KnowledgeStore.Record record : records.subList(1, records.size())) {
+			values.add(record.getInput().readInt());
+		}
+		assertEquals(threads * recordsEach, values.size());
+	}
+
+	@Test
+	public void testStoreWaitsForOtherPrograms() throws Exception {
+		final KnowledgeStore store = new KnowledgeStore(storeFile.getPath(), "Test", 1);
+		store.replaceAll(1, makeRecord(10, "first"));
+		store.close();
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process holder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				LockHolder.class.getName(), storeFile.getPath() + KnowledgeStore.LOCK_SUFFIX).start();
+		try {
+			BufferedReader output = new BufferedReader(new InputStreamReader(holder.getInputStream()));
+			assertEquals("locked", output.readLine());
+
+			final List<Exception> failures = new ArrayList<Exception>();
+			Thread writer = new Thread() {
+				public void run() {
+					try {
+						store.append(2, makeRecord(20, "second"));
+					} catch (Exception e) {
+						failures.add(e);
+					}
+				}
+			};
+			writer.start();
+			writer.join(500);
+			assertTrue("the store didn't wait for the other program", writer.isAlive());
+
+			holder.getOutputStream().close();
+			writer.join(10000);
+			assertFalse(writer.isAlive());
+			assertTrue(failures.isEmpty());
+		} finally {
+			holder.destroy();
+		}
+		store.close();
+		assertEquals(2, new KnowledgeStore(storeFile.getPath(), "Test", 1).read().size());
+	}
+}
@@ -0,0 +1,231 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.DoNothingAction;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+import spacesettlers.simulator.SimulatorContext;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+import com.thoughtworks.xstream.XStream;
+
+public class TestTeam {
+	DoNothingTeamClient client;
+	Team team;
+	Ship ship;
+	Toroidal2DPhysics space;
+
+	@Before
+	public void setUp() {
+		client = new DoNothingTeamClient();
+		client.setTeamName("Test");
+		client.setTeamColor(Color.RED);
+		team = new Team(client, "Test", 4);
+		ship = new Ship("Test", Color.RED, new Position(10, 10));
+		team.addShip(ship);
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+		space.addObject(ship);
+	}
+
+	/**
+	 * A simulation's context with the given team action timeout
+	 */
+	static SimulatorContext makeContext(int teamActionTimeout, boolean debug) {
+		String configClass = SpaceSettlersConfig.class.getName();
+		SpaceSettlersConfig config = (SpaceSettlersConfig) new XStream().fromXML("<" + configClass + ">" +
+				"<teamActionTimeout>" + teamActionTimeout + "</teamActionTimeout></" + configClass + ">");
+		return new SimulatorContext(config, debug);
+	}
+
+	/**
+	 * Put the ship on a team with another client
+	 */
+	private Team makeTeam(TeamClient teamClient, SimulatorContext context) {
+		teamClient.setTeamName("Test");
+		teamClient.setTeamColor(Color.RED);
+		Team newTeam = new Team(teamClient, "Test", 4);
+		newTeam.addShip(ship);
+		newTeam.setSimulatorContext(context);
+		return newTeam;
+	}
+
+	/**
+	 * A client that takes 300 ms to answer
+	 */
+	class SlowClient extends DoNothingTeamClient {
+		@Override
+		public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				return null;
+			}
+			Map<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+			actions.put(ship.getId(), new DoNothingAction());
+			return actions;
+		}
+	}
+
+	/**
+	 * Sleep until the call is interrupted at its timeout
+	 */
+	static void sleepUntilInterrupted() {
+		try {
+			Thread.sleep(10000);
+		} catch (InterruptedException e) {
+			// timed out
+		}
+	}
+
+	@Test
+	public void testCopiesShareTheTeamsSimulation() {
+		SimulatorContext context = new SimulatorContext(new SpaceSettlersConfig(), false);
+		team.setSimulatorContext(context);
+		team.setCpuTimeBudget(100, 1000);
+		ResourcePile resources = new ResourcePile();
+		resources.setResources(ResourceTypes.FUEL, 50);
+		team.incrementAvailableResources(resources);
+
+		Team copy = team.deepCopy();
+		assertSame(context, copy.context);
+		assertSame(team.getThreadWatchdog(), copy.getThreadWatchdog());
+		assertSame(team.getCpuTimeBank(), copy.getCpuTimeBank());
+		assertSame(team.getMemoryBudget(), copy.getMemoryBudget());
+		assertNull(copy.executor);
+
+		// but the ships and resources are its own
+		assertEquals(1, copy.getShips().size());
+		assertNotSame(team.getShips().iterator().next(), copy.getShips().iterator().next());
+		copy.incrementAvailableResources(resources);
+		assertEquals(50, team.getAvailableResources().getResourceQuantity(ResourceTypes.FUEL));
+		assertEquals(100, copy.getAvailableResources().getResourceQuantity(ResourceTypes.FUEL));
+	}
+
+	@Test
+	public void testSimulationsKeepTheirOwnTimeouts() {
+		SimulatorContext debugContext = makeContext(100, true);
+		SimulatorContext timedContext = makeContext(100, false);
+		assertEquals(Integer.MAX_VALUE, debugContext.getTeamActionTimeout());
+		assertEquals(100, timedContext.getTeamActionTimeout());
+
+		// the same slow client in each simulation (one team per simulation, in the same JVM)
+		Team debugTeam = makeTeam(new SlowClient(), debugContext);
+		Team timedTeam = makeTeam(new SlowClient(), timedContext);
+		assertTrue(timedTeam.getTeamMovementStart(space).isEmpty());
+		assertTrue(debugTeam.getTeamMovementStart(space).containsKey(ship.getId()));
+		assertTrue(timedTeam.getTeamMovementStart(space).isEmpty());
+		assertTrue(debugContext.isDebug());
+		assertFalse(timedContext.isDebug());
+	}
+
+	@Test
+	public void testTeamOverItsMemoryLimitSkipsAStep() {
+		if (!TeamMemoryBudget.isAllocationSupported()) {
+			return;
+		}
+		final AtomicInteger calls = new AtomicInteger();
+		Team greedyTeam = makeTeam(new DoNothingTeamClient() {
+			@Override
+			public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+				calls.incrementAndGet();
+				return super.getMovementStart(space, actionableObjects);
+			}
+		}, makeContext(1000, false));
+		greedyTeam.setMemoryBudget(1, 2);
+
+		// 3 megabytes is over the warning level and the limit
+		greedyTeam.getMemoryBudget().charge(3 * 1024 * 1024);
+		greedyTeam.startTimestep();
+		assertTrue(greedyTeam.getMemoryBudget().isThrottled());
+		assertTrue(greedyTeam.getTeamMovementStart(space).isEmpty());
+		assertEquals(0, calls.get());
+		assertEquals(1, greedyTeam.getMemoryBudget().getNumberThrottledSteps());
+		assertEquals(1, greedyTeam.getMemoryBudget().getNumberWarningSteps());
+		assertEquals(1, greedyTeam.getMemoryBudget().getNumberOverLimitSteps());
+
+		// only for one step
+		greedyTeam.startTimestep();
+		assertFalse(greedyTeam.getMemoryBudget().isThrottled());
+		greedyTeam.getTeamMovementStart(space);
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testPublishedActionsAreUsedWhenTheClientTimesOut() {
+		Team publishingTeam = makeTeam(new DoNothingTeamClient() {
+			@Override
+			public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+				Map<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+				actions.put(ship.getId(), new DoNothingAction());
+				publishActions(actions);
+				sleepUntilInterrupted();
+				return null;
+			}
+		}, makeContext(100, false));
+
+		Map<UUID, AbstractAction> actions = publishingTeam.getTeamMovementStart(space);
+		assertTrue(actions.get(ship.getId()) instanceof DoNothingAction);
+	}
+
+	@Test
+	public void testQuarantinedCallCantPublishIntoTheNextOne() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch stalePublished = new CountDownLatch(1);
+		Team staleTeam = makeTeam(new DoNothingTeamClient() {
+			@Override
+			public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+				if (calls.incrementAndGet() == 1) {
+					while (release.getCount() > 0) {
+						// ignores its timeout and the interrupt
+						Thread.yield();
+					}
+					// published in the middle of the next call
+					Map<UUID, AbstractAction> actions = new HashMap<UUID, AbstractAction>();
+					actions.put(ship.getId(), new DoNothingAction());
+					publishActions(actions);
+					stalePublished.countDown();
+				} else {
+					release.countDown();
+					try {
+						stalePublished.await();
+					} catch (InterruptedException e) {
+						return null;
+					}
+					sleepUntilInterrupted();
+				}
+				return null;
+			}
+		}, makeContext(100, false));
+		staleTeam.setThreadWatchdog(4, 50);
+
+		try {
+			assertTrue(staleTeam.getTeamMovementStart(space).isEmpty());
+			Thread.sleep(300);
+
+			// the first call is quarantined and the second one publishes nothing itself
+			assertTrue(staleTeam.getTeamMovementStart(space).isEmpty());
+			assertEquals(1, staleTeam.getThreadWatchdog().getNumberLeakedThreads());
+			assertEquals(0, stalePublished.getCount());
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+public class TestTeamClientParallel {
+	/**
+	 * A client that only makes decisions in parallel
+	 */
+	static class ParallelClient extends TeamClient {
+		public <T> void decide(List<Ship> ships, ActionableObjectDecision<T> decision, Map<UUID, T> decisions) {
+			decideInParallel(ships, decision, decisions);
+		}
+
+		public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+			return null;
+		}
+
+		public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		}
+
+		public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+			return null;
+		}
+
+		public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects,
+				ResourcePile resourcesAvailable, PurchaseCosts purchaseCosts) {
+			return null;
+		}
+
+		public void initialize(Toroidal2DPhysics space) {
+		}
+
+		public void shutDown(Toroidal2DPhysics space) {
+		}
+
+		public Set<SpacewarGraphics> getGraphics() {
+			return null;
+		}
+	}
+
+	ParallelClient client;
+	TeamThreadWatchdog watchdog;
+	List<Ship> ships;
+
+	@Before
+	public void setUp() {
+		client = new ParallelClient();
+		client.setTeamName("Test");
+		watchdog = new TeamThreadWatchdog("Test", 4, 200);
+		client.setHelperThreads(4, watchdog);
+		ships = new ArrayList<Ship>();
+		for (int i = 0; i < 4; i++) {
+			ships.add(new Ship("Test", Color.WHITE, new Position(i, i)));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		client.shutdownHelperThreads();
+	}
+
+	/**
+	 * Spin (using CPU time) until the time is up or the thread is interrupted
+	 */
+	static void spin(long millis) {
+		long end = System.currentTimeMillis() + millis;
+		while (System.currentTimeMillis() < end && !Thread.currentThread().isInterrupted()) {
+			// busy
+		}
+	}
+
+	/**
+	 * Spin until the thread has used the given CPU time
+	 */
+	static void spinCpu(long millis) {
+		long end = TeamCpuTimeBank.getCurrentThreadCpuTime() + millis * 1000000L;
+		while (TeamCpuTimeBank.getCurrentThreadCpuTime() < end) {
+			// busy
+		}
+	}
+
+	@Test
+	public void testSlowDecisionsAreLeftOutAtTheDeadline() {
+		final Ship slowShip = ships.get(0);
+		Map<UUID, String> decisions = new HashMap<UUID, String>();
+		client.setDeadline(100 + TeamClient.PARALLEL_DECISION_MARGIN);
+
+		long start = System.currentTimeMillis();
+		client.decide(ships, new ActionableObjectDecision<String>() {
+			public String decide(AbstractActionableObject actionable) {
+				if (actionable == slowShip) {
+					spin(5000);
+				}
+				return actionable.getId().toString();
+			}
+		}, decisions);
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertTrue("decideInParallel waited " + elapsed + " ms", elapsed < 1000);
+		assertEquals(ships.size() - 1, decisions.size());
+		assertFalse(decisions.containsKey(slowShip.getId()));
+		for (int i = 1; i < ships.size(); i++) {
+			assertEquals(ships.get(i).getId().toString(), decisions.get(ships.get(i).getId()));
+		}
+
+		// the slow decision was cancelled so its thread is not a runaway
+		assertFalse(client.quarantineRunawayHelpers(watchdog, true));
+		assertEquals(0, watchdog.getNumberLeakedThreads());
+	}
+
+	@Test
+	public void testHelperCpuTimeIsChargedToTheTeam() {
+		if (!TeamCpuTimeBank.isCpuTimeSupported()) {
+			return;
+		}
+		TeamCpuTimeBank cpuTimeBank = new TeamCpuTimeBank(0, 0);
+		TeamMemoryBudget memoryBudget = new TeamMemoryBudget(0, 0);
+		Map<UUID, AbstractObject> decisions = new HashMap<UUID, AbstractObject>();
+		client.setDeadline(Long.MAX_VALUE);
+
+		client.decide(ships, new ActionableObjectDecision<AbstractObject>() {
+			public AbstractObject decide(AbstractActionableObject actionable) {
+				spinCpu(50);
+				return actionable;
+			}
+		}, decisions);
+		assertEquals(ships.size(), decisions.size());
+
+		client.chargeHelperCalls(cpuTimeBank, memoryBudget);
+		double charged = cpuTimeBank.getTotalCpuTimeMillis();
+		assertTrue("charged " + charged + " ms", charged >= ships.size() * 50);
+
+		// each task is only charged once
+		client.chargeHelperCalls(cpuTimeBank, memoryBudget);
+		assertEquals(charged, cpuTimeBank.getTotalCpuTimeMillis(), 0);
+	}
+
+	@Test
+	public void testRunawayHelperIsQuarantined() throws Exception {
+		final Ship runawayShip = ships.get(0);
+		final CountDownLatch release = new CountDownLatch(1);
+		Map<UUID, String> decisions = new HashMap<UUID, String>();
+		client.setDeadline(50 + TeamClient.PARALLEL_DECISION_MARGIN);
+
+		client.decide(ships, new ActionableObjectDecision<String>() {
+			public String decide(AbstractActionableObject actionable) {
+				if (actionable == runawayShip) {
+					while (release.getCount() > 0) {
+						// ignores its deadline and the interrupt
+						Thread.yield();
+					}
+				}
+				return actionable.getId().toString();
+			}
+		}, decisions);
+		assertFalse(decisions.containsKey(runawayShip.getId()));
+
+		assertTrue(client.quarantineRunawayHelpers(watchdog, true));
+		assertEquals(1, watchdog.getNumberLeakedThreads());
+		release.countDown();
+
+		// the helper threads were started over
+		client.setDeadline(Long.MAX_VALUE);
+		decisions.clear();
+		client.decide(ships, new ActionableObjectDecision<String>() {
+			public String decide(AbstractActionableObject actionable) {
+				return actionable.getId().toString();
+			}
+		}, decisions);
+		assertEquals(ships.size(), decisions.size());
+	}
+
+	@Test
+	public void testRunawayHelperOnlyRestartsThePoolOnce() throws Exception {
+		final int[] threadsMade = new int[1];
+		watchdog = new TeamThreadWatchdog("Test", 4, 50) {
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				threadsMade[0]++;
+				return super.newThread(runnable);
+			}
+		};
+		client.setHelperThreads(4, watchdog);
+
+		final Ship runawayShip = ships.get(0);
+		final CountDownLatch release = new CountDownLatch(1);
+		ActionableObjectDecision<String> decision = new ActionableObjectDecision<String>() {
+			public String decide(AbstractActionableObject actionable) {
+				if (actionable == runawayShip) {
+					while (release.getCount() > 0) {
+						// ignores its deadline and the interrupt
+						Thread.yield();
+					}
+				}
+				return actionable.getId().toString();
+			}
+		};
+		Map<UUID, String> decisions = new HashMap<UUID, String>();
+		client.setDeadline(50 + TeamClient.PARALLEL_DECISION_MARGIN);
+		client.decide(ships, decision, decisions);
+		assertTrue(client.quarantineRunawayHelpers(watchdog, true));
+
+		// the runaway keeps running through the next steps, but the pool is only started over once
+		try {
+			int threadsAfterRestart = -1;
+			for (int step = 0; step < 3; step++) {
+				client.setDeadline(Long.MAX_VALUE);
+				decisions.clear();
+				client.decide(ships, new ActionableObjectDecision<String>() {
+					public String decide(AbstractActionableObject actionable) {
+						return actionable.getId().toString();
+					}
+				}, decisions);
+				assertEquals(ships.size(), decisions.size());
+				if (threadsAfterRestart < 0) {
+					threadsAfterRestart = threadsMade[0];
+				}
+
+				assertFalse(client.quarantineRunawayHelpers(watchdog, false));
+				assertEquals(threadsAfterRestart, threadsMade[0]);
+			}
+			assertEquals(1, watchdog.getNumberLeakedThreads());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testCopiesOfTheTeamKeepTheHelperThreads() {
+		Team team = new Team(client, "Test", 4);
+		team.deepCopy();
+		assertEquals(4, client.getNumberHelperThreads());
+	}
+}
@@ -0,0 +1,80 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TestTeamThreadWatchdog {
+
+	/**
+	 * Start a call on a thread from the watchdog and wait for it to be running
+	 */
+	private MonitoredCallable<Boolean> start(TeamThreadWatchdog watchdog, Callable<Boolean> call, long timeout) throws Exception {
+		final MonitoredCallable<Boolean> clientCall = new MonitoredCallable<Boolean>(call, timeout);
+		final CountDownLatch started = new CountDownLatch(1);
+		watchdog.newThread(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					clientCall.call();
+				} catch (Exception e) {
+					// the client was interrupted
+				}
+			}
+		}).start();
+		started.await();
+		while (!clientCall.isStarted()) {
+			Thread.sleep(1);
+		}
+		return clientCall;
+	}
+
+	@Test
+	public void testLateCallFinishesInItsGracePeriod() throws Exception {
+		TeamThreadWatchdog watchdog = new TeamThreadWatchdog("Test", 1, 2000);
+		MonitoredCallable<Boolean> clientCall = start(watchdog, new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				long end = System.currentTimeMillis() + 100;
+				while (System.currentTimeMillis() < end) {
+					// ignores its timeout but finishes soon after
+				}
+				return true;
+			}
+		}, 10);
+
+		assertTrue(watchdog.awaitCall(clientCall));
+		assertEquals(0, watchdog.getNumberLeakedThreads());
+	}
+
+	@Test
+	public void testRunawayIsQuarantinedButNotKilled() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		TeamThreadWatchdog watchdog = new TeamThreadWatchdog("Test", 1, 50);
+		MonitoredCallable<Boolean> clientCall = start(watchdog, new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				while (release.getCount() > 0) {
+					// ignores interrupts
+				}
+				return true;
+			}
+		}, 10);
+
+		assertFalse(watchdog.awaitCall(clientCall));
+		watchdog.quarantine(clientCall);
+		watchdog.quarantine(clientCall);
+		assertEquals(1, watchdog.getNumberLeakedThreads());
+		assertFalse(watchdog.isForfeited());
+
+		Thread thread = clientCall.getClientThread();
+		assertTrue(thread.isAlive());
+		assertTrue(thread.isDaemon());
+		assertEquals(Thread.MIN_PRIORITY, thread.getPriority());
+
+		release.countDown();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+	}
+}
@@ -0,0 +1,69 @@
+package spacesettlers.clients.examples;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.KnowledgeStore;
+
+public class TestExampleGAClient {
+	File knowledgeFile;
+
+	@Before
+	public void setUp() throws Exception {
+		knowledgeFile = File.createTempFile("population", ".bin");
+		knowledgeFile.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		knowledgeFile.delete();
+		new File(knowledgeFile.getPath() + KnowledgeStore.LOCK_SUFFIX).delete();
+	}
+
+	/**
+	 * Save what changed in a population (as shutDown does)
+	 */
+	private void appendChanges(KnowledgeStore store, ExampleGAPopulation population) throws Exception {
+		KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+		writer.writeLong(population.getGenerationId());
+		population.writeChanges(writer);
+		store.append(ExampleGAClient.CHANGES_RECORD, writer);
+	}
+
+	@Test
+	public void testChangesToAnotherGenerationAreLeftOut() throws Exception {
+		ExampleGAPopulation population = new ExampleGAPopulation(3);
+		KnowledgeStore store = new KnowledgeStore(knowledgeFile.getPath(), "ExampleGAPopulation",
+				ExampleGAClient.KNOWLEDGE_VERSION);
+		KnowledgeStore.RecordWriter writer = new KnowledgeStore.RecordWriter();
+		population.write(writer);
+		store.replaceAll(ExampleGAClient.POPULATION_RECORD, writer);
+
+		// a game playing this generation
+		ExampleGAPopulation played = population.deepCopy();
+		played.getNextMember();
+		appendChanges(store, played);
+
+		// a game that made its own next generation (and would have replaced the file) and played all of it
+		ExampleGAPopulation other = population.deepCopy();
+		other.makeNextGeneration();
+		assertTrue(other.getGenerationId() != population.getGenerationId());
+		for (int i = 0; i < 3; i++) {
+			other.getNextMember();
+		}
+		appendChanges(store, other);
+		store.close();
+
+		ExampleGAPopulation loaded = ExampleGAClient.POPULATION_LOADER.load(knowledgeFile);
+		assertEquals(population.getGenerationId(), loaded.getGenerationId());
+		assertFalse(loaded.isGenerationFinished());
+		loaded.getNextMember();
+		loaded.getNextMember();
+		assertTrue(loaded.isGenerationFinished());
+	}
+}
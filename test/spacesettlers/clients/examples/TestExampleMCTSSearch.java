@@ -0,0 +1,107 @@
+package spacesettlers.clients.examples;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.ForwardModel;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+public class TestExampleMCTSSearch {
+	Toroidal2DPhysics space;
+	Ship ship;
+	Base base;
+	Asteroid nearAsteroid, farAsteroid;
+	ExampleMCTSSearch search;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName("Team 1");
+		client.setTeamColor(Color.RED);
+		Team team = new Team(client, "Team 1", 4);
+
+		ship = new Ship("Team 1", Color.RED, new Position(100, 100));
+		team.addShip(ship);
+		space.addObject(ship);
+
+		base = new Base(new Position(250, 420), "Team 1", team, true);
+		team.addBase(base);
+		space.addObject(base);
+
+		nearAsteroid = new Asteroid(new Position(60, 140), true, 10, false, 0.5, 0.25, 0.25);
+		space.addObject(nearAsteroid);
+		farAsteroid = new Asteroid(new Position(400, 100), true, 10, false, 0.5, 0.25, 0.25);
+		space.addObject(farAsteroid);
+
+		UUID[][] targets = {{base.getId(), nearAsteroid.getId(), farAsteroid.getId()}};
+		search = new ExampleMCTSSearch("Team 1", new UUID[] {ship.getId()}, targets, 1);
+		search.rootModel = new ForwardModel(space);
+	}
+
+	@Test
+	public void testEveryOptionIsTried() {
+		for (int i = 0; i < 20; i++) {
+			search.rollout();
+		}
+
+		assertEquals(20, search.rollouts);
+		assertEquals(20, search.root.totalVisits);
+		for (int option = 0; option < 3; option++) {
+			assertTrue(search.root.visits[0][option] > 0);
+		}
+	}
+
+	@Test
+	public void testPrefersTheNearAsteroid() {
+		for (int i = 0; i < 100; i++) {
+			search.rollout();
+		}
+
+		int[] visits = search.root.visits[0];
+		assertTrue(visits[1] > visits[0]);
+		assertTrue(visits[1] > visits[2]);
+	}
+
+	@Test
+	public void testSearchDoesNotChangeTheWorld() {
+		for (int i = 0; i < 10; i++) {
+			search.rollout();
+		}
+
+		assertEquals(100, ship.getPosition().getX(), 0);
+		assertTrue(nearAsteroid.isAlive());
+		assertEquals(0, ship.getResources().getTotal());
+	}
+
+	@Test
+	public void testAdvanceRootKeepsTheSubtree() {
+		for (int i = 0; i < 50; i++) {
+			search.rollout();
+		}
+
+		int[] played = {1};
+		ExampleMCTSNode child = search.root.getChild(search.root.jointOption(played));
+		assertNotNull(child);
+		search.advanceRoot(played, new ForwardModel(space));
+		assertSame(child, search.root);
+
+		// a child that was never reached starts a new tree
+		int[] notPlayed = {0};
+		search.root.children = null;
+		search.advanceRoot(notPlayed, new ForwardModel(space));
+		assertEquals(0, search.root.totalVisits);
+	}
+}
@@ -0,0 +1,124 @@
+package spacesettlers.configs;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConfigurationService {
+	File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("configs", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private File writeFile(String name, String contents, long lastModified) throws IOException {
+		File file = new File(directory, name);
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+		file.setLastModified(lastModified);
+		return file;
+	}
+
+	private String simulatorConfig(int steps) {
+		return "<SpaceSettlersConfig>" +
+				"<height>480</height><width>640</width>" +
+				"<simulationSteps>" + steps + "</simulationSteps><simulationTimeStep>0.05</simulationTimeStep>" +
+				"<teams><HighLevelTeamConfig><teamName>Team1</teamName><configFile>team.xml</configFile></HighLevelTeamConfig></teams>" +
+				"<bases><BaseConfig><teamName>Team1</teamName></BaseConfig></bases>" +
+				"</SpaceSettlersConfig>";
+	}
+
+	private String teamConfig(String classname) {
+		return "<TeamClientConfig><classname>" + classname + "</classname>" +
+				"<teamColorRed>255</teamColorRed><ladderName>Team</ladderName></TeamClientConfig>";
+	}
+
+	@Test
+	public void testSimulatorConfigsAreCopies() throws IOException {
+		File file = writeFile("sim.xml", simulatorConfig(100), 1000000);
+
+		SpaceSettlersConfig first = ConfigurationService.getSimulatorConfig(file.getPath());
+		assertEquals(100, first.getSimulationSteps());
+		assertEquals("Team1", first.getTeams()[0].getTeamName());
+
+		first.getTeams()[0].setInitialRegionULX(42);
+		first.setRandomSeed(7);
+		SpaceSettlersConfig second = ConfigurationService.getSimulatorConfig(file.getPath());
+		assertNotSame(first, second);
+		assertEquals(0, second.getTeams()[0].getInitialRegionULX());
+		assertEquals(0, second.getRandomSeed());
+	}
+
+	@Test
+	public void testTeamConfigsAreShared() throws IOException {
+		File file = writeFile("team.xml", teamConfig("spacesettlers.clients.DoNothingTeamClient"), 1000000);
+
+		TeamClientConfig first = ConfigurationService.getTeamClientConfig(file.getPath());
+		assertEquals("spacesettlers.clients.DoNothingTeamClient", first.getClassname());
+		assertEquals(255, first.getTeamColorRed());
+		assertSame(first, ConfigurationService.getTeamClientConfig(file.getPath()));
+	}
+
+	@Test
+	public void testChangedFilesAreReadAgain() throws IOException {
+		File file = writeFile("sim.xml", simulatorConfig(100), 1000000);
+		assertEquals(100, ConfigurationService.getSimulatorConfig(file.getPath()).getSimulationSteps());
+
+		writeFile("sim.xml", simulatorConfig(200), 2000000);
+		assertEquals(200, ConfigurationService.getSimulatorConfig(file.getPath()).getSimulationSteps());
+	}
+
+	@Test
+	public void testCopy() {
+		HighLevelTeamConfig[] teams = {new HighLevelTeamConfig()};
+		teams[0].setTeamName("Team1");
+
+		HighLevelTeamConfig[] copy = ConfigurationService.copy(teams);
+		assertNotSame(teams[0], copy[0]);
+		assertEquals("Team1", copy[0].getTeamName());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingClassname() throws IOException {
+		File file = writeFile("team.xml", "<TeamClientConfig><ladderName>Team</ladderName></TeamClientConfig>", 1000000);
+		ConfigurationService.getTeamClientConfig(file.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingClientClass() throws IOException {
+		File file = writeFile("team.xml", teamConfig("spacesettlers.clients.NoSuchTeamClient"), 1000000);
+		ConfigurationService.getTeamClientConfig(file.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongKindOfConfig() throws IOException {
+		File file = writeFile("team.xml", teamConfig("spacesettlers.clients.DoNothingTeamClient"), 1000000);
+		ConfigurationService.getSimulatorConfig(file.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingFile() throws IOException {
+		ConfigurationService.getLadderConfig(new File(directory, "missing.xml").getPath());
+	}
+}
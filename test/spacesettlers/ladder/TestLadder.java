@@ -3,15 +3,20 @@ package spacesettlers.ladder;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Timer;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import spacesettlers.configs.BaseConfig;
 import spacesettlers.configs.HighLevelTeamConfig;
 import spacesettlers.configs.LadderConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
 import spacesettlers.ladder.Ladder;
 
+import com.thoughtworks.xstream.XStream;
+
 public class TestLadder {
 	LadderConfig ladderConfig;
 	HighLevelTeamConfig[] variableTeamConfig, staticTeamConfig;
@@ -294,4 +299,105 @@ public class TestLadder {
 		assertEquals(ladder.calculateNChooseK(0, 0), 0, 0);
 	}
 
+	@Test
+	public void testGameSeedsAreRepeatable() {
+		assertEquals(Ladder.getGameSeed(42, 3, 1), Ladder.getGameSeed(42, 3, 1));
+		assertTrue(Ladder.getGameSeed(42, 3, 1) != Ladder.getGameSeed(42, 3, 2));
+		assertTrue(Ladder.getGameSeed(42, 3, 1) != Ladder.getGameSeed(42, 4, 1));
+		assertTrue(Ladder.getGameSeed(42, 3, 1) != Ladder.getGameSeed(43, 3, 1));
+	}
+
+	@Test
+	public void testGameSeedsAreNeverZero() {
+		for (int match = 0; match < 50; match++) {
+			for (int repeat = 0; repeat < 50; repeat++) {
+				assertTrue(Ladder.getGameSeed(0, match, repeat) != 0);
+			}
+		}
+	}
+
+	@Test
+	public void testMergeTeamRecords() {
+		TeamRecord total = new TeamRecord("A");
+		
+		TeamRecord game1 = new TeamRecord("A");
+		game1.numGames = 1;
+		game1.totalScore = 10;
+		game1.totalBeacons = 3;
+		game1.totalResources = 100;
+
+		TeamRecord game2 = new TeamRecord("A");
+		game2.numGames = 1;
+		game2.totalScore = 20;
+		game2.totalBeacons = 4;
+		game2.totalResources = 301;
+		
+		total.merge(game1);
+		total.merge(game2);
+		
+		assertEquals(2, total.getNumGames());
+		assertEquals(15, total.getAverageScore(), 0.0001);
+		assertEquals(3, total.getAverageBeacons(), 0.0001);
+		assertEquals(200, total.getAverageResources(), 0.0001);
+	}
+
+	@Test
+	public void testGamesDontShareTheReplayFile() throws Exception {
+		ladder.simConfig = new SpaceSettlersConfig();
+		ladder.simConfig.setBases(new BaseConfig[0]);
+		ladder.simConfig.setReplayFile("everyGame.replay");
+
+		SpaceSettlersConfig gameConfig = ladder.getGameConfig(staticTeamConfig, 1, 0);
+		assertNull(gameConfig.getReplayFile());
+		assertEquals("everyGame.replay", ladder.simConfig.getReplayFile());
+	}
+
+	@Test
+	public void testGamesDontShareTheCheckpointFile() throws Exception {
+		ladder.simConfig = new SpaceSettlersConfig();
+		ladder.simConfig.setBases(new BaseConfig[0]);
+		ladder.simConfig.setCheckpointFile("everyGame.checkpoint");
+		ladder.simConfig.setCheckpointInterval(100);
+		ladder.simConfig.setResumeFromCheckpoint(true);
+
+		SpaceSettlersConfig gameConfig = ladder.getGameConfig(staticTeamConfig, 1, 0);
+		assertNull(gameConfig.getCheckpointFile());
+		assertEquals(0, gameConfig.getCheckpointInterval());
+		assertFalse(gameConfig.isResumeFromCheckpoint());
+	}
+
+	@Test
+	public void testGameTimeLimitAllowsOneFullActionPerStep() throws Exception {
+		SpaceSettlersConfig config = (SpaceSettlersConfig) new XStream().fromXML("<" + SpaceSettlersConfig.class.getName() + ">" +
+				"<simulationSteps>20000</simulationSteps><teamActionTimeout>300</teamActionTimeout>" +
+				"</" + SpaceSettlersConfig.class.getName() + ">");
+		LadderGame game = new LadderGame(1, 0, 0, config);
+
+		// 20000 steps of 300 ms (not hours of every call running to its timeout)
+		assertEquals(20000L * 300 + LadderCoordinator.GAME_TIME_SLACK, LadderCoordinator.getGameTimeLimit(game, 0));
+		assertEquals(60 * 60 * 1000L, LadderCoordinator.getGameTimeLimit(game, 60 * 60 * 1000L));
+	}
+
+	@Test
+	public void testStuckWorkerIsKilled() throws Exception {
+		// cat never sends a result so it stands in for a worker that is stuck in a game
+		Process process = new ProcessBuilder("cat").start();
+		LadderCoordinator.WorkerProcess worker = new LadderCoordinator.WorkerProcess(process);
+		LadderGame game = new LadderGame(1, 0, 0, new SpaceSettlersConfig());
+		Timer timer = new Timer(true);
+
+		long start = System.currentTimeMillis();
+		try {
+			worker.play(new XStream(), game, 1, timer, 200);
+			fail("a worker that never answered returned a result");
+		} catch (LadderCoordinator.WorkerTimeoutException e) {
+			// expected
+		} finally {
+			timer.cancel();
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		process.waitFor();
+		assertFalse(process.isAlive());
+	}
+
 }
@@ -0,0 +1,149 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.SpaceSettlersConfig;
+
+public class TestLadderJournal {
+	File journalFile;
+	LadderGame game1, game2;
+	
+	@Before
+	public void setUp() throws Exception {
+		journalFile = File.createTempFile("ladder-journal", ".txt");
+		journalFile.delete();
+
+		SpaceSettlersConfig config1 = new SpaceSettlersConfig();
+		config1.setRandomSeed(11);
+		game1 = new LadderGame(1, 0, 0, config1);
+
+		SpaceSettlersConfig config2 = new SpaceSettlersConfig();
+		config2.setRandomSeed(12);
+		game2 = new LadderGame(2, 1, 0, config2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		journalFile.delete();
+	}
+	
+	private GameResult makeResult(LadderGame game, String teamName, double score) {
+		GameResult result = new GameResult(game.getGameIndex());
+		result.outputStrings.add("Team: " + teamName + " scored " + score);
+		TeamRecord record = new TeamRecord(teamName);
+		record.numGames = 1;
+		record.totalScore = score;
+		result.addTeamRecord(record);
+		return result;
+	}
+
+	@Test
+	public void testFinishedGamesAreReadBack() throws Exception {
+		LadderJournal journal = new LadderJournal(journalFile.getPath());
+		journal.load();
+		journal.start(1234, "abc");
+		journal.addFinishedGame(game1, makeResult(game1, "A", 10));
+		journal.close();
+		
+		LadderJournal restarted = new LadderJournal(journalFile.getPath());
+		restarted.load();
+		assertEquals(1234, restarted.getLadderSeed());
+		
+		GameResult result = restarted.getFinishedGame(game1);
+		assertNotNull(result);
+		assertEquals(10, result.getTeamRecords().get(0).totalScore, 0.0001);
+		assertNull(restarted.getFinishedGame(game2));
+	}
+	
+	@Test
+	public void testPartialLineIsDropped() throws Exception {
+		LadderJournal journal = new LadderJournal(journalFile.getPath());
+		journal.load();
+		journal.start(1234, "abc");
+		journal.addFinishedGame(game1, makeResult(game1, "A", 10));
+		journal.close();
+		long goodLength = journalFile.length();
+		
+		// pretend the ladder was killed in the middle of writing the next game
+		FileWriter writer = new FileWriter(journalFile, true);
+		writer.write("12ab34 GAME 1 0 12 PHNwYWNl");
+		writer.close();
+
+		LadderJournal restarted = new LadderJournal(journalFile.getPath());
+		restarted.load();
+		assertNotNull(restarted.getFinishedGame(game1));
+		assertNull(restarted.getFinishedGame(game2));
+		assertEquals(goodLength, journalFile.length());
+		
+		// and the journal can still be added to
+		restarted.start(1234, "abc");
+		restarted.addFinishedGame(game2, makeResult(game2, "B", 20));
+		restarted.close();
+		
+		LadderJournal again = new LadderJournal(journalFile.getPath());
+		again.load();
+		assertNotNull(again.getFinishedGame(game1));
+		assertNotNull(again.getFinishedGame(game2));
+	}
+	
+	@Test
+	public void testFailedGameIsNotSaved() throws Exception {
+		LadderJournal journal = new LadderJournal(journalFile.getPath());
+		journal.load();
+		journal.start(1234, "abc");
+		GameResult failed = makeResult(game1, "A", 0);
+		failed.setFailed(true);
+		journal.addFinishedGame(game1, failed);
+		journal.close();
+
+		LadderJournal restarted = new LadderJournal(journalFile.getPath());
+		restarted.load();
+		assertNull(restarted.getFinishedGame(game1));
+	}
+
+	@Test
+	public void testOtherLadderSettingsAreNotResumed() throws Exception {
+		LadderJournal journal = new LadderJournal(journalFile.getPath());
+		journal.load();
+		journal.start(1234, "abc");
+		journal.addFinishedGame(game1, makeResult(game1, "A", 10));
+		journal.close();
+
+		LadderJournal restarted = new LadderJournal(journalFile.getPath());
+		restarted.load();
+		try {
+			restarted.start(1234, "def");
+			fail("a journal from a ladder with other settings was resumed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDamagedLineIsDropped() throws Exception {
+		LadderJournal journal = new LadderJournal(journalFile.getPath());
+		journal.load();
+		journal.start(1234, "abc");
+		journal.addFinishedGame(game1, makeResult(game1, "A", 10));
+		journal.close();
+		
+		// a whole line with the wrong checksum
+		FileWriter writer = new FileWriter(journalFile, true);
+		writer.write("0 GAME 1 0 12 PHNwYWNl\n");
+		writer.close();
+
+		LadderJournal restarted = new LadderJournal(journalFile.getPath());
+		restarted.load();
+		assertNotNull(restarted.getFinishedGame(game1));
+		assertNull(restarted.getFinishedGame(game2));
+	}
+
+}
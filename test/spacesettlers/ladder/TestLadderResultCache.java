@@ -0,0 +1,141 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+
+public class TestLadderResultCache {
+	File directory;
+	File knowledgeFile;
+	LadderResultCache cache;
+	
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("ladder-cache", "");
+		directory.delete();
+		directory.mkdirs();
+		
+		knowledgeFile = new File(directory, "knowledge.txt");
+		writeFile(knowledgeFile, "first knowledge");
+		writeFile(new File(directory, "team.xml"), "<TeamClientConfig>" +
+				"<classname>spacesettlers.clients.DoNothingTeamClient</classname>" +
+				"<knowledgeFile>" + knowledgeFile.getAbsolutePath() + "</knowledgeFile>" +
+				"</TeamClientConfig>");
+		
+		cache = new LadderResultCache(new File(directory, "cache").getPath(), directory.getPath() + File.separator);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		deleteAll(directory);
+	}
+	
+	private void writeFile(File file, String contents) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+		// make sure the modification time changes even on file systems with coarse times
+		file.setLastModified(System.currentTimeMillis() + contents.length() * 1000);
+	}
+	
+	private void deleteAll(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+	
+	private LadderGame makeGame(long seed) {
+		HighLevelTeamConfig team = new HighLevelTeamConfig();
+		team.setTeamName("DoNothing");
+		team.setConfigFile("team.xml");
+		
+		SpaceSettlersConfig config = new SpaceSettlersConfig();
+		config.setTeams(new HighLevelTeamConfig[] {team});
+		config.setRandomSeed(seed);
+		return new LadderGame(1, 0, 0, config);
+	}
+	
+	private GameResult makeResult(double score) {
+		GameResult result = new GameResult(1);
+		TeamRecord record = new TeamRecord("DoNothing");
+		record.numGames = 1;
+		record.totalScore = score;
+		result.addTeamRecord(record);
+		return result;
+	}
+
+	@Test
+	public void testKeyDependsOnSeedAndKnowledge() throws Exception {
+		String key = cache.getGameKey(makeGame(10));
+		assertNotNull(key);
+		assertEquals(key, cache.getGameKey(makeGame(10)));
+		assertFalse(key.equals(cache.getGameKey(makeGame(11))));
+		
+		writeFile(knowledgeFile, "second knowledge");
+		assertFalse(key.equals(cache.getGameKey(makeGame(10))));
+	}
+
+	@Test
+	public void testKeyDoesntDependOnParallelism() throws Exception {
+		LadderGame game = makeGame(10);
+		String key = cache.getGameKey(game);
+
+		// another machine (or another number of games at once) gives the teams other helper threads
+		game.getSimConfig().setHelperThreadsPerTeam(7);
+		assertEquals(key, cache.getGameKey(game));
+		assertEquals(key, new LadderResultCache(new File(directory, "cache").getPath(),
+				directory.getPath() + File.separator).getGameKey(game));
+	}
+
+	@Test
+	public void testStoredResultIsReused() throws Exception {
+		LadderGame game = makeGame(10);
+		String key = cache.getGameKey(game);
+		assertNull(cache.getResult(key));
+		
+		cache.putResult(game, key, makeResult(42));
+		
+		// a new ladder finds the result
+		LadderResultCache nextCache = new LadderResultCache(new File(directory, "cache").getPath(), directory.getPath() + File.separator);
+		GameResult result = nextCache.getResult(nextCache.getGameKey(makeGame(10)));
+		assertNotNull(result);
+		assertEquals(42, result.getTeamRecords().get(0).totalScore, 0.0001);
+		assertNull(nextCache.getResult(nextCache.getGameKey(makeGame(11))));
+	}
+
+	@Test
+	public void testFailedGameIsNotStored() throws Exception {
+		LadderGame game = makeGame(10);
+		String key = cache.getGameKey(game);
+		
+		GameResult result = makeResult(42);
+		result.setFailed(true);
+		cache.putResult(game, key, result);
+		assertNull(cache.getResult(key));
+	}
+
+	@Test
+	public void testGameIsNotStoredIfKnowledgeChangedDuringIt() throws Exception {
+		LadderGame game = makeGame(10);
+		String key = cache.getGameKey(game);
+		
+		// a learning client rewrites its knowledge while it plays
+		writeFile(knowledgeFile, "learned knowledge");
+		cache.putResult(game, key, makeResult(42));
+		assertNull(cache.getResult(key));
+	}
+
+}
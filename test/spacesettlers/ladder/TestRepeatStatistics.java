@@ -0,0 +1,119 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestRepeatStatistics {
+
+	/**
+	 * Make the result of one repeat with a score for each of teams A and B
+	 */
+	private GameResult makeResult(double scoreA, double scoreB) {
+		GameResult result = new GameResult(1);
+		TeamRecord recordA = new TeamRecord("A");
+		recordA.numGames = 1;
+		recordA.totalScore = scoreA;
+		result.addTeamRecord(recordA);
+
+		TeamRecord recordB = new TeamRecord("B");
+		recordB.numGames = 1;
+		recordB.totalScore = scoreB;
+		result.addTeamRecord(recordB);
+		return result;
+	}
+
+	@Test
+	public void testStudentTQuantile() {
+		assertEquals(12.706, RepeatStatistics.getStudentTQuantile(0.975, 1), 0.001);
+		assertEquals(2.776, RepeatStatistics.getStudentTQuantile(0.975, 4), 0.001);
+		assertEquals(1.812, RepeatStatistics.getStudentTQuantile(0.95, 10), 0.001);
+		assertEquals(2.042, RepeatStatistics.getStudentTQuantile(0.975, 30), 0.001);
+	}
+
+	@Test
+	public void testClearWinnerIsSettled() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(1000, 100));
+		results.add(makeResult(1100, 150));
+		results.add(makeResult(950, 90));
+		results.add(makeResult(1020, 120));
+		results.add(makeResult(980, 80));
+		
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) > 1);
+	}
+
+	@Test
+	public void testCloseTeamsAreNotSettled() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(1000, 900));
+		results.add(makeResult(800, 950));
+		results.add(makeResult(1050, 1000));
+		results.add(makeResult(900, 980));
+		results.add(makeResult(1010, 940));
+		
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) < 1);
+	}
+
+	@Test
+	public void testOneRepeatIsNeverSettled() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(1000, 0));
+		
+		assertEquals(0, RepeatStatistics.getSeparation(results, 0.95, 1), 0);
+	}
+
+	@Test
+	public void testFewRepeatsAreNeverSettled() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		for (int i = 1; i < RepeatStatistics.MINIMUM_REPEATS; i++) {
+			results.add(makeResult(1000 + i, 0));
+		}
+		
+		assertEquals(0, RepeatStatistics.getSeparation(results, 0.95, 1), 0);
+	}
+
+	@Test
+	public void testIdenticalRepeatsNeedTheMinimumRepeats() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(0, 0));
+		results.add(makeResult(0, 0));
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) < 1);
+
+		while (results.size() < RepeatStatistics.MINIMUM_REPEATS) {
+			results.add(makeResult(0, 0));
+		}
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) > 1);
+	}
+
+	@Test
+	public void testMoreLooksNeedMoreSeparation() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(1100, 1000));
+		results.add(makeResult(1150, 1000));
+		results.add(makeResult(1050, 1000));
+		results.add(makeResult(1120, 1000));
+		results.add(makeResult(1080, 1000));
+
+		// settled if the match is only looked at once but not if it could be looked at 20 times
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) > 1);
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 20) < 1);
+	}
+
+	@Test
+	public void testFailedGamesAreIgnored() {
+		ArrayList<GameResult> results = new ArrayList<GameResult>();
+		results.add(makeResult(1000, 100));
+		GameResult failed = new GameResult(2);
+		failed.setFailed(true);
+		results.add(failed);
+		results.add(makeResult(1100, 150));
+		results.add(makeResult(950, 90));
+		results.add(makeResult(1020, 120));
+		results.add(makeResult(980, 80));
+		
+		assertTrue(RepeatStatistics.getSeparation(results, 0.95, 1) > 1);
+	}
+}
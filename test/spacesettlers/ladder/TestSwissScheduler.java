@@ -0,0 +1,149 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+
+public class TestSwissScheduler {
+	HighLevelTeamConfig[] variableTeams, staticTeams;
+	String[] ladderNames;
+	
+	@Before
+	public void setUp() throws Exception {
+		variableTeams = new HighLevelTeamConfig[5];
+		ladderNames = new String[5];
+		for (int i = 0; i < variableTeams.length; i++) {
+			variableTeams[i] = new HighLevelTeamConfig();
+			variableTeams[i].setTeamName("V" + i);
+			ladderNames[i] = "Ladder V" + i;
+		}
+		
+		staticTeams = new HighLevelTeamConfig[1];
+		staticTeams[0] = new HighLevelTeamConfig();
+		staticTeams[0].setTeamName("S1");
+	}
+	
+	/**
+	 * Make a game result where the first team named wins
+	 */
+	private GameResult makeResult(String winner, String loser) {
+		GameResult result = new GameResult(1);
+		TeamRecord winnerRecord = new TeamRecord(winner);
+		winnerRecord.numGames = 1;
+		winnerRecord.totalScore = 100;
+		result.addTeamRecord(winnerRecord);
+
+		TeamRecord loserRecord = new TeamRecord(loser);
+		loserRecord.numGames = 1;
+		loserRecord.totalScore = 10;
+		result.addTeamRecord(loserRecord);
+		return result;
+	}
+
+	@Test
+	public void testEloWinnerGainsWhatLoserLoses() {
+		EloRatings ratings = new EloRatings();
+		ratings.update(makeResult("A", "B"));
+		
+		assertTrue(ratings.getRating("A") > EloRatings.INITIAL_RATING);
+		assertTrue(ratings.getRating("B") < EloRatings.INITIAL_RATING);
+		assertEquals(2 * EloRatings.INITIAL_RATING, ratings.getRating("A") + ratings.getRating("B"), 0.0001);
+		assertEquals(EloRatings.INITIAL_RATING + EloRatings.K_FACTOR / 2, ratings.getRating("A"), 0.0001);
+	}
+
+	@Test
+	public void testFailedGameDoesNotChangeRatings() {
+		EloRatings ratings = new EloRatings();
+		GameResult result = makeResult("A", "B");
+		result.setFailed(true);
+		ratings.update(result);
+		
+		assertEquals(EloRatings.INITIAL_RATING, ratings.getRating("A"), 0);
+	}
+
+	@Test
+	public void testEveryTeamPlaysOncePerRound() {
+		SwissScheduler scheduler = new SwissScheduler(variableTeams, ladderNames, staticTeams, 2);
+		assertEquals(3, scheduler.getMatchesPerRound());
+		
+		ArrayList<HighLevelTeamConfig[]> round = scheduler.getNextRound();
+		assertEquals(3, round.size());
+		
+		int numVariableTeams = 0;
+		for (HighLevelTeamConfig[] match : round) {
+			// the static team is always last
+			assertEquals("S1", match[match.length - 1].getTeamName());
+			numVariableTeams += match.length - 1;
+		}
+		assertEquals(5, numVariableTeams);
+		
+		// the odd team out plays on its own
+		assertEquals(2, round.get(2).length);
+	}
+
+	@Test
+	public void testWinnersMeetInTheNextRound() {
+		SwissScheduler scheduler = new SwissScheduler(variableTeams, ladderNames, staticTeams, 2);
+		
+		// all the ratings are equal so the first round goes in config order
+		ArrayList<HighLevelTeamConfig[]> round = scheduler.getNextRound();
+		assertEquals("V0", round.get(0)[0].getTeamName());
+		assertEquals("V1", round.get(0)[1].getTeamName());
+		assertEquals("V2", round.get(1)[0].getTeamName());
+		assertEquals("V3", round.get(1)[1].getTeamName());
+		
+		scheduler.recordGame(makeResult("Ladder V1", "Ladder V0"));
+		scheduler.recordGame(makeResult("Ladder V3", "Ladder V2"));
+		
+		// the two winners are rated highest and haven't met
+		round = scheduler.getNextRound();
+		assertEquals("V1", round.get(0)[0].getTeamName());
+		assertEquals("V3", round.get(0)[1].getTeamName());
+	}
+
+	@Test
+	public void testRematchesAreAvoided() {
+		HighLevelTeamConfig[] fourTeams = new HighLevelTeamConfig[] {variableTeams[0], variableTeams[1], 
+				variableTeams[2], variableTeams[3]};
+		SwissScheduler scheduler = new SwissScheduler(fourTeams, ladderNames, staticTeams, 2);
+
+		// with no results, each round should still give every team a new opponent
+		for (int round = 0; round < 3; round++) {
+			scheduler.getNextRound();
+		}
+		for (int i = 0; i < fourTeams.length; i++) {
+			for (int j = 0; j < fourTeams.length; j++) {
+				if (i != j) {
+					assertEquals(1, scheduler.meetings[i][j]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCloseRatingBeatsFewerMeetings() {
+		HighLevelTeamConfig[] threeTeams = new HighLevelTeamConfig[] {variableTeams[0], variableTeams[1], variableTeams[2]};
+		SwissScheduler scheduler = new SwissScheduler(threeTeams, ladderNames, staticTeams, 2);
+
+		// V0 beats V1 and then V2 (who sat out) beats V0
+		ArrayList<HighLevelTeamConfig[]> round = scheduler.getNextRound();
+		assertEquals("V1", round.get(0)[1].getTeamName());
+		scheduler.recordGame(makeResult("Ladder V0", "Ladder V1"));
+		round = scheduler.getNextRound();
+		assertEquals("V0", round.get(0)[0].getTeamName());
+		assertEquals("V2", round.get(0)[1].getTeamName());
+		scheduler.recordGame(makeResult("Ladder V2", "Ladder V0"));
+
+		// every team could have met every other once, so V2 plays V0 again (the closest rating)
+		// rather than V1 (who it hasn't met)
+		assertEquals(2, scheduler.getMaximumMeetings());
+		round = scheduler.getNextRound();
+		assertEquals("V2", round.get(0)[0].getTeamName());
+		assertEquals("V0", round.get(0)[1].getTeamName());
+	}
+}
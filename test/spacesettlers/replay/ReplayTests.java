@@ -0,0 +1,14 @@
+package spacesettlers.replay;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+  TestReplayRecorder.class,
+  TestReplayReader.class,
+})
+
+public class ReplayTests {
+
+}
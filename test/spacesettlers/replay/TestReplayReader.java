@@ -0,0 +1,143 @@
+package spacesettlers.replay;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+import spacesettlers.clients.Team;
+import spacesettlers.configs.BaseConfig;
+import spacesettlers.configs.FixedAsteroidConfig;
+import spacesettlers.configs.FlagConfig;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.RandomAsteroidConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.utilities.Position;
+
+public class TestReplayReader {
+	static final int NUM_STEPS = 350;
+
+	SpaceSettlersConfig config;
+	File replayFile;
+
+	/**
+	 * The x position of every asteroid recorded on each step (in the order they were in the game)
+	 */
+	List<List<Double>> recordedPositions;
+
+	@Before
+	public void setUp() throws Exception {
+		XStream xstream = new XStream();
+		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+		xstream.alias("BaseConfig", BaseConfig.class);
+		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
+		xstream.alias("FlagConfig", FlagConfig.class);
+		config = (SpaceSettlersConfig) xstream.fromXML(new File("config/heuristicCompetitive/SpaceSettlersConfig.xml"));
+		replayFile = File.createTempFile("test", ".replay");
+		recordedPositions = new ArrayList<List<Double>>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		replayFile.delete();
+	}
+
+	/**
+	 * Record a game where asteroids move, appear and disappear
+	 * 
+	 * @param finish true to close the replay, false to abandon it part way through
+	 * @throws Exception
+	 */
+	void recordGame(boolean finish) throws Exception {
+		Random random = new Random(3);
+		ArrayList<AbstractObject> objects = new ArrayList<AbstractObject>();
+		ReplayRecorder recorder = new ReplayRecorder(replayFile, config, new ArrayList<Team>());
+		for (int step = 0; step < NUM_STEPS; step++) {
+			if (objects.size() < 3 || random.nextInt(10) == 0) {
+				objects.add(new Asteroid(new Position(random.nextInt(500), random.nextInt(500)), true, 10, true, 1, 1, 1));
+			}
+			if (objects.size() > 3 && random.nextInt(12) == 0) {
+				objects.remove(random.nextInt(objects.size()));
+			}
+
+			List<Double> positions = new ArrayList<Double>();
+			for (AbstractObject object : objects) {
+				Position position = object.getPosition();
+				object.setPosition(new Position(position.getX() + random.nextInt(5) - 2, position.getY()));
+				positions.add(object.getPosition().getX());
+			}
+			recordedPositions.add(positions);
+			recorder.recordStep(step, objects, new ArrayList<Team>());
+		}
+		if (finish) {
+			recorder.close();
+		} else {
+			recorder.abandon();
+		}
+	}
+
+	void assertStep(ReplayReader reader, int step) {
+		assertEquals(step, reader.getStep());
+		List<AbstractObject> objects = reader.getAllObjects();
+		List<Double> positions = recordedPositions.get(step);
+		assertEquals(positions.size(), objects.size());
+		for (int i = 0; i < positions.size(); i++) {
+			assertEquals(positions.get(i), objects.get(i).getPosition().getX(), 1.0 / ReplayFormat.POSITION_SCALE);
+		}
+	}
+
+	@Test
+	public void testPlayForward() throws Exception {
+		recordGame(true);
+		ReplayReader reader = new ReplayReader(replayFile);
+		assertEquals(0, reader.getFirstStep());
+		assertEquals(NUM_STEPS - 1, reader.getLastStep());
+		assertStep(reader, 0);
+		for (int step = 1; step < NUM_STEPS; step++) {
+			assertTrue(reader.next());
+			assertStep(reader, step);
+		}
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testSeek() throws Exception {
+		recordGame(true);
+		ReplayReader reader = new ReplayReader(replayFile);
+		Random random = new Random(5);
+		for (int i = 0; i < 100; i++) {
+			int step = random.nextInt(NUM_STEPS);
+			reader.seek(step);
+			assertStep(reader, step);
+		}
+
+		// past either end goes to the end
+		reader.seek(NUM_STEPS + 10);
+		assertStep(reader, NUM_STEPS - 1);
+		reader.seek(-10);
+		assertStep(reader, 0);
+	}
+
+	@Test
+	public void testUnfinishedReplay() throws Exception {
+		recordGame(false);
+		ReplayReader reader = new ReplayReader(replayFile);
+		assertTrue(reader.getLastStep() < NUM_STEPS);
+		reader.seek(reader.getLastStep());
+		assertStep(reader, reader.getLastStep());
+		reader.seek(reader.getLastStep() / 2);
+		assertStep(reader, reader.getLastStep() / 2);
+	}
+}
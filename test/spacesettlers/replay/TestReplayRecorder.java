@@ -0,0 +1,116 @@
+package spacesettlers.replay;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+import spacesettlers.clients.Team;
+import spacesettlers.configs.BaseConfig;
+import spacesettlers.configs.FixedAsteroidConfig;
+import spacesettlers.configs.FlagConfig;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.RandomAsteroidConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Beacon;
+import spacesettlers.utilities.Position;
+
+public class TestReplayRecorder {
+	SpaceSettlersConfig config;
+	File replayFile;
+
+	@Before
+	public void setUp() throws Exception {
+		XStream xstream = new XStream();
+		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+		xstream.alias("BaseConfig", BaseConfig.class);
+		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
+		xstream.alias("FlagConfig", FlagConfig.class);
+		config = (SpaceSettlersConfig) xstream.fromXML(new File("config/heuristicCompetitive/SpaceSettlersConfig.xml"));
+		replayFile = File.createTempFile("test", ".replay");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		replayFile.delete();
+	}
+
+	@Test
+	public void testVarLongs() {
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		long[] values = {0, 1, 127, 128, 300, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+		for (long value : values) {
+			ReplayFormat.putVarLong(buffer, value);
+			ReplayFormat.putSignedVarLong(buffer, value);
+		}
+		buffer.flip();
+		for (long value : values) {
+			assertEquals(value, ReplayFormat.getVarLong(buffer));
+			assertEquals(value, ReplayFormat.getSignedVarLong(buffer));
+		}
+		assertFalse(buffer.hasRemaining());
+
+		// small numbers either side of zero fit in one byte
+		buffer.clear();
+		ReplayFormat.putSignedVarLong(buffer, -64);
+		ReplayFormat.putSignedVarLong(buffer, 63);
+		assertEquals(2, buffer.position());
+	}
+
+	@Test
+	public void testKeyframeIndex() throws Exception {
+		ArrayList<AbstractObject> objects = new ArrayList<AbstractObject>();
+		Asteroid asteroid = new Asteroid(new Position(100, 100), true, 10, true, 100, 100, 100);
+		objects.add(asteroid);
+		objects.add(new Beacon(new Position(200, 200)));
+
+		ReplayRecorder recorder = new ReplayRecorder(replayFile, config, new ArrayList<Team>());
+		for (int step = 0; step <= 250; step++) {
+			if (step == 50) {
+				objects.remove(1);
+			}
+			asteroid.setPosition(new Position(100 + step, 100));
+			recorder.recordStep(step, objects, new ArrayList<Team>());
+		}
+		recorder.close();
+		assertEquals(251, recorder.getNumFrames());
+
+		ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(replayFile.toPath()));
+		assertEquals(ReplayFormat.MAGIC, file.getInt(0));
+		assertEquals(ReplayFormat.INDEX_MAGIC, file.getInt(file.limit() - 4));
+
+		file.position((int) file.getLong(file.limit() - ReplayFormat.TRAILER_SIZE));
+		assertEquals(ReplayFormat.END_OF_FRAMES, file.get());
+		assertEquals(250, ReplayFormat.getSignedVarLong(file));
+		assertEquals(3, ReplayFormat.getVarLong(file));
+
+		// every keyframe in the index starts where the index says it does
+		long step = 0;
+		long position = 0;
+		for (int keyframe = 0; keyframe < 3; keyframe++) {
+			step += ReplayFormat.getVarLong(file);
+			position += ReplayFormat.getVarLong(file);
+			assertEquals(keyframe * 100, step);
+
+			ByteBuffer frame = file.duplicate();
+			frame.position((int) position);
+			assertEquals(ReplayFormat.KEYFRAME, frame.get());
+			assertEquals(step, ReplayFormat.getVarLong(frame));
+		}
+
+		// the deltas of one moving object are a few bytes a step
+		assertTrue(file.limit() < 251 * 16);
+	}
+}
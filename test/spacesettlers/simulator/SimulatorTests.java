@@ -7,6 +7,10 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
   TestToroidal2DPhysics.class,
   TestCollisionHandler.class,
+  TestEarlyEndRules.class,
+  TestWorldTemplate.class,
+  TestSimulatorCheckpoint.class,
+  TestForwardModel.class,
 })
 
 public class SimulatorTests {
@@ -0,0 +1,101 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.configs.SpaceSettlersConfig;
+
+public class TestEarlyEndRules {
+	SpaceSettlersConfig config;
+	Team team1, team2;
+	Set<Team> teams;
+
+	@Before
+	public void setUp() throws Exception {
+		config = new SpaceSettlersConfig();
+		config.setScoringMethod("Cores");
+		
+		team1 = new Team(new DoNothingTeamClient(), "Team 1", 1);
+		team2 = new Team(new DoNothingTeamClient(), "Team 2", 1);
+		teams = new LinkedHashSet<Team>();
+		teams.add(team1);
+		teams.add(team2);
+	}
+
+	@Test
+	public void testOffByDefault() {
+		EarlyEndRules rules = new EarlyEndRules(config);
+		assertFalse(rules.isEnabled());
+		for (int i = 0; i < 100; i++) {
+			assertNull(rules.check(teams, 100 - i));
+		}
+	}
+
+	@Test
+	public void testIdleGameEnds() {
+		config.setEarlyEndIdleSteps(10);
+		EarlyEndRules rules = new EarlyEndRules(config);
+
+		// the first step always counts as a change
+		assertNull(rules.check(teams, 1000));
+		for (int i = 0; i < 9; i++) {
+			assertNull(rules.check(teams, 1000));
+		}
+		
+		// a score change starts the count over
+		team1.setScore(1);
+		assertNull(rules.check(teams, 1000));
+		for (int i = 0; i < 9; i++) {
+			assertNull(rules.check(teams, 1000));
+		}
+		assertEquals(EarlyEndRules.IDLE_REASON, rules.check(teams, 1000));
+	}
+
+	@Test
+	public void testDecidedGameEnds() {
+		config.setEarlyEndMaximumScorePerStep(0.1);
+		EarlyEndRules rules = new EarlyEndRules(config);
+		
+		// team 2 could still score 10 in 100 steps
+		team1.setScore(10);
+		assertNull(rules.check(teams, 100));
+		
+		// but not 10 in 99 steps
+		assertEquals(EarlyEndRules.DECIDED_REASON, rules.check(teams, 99));
+	}
+
+	@Test
+	public void testEveryPlaceMustBeDecided() {
+		Team team3 = new Team(new DoNothingTeamClient(), "Team 3", 1);
+		teams.add(team3);
+		config.setEarlyEndMaximumScorePerStep(0.1);
+		EarlyEndRules rules = new EarlyEndRules(config);
+
+		// the winner is decided but second place isn't
+		team1.setScore(100);
+		team2.setScore(5);
+		assertNull(rules.check(teams, 99));
+
+		// now team 3 can't catch team 2 either
+		team2.setScore(20);
+		assertEquals(EarlyEndRules.DECIDED_REASON, rules.check(teams, 99));
+	}
+
+	@Test
+	public void testDecidedNeedsNonDecreasingScores() {
+		config.setScoringMethod("DamageCorrected");
+		config.setEarlyEndMaximumScorePerStep(0.1);
+		EarlyEndRules rules = new EarlyEndRules(config);
+		assertFalse(rules.isEnabled());
+
+		team1.setScore(1000);
+		assertNull(rules.check(teams, 1));
+	}
+}
@@ -0,0 +1,179 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.MoveAction;
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.weapons.AbstractWeapon;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+public class TestForwardModel {
+	Toroidal2DPhysics space;
+	Team team;
+	Ship ship;
+	Asteroid asteroid;
+	Base base;
+	Map<UUID, AbstractAction> actions;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName("Team 1");
+		client.setTeamColor(Color.RED);
+		team = new Team(client, "Team 1", 4);
+
+		ship = new Ship("Team 1", Color.RED, new Position(100, 100));
+		team.addShip(ship);
+		space.addObject(ship);
+
+		base = new Base(new Position(500, 400), "Team 1", team, true);
+		team.addBase(base);
+		space.addObject(base);
+
+		Position asteroidPosition = new Position(300, 300);
+		asteroidPosition.setTranslationalVelocity(new Vector2D(10, 5));
+		asteroid = new Asteroid(asteroidPosition, true, 10, true, 0.5, 0.25, 0.25);
+		space.addObject(asteroid);
+
+		actions = new HashMap<UUID, AbstractAction>();
+		actions.put(ship.getId(), new MoveAction(space, ship.getPosition(), new Position(200, 150)));
+	}
+
+	@Test
+	public void testModelDoesNotChangeTheWorld() {
+		ForwardModel model = new ForwardModel(space);
+		model.advance(actions, 20);
+
+		assertEquals(20, model.getTimestep());
+		assertEquals(0, space.getCurrentTimestep());
+		assertEquals(100, ship.getPosition().getX(), 0);
+		assertEquals(300, asteroid.getPosition().getX(), 0);
+		assertTrue(model.getSpace().getObjectById(ship.getId()).getPosition().getX() > 100);
+		assertTrue(model.getSpace().getObjectById(asteroid.getId()).getPosition().getX() > 300);
+	}
+
+	@Test
+	public void testSamePhysicsAsTheGame() {
+		ForwardModel model = new ForwardModel(space);
+
+		Toroidal2DPhysics gameSpace = space.deepClone();
+		Ship gameShip = (Ship) gameSpace.getObjectById(ship.getId());
+		for (int step = 1; step <= 30; step++) {
+			gameShip.setCurrentAction(actions.get(ship.getId()));
+			gameSpace.advanceTime(step, new HashMap<UUID, SpaceSettlersPowerupEnum>());
+			model.advance(actions);
+		}
+
+		Position modelPosition = model.getSpace().getObjectById(ship.getId()).getPosition();
+		assertEquals(gameShip.getPosition().getX(), modelPosition.getX(), 0.000001);
+		assertEquals(gameShip.getPosition().getY(), modelPosition.getY(), 0.000001);
+		assertEquals(gameShip.getEnergy(), ((Ship) model.getSpace().getObjectById(ship.getId())).getEnergy(), 0);
+	}
+
+	@Test
+	public void testForksAreIndependent() {
+		ForwardModel model = new ForwardModel(space);
+		model.advance(actions, 5);
+		ForwardModel fork = model.fork();
+		fork.advance(actions, 10);
+
+		assertEquals(5, model.getTimestep());
+		assertEquals(15, fork.getTimestep());
+		assertNotSame(model.getSpace().getObjectById(ship.getId()), fork.getSpace().getObjectById(ship.getId()));
+
+		// playing the original forward the same way ends in the same place
+		model.advance(actions, 10);
+		assertEquals(fork.getSpace().getObjectById(ship.getId()).getPosition().getX(),
+				model.getSpace().getObjectById(ship.getId()).getPosition().getX(), 0);
+	}
+
+	@Test
+	public void testForkIntoReusesTheModel() {
+		ForwardModel model = new ForwardModel(space);
+		ForwardModel pooled = new ForwardModel(space);
+		pooled.advance(actions, 50);
+		Toroidal2DPhysics pooledSpace = pooled.getSpace();
+
+		model.advance(actions, 3);
+		model.forkInto(pooled);
+
+		assertSame(pooledSpace, pooled.getSpace());
+		assertEquals(3, pooled.getTimestep());
+		assertEquals(space.getAllObjects().size(), pooled.getSpace().getAllObjects().size());
+		assertEquals(model.getSpace().getObjectById(ship.getId()).getPosition().getX(),
+				pooled.getSpace().getObjectById(ship.getId()).getPosition().getX(), 0);
+	}
+
+	@Test
+	public void testBasesBelongToTheModelsCopyOfTheirTeam() {
+		Base secondBase = new Base(new Position(200, 400), "Team 1", team, false);
+		team.addBase(secondBase);
+		space.addObject(secondBase);
+
+		ForwardModel model = new ForwardModel(space);
+		Base modelBase = (Base) model.getSpace().getObjectById(base.getId());
+		Base modelSecondBase = (Base) model.getSpace().getObjectById(secondBase.getId());
+		assertNotSame(base, modelBase);
+		assertNotSame(team, modelBase.getTeam());
+		assertSame(modelBase.getTeam(), modelSecondBase.getTeam());
+		// the model has its own ships so its teams don't copy them again
+		assertTrue(modelBase.getTeam().getShips().isEmpty());
+
+		// and every fork has its own copy
+		ForwardModel fork = model.fork();
+		assertNotSame(modelBase.getTeam(), ((Base) fork.getSpace().getObjectById(base.getId())).getTeam());
+	}
+
+	@Test
+	public void testDepositsInTheModelDontReachTheTeam() {
+		ship.addResources(new ResourcePile(10, 20, 30));
+		int teamResources = team.getAvailableResources().getTotal();
+		int teamTotalResources = team.getTotalResources().getTotal();
+
+		// fly the model's ship into the base
+		ForwardModel model = new ForwardModel(space);
+		Ship modelShip = (Ship) model.getSpace().getObjectById(ship.getId());
+		modelShip.setPosition(base.getPosition().deepCopy());
+		model.advance(new HashMap<UUID, AbstractAction>(), new HashMap<UUID, SpaceSettlersPowerupEnum>());
+
+		Base modelBase = (Base) model.getSpace().getObjectById(base.getId());
+		assertEquals(teamResources + 60, modelBase.getTeam().getAvailableResources().getTotal());
+		assertEquals(teamResources, team.getAvailableResources().getTotal());
+		assertEquals(teamTotalResources, team.getTotalResources().getTotal());
+		assertEquals(0, base.getResources().getTotal());
+	}
+
+	@Test
+	public void testWeaponsBelongToTheModelShip() {
+		ForwardModel model = new ForwardModel(space);
+		Map<UUID, SpaceSettlersPowerupEnum> powerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
+		powerups.put(ship.getId(), SpaceSettlersPowerupEnum.FIRE_MISSILE);
+		powerups.put(UUID.randomUUID(), SpaceSettlersPowerupEnum.FIRE_MISSILE);
+		model.advance(actions, powerups);
+
+		assertEquals(1, model.getSpace().getWeapons().size());
+		assertTrue(space.getWeapons().isEmpty());
+
+		ForwardModel fork = model.fork();
+		AbstractWeapon weapon = fork.getSpace().getWeapons().iterator().next();
+		assertSame(fork.getSpace().getObjectById(ship.getId()), weapon.getFiringShip());
+	}
+}
@@ -0,0 +1,141 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+import spacesettlers.utilities.Position;
+
+public class TestSimulatorCheckpoint {
+	Toroidal2DPhysics space;
+	Team team;
+	Ship ship;
+	Base base;
+	Set<Team> teams;
+	Random random;
+	File checkpointFile;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 1);
+
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName("Team 1");
+		client.setTeamColor(Color.RED);
+		team = new Team(client, "Team 1", 4);
+
+		ship = new Ship("Team 1", Color.RED, new Position(100, 100));
+		team.addShip(ship);
+		space.addObject(ship);
+
+		base = new Base(new Position(200, 200), "Team 1", team, true);
+		team.addBase(base);
+		space.addObject(base);
+
+		space.addObject(new Asteroid(new Position(300, 300), true, 10, true, 0.5, 0.25, 0.25));
+
+		ResourcePile resources = new ResourcePile();
+		resources.setResources(ResourceTypes.WATER, 42);
+		team.incrementAvailableResources(resources);
+		team.setScore(17);
+
+		teams = new LinkedHashSet<Team>();
+		teams.add(team);
+		random = new Random(123);
+		checkpointFile = File.createTempFile("test", ".checkpoint");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checkpointFile.delete();
+		new File(checkpointFile.getPath() + ".tmp").delete();
+	}
+
+	SimulatorCheckpoint saveAndLoad(SimulatorCheckpoint checkpoint) throws IOException {
+		checkpoint.save(checkpointFile);
+		return SimulatorCheckpoint.load(checkpointFile);
+	}
+
+	@Test
+	public void testWorldAndTeamsAreRestored() throws IOException {
+		SimulatorCheckpoint checkpoint = new SimulatorCheckpoint(250, random, space, teams,
+				new EarlyEndRules(new SpaceSettlersConfig()));
+		SimulatorCheckpoint restored = saveAndLoad(checkpoint);
+
+		assertEquals(250, restored.timestep);
+		assertEquals(space.getAllObjects().size(), restored.simulatedSpace.getAllObjects().size());
+		assertEquals(1, restored.teams.size());
+
+		Team restoredTeam = restored.teams.get(0);
+		assertEquals("Team 1", restoredTeam.getTeamName());
+		assertEquals(17, restoredTeam.getScore(), 0);
+		assertEquals(42, restoredTeam.getAvailableResources().getResourceQuantity(ResourceTypes.WATER));
+
+		// objects shared by the world and the team are still shared
+		Ship restoredShip = (Ship) restored.simulatedSpace.getObjectById(ship.getId());
+		assertNotNull(restoredShip);
+		assertSame(restoredShip, restoredTeam.getShips().iterator().next());
+		Base restoredBase = (Base) restored.simulatedSpace.getObjectById(base.getId());
+		assertSame(restoredTeam, restoredBase.getTeam());
+		assertEquals(ship.getPosition().getX(), restoredShip.getPosition().getX(), 0);
+	}
+
+	@Test
+	public void testRandomCarriesOn() throws IOException {
+		random.nextInt();
+		SimulatorCheckpoint restored = saveAndLoad(new SimulatorCheckpoint(0, random, space, teams,
+				new EarlyEndRules(new SpaceSettlersConfig())));
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(random.nextLong(), restored.random.nextLong());
+		}
+	}
+
+	@Test
+	public void testClientStates() throws IOException {
+		SimulatorCheckpoint checkpoint = new SimulatorCheckpoint(0, random, space, teams,
+				new EarlyEndRules(new SpaceSettlersConfig()));
+		ArrayList<Integer> state = new ArrayList<Integer>();
+		state.add(7);
+		checkpoint.clientStates.put("Team 1", state);
+
+		SimulatorCheckpoint restored = saveAndLoad(checkpoint);
+		assertEquals(state, restored.clientStates.get("Team 1"));
+	}
+
+	@Test
+	public void testSaveReplacesOldCheckpoint() throws IOException {
+		new SimulatorCheckpoint(100, random, space, teams, new EarlyEndRules(new SpaceSettlersConfig())).save(checkpointFile);
+		new SimulatorCheckpoint(200, random, space, teams, new EarlyEndRules(new SpaceSettlersConfig())).save(checkpointFile);
+
+		assertEquals(200, SimulatorCheckpoint.load(checkpointFile).timestep);
+		assertFalse(new File(checkpointFile.getPath() + ".tmp").exists());
+	}
+
+	@Test(expected = IOException.class)
+	public void testBadCheckpoint() throws IOException {
+		FileOutputStream output = new FileOutputStream(checkpointFile);
+		output.write(new byte[] {1, 2, 3, 4, 5});
+		output.close();
+		SimulatorCheckpoint.load(checkpointFile);
+	}
+}
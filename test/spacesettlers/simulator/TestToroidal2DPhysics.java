@@ -1,6 +1,7 @@
 package spacesettlers.simulator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
@@ -9,6 +10,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.Beacon;
 import spacesettlers.simulator.Toroidal2DPhysics;
 import spacesettlers.utilities.Movement;
 import spacesettlers.utilities.Position;
@@ -345,4 +348,25 @@ public class TestToroidal2DPhysics {
 	}
 	
 
+	/**
+	 * Resetting the space for a new game should leave nothing from the last game behind
+	 */
+	@Test
+	public void testResetEmptiesSpace() {
+		Beacon beacon = new Beacon(new Position(100, 100));
+		space.addObject(beacon);
+		assertEquals(1, space.getAllObjects().size());
+		assertEquals(1, space.getBeacons().size());
+		
+		SpaceSettlersConfig config = new SpaceSettlersConfig();
+		space.reset(config);
+		
+		assertEquals(0, space.getAllObjects().size());
+		assertEquals(0, space.getBeacons().size());
+		assertNull(space.getObjectById(beacon.getId()));
+		assertEquals(0, space.getCurrentTimestep());
+		assertEquals(config.getHeight(), space.getHeight());
+		assertEquals(config.getWidth(), space.getWidth());
+	}
+
 }
@@ -0,0 +1,106 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+import spacesettlers.configs.BaseConfig;
+import spacesettlers.configs.FixedAsteroidConfig;
+import spacesettlers.configs.FlagConfig;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.RandomAsteroidConfig;
+import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.objects.Ship;
+
+public class TestWorldTemplate {
+	SpaceSettlersConfig config;
+	int[] shipsPerTeam;
+
+	@Before
+	public void setUp() throws Exception {
+		XStream xstream = new XStream();
+		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+		xstream.alias("BaseConfig", BaseConfig.class);
+		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
+		xstream.alias("FlagConfig", FlagConfig.class);
+		config = (SpaceSettlersConfig) xstream.fromXML(new File("config/heuristicCompetitive/SpaceSettlersConfig.xml"));
+		config.setRandomSeed(42);
+
+		shipsPerTeam = new int[config.getTeams().length];
+		for (int t = 0; t < shipsPerTeam.length; t++) {
+			shipsPerTeam[t] = 1;
+		}
+		WorldTemplate.clearCache();
+	}
+
+	@Test
+	public void testSameSeedSameLayout() {
+		WorldTemplate template1 = WorldTemplate.makeTemplate(config, shipsPerTeam, new Random(7));
+		WorldTemplate template2 = WorldTemplate.makeTemplate(config, shipsPerTeam, new Random(7));
+
+		assertEquals(config.getNumBeacons(), template1.getNumBeacons());
+		assertEquals(config.getRandomAsteroids().getNumberInitialAsteroids(), template1.getNumAsteroids());
+		assertArrayEquals(template1.beacons, template2.beacons, 0);
+		assertArrayEquals(template1.asteroids, template2.asteroids, 0);
+		assertArrayEquals(template1.bases, template2.bases, 0);
+		for (int t = 0; t < shipsPerTeam.length; t++) {
+			assertArrayEquals(template1.getRegion(t), template2.getRegion(t));
+			assertArrayEquals(template1.ships[t], template2.ships[t], 0);
+		}
+	}
+
+	@Test
+	public void testShipsKeptApart() {
+		WorldTemplate template = WorldTemplate.makeTemplate(config, shipsPerTeam, new Random(7));
+		Toroidal2DPhysics space = new Toroidal2DPhysics(config);
+		for (int t1 = 0; t1 < shipsPerTeam.length; t1++) {
+			for (int t2 = t1 + 1; t2 < shipsPerTeam.length; t2++) {
+				double distance = space.findShortestDistance(template.getShipLocation(t1, 0), template.getShipLocation(t2, 0));
+				assertTrue(distance > Ship.SHIP_RADIUS * 4);
+			}
+		}
+	}
+
+	@Test
+	public void testTemplateIsCached() {
+		Random random1 = new Random(1);
+		Random random2 = new Random(1);
+		WorldTemplate template1 = WorldTemplate.getTemplate(config, shipsPerTeam, random1);
+		WorldTemplate template2 = WorldTemplate.getTemplate(config, shipsPerTeam, random2);
+		assertSame(template1, template2);
+
+		// the game's random numbers are used the same way whether or not the template was cached
+		assertEquals(random1.nextLong(), random2.nextLong());
+	}
+
+	@Test
+	public void testTeamNamesDontChangeTheMap() {
+		config.setMapSeed(99);
+		WorldTemplate template1 = WorldTemplate.getTemplate(config, shipsPerTeam, new Random(1));
+
+		// a different game between different teams on the same map
+		config.setRandomSeed(43);
+		for (int t = 0; t < config.getTeams().length; t++) {
+			config.getTeams()[t].setTeamName("Other" + t);
+			config.getBases()[t].setTeamName("Other" + t);
+		}
+		WorldTemplate template2 = WorldTemplate.getTemplate(config, shipsPerTeam, new Random(2));
+		assertSame(template1, template2);
+	}
+
+	@Test
+	public void testMapSeedLeavesGameRandomAlone() {
+		config.setMapSeed(99);
+		Random random = new Random(1);
+		WorldTemplate.getTemplate(config, shipsPerTeam, random);
+		assertEquals(new Random(1).nextLong(), random.nextLong());
+	}
+}